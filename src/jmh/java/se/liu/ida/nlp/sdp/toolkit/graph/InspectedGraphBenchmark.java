@@ -0,0 +1,55 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.graph;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import se.liu.ida.nlp.sdp.toolkit.io.BenchmarkCorpus;
+
+/**
+ * Benchmark for the graph-theoretic properties computed by
+ * {@link InspectedGraph}, as queried by the analysis tools.
+ *
+ * @author Marco Kuhlmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InspectedGraphBenchmark {
+
+	@Param({"DM-short-sparse", "DM-short-dense", "DM-long-sparse", "DM-long-dense"})
+	public String corpus;
+
+	private List<Graph> graphs;
+
+	@Setup
+	public void setup() throws IOException {
+		graphs = BenchmarkCorpus.getGraphs(corpus);
+	}
+
+	@Benchmark
+	public void inspectCorpus(Blackhole blackhole) {
+		for (Graph graph : graphs) {
+			InspectedGraph inspectedGraph = new InspectedGraph(graph);
+			blackhole.consume(inspectedGraph.getNComponents());
+			blackhole.consume(inspectedGraph.isCyclic());
+			blackhole.consume(inspectedGraph.isForest());
+			blackhole.consume(inspectedGraph.isTree());
+			blackhole.consume(inspectedGraph.isNoncrossing());
+			blackhole.consume(inspectedGraph.isProjective());
+			blackhole.consume(inspectedGraph.getMaximalIndegree());
+			blackhole.consume(inspectedGraph.getMaximalOutdegree());
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import se.liu.ida.nlp.sdp.toolkit.graph.Edge;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+import se.liu.ida.nlp.sdp.toolkit.graph.Node;
+import se.liu.ida.nlp.sdp.toolkit.tools.Generator;
+
+/**
+ * Corpora used by the benchmarks. A corpus is either read from a file or
+ * generated from a fixed seed, so that every run of a benchmark sees the same
+ * graphs.
+ *
+ * @author Marco Kuhlmann
+ */
+public final class BenchmarkCorpus {
+
+	/**
+	 * The number of graphs in a generated corpus.
+	 */
+	public static final int N_GRAPHS = 1000;
+
+	/**
+	 * The seed used to generate corpora.
+	 */
+	private static final long SEED = 42;
+
+	private BenchmarkCorpus() {
+	}
+
+	/**
+	 * Returns the graphs of a benchmark corpus. The corpus is specified by a
+	 * single string, so that benchmarks on a real corpus are not crossed
+	 * with the variants of the synthetic corpora: either
+	 * {@code REPRESENTATION-LENGTH-DENSITY}, for example
+	 * {@code DM-short-sparse}, for a generated corpus (see
+	 * {@link #generate(String, String, String)}), or the name of a file in
+	 * the SDP 2015 format.
+	 *
+	 * @param corpus the specification of a generated corpus, or the name of
+	 * a file in the SDP 2015 format
+	 * @return the graphs of the corpus
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static List<Graph> getGraphs(String corpus) throws IOException {
+		String[] parts = corpus.split("-");
+		if (parts.length == 3 && parts[0].matches("DM|PAS|PSD") && parts[1].matches("short|long") && parts[2].matches("sparse|dense")) {
+			return generate(parts[1], parts[2], parts[0]);
+		} else {
+			return read(corpus);
+		}
+	}
+
+	/**
+	 * Reads all graphs from the specified file.
+	 *
+	 * @param fileName the name of a file in the SDP 2015 format
+	 * @return the graphs in the specified file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static List<Graph> read(String fileName) throws IOException {
+		List<Graph> graphs = new ArrayList<Graph>();
+		GraphReader reader = new GraphReader2015(fileName);
+		Graph graph;
+		while ((graph = reader.readGraph()) != null) {
+			graphs.add(graph);
+		}
+		reader.close();
+		return graphs;
+	}
+
+	/**
+	 * Generates a synthetic corpus using {@link Generator}.
+	 *
+	 * @param length the sentence length, either {@code short} or {@code long}
+	 * @param density the edge density, either {@code sparse} or {@code dense}
+	 * @param representation the label set, one of {@code DM}, {@code PAS} or
+	 * {@code PSD}
+	 * @return the graphs of the generated corpus
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static List<Graph> generate(String length, String density, String representation) throws IOException {
+		Generator generator = new Generator(SEED);
+		if (length.equals("long")) {
+			generator.setLengths(40, 60, 80);
+		} else {
+			generator.setLengths(5, 10, 15);
+		}
+		generator.setDensity(density.equals("dense") ? 2.5 : 1.0);
+		generator.setLabels(Generator.getLabels(representation));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		generator.generate(N_GRAPHS, out);
+		List<Graph> graphs = new ArrayList<Graph>(N_GRAPHS);
+		GraphReader reader = new GraphReader2015(new InputStreamReader(new ByteArrayInputStream(out.toByteArray())));
+		Graph graph;
+		while ((graph = reader.readGraph()) != null) {
+			graphs.add(graph);
+		}
+		reader.close();
+		return graphs;
+	}
+
+	/**
+	 * Returns a copy of the specified graphs in which a fraction of the edges
+	 * has been dropped or relabeled, simulating the output of a parser.
+	 *
+	 * @param graphs the graphs to perturb
+	 * @param rate the fraction of edges to perturb
+	 * @return the perturbed graphs
+	 */
+	public static List<Graph> perturb(List<Graph> graphs, double rate) {
+		Random random = new Random(SEED + 1);
+		List<Graph> perturbed = new ArrayList<Graph>(graphs.size());
+		for (Graph graph : graphs) {
+			List<String> labels = new ArrayList<String>();
+			for (Edge edge : graph.getEdges()) {
+				labels.add(edge.label);
+			}
+			Graph copy = new Graph(graph.id);
+			for (Node node : graph.getNodes()) {
+				copy.addNode(node.getForm(), node.getLemma(), node.getPos(), node.isTop, node.isPred, node.getSense());
+			}
+			for (Edge edge : graph.getEdges()) {
+				double r = random.nextDouble();
+				if (r >= rate) {
+					copy.addEdge(edge.source, edge.target, edge.label);
+				} else if (r >= rate / 2) {
+					copy.addEdge(edge.source, edge.target, labels.get(random.nextInt(labels.size())));
+				}
+			}
+			perturbed.add(copy);
+		}
+		return perturbed;
+	}
+
+	/**
+	 * Returns the specified graphs in the SDP 2015 format.
+	 *
+	 * @param graphs the graphs to format
+	 * @return the formatted graphs
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static String toText(List<Graph> graphs) throws IOException {
+		StringWriter stringWriter = new StringWriter();
+		GraphWriter writer = new GraphWriter2015(new PrintWriter(stringWriter));
+		for (Graph graph : graphs) {
+			writer.writeGraph(graph);
+		}
+		writer.close();
+		return stringWriter.toString();
+	}
+}
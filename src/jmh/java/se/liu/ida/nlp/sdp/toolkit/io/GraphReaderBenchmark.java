@@ -0,0 +1,60 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * Benchmark for reading graphs in the SDP 2015 format. The input is held in
+ * memory, so this measures parsing rather than disk I/O.
+ *
+ * @author Marco Kuhlmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GraphReaderBenchmark {
+
+	@Param({"DM-short-sparse", "DM-short-dense", "DM-long-sparse", "DM-long-dense", "PAS-short-sparse", "PAS-short-dense", "PAS-long-sparse", "PAS-long-dense", "PSD-short-sparse", "PSD-short-dense", "PSD-long-sparse", "PSD-long-dense"})
+	public String corpus;
+
+	private String text;
+
+	@Setup
+	public void setup() throws IOException {
+		text = BenchmarkCorpus.toText(BenchmarkCorpus.getGraphs(corpus));
+	}
+
+	@Benchmark
+	public void readCorpus(Blackhole blackhole) throws IOException {
+		GraphReader reader = new GraphReader2015(new StringReader(text));
+		Graph graph;
+		while ((graph = reader.readGraph()) != null) {
+			blackhole.consume(graph);
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void readCorpusIntoBuffer(Blackhole blackhole) throws IOException {
+		GraphReader reader = new GraphReader2015(new StringReader(text));
+		GraphBuffer buffer = new GraphBuffer();
+		while (reader.readGraph(buffer)) {
+			blackhole.consume(buffer.getNEdges());
+		}
+		reader.close();
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * Benchmark for writing graphs in the SDP 2015 format. The output is
+ * discarded, so this measures formatting rather than disk I/O.
+ *
+ * @author Marco Kuhlmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GraphWriterBenchmark {
+
+	@Param({"DM-short-sparse", "DM-short-dense", "DM-long-sparse", "DM-long-dense", "PAS-short-sparse", "PAS-short-dense", "PAS-long-sparse", "PAS-long-dense", "PSD-short-sparse", "PSD-short-dense", "PSD-long-sparse", "PSD-long-dense"})
+	public String corpus;
+
+	private List<Graph> graphs;
+
+	@Setup
+	public void setup() throws IOException {
+		graphs = BenchmarkCorpus.getGraphs(corpus);
+	}
+
+	@Benchmark
+	public void writeCorpus(Blackhole blackhole) throws IOException {
+		GraphWriter writer = new GraphWriter2015(new PrintWriter(new BlackholeWriter(blackhole)));
+		for (Graph graph : graphs) {
+			writer.writeGraph(graph);
+		}
+		writer.close();
+	}
+
+	/**
+	 * A writer that feeds everything it receives into a blackhole.
+	 */
+	private static class BlackholeWriter extends Writer {
+
+		private final Blackhole blackhole;
+
+		public BlackholeWriter(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			blackhole.consume(cbuf);
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			blackhole.consume(str);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
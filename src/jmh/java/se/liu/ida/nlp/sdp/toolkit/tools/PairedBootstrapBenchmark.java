@@ -0,0 +1,52 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+import se.liu.ida.nlp.sdp.toolkit.io.BenchmarkCorpus;
+
+/**
+ * Benchmark for a single bootstrap sample of {@link PairedBootstrap}, which
+ * is repeated {@code B} times in a full significance test.
+ *
+ * @author Marco Kuhlmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PairedBootstrapBenchmark {
+
+	@Param({"DM-short-sparse", "DM-short-dense", "DM-long-sparse", "DM-long-dense"})
+	public String corpus;
+
+	private List<PairedBootstrap.Item> items;
+
+	@Setup
+	public void setup() throws IOException {
+		List<Graph> goldStandard = BenchmarkCorpus.getGraphs(corpus);
+		List<Graph> baseline = BenchmarkCorpus.perturb(goldStandard, 0.3);
+		List<Graph> system = BenchmarkCorpus.perturb(goldStandard, 0.2);
+		items = new ArrayList<PairedBootstrap.Item>(goldStandard.size());
+		for (int i = 0; i < goldStandard.size(); i++) {
+			items.add(new PairedBootstrap.Item(goldStandard.get(i), baseline.get(i), system.get(i)));
+		}
+	}
+
+	@Benchmark
+	public double sampleDelta() {
+		return PairedBootstrap.getDelta(PairedBootstrap.getSample(items));
+	}
+}
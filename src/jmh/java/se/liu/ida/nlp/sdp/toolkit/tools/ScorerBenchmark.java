@@ -0,0 +1,56 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+import se.liu.ida.nlp.sdp.toolkit.io.BenchmarkCorpus;
+
+/**
+ * Benchmark for {@link Scorer#update}, followed by the computation of the
+ * main scores.
+ *
+ * @author Marco Kuhlmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScorerBenchmark {
+
+	@Param({"DM-short-sparse", "DM-short-dense", "DM-long-sparse", "DM-long-dense", "PAS-short-sparse", "PAS-short-dense", "PAS-long-sparse", "PAS-long-dense", "PSD-short-sparse", "PSD-short-dense", "PSD-long-sparse", "PSD-long-dense"})
+	public String corpus;
+
+	private List<Graph> goldStandard;
+
+	private List<Graph> systemOutput;
+
+	@Setup
+	public void setup() throws IOException {
+		goldStandard = BenchmarkCorpus.getGraphs(corpus);
+		systemOutput = BenchmarkCorpus.perturb(goldStandard, 0.2);
+	}
+
+	@Benchmark
+	public void scoreCorpus(Blackhole blackhole) {
+		Scorer scorer = new Scorer();
+		for (int i = 0; i < goldStandard.size(); i++) {
+			scorer.update(goldStandard.get(i), systemOutput.get(i));
+		}
+		blackhole.consume(scorer.getF1());
+		blackhole.consume(scorer.getExactMatch());
+		blackhole.consume(scorer.getSemanticFramesF1());
+		blackhole.consume(scorer.getCorePredicationsF1());
+	}
+}
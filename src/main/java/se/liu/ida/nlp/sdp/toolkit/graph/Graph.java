@@ -56,6 +56,19 @@ public class Graph {
 		return node;
 	}
 
+	/**
+	 * Adds the specified node to this graph. The ID of the node must equal
+	 * the number of nodes already in this graph.
+	 *
+	 * @param node the node to be added
+	 * @return the newly added node
+	 */
+	public Node addNode(Node node) {
+		assert node.id == nodes.size();
+		nodes.add(node);
+		return node;
+	}
+
 	/**
 	 * Adds a new edge to this graph.
 	 *
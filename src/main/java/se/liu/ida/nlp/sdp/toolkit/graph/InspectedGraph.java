@@ -4,7 +4,10 @@
 package se.liu.ida.nlp.sdp.toolkit.graph;
 
 /**
- * Inspect graph-theoretic properties.
+ * Inspect graph-theoretic properties. Properties are computed when they are
+ * first requested and then memoized, so that repeated queries (including the
+ * queries that derived properties such as {@link #isTree()} make internally)
+ * are cheap.
  *
  * @author Marco Kuhlmann
  */
@@ -21,24 +24,34 @@ public class InspectedGraph {
 	private final int nNonWallNodes;
 
 	/**
-	 * DFS of the graph.
+	 * DFS of the graph, or {@code null} if not computed yet.
 	 */
-	private final DFS directedDFS;
+	private DFS directedDFS;
 
 	/**
-	 * DFS of the undirected graph.
+	 * DFS of the undirected graph, or {@code null} if not computed yet.
 	 */
-	private final DFS undirectedDFS;
+	private DFS undirectedDFS;
 
 	/**
-	 * Flags indicating whether a node is a singleton.
+	 * Flags indicating whether a node is a singleton, or {@code null} if not
+	 * computed yet.
 	 */
-	private final boolean[] isSingleton;
+	private boolean[] isSingleton;
 
 	/**
-	 * The number of singleton nodes in this graph.
+	 * The memoized scalar properties; -1 if not computed yet. Boolean
+	 * properties are stored as 0 or 1.
 	 */
-	private final int nSingletons;
+	private int nComponents = -1;
+	private int isCyclic = -1;
+	private int nSingletons = -1;
+	private int maximalIndegree = -1;
+	private int maximalOutdegree = -1;
+	private int nRootNodes = -1;
+	private int nLeafNodes = -1;
+	private int isNoncrossing = -1;
+	private int isProjective = -1;
 
 	/**
 	 * Construct a new inspector for the specified graph.
@@ -47,14 +60,16 @@ public class InspectedGraph {
 	 */
 	public InspectedGraph(Graph graph) {
 		this.graph = graph;
+		this.nNonWallNodes = graph.getNNodes() - 1;
+	}
 
-		int nNodes = graph.getNNodes();
-		this.nNonWallNodes = nNodes - 1;
-		this.isSingleton = new boolean[nNodes];
-		this.nSingletons = computeSingletons();
-
-		this.directedDFS = new DFS(graph);
-		this.undirectedDFS = new DFS(graph, true);
+	/**
+	 * Returns the inspected graph.
+	 *
+	 * @return the inspected graph
+	 */
+	public Graph getGraph() {
+		return graph;
 	}
 
 	/**
@@ -72,7 +87,13 @@ public class InspectedGraph {
 	 * @return The number of weakly connected components of the inspected graph
 	 */
 	public int getNComponents() {
-		return undirectedDFS.getNRuns();
+		if (nComponents < 0) {
+			if (undirectedDFS == null) {
+				undirectedDFS = new DFS(graph, true);
+			}
+			nComponents = undirectedDFS.getNRuns();
+		}
+		return nComponents;
 	}
 
 	/**
@@ -81,13 +102,20 @@ public class InspectedGraph {
 	 * @return {@code true} if and only if the inspected graph contains a cycle
 	 */
 	public boolean isCyclic() {
-		return directedDFS.isCyclic();
+		if (isCyclic < 0) {
+			if (directedDFS == null) {
+				directedDFS = new DFS(graph);
+			}
+			isCyclic = directedDFS.isCyclic() ? 1 : 0;
+		}
+		return isCyclic == 1;
 	}
 
 	/**
 	 * Computes flags indicating whether a node is a singleton.
 	 */
 	private int computeSingletons() {
+		isSingleton = new boolean[graph.getNNodes()];
 		int n = 0;
 		for (Node node : graph.getNodes()) {
 			if (node.id != 0 && !node.hasIncomingEdges() && !node.hasOutgoingEdges() && !node.isTop) {
@@ -105,6 +133,9 @@ public class InspectedGraph {
 	 * @return {@code true} if the specified node is a singleton
 	 */
 	public boolean isSingleton(int id) {
+		if (isSingleton == null) {
+			nSingletons = computeSingletons();
+		}
 		return isSingleton[id];
 	}
 
@@ -115,6 +146,9 @@ public class InspectedGraph {
 	 * @return the number of singleton nodes of this graph
 	 */
 	public int getNSingletons() {
+		if (nSingletons < 0) {
+			nSingletons = computeSingletons();
+		}
 		return nSingletons;
 	}
 
@@ -124,11 +158,14 @@ public class InspectedGraph {
 	 * @return the maximal indegree of the nodes in the inspected graph
 	 */
 	public int getMaximalIndegree() {
-		int max = 0;
-		for (Node node : graph.getNodes()) {
-			max = Math.max(max, node.getNIncomingEdges());
+		if (maximalIndegree < 0) {
+			int max = 0;
+			for (Node node : graph.getNodes()) {
+				max = Math.max(max, node.getNIncomingEdges());
+			}
+			maximalIndegree = max;
 		}
-		return max;
+		return maximalIndegree;
 	}
 
 	/**
@@ -137,11 +174,14 @@ public class InspectedGraph {
 	 * @return the maximal outdegree of the nodes in the inspected graph
 	 */
 	public int getMaximalOutdegree() {
-		int max = 0;
-		for (Node node : graph.getNodes()) {
-			max = Math.max(max, node.getNOutgoingEdges());
+		if (maximalOutdegree < 0) {
+			int max = 0;
+			for (Node node : graph.getNodes()) {
+				max = Math.max(max, node.getNOutgoingEdges());
+			}
+			maximalOutdegree = max;
 		}
-		return max;
+		return maximalOutdegree;
 	}
 
 	/**
@@ -152,11 +192,14 @@ public class InspectedGraph {
 	 * @return the number of root nodes in the inspected graph
 	 */
 	public int getNRootNodes() {
-		int nRootNodes = 0;
-		for (Node node : graph.getNodes()) {
-			nRootNodes += node.hasIncomingEdges() ? 0 : 1;
+		if (nRootNodes < 0) {
+			int n = 0;
+			for (Node node : graph.getNodes()) {
+				n += node.hasIncomingEdges() ? 0 : 1;
+			}
+			nRootNodes = n - 1; // the wall node
 		}
-		return nRootNodes - 1; // the wall node
+		return nRootNodes;
 	}
 
 	/**
@@ -167,11 +210,14 @@ public class InspectedGraph {
 	 * @return the number of leaf nodes in the inspected graph
 	 */
 	public int getNLeafNodes() {
-		int nLeafNodes = 0;
-		for (Node node : graph.getNodes()) {
-			nLeafNodes += node.hasOutgoingEdges() ? 0 : 1;
+		if (nLeafNodes < 0) {
+			int n = 0;
+			for (Node node : graph.getNodes()) {
+				n += node.hasOutgoingEdges() ? 0 : 1;
+			}
+			nLeafNodes = n - 1; // the wall node
 		}
-		return nLeafNodes - 1; // the wall node
+		return nLeafNodes;
 	}
 
 	/**
@@ -201,6 +247,13 @@ public class InspectedGraph {
 	 * @return {@code true} if and only if the inspected graph is noncrossing
 	 */
 	public boolean isNoncrossing() {
+		if (isNoncrossing < 0) {
+			isNoncrossing = computeNoncrossing() ? 1 : 0;
+		}
+		return isNoncrossing == 1;
+	}
+
+	private boolean computeNoncrossing() {
 		for (Edge edge1 : graph.getEdges()) {
 			int min1 = Math.min(edge1.source, edge1.target);
 			int max1 = Math.max(edge1.source, edge1.target);
@@ -237,6 +290,13 @@ public class InspectedGraph {
 	 * @return {@code true} if and only if the inspected graph is projective
 	 */
 	public boolean isProjective() {
+		if (isProjective < 0) {
+			isProjective = computeProjective() ? 1 : 0;
+		}
+		return isProjective == 1;
+	}
+
+	private boolean computeProjective() {
 		if (!isNoncrossing()) {
 			return false;
 		} else {
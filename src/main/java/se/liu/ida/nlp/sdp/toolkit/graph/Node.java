@@ -26,15 +26,18 @@ public class Node {
 	 */
 	public final List<Edge> outgoingEdges;
 	/**
-	 * The word form associated with this node.
+	 * The word form associated with this node. Nodes that decode their
+	 * columns lazily leave this field {@code null}; use {@link #getForm()}
+	 * for nodes that may have been read lazily.
 	 */
 	public final String form;
 	/**
-	 * The lemma associated with this node.
+	 * The lemma associated with this node. See {@link #getLemma()}.
 	 */
 	public final String lemma;
 	/**
-	 * The part-of-speech tag associated with this node.
+	 * The part-of-speech tag associated with this node. See
+	 * {@link #getPos()}.
 	 */
 	public final String pos;
 	/**
@@ -46,7 +49,7 @@ public class Node {
 	 */
 	public final boolean isPred;
 	/**
-	 * The sense or frame of this predicate.
+	 * The sense or frame of this predicate. See {@link #getSense()}.
 	 */
 	public final String sense;
 
@@ -73,6 +76,46 @@ public class Node {
 		this.sense = sense;
 	}
 
+	/**
+	 * Returns the word form associated with this node.
+	 *
+	 * @return the word form associated with this node, or {@code null} if
+	 * the form was not read
+	 */
+	public String getForm() {
+		return form;
+	}
+
+	/**
+	 * Returns the lemma associated with this node.
+	 *
+	 * @return the lemma associated with this node, or {@code null} if the
+	 * lemma was not read
+	 */
+	public String getLemma() {
+		return lemma;
+	}
+
+	/**
+	 * Returns the part-of-speech tag associated with this node.
+	 *
+	 * @return the part-of-speech tag associated with this node, or
+	 * {@code null} if the tag was not read
+	 */
+	public String getPos() {
+		return pos;
+	}
+
+	/**
+	 * Returns the sense or frame of this predicate.
+	 *
+	 * @return the sense or frame of this predicate, or {@code null} if the
+	 * sense was not read
+	 */
+	public String getSense() {
+		return sense;
+	}
+
 	/**
 	 * Adds the specified edge as an incoming edge of this node.
 	 *
@@ -0,0 +1,272 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * The implementation shared by the graph readers for the SDP text formats.
+ * Parsing is delegated to a {@link GraphParser} for the format at hand.
+ *
+ * @author Marco Kuhlmann
+ */
+abstract class AbstractGraphReader extends ParagraphReader implements GraphReader {
+
+	/**
+	 * The parser for the format read.
+	 */
+	private final GraphParser parser;
+
+	/**
+	 * The file read from, or {@code null} if this reader was created from a
+	 * Reader object.
+	 */
+	private final File file;
+
+	/**
+	 * A flag indicating whether any graphs have been read.
+	 */
+	private boolean hasReadGraphs;
+
+	/**
+	 * The list that holds the lines of the graph being read; it is reused
+	 * for all graphs.
+	 */
+	private final List<String> paragraph = new ArrayList<String>();
+
+	/**
+	 * The validator used to check each graph before it is parsed, or
+	 * {@code null} if graphs are not validated.
+	 */
+	private GraphValidator validator;
+
+	/**
+	 * The list that holds the violations found in the graph being read.
+	 */
+	private final List<GraphValidator.Violation> violations = new ArrayList<GraphValidator.Violation>();
+
+	/**
+	 * The time spent reading the lines of a graph, excluding parsing.
+	 */
+	private static final Metrics.Timer READ_TIME = Metrics.timer("reader.readTime");
+
+	/**
+	 * Create a graph reader for the specified format, using the default
+	 * input-buffer size.
+	 *
+	 * @param reader a Reader object to provide the underlying stream
+	 * @param format the format to read
+	 * @param readFirstLine flag indicating whether the stream starts with the
+	 * format identifier line
+	 */
+	AbstractGraphReader(Reader reader, GraphFormat format, boolean readFirstLine) {
+		super(reader);
+		this.parser = new GraphParser(format);
+		this.file = null;
+		if (readFirstLine) {
+			readFirstLine();
+		}
+	}
+
+	/**
+	 * Create a graph reader for the specified format that reads from the
+	 * specified file. The file will be read using the default input-buffer
+	 * size.
+	 *
+	 * @param file the file to read from
+	 * @param format the format to read
+	 * @throws FileNotFoundException if the specified file does not exist, is a
+	 * directory rather than a regular file, or for some other reason cannot be
+	 * opened for reading
+	 */
+	AbstractGraphReader(File file, GraphFormat format) throws FileNotFoundException {
+		super(file);
+		this.parser = new GraphParser(format);
+		this.file = file;
+		readFirstLine();
+	}
+
+	/**
+	 * Reads the format identifier line, if the format has one.
+	 */
+	private void readFirstLine() {
+		if (parser.getFormat().getFirstLine() != null) {
+			try {
+				String line = super.readLine();
+				assert parser.getFormat().getFirstLine().equals(line);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the format read by this reader.
+	 *
+	 * @return the format read by this reader
+	 */
+	public GraphFormat getFormat() {
+		return parser.getFormat();
+	}
+
+	/**
+	 * Returns the projection specifying which columns this reader decodes.
+	 *
+	 * @return the projection used by this reader
+	 */
+	public Projection getProjection() {
+		return parser.getProjection();
+	}
+
+	/**
+	 * Sets the projection specifying which columns this reader decodes, and
+	 * when. The default is {@link Projection#ALL}.
+	 *
+	 * @param projection the projection to use
+	 */
+	public void setProjection(Projection projection) {
+		parser.setProjection(projection);
+	}
+
+	/**
+	 * Tests whether this reader validates each graph before parsing it.
+	 *
+	 * @return {@code true} if this reader validates each graph
+	 */
+	public boolean isValidating() {
+		return validator != null;
+	}
+
+	/**
+	 * Sets whether this reader validates each graph before parsing it (see
+	 * {@link GraphValidator}). A validating reader throws an exception that
+	 * reports all violations in the first malformed graph, with their line
+	 * numbers. The default is not to validate.
+	 *
+	 * @param isValidating flag indicating whether this reader validates each
+	 * graph
+	 */
+	public void setValidating(boolean isValidating) {
+		validator = isValidating ? new GraphValidator(getFormat()) : null;
+	}
+
+	/**
+	 * Validates the lines of the graph just read, if this reader is
+	 * validating.
+	 *
+	 * @param lineNumber the line number of the first line of the graph
+	 * @throws IOException if the graph is malformed
+	 */
+	private void validate(long lineNumber) throws IOException {
+		if (validator != null && validator.validate(paragraph, lineNumber, violations) > 0) {
+			Collections.sort(violations);
+			StringBuilder sb = new StringBuilder();
+			for (GraphValidator.Violation violation : violations) {
+				if (sb.length() > 0) {
+					sb.append('\n');
+				}
+				if (file != null) {
+					sb.append(file).append(':');
+				}
+				sb.append(violation);
+			}
+			violations.clear();
+			throw new IOException(sb.toString());
+		}
+	}
+
+	/**
+	 * Reads a single graph.
+	 *
+	 * @return the graph read, or {@code null} if the end of the stream has been
+	 * reached
+	 * @throws IOException if an I/O error occurs, or if this reader is
+	 * validating and the graph is malformed
+	 */
+	@Override
+	public Graph readGraph() throws IOException {
+		long start = READ_TIME.start();
+		long lineNumber = getLineNumber() + 1;
+		boolean hasRead = super.readParagraph(paragraph);
+		READ_TIME.stop(start);
+		hasReadGraphs = true;
+		if (hasRead) {
+			validate(lineNumber);
+		}
+		return hasRead ? parser.parse(paragraph) : null;
+	}
+
+	/**
+	 * Reads a single graph into the specified buffer.
+	 *
+	 * @param buffer the buffer to fill
+	 * @return {@code false} if the end of the stream has been reached
+	 * @throws IOException if an I/O error occurs, or if this reader is
+	 * validating and the graph is malformed
+	 */
+	@Override
+	public boolean readGraph(GraphBuffer buffer) throws IOException {
+		long start = READ_TIME.start();
+		long lineNumber = getLineNumber() + 1;
+		boolean hasRead = super.readParagraph(paragraph);
+		READ_TIME.stop(start);
+		hasReadGraphs = true;
+		if (hasRead) {
+			validate(lineNumber);
+			parser.parse(paragraph, buffer);
+		}
+		return hasRead;
+	}
+
+	/**
+	 * Returns a stream of the graphs that remain to be read. If this reader
+	 * was created from an uncompressed or block-compressed file and no graphs
+	 * have been read yet, the stream reads the file independently of this
+	 * reader, and a parallel stream splits the file on paragraph or block
+	 * boundaries. Otherwise, and always for a validating reader, the graphs
+	 * are read from this reader. Closing the stream closes this reader.
+	 *
+	 * @return a stream of the graphs that remain to be read
+	 */
+	@Override
+	public Stream<Graph> stream() {
+		if (file != null && !hasReadGraphs && validator == null) {
+			try {
+				Stream<Graph> stream;
+				switch (Compression.detectFormat(file)) {
+					case NONE:
+						stream = GraphFileSpliterator.stream(file, getFormat(), getProjection());
+						break;
+					case BLOCK_GZIP:
+						BlockGzipFile blockGzipFile = new BlockGzipFile(file, getFormat());
+						blockGzipFile.setProjection(getProjection());
+						stream = blockGzipFile.stream();
+						break;
+					default:
+						return GraphReader.super.stream();
+				}
+				return stream.onClose(() -> {
+					try {
+						close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else {
+			return GraphReader.super.stream();
+		}
+	}
+}
@@ -0,0 +1,326 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * Write semantic dependency graphs in the SDP 2015 format on a background
+ * thread. Graphs are handed over to the background thread through a bounded
+ * queue; when the queue is full, {@link #writeGraph(Graph)} blocks until the
+ * background thread has caught up. The background thread formats graphs into
+ * reusable buffers and writes them to a file channel, compressing them if
+ * the file name calls for it (see {@link Compression#create(File)}).
+ * Formatted graphs are written out when enough of them have accumulated, or
+ * when no further graph has been queued for a short time. A graph must not
+ * be modified after it has been passed to this writer.
+ *
+ * @author Marco Kuhlmann
+ */
+public class AsyncGraphWriter implements GraphWriter {
+
+	/**
+	 * The default number of graphs that can be queued.
+	 */
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The number of characters after which formatted graphs are written out.
+	 */
+	private static final int FLUSH_THRESHOLD = 1 << 16;
+
+	/**
+	 * The time (in milliseconds) for which the queue must stay empty before
+	 * formatted graphs are written out below the threshold.
+	 */
+	private static final long FLUSH_DELAY = 10;
+
+	/**
+	 * Marker that tells the background thread to stop.
+	 */
+	private static final Graph END = new Graph("");
+
+	/**
+	 * The channel written to.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The compressing stream written to, or {@code null} if the output is
+	 * not compressed and written to the channel directly.
+	 */
+	private final OutputStream out;
+
+	/**
+	 * The queue of graphs that remain to be written.
+	 */
+	private final BlockingQueue<Graph> queue;
+
+	/**
+	 * The background thread.
+	 */
+	private final Thread thread;
+
+	/**
+	 * The exception that occurred on the background thread, if any.
+	 */
+	private volatile IOException failure;
+
+	/**
+	 * A flag indicating whether this writer has been closed.
+	 */
+	private boolean isClosed;
+
+	/**
+	 * Create a graph writer that writes to the specified file.
+	 *
+	 * @param file the file to write to
+	 * @throws IOException if the specified file cannot be opened for writing
+	 */
+	public AsyncGraphWriter(File file) throws IOException {
+		this(file, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a graph writer that writes to the specified file.
+	 *
+	 * @param file the file to write to
+	 * @param capacity the number of graphs that can be queued before
+	 * {@link #writeGraph(Graph)} blocks
+	 * @throws IOException if the specified file cannot be opened for writing
+	 */
+	public AsyncGraphWriter(File file, int capacity) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		Compression.Format format = Compression.getFormatForName(file.getName());
+		if (format == Compression.Format.NONE) {
+			this.out = null;
+		} else {
+			try {
+				this.out = Compression.compress(new ChannelOutputStream(channel), format);
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+		}
+		this.queue = new ArrayBlockingQueue<Graph>(capacity);
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeQueuedGraphs();
+			}
+		}, "AsyncGraphWriter-" + file.getName());
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Create a graph writer that writes to the specified file.
+	 *
+	 * @param fileName the name of the file to write to
+	 * @throws IOException if the specified file cannot be opened for writing
+	 */
+	public AsyncGraphWriter(String fileName) throws IOException {
+		this(new File(fileName));
+	}
+
+	/**
+	 * Queues a single graph for writing. This blocks if the queue is full.
+	 *
+	 * @param graph the graph to be written
+	 * @throws IOException if an I/O error occurred on the background thread,
+	 * or if the calling thread is interrupted while waiting
+	 */
+	@Override
+	public void writeGraph(Graph graph) throws IOException {
+		if (isClosed) {
+			throw new IOException("Writer closed");
+		}
+		checkFailure();
+		try {
+			queue.put(graph);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Waits until all queued graphs have been written, forces them to the
+	 * storage device, and closes the file.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if (isClosed) {
+			return;
+		}
+		isClosed = true;
+		try {
+			queue.put(END);
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			channel.close();
+			throw new InterruptedIOException();
+		}
+		try {
+			checkFailure();
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("Asynchronous write failed", failure);
+		}
+	}
+
+	/**
+	 * Takes graphs from the queue and writes them, until the end marker is
+	 * taken. Runs on the background thread.
+	 */
+	private void writeQueuedGraphs() {
+		String lineSeparator = System.lineSeparator();
+		// Like an OutputStreamWriter, replace characters that the default
+		// charset cannot represent rather than fail.
+		CharsetEncoder encoder = Charset.defaultCharset().newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		StringBuilder chars = new StringBuilder(2 * FLUSH_THRESHOLD);
+		ByteBuffer bytes = ByteBuffer.allocate(2 * FLUSH_THRESHOLD);
+		List<Graph> batch = new ArrayList<Graph>();
+		chars.append("#SDP 2015").append(lineSeparator);
+		boolean done = false;
+		while (!done) {
+			try {
+				Graph graph = queue.poll(FLUSH_DELAY, TimeUnit.MILLISECONDS);
+				if (graph == null) {
+					// The producer has paused; write out what we have.
+					if (failure == null) {
+						flush(chars, encoder, bytes);
+					}
+					graph = queue.take();
+				}
+				batch.add(graph);
+			} catch (InterruptedException e) {
+				failure = new InterruptedIOException();
+				return;
+			}
+			queue.drainTo(batch);
+			for (Graph graph : batch) {
+				if (graph == END) {
+					done = true;
+					break;
+				}
+				// After a failure, keep taking graphs so that the caller does
+				// not block, but discard them.
+				if (failure == null) {
+					try {
+						GraphWriter2015.appendGraph(graph, chars, lineSeparator);
+					} catch (RuntimeException e) {
+						failure = new IOException("Cannot format graph " + graph.id, e);
+					}
+					if (chars.length() >= FLUSH_THRESHOLD) {
+						flush(chars, encoder, bytes);
+					}
+				}
+			}
+			batch.clear();
+		}
+		if (failure == null) {
+			flush(chars, encoder, bytes);
+		}
+		if (out != null && failure == null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+	}
+
+	/**
+	 * Encodes the specified characters and writes them to the channel. If an
+	 * I/O error occurs, it is recorded and reported to the caller of the next
+	 * write.
+	 *
+	 * @param chars the characters to be written; cleared on return
+	 * @param encoder the encoder to use
+	 * @param bytes a buffer for the encoded characters
+	 */
+	private void flush(StringBuilder chars, CharsetEncoder encoder, ByteBuffer bytes) {
+		if (chars.length() == 0) {
+			return;
+		}
+		try {
+			CharBuffer in = CharBuffer.wrap(chars);
+			encoder.reset();
+			while (true) {
+				bytes.clear();
+				CoderResult result = encoder.encode(in, bytes, true);
+				if (result.isUnderflow()) {
+					result = encoder.flush(bytes);
+				}
+				if (result.isError()) {
+					result.throwException();
+				}
+				bytes.flip();
+				if (out != null) {
+					out.write(bytes.array(), 0, bytes.limit());
+				} else {
+					while (bytes.hasRemaining()) {
+						channel.write(bytes);
+					}
+				}
+				if (!result.isOverflow()) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+		}
+		chars.setLength(0);
+	}
+
+	/**
+	 * A stream that writes to a channel, and leaves the channel open when it
+	 * is closed, so that the channel can still be forced.
+	 */
+	private static class ChannelOutputStream extends FilterOutputStream {
+
+		public ChannelOutputStream(FileChannel channel) {
+			super(Channels.newOutputStream(channel));
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
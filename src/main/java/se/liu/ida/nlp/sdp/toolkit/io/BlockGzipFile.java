@@ -0,0 +1,231 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * Random access to a block-compressed file written by
+ * {@link BlockGzipOutputStream}. The blocks are located from their headers
+ * when the file is opened; each block can then be decompressed independently,
+ * which allows blocks to be decompressed and parsed in parallel.
+ *
+ * @author Marco Kuhlmann
+ */
+public class BlockGzipFile {
+
+	/**
+	 * The file read from.
+	 */
+	private final File file;
+
+	/**
+	 * The format of the graphs in the file.
+	 */
+	private final GraphFormat format;
+
+	/**
+	 * The projection used when reading graphs.
+	 */
+	private Projection projection;
+
+	/**
+	 * The offsets of the blocks in the file. The last entry is the size of
+	 * the file.
+	 */
+	private final long[] offsets;
+
+	/**
+	 * Open the specified block-compressed file and locate its blocks. The
+	 * format of the graphs is detected from the first line of the data.
+	 *
+	 * @param file the file to read from
+	 * @throws IOException if an I/O error occurs, or if the specified file is
+	 * not block-compressed
+	 */
+	public BlockGzipFile(File file) throws IOException {
+		this(file, GraphFormat.detect(file));
+	}
+
+	/**
+	 * Open the specified block-compressed file and locate its blocks.
+	 *
+	 * @param file the file to read from
+	 * @param format the format of the graphs in the file
+	 * @throws IOException if an I/O error occurs, or if the specified file is
+	 * not block-compressed
+	 */
+	public BlockGzipFile(File file, GraphFormat format) throws IOException {
+		this.file = file;
+		this.format = format;
+		this.projection = Projection.ALL;
+		long[] offsets = new long[1024];
+		int nBlocks = 0;
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			long position = 0;
+			byte[] header = new byte[BlockGzipOutputStream.HEADER_LENGTH];
+			while (position < size) {
+				int n = readFully(channel, position, header);
+				if (!BlockGzipOutputStream.isBlockHeader(header, n)) {
+					throw new IOException(String.format("Not a block header at offset %d in %s", position, file));
+				}
+				if (nBlocks + 1 == offsets.length) {
+					offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+				}
+				offsets[nBlocks++] = position;
+				position += BlockGzipOutputStream.getBlockSize(header);
+			}
+			offsets[nBlocks] = position;
+		} finally {
+			channel.close();
+		}
+		this.offsets = Arrays.copyOf(offsets, nBlocks + 1);
+	}
+
+	/**
+	 * Returns the number of blocks in the file. This includes the empty block
+	 * that marks the end of the data.
+	 *
+	 * @return the number of blocks in the file
+	 */
+	public int getNBlocks() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Returns the offset of the specified block in the file.
+	 *
+	 * @param block the number of a block, counting from zero
+	 * @return the offset of the specified block in the file
+	 */
+	public long getOffset(int block) {
+		return offsets[block];
+	}
+
+	/**
+	 * Sets the projection specifying which columns are decoded when reading
+	 * graphs. The default is {@link Projection#ALL}.
+	 *
+	 * @param projection the projection to use
+	 */
+	public void setProjection(Projection projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Decompresses the specified block.
+	 *
+	 * @param block the number of a block, counting from zero
+	 * @return the uncompressed content of the specified block
+	 * @throws IOException if an I/O error occurs, or if the block is corrupt
+	 */
+	public byte[] decompress(int block) throws IOException {
+		byte[] data = new byte[(int) (offsets[block + 1] - offsets[block])];
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if (readFully(channel, offsets[block], data) != data.length) {
+				throw new IOException(String.format("Truncated block %d in %s", block, file));
+			}
+		} finally {
+			channel.close();
+		}
+		int footer = data.length - BlockGzipOutputStream.FOOTER_LENGTH;
+		int expectedCrc = getInt(data, footer);
+		int uncompressedLength = getInt(data, footer + 4);
+		byte[] uncompressed = new byte[uncompressedLength];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(data, BlockGzipOutputStream.HEADER_LENGTH, footer - BlockGzipOutputStream.HEADER_LENGTH);
+			int n = 0;
+			while (n < uncompressedLength && !inflater.finished()) {
+				n += inflater.inflate(uncompressed, n, uncompressedLength - n);
+				if (inflater.needsInput()) {
+					break;
+				}
+			}
+			if (n != uncompressedLength) {
+				throw new IOException(String.format("Corrupt block %d in %s", block, file));
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(String.format("Corrupt block %d in %s", block, file), e);
+		} finally {
+			inflater.end();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(uncompressed);
+		if ((int) crc.getValue() != expectedCrc) {
+			throw new IOException(String.format("Checksum mismatch in block %d in %s", block, file));
+		}
+		return uncompressed;
+	}
+
+	/**
+	 * Reads the graphs in the specified block.
+	 *
+	 * @param block the number of a block, counting from zero
+	 * @return the graphs in the specified block
+	 * @throws IOException if an I/O error occurs
+	 */
+	public List<Graph> readGraphs(int block) throws IOException {
+		byte[] data = decompress(block);
+		boolean hasFirstLine = data.length >= 4 && data[0] == '#' && data[1] == 'S' && data[2] == 'D' && data[3] == 'P';
+		AbstractGraphReader reader = GraphReaders.open(new InputStreamReader(new ByteArrayInputStream(data)), format, hasFirstLine);
+		reader.setProjection(projection);
+		List<Graph> graphs = new ArrayList<Graph>();
+		Graph graph;
+		while ((graph = reader.readGraph()) != null) {
+			graphs.add(graph);
+		}
+		reader.close();
+		return graphs;
+	}
+
+	/**
+	 * Returns a stream of the graphs in the file. The stream is ordered; a
+	 * parallel stream decompresses and parses blocks in parallel.
+	 *
+	 * @return a stream of the graphs in the file
+	 */
+	public Stream<Graph> stream() {
+		return IntStream.range(0, getNBlocks()).mapToObj(block -> {
+			try {
+				return readGraphs(block);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}).flatMap(List::stream);
+	}
+
+	private static int readFully(FileChannel channel, long position, byte[] bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		return buffer.position();
+	}
+
+	private static int getInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream that writes block-compressed gzip data. The output is a
+ * sequence of independently compressed gzip members (blocks), similar to the
+ * BGZF format. Blocks are only cut at paragraph boundaries (blank lines), so
+ * that every block contains complete graphs. The header of each block records
+ * the total size of the block, which allows a reader to locate all blocks
+ * without decompressing them (see {@link BlockGzipFile}). The output can be
+ * read by any gzip decompressor.
+ *
+ * @author Marco Kuhlmann
+ */
+public class BlockGzipOutputStream extends OutputStream {
+
+	/**
+	 * The length of a block header: the fixed gzip header (10 bytes), the
+	 * length of the extra field (2 bytes), and the extra field (8 bytes).
+	 */
+	static final int HEADER_LENGTH = 20;
+
+	/**
+	 * The length of a block footer: CRC-32 and uncompressed size.
+	 */
+	static final int FOOTER_LENGTH = 8;
+
+	/**
+	 * The number of uncompressed bytes after which a block is cut at the next
+	 * paragraph boundary.
+	 */
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	/**
+	 * The underlying stream.
+	 */
+	private final OutputStream out;
+
+	/**
+	 * The compressor.
+	 */
+	private final Deflater deflater;
+
+	/**
+	 * The checksum computed for each block.
+	 */
+	private final CRC32 crc;
+
+	/**
+	 * The uncompressed bytes of the current block.
+	 */
+	private byte[] buffer;
+
+	/**
+	 * The number of bytes in the current block.
+	 */
+	private int length;
+
+	/**
+	 * The compressed bytes of the current block.
+	 */
+	private byte[] compressed;
+
+	/**
+	 * Create a block-compressing stream with the default compression level.
+	 *
+	 * @param out the underlying stream
+	 */
+	public BlockGzipOutputStream(OutputStream out) {
+		this(out, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Create a block-compressing stream with the specified compression level.
+	 *
+	 * @param out the underlying stream
+	 * @param level the compression level (0-9)
+	 */
+	public BlockGzipOutputStream(OutputStream out, int level) {
+		this.out = out;
+		this.deflater = new Deflater(level, true);
+		this.crc = new CRC32();
+		this.buffer = new byte[2 * BLOCK_SIZE];
+		this.compressed = new byte[2 * BLOCK_SIZE];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureCapacity(1);
+		buffer[length++] = (byte) b;
+		if (length >= BLOCK_SIZE) {
+			writeCompleteParagraphs();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureCapacity(len);
+		System.arraycopy(b, off, buffer, length, len);
+		length += len;
+		if (length >= BLOCK_SIZE) {
+			writeCompleteParagraphs();
+		}
+	}
+
+	/**
+	 * Flushes the underlying stream. This does not cut the current block, so
+	 * data that does not end in a complete paragraph may remain buffered.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Writes the remaining data as a final block, followed by an empty block
+	 * that marks the end of the data, and closes the underlying stream.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if (length > 0) {
+			writeBlock(length);
+		}
+		writeBlock(0);
+		deflater.end();
+		out.close();
+	}
+
+	private void ensureCapacity(int n) {
+		if (length + n > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + n));
+		}
+	}
+
+	/**
+	 * Writes the complete paragraphs in the buffer as a block. If the buffer
+	 * does not contain a paragraph boundary, nothing is written and the block
+	 * keeps growing.
+	 */
+	private void writeCompleteParagraphs() throws IOException {
+		int cut = length;
+		while (cut >= 2 && !(buffer[cut - 1] == '\n' && buffer[cut - 2] == '\n')) {
+			cut--;
+		}
+		if (cut >= 2) {
+			writeBlock(cut);
+		}
+	}
+
+	/**
+	 * Compresses and writes the first bytes of the buffer as a block, and
+	 * moves the remaining bytes to the front of the buffer.
+	 *
+	 * @param n the number of bytes to write
+	 */
+	private void writeBlock(int n) throws IOException {
+		deflater.reset();
+		deflater.setInput(buffer, 0, n);
+		deflater.finish();
+		int compressedLength = 0;
+		while (!deflater.finished()) {
+			if (compressedLength == compressed.length) {
+				compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+			}
+			compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+		}
+		crc.reset();
+		crc.update(buffer, 0, n);
+
+		int blockSize = HEADER_LENGTH + compressedLength + FOOTER_LENGTH;
+		byte[] header = {
+			0x1f, (byte) 0x8b, // magic
+			8, // compression method: deflate
+			4, // flags: FEXTRA
+			0, 0, 0, 0, // modification time
+			0, // extra flags
+			(byte) 0xff, // operating system: unknown
+			8, 0, // length of extra field
+			'S', 'D', // subfield ID
+			4, 0, // length of subfield
+			(byte) blockSize, (byte) (blockSize >>> 8), (byte) (blockSize >>> 16), (byte) (blockSize >>> 24)
+		};
+		out.write(header);
+		out.write(compressed, 0, compressedLength);
+		writeInt((int) crc.getValue());
+		writeInt(n);
+
+		System.arraycopy(buffer, n, buffer, 0, length - n);
+		length -= n;
+	}
+
+	private void writeInt(int value) throws IOException {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	/**
+	 * Tests whether the specified bytes start with a block header.
+	 *
+	 * @param header the first bytes of a block
+	 * @param n the number of valid bytes in the array
+	 * @return {@code true} if the specified bytes start with a block header
+	 */
+	static boolean isBlockHeader(byte[] header, int n) {
+		return n >= HEADER_LENGTH
+				&& (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b
+				&& (header[3] & 4) != 0
+				&& header[10] == 8 && header[11] == 0
+				&& header[12] == 'S' && header[13] == 'D'
+				&& header[14] == 4 && header[15] == 0;
+	}
+
+	/**
+	 * Returns the total size of the block with the specified header.
+	 *
+	 * @param header the header of a block
+	 * @return the total size of the block
+	 */
+	static int getBlockSize(byte[] header) {
+		return (header[16] & 0xff) | (header[17] & 0xff) << 8 | (header[18] & 0xff) << 16 | (header[19] & 0xff) << 24;
+	}
+}
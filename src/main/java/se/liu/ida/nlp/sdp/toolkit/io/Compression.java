@@ -0,0 +1,256 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Transparent support for compressed files. Compressed input is detected by
+ * its magic bytes; compressed output is selected by the file name extension.
+ * The supported formats are gzip (including the block-compressed variant
+ * written by {@link BlockGzipOutputStream}) and, if the zstd-jni library is on
+ * the class path, Zstandard. Gzip input may consist of several members, which
+ * are decoded until the input ends (see {@link MultiMemberGzipInputStream}).
+ *
+ * @author Marco Kuhlmann
+ */
+public final class Compression {
+
+	/**
+	 * The size of the buffers used for compressed streams.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The class implementing Zstandard decompression in zstd-jni.
+	 */
+	private static final String ZSTD_INPUT_STREAM = "com.github.luben.zstd.ZstdInputStream";
+
+	/**
+	 * The class implementing Zstandard compression in zstd-jni.
+	 */
+	private static final String ZSTD_OUTPUT_STREAM = "com.github.luben.zstd.ZstdOutputStream";
+
+	/**
+	 * The compression formats.
+	 */
+	public enum Format {
+		NONE, GZIP, BLOCK_GZIP, ZSTD
+	}
+
+	private Compression() {
+	}
+
+	/**
+	 * Opens the specified file for reading, decompressing it if necessary.
+	 * The format is detected when the stream is first read from.
+	 *
+	 * @param file the file to read from
+	 * @return a stream providing the decompressed content of the file
+	 * @throws FileNotFoundException if the specified file does not exist, is
+	 * a directory rather than a regular file, or for some other reason cannot
+	 * be opened for reading
+	 */
+	public static InputStream open(File file) throws FileNotFoundException {
+		return decompress(new FileInputStream(file));
+	}
+
+	/**
+	 * Wraps the specified stream so that it is decompressed if necessary. The
+	 * format is detected when the stream is first read from.
+	 *
+	 * @param in the stream to read from
+	 * @return a stream providing the decompressed content of the stream
+	 */
+	public static InputStream decompress(InputStream in) {
+		return new DecompressingInputStream(in);
+	}
+
+	/**
+	 * Opens the specified file for writing. The compression format is chosen
+	 * based on the file name extension: {@code .gz} for gzip, {@code .bgz} for
+	 * block-compressed gzip, {@code .zst} for Zstandard; other files are not
+	 * compressed.
+	 *
+	 * @param file the file to write to
+	 * @return a stream that compresses its input into the specified file
+	 * @throws IOException if the file cannot be opened for writing, or if the
+	 * compression format is not available
+	 */
+	public static OutputStream create(File file) throws IOException {
+		return compress(new FileOutputStream(file), getFormatForName(file.getName()));
+	}
+
+	/**
+	 * Wraps the specified stream so that its input is compressed in the
+	 * specified format.
+	 *
+	 * @param out the stream to write to
+	 * @param format the compression format
+	 * @return a stream that compresses its input into the specified stream
+	 * @throws IOException if an I/O error occurs, or if the compression
+	 * format is not available
+	 */
+	public static OutputStream compress(OutputStream out, Format format) throws IOException {
+		switch (format) {
+			case GZIP:
+				return new GZIPOutputStream(out, BUFFER_SIZE);
+			case BLOCK_GZIP:
+				return new BlockGzipOutputStream(out);
+			case ZSTD:
+				return (OutputStream) newZstdStream(ZSTD_OUTPUT_STREAM, OutputStream.class, out);
+			default:
+				return out;
+		}
+	}
+
+	/**
+	 * Returns the compression format implied by the specified file name.
+	 *
+	 * @param fileName a file name
+	 * @return the compression format implied by the specified file name
+	 */
+	public static Format getFormatForName(String fileName) {
+		if (fileName.endsWith(".gz")) {
+			return Format.GZIP;
+		} else if (fileName.endsWith(".bgz")) {
+			return Format.BLOCK_GZIP;
+		} else if (fileName.endsWith(".zst")) {
+			return Format.ZSTD;
+		} else {
+			return Format.NONE;
+		}
+	}
+
+	/**
+	 * Detects the compression format of the specified file from its magic
+	 * bytes.
+	 *
+	 * @param file a file
+	 * @return the compression format of the specified file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static Format detectFormat(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] header = new byte[BlockGzipOutputStream.HEADER_LENGTH];
+			int n = 0;
+			int k;
+			while (n < header.length && (k = in.read(header, n, header.length - n)) != -1) {
+				n += k;
+			}
+			return detectFormat(header, n);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Detects the compression format from the first bytes of a stream.
+	 *
+	 * @param header the first bytes of the stream
+	 * @param n the number of valid bytes in the array
+	 * @return the compression format
+	 */
+	private static Format detectFormat(byte[] header, int n) {
+		if (n >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b) {
+			return BlockGzipOutputStream.isBlockHeader(header, n) ? Format.BLOCK_GZIP : Format.GZIP;
+		} else if (n >= 4 && (header[0] & 0xff) == 0x28 && (header[1] & 0xff) == 0xb5 && (header[2] & 0xff) == 0x2f && (header[3] & 0xff) == 0xfd) {
+			return Format.ZSTD;
+		} else {
+			return Format.NONE;
+		}
+	}
+
+	/**
+	 * Creates a zstd-jni stream by reflection, so that the library is only
+	 * needed when Zstandard files are actually used.
+	 */
+	private static Object newZstdStream(String className, Class<?> parameterType, Object stream) throws IOException {
+		try {
+			return Class.forName(className).getConstructor(parameterType).newInstance(stream);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Zstandard compression requires zstd-jni on the class path");
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("Cannot create Zstandard stream", e);
+		}
+	}
+
+	/**
+	 * An input stream that detects the compression format of the underlying
+	 * stream when it is first read from, and decompresses it accordingly.
+	 */
+	private static class DecompressingInputStream extends FilterInputStream {
+
+		private boolean isInitialized;
+
+		public DecompressingInputStream(InputStream in) {
+			super(in);
+		}
+
+		private void initialize() throws IOException {
+			if (!isInitialized) {
+				isInitialized = true;
+				BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+				byte[] header = new byte[BlockGzipOutputStream.HEADER_LENGTH];
+				buffered.mark(header.length);
+				int n = 0;
+				int k;
+				while (n < header.length && (k = buffered.read(header, n, header.length - n)) != -1) {
+					n += k;
+				}
+				buffered.reset();
+				switch (detectFormat(header, n)) {
+					case GZIP:
+					case BLOCK_GZIP:
+						in = new MultiMemberGzipInputStream(buffered, BUFFER_SIZE);
+						break;
+					case ZSTD:
+						in = new BufferedInputStream((InputStream) newZstdStream(ZSTD_INPUT_STREAM, InputStream.class, buffered), BUFFER_SIZE);
+						break;
+					default:
+						in = buffered;
+				}
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			initialize();
+			return in.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			initialize();
+			return in.read(b, off, len);
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			initialize();
+			return in.skip(n);
+		}
+
+		@Override
+		public int available() throws IOException {
+			initialize();
+			return in.available();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
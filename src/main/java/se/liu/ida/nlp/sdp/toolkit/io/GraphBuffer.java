@@ -0,0 +1,455 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.util.Arrays;
+import se.liu.ida.nlp.sdp.toolkit.graph.Edge;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+import se.liu.ida.nlp.sdp.toolkit.graph.Node;
+
+/**
+ * A reusable representation of a parsed graph. A graph reader can refill the
+ * same buffer with one graph after the other (see
+ * {@link GraphReader#readGraph(GraphBuffer)}); the buffer stores the token
+ * lines together with the offsets of their columns, and the graph structure
+ * in primitive arrays that are only reallocated when a graph is larger than
+ * all previous graphs. Column values and edge labels are decoded only when
+ * they are requested, so that consumers that only inspect the structure of
+ * the graphs read them without allocating per-node or per-edge objects. The
+ * contents of a buffer are valid until it is refilled.
+ * <p>
+ * Nodes are numbered as in {@link Graph}: node 0 is the wall node, and node
+ * {@code k} is the {@code k}th token.
+ *
+ * @author Marco Kuhlmann
+ */
+public final class GraphBuffer {
+
+	/**
+	 * The ID of the graph.
+	 */
+	private String id;
+
+	/**
+	 * The number of tokens in the graph.
+	 */
+	private int nTokens;
+
+	/**
+	 * The token lines; the line of node {@code k} is at index {@code k - 1}.
+	 */
+	private String[] lines;
+
+	/**
+	 * The column offsets of the token lines, {@link #N_OFFSETS} per token:
+	 * the start of the FORM column, the ends of the FORM, LEMMA and POS
+	 * columns, and the start and end of the SENSE column (both -1 if the
+	 * format has no SENSE column).
+	 */
+	private int[] offsets;
+
+	/**
+	 * The number of offsets stored per token.
+	 */
+	private static final int N_OFFSETS = 6;
+
+	/**
+	 * The TOP and PRED flags of the tokens.
+	 */
+	private boolean[] isTop;
+	private boolean[] isPred;
+
+	/**
+	 * The IDs of the predicates, in order.
+	 */
+	private int[] predicates;
+	private int nPredicates;
+
+	/**
+	 * The edges: source and target nodes, and the offsets of the label in the
+	 * line of the target node.
+	 */
+	private int[] edgeSources;
+	private int[] edgeTargets;
+	private int[] edgeLabelStarts;
+	private int[] edgeLabelEnds;
+	private int nEdges;
+
+	/**
+	 * Construct a new, empty buffer.
+	 */
+	public GraphBuffer() {
+		this.lines = new String[64];
+		this.offsets = new int[64 * N_OFFSETS];
+		this.isTop = new boolean[64];
+		this.isPred = new boolean[64];
+		this.predicates = new int[64];
+		this.edgeSources = new int[64];
+		this.edgeTargets = new int[64];
+		this.edgeLabelStarts = new int[64];
+		this.edgeLabelEnds = new int[64];
+	}
+
+	/**
+	 * Clears this buffer for a graph with the specified ID and number of
+	 * tokens, growing the per-token arrays if necessary.
+	 */
+	void reset(String id, int nTokens) {
+		this.id = id;
+		Arrays.fill(lines, 0, this.nTokens, null);
+		this.nTokens = nTokens;
+		if (nTokens > lines.length) {
+			int capacity = Math.max(nTokens, 2 * lines.length);
+			lines = new String[capacity];
+			offsets = new int[capacity * N_OFFSETS];
+			isTop = new boolean[capacity];
+			isPred = new boolean[capacity];
+			predicates = new int[capacity];
+		}
+		nPredicates = 0;
+		nEdges = 0;
+	}
+
+	/**
+	 * Sets the line and the fixed columns of a token.
+	 */
+	void setToken(int node, String line, int formStart, int formEnd, int lemmaEnd, int posEnd, int senseStart, int senseEnd, boolean isTop, boolean isPred) {
+		int k = node - 1;
+		lines[k] = line;
+		int i = k * N_OFFSETS;
+		offsets[i] = formStart;
+		offsets[i + 1] = formEnd;
+		offsets[i + 2] = lemmaEnd;
+		offsets[i + 3] = posEnd;
+		offsets[i + 4] = senseStart;
+		offsets[i + 5] = senseEnd;
+		this.isTop[k] = isTop;
+		this.isPred[k] = isPred;
+		if (isPred) {
+			predicates[nPredicates++] = node;
+		}
+	}
+
+	/**
+	 * Adds an edge whose label is stored in the line of the target node.
+	 */
+	void addEdge(int source, int target, int labelStart, int labelEnd) {
+		if (nEdges == edgeSources.length) {
+			int capacity = 2 * nEdges;
+			edgeSources = Arrays.copyOf(edgeSources, capacity);
+			edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+			edgeLabelStarts = Arrays.copyOf(edgeLabelStarts, capacity);
+			edgeLabelEnds = Arrays.copyOf(edgeLabelEnds, capacity);
+		}
+		edgeSources[nEdges] = source;
+		edgeTargets[nEdges] = target;
+		edgeLabelStarts[nEdges] = labelStart;
+		edgeLabelEnds[nEdges] = labelEnd;
+		nEdges++;
+	}
+
+	/**
+	 * Fills this buffer with the contents of the specified graph, replacing
+	 * its previous contents. The token lines are reconstructed in the SDP
+	 * 2015 format; columns that the graph does not hold, for example because
+	 * it was read with a projection, are given as {@code _}. This allows
+	 * graphs that were not read from a file to be passed to code that works
+	 * on buffers.
+	 *
+	 * @param graph the graph
+	 */
+	public void set(Graph graph) {
+		int nTokens = graph.getNNodes() - 1;
+		reset(graph.id, nTokens);
+
+		// Assign an argument column to each predicate, and to any other node
+		// with outgoing edges.
+		int[] columns = new int[nTokens + 1];
+		int nColumns = 0;
+		for (int node = 1; node <= nTokens; node++) {
+			Node token = graph.getNode(node);
+			columns[node] = token.isPred || token.hasOutgoingEdges() ? nColumns++ : -1;
+		}
+
+		int[] labelStarts = new int[graph.getNEdges()];
+		int[] labelEnds = new int[graph.getNEdges()];
+		String[] cells = new String[nColumns];
+		int[] cellEdges = new int[nColumns];
+		StringBuilder sb = new StringBuilder();
+		for (int node = 1; node <= nTokens; node++) {
+			Node token = graph.getNode(node);
+			sb.setLength(0);
+			sb.append(node).append('\t');
+			int formStart = sb.length();
+			sb.append(orUndefined(token.getForm()));
+			int formEnd = sb.length();
+			sb.append('\t').append(orUndefined(token.getLemma()));
+			int lemmaEnd = sb.length();
+			sb.append('\t').append(orUndefined(token.getPos()));
+			int posEnd = sb.length();
+			sb.append('\t').append(token.isTop ? '+' : '-');
+			sb.append('\t').append(token.isPred ? '+' : '-');
+			sb.append('\t');
+			int senseStart = sb.length();
+			sb.append(orUndefined(token.getSense()));
+			int senseEnd = sb.length();
+			Arrays.fill(cells, Constants.UNDEFINED);
+			Arrays.fill(cellEdges, -1);
+			for (Edge edge : token.getIncomingEdges()) {
+				cells[columns[edge.source]] = edge.label;
+				cellEdges[columns[edge.source]] = edge.id;
+			}
+			for (int column = 0; column < nColumns; column++) {
+				sb.append('\t');
+				if (cellEdges[column] >= 0) {
+					labelStarts[cellEdges[column]] = sb.length();
+					labelEnds[cellEdges[column]] = sb.length() + cells[column].length();
+				}
+				sb.append(cells[column]);
+			}
+			setToken(node, sb.toString(), formStart, formEnd, lemmaEnd, posEnd, senseStart, senseEnd, token.isTop, token.isPred);
+		}
+		for (Edge edge : graph.getEdges()) {
+			addEdge(edge.source, edge.target, labelStarts[edge.id], labelEnds[edge.id]);
+		}
+	}
+
+	private static String orUndefined(String value) {
+		return value == null ? Constants.UNDEFINED : value;
+	}
+
+	/**
+	 * Returns the ID of the graph.
+	 *
+	 * @return the ID of the graph
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the number of nodes of the graph, including the wall node.
+	 *
+	 * @return the number of nodes of the graph
+	 */
+	public int getNNodes() {
+		return nTokens + 1;
+	}
+
+	/**
+	 * Returns the line of the specified token, as read from the input.
+	 *
+	 * @param node a token node (not the wall node)
+	 * @return the line of the specified token
+	 */
+	public String getLine(int node) {
+		assert 0 < node && node <= nTokens;
+		return lines[node - 1];
+	}
+
+	/**
+	 * Returns the word form of the specified node.
+	 *
+	 * @param node a node
+	 * @return the word form of the specified node
+	 */
+	public String getForm(int node) {
+		return node == 0 ? Constants.WALL_FORM : lines[node - 1].substring(offsets[(node - 1) * N_OFFSETS], offsets[(node - 1) * N_OFFSETS + 1]);
+	}
+
+	/**
+	 * Returns the lemma of the specified node.
+	 *
+	 * @param node a node
+	 * @return the lemma of the specified node
+	 */
+	public String getLemma(int node) {
+		return node == 0 ? Constants.WALL_LEMMA : lines[node - 1].substring(offsets[(node - 1) * N_OFFSETS + 1] + 1, offsets[(node - 1) * N_OFFSETS + 2]);
+	}
+
+	/**
+	 * Returns the part-of-speech tag of the specified node.
+	 *
+	 * @param node a node
+	 * @return the part-of-speech tag of the specified node
+	 */
+	public String getPos(int node) {
+		return node == 0 ? Constants.WALL_POS : lines[node - 1].substring(offsets[(node - 1) * N_OFFSETS + 2] + 1, offsets[(node - 1) * N_OFFSETS + 3]);
+	}
+
+	/**
+	 * Returns the sense of the specified node; this is
+	 * {@link Constants#UNDEFINED} for graphs in a format without senses.
+	 *
+	 * @param node a node
+	 * @return the sense of the specified node
+	 */
+	public String getSense(int node) {
+		if (node == 0) {
+			return Constants.WALL_SENSE;
+		}
+		int i = (node - 1) * N_OFFSETS;
+		return offsets[i + 4] < 0 ? Constants.UNDEFINED : lines[node - 1].substring(offsets[i + 4], offsets[i + 5]);
+	}
+
+	/**
+	 * Tests whether the specified node is a top node.
+	 *
+	 * @param node a node
+	 * @return {@code true} if the specified node is a top node
+	 */
+	public boolean isTop(int node) {
+		return node > 0 && isTop[node - 1];
+	}
+
+	/**
+	 * Tests whether the specified node is a predicate.
+	 *
+	 * @param node a node
+	 * @return {@code true} if the specified node is a predicate
+	 */
+	public boolean isPred(int node) {
+		return node > 0 && isPred[node - 1];
+	}
+
+	/**
+	 * Returns the number of predicates of the graph.
+	 *
+	 * @return the number of predicates of the graph
+	 */
+	public int getNPredicates() {
+		return nPredicates;
+	}
+
+	/**
+	 * Returns the ID of the specified predicate.
+	 *
+	 * @param i the index of a predicate, in order of the nodes
+	 * @return the node ID of the predicate
+	 */
+	public int getPredicate(int i) {
+		assert 0 <= i && i < nPredicates;
+		return predicates[i];
+	}
+
+	/**
+	 * Returns the number of edges of the graph.
+	 *
+	 * @return the number of edges of the graph
+	 */
+	public int getNEdges() {
+		return nEdges;
+	}
+
+	/**
+	 * Returns the source node of the specified edge. Edges are numbered in
+	 * the same order as in {@link Graph#getEdges()}.
+	 *
+	 * @param edge the index of an edge
+	 * @return the source node of the specified edge
+	 */
+	public int getEdgeSource(int edge) {
+		assert 0 <= edge && edge < nEdges;
+		return edgeSources[edge];
+	}
+
+	/**
+	 * Returns the target node of the specified edge.
+	 *
+	 * @param edge the index of an edge
+	 * @return the target node of the specified edge
+	 */
+	public int getEdgeTarget(int edge) {
+		assert 0 <= edge && edge < nEdges;
+		return edgeTargets[edge];
+	}
+
+	/**
+	 * Returns the label of the specified edge.
+	 *
+	 * @param edge the index of an edge
+	 * @return the label of the specified edge
+	 */
+	public String getEdgeLabel(int edge) {
+		assert 0 <= edge && edge < nEdges;
+		return lines[edgeTargets[edge] - 1].substring(edgeLabelStarts[edge], edgeLabelEnds[edge]);
+	}
+
+	/**
+	 * Tests whether the specified edge has the specified label, without
+	 * decoding the label.
+	 *
+	 * @param edge the index of an edge
+	 * @param label a label
+	 * @return {@code true} if the specified edge has the specified label
+	 */
+	public boolean hasEdgeLabel(int edge, String label) {
+		assert 0 <= edge && edge < nEdges;
+		int length = edgeLabelEnds[edge] - edgeLabelStarts[edge];
+		return length == label.length() && lines[edgeTargets[edge] - 1].regionMatches(edgeLabelStarts[edge], label, 0, length);
+	}
+
+	/**
+	 * Returns a new graph with the contents of this buffer.
+	 *
+	 * @return a new graph with the contents of this buffer
+	 */
+	public Graph toGraph() {
+		return toGraph(Projection.ALL);
+	}
+
+	/**
+	 * Returns a new graph with the contents of this buffer, decoding columns
+	 * according to the specified projection.
+	 *
+	 * @param projection the projection specifying which columns are decoded,
+	 * and when
+	 * @return a new graph with the contents of this buffer
+	 */
+	public Graph toGraph(Projection projection) {
+		Graph graph = new Graph(id);
+
+		// Add the wall node.
+		graph.addNode(Constants.WALL_FORM, Constants.WALL_LEMMA, Constants.WALL_POS, false, false, Constants.WALL_SENSE);
+
+		for (int k = 0; k < nTokens; k++) {
+			String line = lines[k];
+			int i = k * N_OFFSETS;
+			if (projection.isLazy()) {
+				graph.addNode(new LazyNode(k + 1, line, projection, offsets[i], offsets[i + 1], offsets[i + 2], offsets[i + 3], offsets[i + 4], offsets[i + 5], isTop[k], isPred[k]));
+			} else {
+				String form = projection.includes(Projection.Column.FORM) ? line.substring(offsets[i], offsets[i + 1]) : null;
+				String lemma = projection.includes(Projection.Column.LEMMA) ? line.substring(offsets[i + 1] + 1, offsets[i + 2]) : null;
+				String pos = projection.includes(Projection.Column.POS) ? line.substring(offsets[i + 2] + 1, offsets[i + 3]) : null;
+				String sense = !projection.includes(Projection.Column.SENSE) ? null : offsets[i + 4] < 0 ? Constants.UNDEFINED : line.substring(offsets[i + 4], offsets[i + 5]);
+				graph.addNode(form, lemma, pos, isTop[k], isPred[k], sense);
+			}
+		}
+
+		for (int j = 0; j < nEdges; j++) {
+			graph.addEdge(edgeSources[j], edgeTargets[j], getEdgeLabel(j));
+		}
+
+		return graph;
+	}
+
+	/**
+	 * Tests whether every predicate is the source of at least one edge. This
+	 * is intended to be used in assertions.
+	 *
+	 * @return {@code true} if every predicate is the source of an edge
+	 */
+	boolean predicatesHaveOutgoingEdges() {
+		boolean[] hasOutgoingEdges = new boolean[nTokens + 1];
+		for (int j = 0; j < nEdges; j++) {
+			hasOutgoingEdges[edgeSources[j]] = true;
+		}
+		for (int i = 0; i < nPredicates; i++) {
+			if (!hasOutgoingEdges[predicates[i]]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
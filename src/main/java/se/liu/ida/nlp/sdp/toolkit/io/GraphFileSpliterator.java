@@ -0,0 +1,388 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * A spliterator over the graphs in a file in one of the SDP formats. The
+ * spliterator covers a range of the file and splits it on paragraph
+ * boundaries, so that each part can be read independently. If an index for
+ * the file is available, the file is split into ranges with an exact number
+ * of graphs, and the spliterator is {@link #SIZED}.
+ *
+ * @author Marco Kuhlmann
+ */
+public class GraphFileSpliterator implements Spliterator<Graph> {
+
+	/**
+	 * The minimal number of bytes in a range that is split without an index.
+	 */
+	private static final long MIN_SPLIT_SIZE = 1 << 16;
+
+	/**
+	 * The file to read from.
+	 */
+	private final File file;
+
+	/**
+	 * The format of the file.
+	 */
+	private final GraphFormat format;
+
+	/**
+	 * The projection used by the readers.
+	 */
+	private Projection projection;
+
+	/**
+	 * The index for the file, or {@code null}.
+	 */
+	private final GraphIndex index;
+
+	/**
+	 * The start of the range covered by this spliterator. This is a graph
+	 * number if an index is available, and a byte offset otherwise.
+	 */
+	private long start;
+
+	/**
+	 * The end of the range covered by this spliterator (exclusive).
+	 */
+	private final long end;
+
+	/**
+	 * The readers opened by this spliterator and the spliterators split off
+	 * from it that have not yet been closed.
+	 */
+	private final Queue<GraphReader> openReaders;
+
+	/**
+	 * The reader for the range, or {@code null} if traversal has not started.
+	 */
+	private GraphReader reader;
+
+	/**
+	 * The number of graphs read from the range.
+	 */
+	private long nGraphsRead;
+
+	/**
+	 * Create a spliterator over the graphs in the specified file. The format
+	 * of the file is detected from its first line.
+	 *
+	 * @param file the file to read from
+	 * @throws IOException if an I/O error occurs
+	 */
+	public GraphFileSpliterator(File file) throws IOException {
+		this(file, GraphFormat.detect(file));
+	}
+
+	/**
+	 * Create a spliterator over the graphs in the specified file, which is in
+	 * the specified format.
+	 *
+	 * @param file the file to read from
+	 * @param format the format of the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public GraphFileSpliterator(File file, GraphFormat format) throws IOException {
+		this(file, format, null, GraphIndex.getDataOffset(file), file.length(), new ConcurrentLinkedQueue<GraphReader>());
+	}
+
+	/**
+	 * Create a spliterator over the graphs in the specified file, using the
+	 * specified index. The file is assumed to be in the SDP 2015 format.
+	 *
+	 * @param file the file to read from
+	 * @param index the index for the specified file
+	 */
+	public GraphFileSpliterator(File file, GraphIndex index) {
+		this(file, GraphFormat.SDP_2015, index);
+	}
+
+	/**
+	 * Create a spliterator over the graphs in the specified file, which is in
+	 * the specified format, using the specified index.
+	 *
+	 * @param file the file to read from
+	 * @param format the format of the file
+	 * @param index the index for the specified file
+	 */
+	public GraphFileSpliterator(File file, GraphFormat format, GraphIndex index) {
+		this(file, format, index, 0, index.getNGraphs(), new ConcurrentLinkedQueue<GraphReader>());
+	}
+
+	private GraphFileSpliterator(File file, GraphFormat format, GraphIndex index, long start, long end, Queue<GraphReader> openReaders) {
+		this.file = file;
+		this.format = format;
+		this.projection = Projection.ALL;
+		this.index = index;
+		this.start = start;
+		this.end = end;
+		this.openReaders = openReaders;
+	}
+
+	/**
+	 * Returns a stream of the graphs in the specified file. The stream can be
+	 * processed in parallel.
+	 *
+	 * @param file the file to read from
+	 * @return a stream of the graphs in the specified file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static Stream<Graph> stream(File file) throws IOException {
+		return stream(new GraphFileSpliterator(file));
+	}
+
+	/**
+	 * Returns a stream of the graphs in the specified file, which is in the
+	 * specified format. The stream can be processed in parallel.
+	 *
+	 * @param file the file to read from
+	 * @param format the format of the file
+	 * @return a stream of the graphs in the specified file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static Stream<Graph> stream(File file, GraphFormat format) throws IOException {
+		return stream(new GraphFileSpliterator(file, format));
+	}
+
+	/**
+	 * Returns a stream of the graphs in the specified file, using the
+	 * specified index. The file is assumed to be in the SDP 2015 format. The
+	 * stream is sized and can be processed in parallel.
+	 *
+	 * @param file the file to read from
+	 * @param index the index for the specified file
+	 * @return a stream of the graphs in the specified file
+	 */
+	public static Stream<Graph> stream(File file, GraphIndex index) {
+		return stream(new GraphFileSpliterator(file, index));
+	}
+
+	/**
+	 * Returns a stream of the graphs in the specified file, decoded according
+	 * to the specified projection.
+	 *
+	 * @param file the file to read from
+	 * @param format the format of the file
+	 * @param projection the projection used by the readers
+	 * @return a stream of the graphs in the specified file
+	 * @throws IOException if an I/O error occurs
+	 */
+	static Stream<Graph> stream(File file, GraphFormat format, Projection projection) throws IOException {
+		GraphFileSpliterator spliterator = new GraphFileSpliterator(file, format);
+		spliterator.projection = projection;
+		return stream(spliterator);
+	}
+
+	private static Stream<Graph> stream(GraphFileSpliterator spliterator) {
+		return StreamSupport.stream(spliterator, false).onClose(spliterator::closeReaders);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Graph> action) {
+		try {
+			if (reader == null) {
+				if (start >= end) {
+					return false;
+				}
+				reader = openReader();
+				openReaders.add(reader);
+			}
+			Graph graph = reader.readGraph();
+			if (graph == null) {
+				reader.close();
+				openReaders.remove(reader);
+				start = end;
+				return false;
+			} else {
+				nGraphsRead++;
+				action.accept(graph);
+				return true;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public Spliterator<Graph> trySplit() {
+		if (reader != null) {
+			return null;
+		}
+		long mid;
+		if (index != null) {
+			if (end - start < 2) {
+				return null;
+			}
+			mid = (start + end) >>> 1;
+		} else {
+			if (end - start < MIN_SPLIT_SIZE) {
+				return null;
+			}
+			try {
+				mid = findParagraphStart(file, (start + end) >>> 1, end);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (mid >= end) {
+				return null;
+			}
+		}
+		GraphFileSpliterator prefix = new GraphFileSpliterator(file, format, index, start, mid, openReaders);
+		prefix.projection = projection;
+		start = mid;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		if (index != null) {
+			return Math.max(0, end - start - nGraphsRead);
+		} else {
+			// Without an index, the number of bytes is an upper bound.
+			return end - start;
+		}
+	}
+
+	@Override
+	public int characteristics() {
+		if (index != null) {
+			return ORDERED | NONNULL | SIZED | SUBSIZED;
+		} else {
+			return ORDERED | NONNULL;
+		}
+	}
+
+	/**
+	 * Opens a reader for the range covered by this spliterator.
+	 *
+	 * @return a reader for the range covered by this spliterator
+	 * @throws IOException if an I/O error occurs
+	 */
+	private GraphReader openReader() throws IOException {
+		long from = index != null ? index.getOffset((int) start) : start;
+		long to = index != null ? index.getOffset((int) end) : end;
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		channel.position(from);
+		InputStream in = new BoundedInputStream(Channels.newInputStream(channel), to - from);
+		AbstractGraphReader reader = GraphReaders.open(new InputStreamReader(in), format, false);
+		reader.setProjection(projection);
+		return reader;
+	}
+
+	/**
+	 * Returns the offset of the first paragraph that starts at or after the
+	 * specified offset and before the specified end offset.
+	 *
+	 * @param file the file to search
+	 * @param offset a byte offset
+	 * @param end the end of the range to search
+	 * @return the offset of the first paragraph that starts at or after the
+	 * specified offset, or the end of the range if there is no such paragraph
+	 * @throws IOException if an I/O error occurs
+	 */
+	static long findParagraphStart(File file, long offset, long end) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 13);
+			// Start one byte early, to catch a blank line starting at the offset.
+			long position = offset - 1;
+			boolean afterNewline = false;
+			boolean afterBlankLine = false;
+			while (position < end) {
+				buffer.clear();
+				int n = channel.read(buffer, position);
+				if (n <= 0) {
+					break;
+				}
+				for (int i = 0; i < n && position < end; i++, position++) {
+					byte b = buffer.get(i);
+					if (b == '\n') {
+						afterBlankLine = afterBlankLine || afterNewline;
+						afterNewline = true;
+					} else if (afterBlankLine) {
+						return position;
+					} else {
+						afterNewline = false;
+					}
+				}
+			}
+			return end;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Closes all readers opened by this spliterator or the spliterators split
+	 * off from it.
+	 */
+	private void closeReaders() {
+		GraphReader openReader;
+		while ((openReader = openReaders.poll()) != null) {
+			try {
+				openReader.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * An input stream that reads at most a given number of bytes from an
+	 * underlying stream.
+	 */
+	static class BoundedInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		public BoundedInputStream(InputStream in, long limit) {
+			super(in);
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b != -1) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int n = super.read(b, off, (int) Math.min(len, remaining));
+			if (n > 0) {
+				remaining -= n;
+			}
+			return n;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * The text formats for semantic dependency graphs. The formats differ in
+ * whether they have a SENSE column and a format identifier line.
+ *
+ * @author Marco Kuhlmann
+ */
+public enum GraphFormat {
+
+	/**
+	 * The SDP 2014 format, with the columns ID, FORM, LEMMA, POS, TOP, PRED.
+	 */
+	SDP_2014(6, null),
+	/**
+	 * The SDP 2015 format, with the columns ID, FORM, LEMMA, POS, TOP, PRED,
+	 * SENSE, and the format identifier line {@code #SDP 2015}.
+	 */
+	SDP_2015(7, "#SDP 2015");
+
+	/**
+	 * The number of columns preceding the argument columns.
+	 */
+	private final int nFixedColumns;
+
+	/**
+	 * The format identifier line, or {@code null} if the format does not have
+	 * one.
+	 */
+	private final String firstLine;
+
+	private GraphFormat(int nFixedColumns, String firstLine) {
+		this.nFixedColumns = nFixedColumns;
+		this.firstLine = firstLine;
+	}
+
+	/**
+	 * Returns the number of columns preceding the argument columns.
+	 *
+	 * @return the number of columns preceding the argument columns
+	 */
+	public int getNFixedColumns() {
+		return nFixedColumns;
+	}
+
+	/**
+	 * Tests whether this format has a SENSE column.
+	 *
+	 * @return {@code true} if this format has a SENSE column
+	 */
+	public boolean hasSense() {
+		return nFixedColumns > 6;
+	}
+
+	/**
+	 * Returns the format identifier line.
+	 *
+	 * @return the format identifier line, or {@code null} if this format does
+	 * not have one
+	 */
+	public String getFirstLine() {
+		return firstLine;
+	}
+
+	/**
+	 * Returns the format of data that starts with the specified line. Data
+	 * without a format identifier line is assumed to be in the SDP 2014
+	 * format.
+	 *
+	 * @param line the first line of the data, or {@code null} if the data is
+	 * empty
+	 * @return the format of the data
+	 * @throws IOException if the line is an unknown format identifier line
+	 */
+	public static GraphFormat forFirstLine(String line) throws IOException {
+		if (line == null || !line.startsWith("#SDP")) {
+			return SDP_2014;
+		}
+		for (GraphFormat format : values()) {
+			if (line.equals(format.firstLine)) {
+				return format;
+			}
+		}
+		throw new IOException("Unknown format: " + line);
+	}
+
+	/**
+	 * Detects the format of the specified file from its first line. The file
+	 * may be compressed.
+	 *
+	 * @param file a file
+	 * @return the format of the specified file
+	 * @throws IOException if an I/O error occurs, or if the file starts with
+	 * an unknown format identifier line
+	 */
+	public static GraphFormat detect(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(Compression.open(file)));
+		try {
+			return forFirstLine(reader.readLine());
+		} finally {
+			reader.close();
+		}
+	}
+}
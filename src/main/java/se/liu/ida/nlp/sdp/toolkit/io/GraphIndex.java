@@ -0,0 +1,190 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * An index of the graphs in a file, recording the byte offset at which each
+ * graph starts. An index allows a file to be split into ranges with an exact
+ * number of graphs.
+ *
+ * @author Marco Kuhlmann
+ */
+public class GraphIndex {
+
+	/**
+	 * The magic number at the start of a serialized index.
+	 */
+	private static final int MAGIC = 0x53445049; // "SDPI"
+
+	/**
+	 * The byte offsets at which the graphs start. The last entry is the
+	 * offset of the end of the data.
+	 */
+	private final long[] offsets;
+
+	/**
+	 * Construct a new index from the specified byte offsets.
+	 *
+	 * @param offsets the byte offsets at which the graphs start, followed by
+	 * the offset of the end of the data
+	 */
+	private GraphIndex(long[] offsets) {
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Builds an index for the specified file by scanning it for paragraph
+	 * boundaries. A format identifier line at the start of the file is
+	 * skipped. Compressed files cannot be indexed; for random access to
+	 * compressed data, see {@link BlockGzipFile}.
+	 *
+	 * @param file the file to be indexed
+	 * @return the index for the specified file
+	 * @throws IOException if an I/O error occurs, or if the specified file is
+	 * compressed
+	 */
+	public static GraphIndex build(File file) throws IOException {
+		if (Compression.detectFormat(file) != Compression.Format.NONE) {
+			throw new IOException("Cannot index compressed file: " + file);
+		}
+		long[] offsets = new long[1024];
+		int nGraphs = 0;
+		long position = getDataOffset(file);
+		InputStream in = new FileInputStream(file);
+		try {
+			in.skip(position);
+			byte[] buffer = new byte[1 << 16];
+			boolean atLineStart = true;
+			boolean afterBlankLine = true;
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				for (int i = 0; i < n; i++, position++) {
+					if (buffer[i] == '\n') {
+						afterBlankLine = atLineStart;
+						atLineStart = true;
+					} else {
+						if (atLineStart && afterBlankLine) {
+							if (nGraphs + 1 == offsets.length) {
+								offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+							}
+							offsets[nGraphs++] = position;
+						}
+						atLineStart = false;
+						afterBlankLine = false;
+					}
+				}
+			}
+		} finally {
+			in.close();
+		}
+		offsets[nGraphs] = position;
+		return new GraphIndex(Arrays.copyOf(offsets, nGraphs + 1));
+	}
+
+	/**
+	 * Returns the byte offset at which the graph data in the specified file
+	 * starts. This is the offset after the format identifier line, if there
+	 * is one, and zero otherwise.
+	 *
+	 * @param file a file containing graphs
+	 * @return the byte offset at which the graph data starts
+	 * @throws IOException if an I/O error occurs
+	 */
+	static long getDataOffset(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			byte[] prefix = new byte[4];
+			int n = in.read(prefix);
+			if (n < 4 || prefix[0] != '#' || prefix[1] != 'S' || prefix[2] != 'D' || prefix[3] != 'P') {
+				return 0;
+			}
+			long offset = 4;
+			int b;
+			while ((b = in.read()) != -1) {
+				offset++;
+				if (b == '\n') {
+					break;
+				}
+			}
+			return offset;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads an index that was previously written using {@link #write(File)}.
+	 *
+	 * @param file the file containing the index
+	 * @return the index read
+	 * @throws IOException if an I/O error occurs, or if the specified file
+	 * does not contain an index
+	 */
+	public static GraphIndex read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a graph index: " + file);
+			}
+			long[] offsets = new long[in.readInt() + 1];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = in.readLong();
+			}
+			return new GraphIndex(offsets);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes this index to the specified file.
+	 *
+	 * @param file the file to write to
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(getNGraphs());
+			for (long offset : offsets) {
+				out.writeLong(offset);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the number of graphs in the indexed file.
+	 *
+	 * @return the number of graphs in the indexed file
+	 */
+	public int getNGraphs() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Returns the byte offset at which the specified graph starts. For the
+	 * graph number {@link #getNGraphs()}, this returns the offset of the end
+	 * of the data.
+	 *
+	 * @param graph the number of a graph, counting from zero
+	 * @return the byte offset at which the specified graph starts
+	 */
+	public long getOffset(int graph) {
+		return offsets[graph];
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.util.List;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * Parse the lines of a graph in one of the SDP text formats. This is the
+ * parsing core shared by all graph readers. Columns are located by scanning
+ * for tab characters rather than by splitting lines, and each line is scanned
+ * only once for its fixed columns and once for its argument columns.
+ *
+ * @author Marco Kuhlmann
+ */
+final class GraphParser {
+
+	/**
+	 * The format parsed.
+	 */
+	private final GraphFormat format;
+
+	/**
+	 * The projection specifying which columns are decoded, and when.
+	 */
+	private Projection projection;
+
+	/**
+	 * The buffer used when parsing into graphs.
+	 */
+	private final GraphBuffer buffer;
+
+	/**
+	 * The offsets of the first argument column in the token lines.
+	 */
+	private int[] argumentOffsets;
+
+	/**
+	 * The end offsets of the fixed columns in the current line.
+	 */
+	private final int[] ends;
+
+	/**
+	 * Create a parser for the specified format.
+	 *
+	 * @param format the format to parse
+	 */
+	GraphParser(GraphFormat format) {
+		this.format = format;
+		this.projection = Projection.ALL;
+		this.buffer = new GraphBuffer();
+		this.argumentOffsets = new int[64];
+		this.ends = new int[format.getNFixedColumns()];
+	}
+
+	/**
+	 * Returns the format parsed by this parser.
+	 *
+	 * @return the format parsed by this parser
+	 */
+	GraphFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Returns the projection used by this parser.
+	 *
+	 * @return the projection used by this parser
+	 */
+	Projection getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Sets the projection used by this parser.
+	 *
+	 * @param projection the projection specifying which columns are decoded,
+	 * and when
+	 */
+	void setProjection(Projection projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Metrics for parsing: the number of graphs and characters parsed, the
+	 * parse time per graph, and the distribution of sentence lengths.
+	 */
+	private static final Metrics.Counter GRAPHS = Metrics.counter("reader.graphs");
+	private static final Metrics.Counter CHARS = Metrics.counter("reader.chars");
+	private static final Metrics.Timer PARSE_TIME = Metrics.timer("reader.parseTime");
+	private static final Metrics.Histogram TOKENS = Metrics.histogram("reader.tokens");
+
+	/**
+	 * Parses a graph from the specified lines: the graph ID followed by one
+	 * line per token.
+	 *
+	 * @param lines the lines of the graph
+	 * @return the graph
+	 */
+	Graph parse(List<String> lines) {
+		long start = PARSE_TIME.start();
+		fill(lines, buffer);
+		Graph graph = buffer.toGraph(projection);
+		record(lines, start);
+		return graph;
+	}
+
+	/**
+	 * Parses a graph from the specified lines into the specified buffer.
+	 *
+	 * @param lines the lines of the graph
+	 * @param buffer the buffer to fill
+	 */
+	void parse(List<String> lines, GraphBuffer buffer) {
+		long start = PARSE_TIME.start();
+		fill(lines, buffer);
+		record(lines, start);
+	}
+
+	/**
+	 * Records the metrics for a graph parsed from the specified lines.
+	 */
+	private static void record(List<String> lines, long start) {
+		if (Metrics.isEnabled()) {
+			PARSE_TIME.stop(start);
+			// Count the line separators and the empty line after the graph.
+			long nChars = lines.size() + 1;
+			for (String line : lines) {
+				nChars += line.length();
+			}
+			GRAPHS.add(1);
+			CHARS.add(nChars);
+			TOKENS.record(lines.size() - 1);
+		}
+	}
+
+	private void fill(List<String> lines, GraphBuffer buffer) {
+		// Every graph should contain at least one token.
+		assert lines.size() >= 2;
+		// Assert the format of the graph ID.
+		assert lines.get(0).matches("#2[0-9]{7}$");
+
+		int nTokens = lines.size() - 1;
+		buffer.reset(lines.get(0), nTokens);
+		if (nTokens > argumentOffsets.length) {
+			argumentOffsets = new int[Math.max(nTokens, 2 * argumentOffsets.length)];
+		}
+
+		// Add the tokens to the buffer and collect the predicates.
+		for (int k = 0; k < nTokens; k++) {
+			String line = lines.get(k + 1);
+			int start = 0;
+			for (int i = 0; i < ends.length; i++) {
+				int end = line.indexOf('\t', start);
+				// There should be at least as many columns as fixed columns.
+				assert end >= 0 || i == ends.length - 1;
+				ends[i] = end < 0 ? line.length() : end;
+				start = ends[i] + 1;
+			}
+
+			// Make sure that the node ID equals the value of the ID column.
+			assert k + 1 == Integer.parseInt(line.substring(0, ends[0]));
+			// Enforce valid values for the TOP column.
+			assert isFlag(line, ends[3] + 1, ends[4]);
+			// Enforce valid values for the PRED column.
+			assert isFlag(line, ends[4] + 1, ends[5]);
+
+			boolean isTop = line.charAt(ends[3] + 1) == '+';
+			boolean isPred = line.charAt(ends[4] + 1) == '+';
+			int senseStart = format.hasSense() ? ends[5] + 1 : -1;
+			int senseEnd = format.hasSense() ? ends[6] : -1;
+			buffer.setToken(k + 1, line, ends[0] + 1, ends[1], ends[2], ends[3], senseStart, senseEnd, isTop, isPred);
+			argumentOffsets[k] = start;
+		}
+
+		// Add the edges to the buffer.
+		int nPredicates = buffer.getNPredicates();
+		for (int k = 0; k < nTokens; k++) {
+			String line = buffer.getLine(k + 1);
+			int i = 0;
+			for (int start = argumentOffsets[k]; start <= line.length(); i++) {
+				int end = line.indexOf('\t', start);
+				if (end < 0) {
+					end = line.length();
+				}
+				// There should be exactly one argument column per predicate.
+				assert i < nPredicates;
+				if (!(end - start == 1 && line.charAt(start) == '_')) {
+					buffer.addEdge(buffer.getPredicate(i), k + 1, start, end);
+				}
+				start = end + 1;
+			}
+			// There should be exactly one argument column per predicate.
+			assert i == nPredicates;
+		}
+
+		// If a node is labeled as a PRED, it should have outgoing edges.
+		assert buffer.predicatesHaveOutgoingEdges();
+	}
+
+	private static boolean isFlag(String line, int start, int end) {
+		return end - start == 1 && (line.charAt(start) == '+' || line.charAt(start) == '-');
+	}
+}
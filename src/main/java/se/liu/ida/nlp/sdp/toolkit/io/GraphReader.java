@@ -4,6 +4,9 @@
 package se.liu.ida.nlp.sdp.toolkit.io;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
 
 /**
@@ -22,10 +25,51 @@ public interface GraphReader {
 	 */
 	abstract public Graph readGraph() throws IOException;
 
+	/**
+	 * Reads a single graph into the specified buffer, replacing its contents.
+	 * Reading all graphs of a corpus into the same buffer avoids allocating
+	 * graph, node and edge objects for every graph, which benefits consumers
+	 * that inspect each graph once and then discard it. The default
+	 * implementation reads a graph using {@link #readGraph()} and copies it
+	 * into the buffer (see {@link GraphBuffer#set(Graph)}); readers that
+	 * parse files fill the buffer directly.
+	 *
+	 * @param buffer the buffer to fill
+	 * @return {@code false} if the end of the stream has been reached
+	 * @throws IOException if an I/O error occurs
+	 */
+	default public boolean readGraph(GraphBuffer buffer) throws IOException {
+		Graph graph = readGraph();
+		if (graph == null) {
+			return false;
+		}
+		buffer.set(graph);
+		return true;
+	}
+
 	/**
 	 * Closes the stream and releases any system resources associated with it.
 	 *
 	 * @throws IOException if an I/O error occurs
 	 */
 	abstract public void close() throws IOException;
+
+	/**
+	 * Returns a stream of the graphs that remain to be read. The stream is
+	 * ordered and lazy; graphs are read from this reader as the stream is
+	 * traversed. A parallel stream reads batches of graphs on the calling
+	 * thread and hands them over to other threads. Closing the stream closes
+	 * this reader.
+	 *
+	 * @return a stream of the graphs that remain to be read
+	 */
+	default public Stream<Graph> stream() {
+		return StreamSupport.stream(new GraphSpliterator(this), false).onClose(() -> {
+			try {
+				close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
 }
@@ -5,13 +5,7 @@ package se.liu.ida.nlp.sdp.toolkit.io;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.Reader;
-import java.io.UncheckedIOException;
-import java.util.ArrayList;
-import java.util.List;
-import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
-import se.liu.ida.nlp.sdp.toolkit.graph.Node;
 
 /**
  * Read semantic dependency graphs in the SDP 2015 format. The format is
@@ -20,7 +14,7 @@ import se.liu.ida.nlp.sdp.toolkit.graph.Node;
  *
  * @author Marco Kuhlmann
  */
-public class GraphReader2015 extends ParagraphReader implements GraphReader {
+public class GraphReader2015 extends AbstractGraphReader {
 
 	/**
 	 * Create a graph reader, using the default input-buffer size.
@@ -28,8 +22,18 @@ public class GraphReader2015 extends ParagraphReader implements GraphReader {
 	 * @param reader a Reader object to provide the underlying stream
 	 */
 	public GraphReader2015(Reader reader) {
-		super(reader);
-		readFirstLine();
+		super(reader, GraphFormat.SDP_2015, true);
+	}
+
+	/**
+	 * Create a graph reader, using the default input-buffer size.
+	 *
+	 * @param reader a Reader object to provide the underlying stream
+	 * @param readFirstLine flag indicating whether the stream starts with the
+	 * format identifier line
+	 */
+	GraphReader2015(Reader reader, boolean readFirstLine) {
+		super(reader, GraphFormat.SDP_2015, readFirstLine);
 	}
 
 	/**
@@ -42,8 +46,7 @@ public class GraphReader2015 extends ParagraphReader implements GraphReader {
 	 * opened for reading
 	 */
 	public GraphReader2015(File file) throws FileNotFoundException {
-		super(file);
-		readFirstLine();
+		super(file, GraphFormat.SDP_2015);
 	}
 
 	/**
@@ -56,95 +59,6 @@ public class GraphReader2015 extends ParagraphReader implements GraphReader {
 	 * opened for reading
 	 */
 	public GraphReader2015(String fileName) throws FileNotFoundException {
-		super(fileName);
-		readFirstLine();
-	}
-
-	/**
-	 * Reads the format identifier line.
-	 */
-	private void readFirstLine() {
-		try {
-			String line = super.readLine();
-			assert line.equals("#SDP 2015");
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
-		}
-	}
-
-	/**
-	 * Reads a single graph.
-	 *
-	 * @return the graph read, or {@code null} if the end of the stream has been
-	 * reached
-	 * @throws IOException if an I/O error occurs
-	 */
-	@Override
-	public Graph readGraph() throws IOException {
-		List<String> lines = super.readParagraph();
-		if (lines == null) {
-			return null;
-		} else {
-			// Every graph should contain at least one token.
-			assert lines.size() >= 2;
-			// Assert the format of the graph ID.
-			assert lines.get(0).matches("#2[0-9]{7}$");
-
-			Graph graph = new Graph(lines.get(0));
-
-			// Add the wall node.
-			graph.addNode(Constants.WALL_FORM, Constants.WALL_LEMMA, Constants.WALL_POS, false, false, Constants.WALL_SENSE);
-
-			// Add the token nodes to the graph and collect a list of predicates.
-			List<Integer> predicates = new ArrayList<Integer>();
-			for (String line : lines.subList(1, lines.size())) {
-				String[] tokens = line.split(Constants.COLUMN_SEPARATOR);
-
-				// There should be at least seven columns: ID, FORM, LEMMA, POS, TOP, PRED, SENSE
-				assert tokens.length >= 7;
-				// Enforce valid values for the TOP column.
-				assert tokens[4].equals("+") || tokens[4].equals("-");
-				// Enforce valid values for the PRED column.
-				assert tokens[5].equals("+") || tokens[5].equals("-");
-
-				String form = tokens[1];
-				String lemma = tokens[2];
-				String pos = tokens[3];
-				boolean isTop = tokens[4].equals("+");
-				boolean isPred = tokens[5].equals("+");
-				String sense = tokens[6];
-
-				Node node = graph.addNode(form, lemma, pos, isTop, isPred, sense);
-				// Make sure that the node ID equals the value of the ID column.
-				assert node.id == Integer.parseInt(tokens[0]);
-
-				if (node.isPred) {
-					predicates.add(node.id);
-				}
-			}
-
-			// Add the edges to the graph.
-			int id = 1;
-			for (String line : lines.subList(1, lines.size())) {
-				String[] tokens = line.split(Constants.COLUMN_SEPARATOR);
-
-				// There should be exactly 7 + number of predicates many columns.
-				assert tokens.length == 7 + predicates.size();
-
-				for (int i = 7; i < tokens.length; i++) {
-					if (!tokens[i].equals(Constants.UNDEFINED)) {
-						graph.addEdge(predicates.get(i - 7), id, tokens[i]);
-					}
-				}
-				id++;
-			}
-
-			// If a node is labeled as a PRED, it should have outgoing edges.
-			for (Node node : graph.getNodes()) {
-				assert !node.isPred || node.hasOutgoingEdges();
-			}
-
-			return graph;
-		}
+		this(new File(fileName));
 	}
 }
@@ -0,0 +1,181 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Open graph readers without knowing the format of the data in advance. The
+ * format is detected from the first line of the data (see
+ * {@link GraphFormat#forFirstLine(String)}), and compressed files are
+ * decompressed transparently. Manifest files of sharded corpora are opened
+ * as a single reader over all shards (see {@link ShardedCorpus}).
+ *
+ * @author Marco Kuhlmann
+ */
+public final class GraphReaders {
+
+	/**
+	 * The maximal length of a first line that can be inspected without
+	 * consuming it.
+	 */
+	private static final int MAX_FIRST_LINE_LENGTH = 1 << 16;
+
+	private GraphReaders() {
+	}
+
+	/**
+	 * Opens a graph reader for the specified file.
+	 *
+	 * @param file the file to read from
+	 * @return a graph reader for the format of the specified file
+	 * @throws IOException if an I/O error occurs, or if the file starts with
+	 * an unknown format identifier line
+	 */
+	public static GraphReader open(File file) throws IOException {
+		if (ShardedCorpus.isManifest(file)) {
+			return ShardedCorpus.read(file).openReader();
+		}
+		switch (GraphFormat.detect(file)) {
+			case SDP_2014:
+				return new GraphReader2014(file);
+			default:
+				return new GraphReader2015(file);
+		}
+	}
+
+	/**
+	 * Opens a graph reader for the specified file that decodes columns
+	 * according to the specified projection.
+	 *
+	 * @param file the file to read from
+	 * @param projection the projection specifying which columns are decoded,
+	 * and when
+	 * @return a graph reader for the format of the specified file
+	 * @throws IOException if an I/O error occurs, or if the file starts with
+	 * an unknown format identifier line
+	 */
+	public static GraphReader open(File file, Projection projection) throws IOException {
+		if (ShardedCorpus.isManifest(file)) {
+			return ShardedCorpus.read(file).openReader(projection);
+		}
+		AbstractGraphReader reader = (AbstractGraphReader) open(file);
+		reader.setProjection(projection);
+		return reader;
+	}
+
+	/**
+	 * Opens a graph reader for the specified file that validates each graph
+	 * before parsing it (see {@link GraphValidator}). Reading a malformed
+	 * graph throws an exception that reports all violations in that graph,
+	 * with their line numbers.
+	 *
+	 * @param file the file to read from
+	 * @return a validating graph reader for the format of the specified file
+	 * @throws IOException if an I/O error occurs, or if the file starts with
+	 * an unknown format identifier line
+	 * @throws IllegalArgumentException if the file is the manifest of a
+	 * sharded corpus; shards should be opened individually
+	 */
+	public static GraphReader openValidating(File file) throws IOException {
+		if (ShardedCorpus.isManifest(file)) {
+			throw new IllegalArgumentException("Cannot validate a sharded corpus as a whole: " + file);
+		}
+		AbstractGraphReader reader = (AbstractGraphReader) open(file);
+		reader.setValidating(true);
+		return reader;
+	}
+
+	/**
+	 * Opens a graph reader that follows the specified file as it is written,
+	 * like {@code tail -f} (see {@link TailInputStream}). Reading a graph
+	 * waits until the graph has been written completely. The reader signals
+	 * the end of the stream when no data has been appended to the file for
+	 * the specified time. The file must not be compressed, and need not exist
+	 * yet.
+	 *
+	 * @param file the file to follow
+	 * @param projection the projection specifying which columns are decoded,
+	 * and when
+	 * @param timeout the time without new data after which the end of the
+	 * stream is signalled, in milliseconds
+	 * @return a graph reader that follows the specified file
+	 * @throws IOException if an I/O error occurs, or if the file starts with
+	 * an unknown format identifier line
+	 */
+	public static GraphReader follow(File file, Projection projection, long timeout) throws IOException {
+		if (file.exists() && file.length() > 0 && Compression.detectFormat(file) != Compression.Format.NONE) {
+			throw new IllegalArgumentException("Cannot follow a compressed file: " + file);
+		}
+		AbstractGraphReader reader = (AbstractGraphReader) open(new InputStreamReader(new TailInputStream(file, timeout)));
+		reader.setProjection(projection);
+		return reader;
+	}
+
+	/**
+	 * Opens a graph reader for the specified file.
+	 *
+	 * @param fileName the name of the file to read from
+	 * @return a graph reader for the format of the specified file
+	 * @throws IOException if an I/O error occurs, or if the file starts with
+	 * an unknown format identifier line
+	 */
+	public static GraphReader open(String fileName) throws IOException {
+		return open(new File(fileName));
+	}
+
+	/**
+	 * Opens a graph reader for the specified file that decodes columns
+	 * according to the specified projection.
+	 *
+	 * @param fileName the name of the file to read from
+	 * @param projection the projection specifying which columns are decoded,
+	 * and when
+	 * @return a graph reader for the format of the specified file
+	 * @throws IOException if an I/O error occurs, or if the file starts with
+	 * an unknown format identifier line
+	 */
+	public static GraphReader open(String fileName, Projection projection) throws IOException {
+		return open(new File(fileName), projection);
+	}
+
+	/**
+	 * Opens a graph reader for the data provided by the specified reader.
+	 *
+	 * @param reader a Reader object to provide the underlying stream
+	 * @return a graph reader for the format of the data
+	 * @throws IOException if an I/O error occurs, or if the data starts with
+	 * an unknown format identifier line
+	 */
+	public static GraphReader open(Reader reader) throws IOException {
+		BufferedReader buffered = new BufferedReader(reader, MAX_FIRST_LINE_LENGTH);
+		buffered.mark(MAX_FIRST_LINE_LENGTH);
+		String firstLine = buffered.readLine();
+		buffered.reset();
+		GraphFormat format = GraphFormat.forFirstLine(firstLine);
+		return open(buffered, format, format.getFirstLine() != null);
+	}
+
+	/**
+	 * Opens a graph reader for the specified format.
+	 *
+	 * @param reader a Reader object to provide the underlying stream
+	 * @param format the format of the data
+	 * @param readFirstLine flag indicating whether the stream starts with the
+	 * format identifier line
+	 * @return a graph reader for the specified format
+	 */
+	static AbstractGraphReader open(Reader reader, GraphFormat format, boolean readFirstLine) {
+		switch (format) {
+			case SDP_2014:
+				return new GraphReader2014(reader);
+			default:
+				return new GraphReader2015(reader, readFirstLine);
+		}
+	}
+}
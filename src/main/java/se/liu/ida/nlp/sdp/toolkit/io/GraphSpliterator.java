@@ -0,0 +1,51 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * A spliterator over the graphs read by a graph reader. Splitting reads a
+ * batch of graphs into an array, so that parallel streams can process the
+ * batch on other threads while reading continues.
+ *
+ * @author Marco Kuhlmann
+ */
+public class GraphSpliterator extends Spliterators.AbstractSpliterator<Graph> {
+
+	/**
+	 * The underlying graph reader.
+	 */
+	private final GraphReader reader;
+
+	/**
+	 * Create a spliterator over the graphs read by the specified reader.
+	 *
+	 * @param reader the graph reader
+	 */
+	public GraphSpliterator(GraphReader reader) {
+		super(Long.MAX_VALUE, ORDERED | NONNULL);
+		this.reader = reader;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Graph> action) {
+		Graph graph;
+		try {
+			graph = reader.readGraph();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (graph == null) {
+			return false;
+		} else {
+			action.accept(graph);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,445 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Checks that graphs in one of the SDP text formats are well-formed. The
+ * validator checks the constraints that the graph readers only check using
+ * assertions: the format of the graph ID, the number of columns, the values
+ * of the ID, TOP and PRED columns, the number of argument columns, and that
+ * every predicate has outgoing edges. In addition, it rejects blank lines
+ * within the data and empty argument columns. Unlike the assertions, the
+ * checks do not depend on the {@code -ea} flag, they report every violation
+ * together with its line number, and they do not allocate memory for graphs
+ * that are well-formed.
+ * <p>
+ * Uncompressed files are split into chunks on paragraph boundaries, and the
+ * chunks are validated in parallel (see {@link #validate(File, int)}).
+ *
+ * @author Marco Kuhlmann
+ */
+public final class GraphValidator {
+
+	/**
+	 * The size of the chunks that uncompressed files are split into.
+	 */
+	private static final long CHUNK_SIZE = 1 << 24;
+
+	/**
+	 * A violation of the format, located at a line of the data.
+	 */
+	public static final class Violation implements Comparable<Violation> {
+
+		private final long lineNumber;
+		private final String message;
+
+		/**
+		 * Construct a new violation.
+		 *
+		 * @param lineNumber the number of the offending line, counting from 1
+		 * @param message a description of the violation
+		 */
+		public Violation(long lineNumber, String message) {
+			this.lineNumber = lineNumber;
+			this.message = message;
+		}
+
+		/**
+		 * Returns the number of the offending line, counting from 1.
+		 *
+		 * @return the number of the offending line
+		 */
+		public long getLineNumber() {
+			return lineNumber;
+		}
+
+		/**
+		 * Returns a description of this violation.
+		 *
+		 * @return a description of this violation
+		 */
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public int compareTo(Violation other) {
+			return Long.compare(lineNumber, other.lineNumber);
+		}
+
+		@Override
+		public String toString() {
+			return lineNumber + ": " + message;
+		}
+	}
+
+	/**
+	 * The result of validating a file or a chunk of a file.
+	 */
+	public static final class Result {
+
+		private final int maxViolations;
+		private final List<Violation> violations = new ArrayList<Violation>();
+		private long nViolations;
+		private long nGraphs;
+		private long nLines;
+
+		private Result(int maxViolations) {
+			this.maxViolations = maxViolations;
+		}
+
+		private void add(Violation violation) {
+			if (violations.size() < maxViolations) {
+				violations.add(violation);
+			}
+			nViolations++;
+		}
+
+		/**
+		 * Adds the specified result for a later chunk of the same file.
+		 */
+		private void add(Result chunk) {
+			for (Violation violation : chunk.violations) {
+				add(new Violation(nLines + violation.lineNumber, violation.message));
+			}
+			nViolations += chunk.nViolations - chunk.violations.size();
+			nGraphs += chunk.nGraphs;
+			nLines += chunk.nLines;
+		}
+
+		/**
+		 * Tests whether no violations were found.
+		 *
+		 * @return {@code true} if no violations were found
+		 */
+		public boolean isValid() {
+			return nViolations == 0;
+		}
+
+		/**
+		 * Returns the number of violations found.
+		 *
+		 * @return the number of violations found
+		 */
+		public long getNViolations() {
+			return nViolations;
+		}
+
+		/**
+		 * Returns the violations found, sorted by line number. If more
+		 * violations were found than requested, only the first ones are
+		 * returned.
+		 *
+		 * @return the violations found, sorted by line number
+		 */
+		public List<Violation> getViolations() {
+			return Collections.unmodifiableList(violations);
+		}
+
+		/**
+		 * Returns the number of graphs checked.
+		 *
+		 * @return the number of graphs checked
+		 */
+		public long getNGraphs() {
+			return nGraphs;
+		}
+	}
+
+	/**
+	 * The format validated.
+	 */
+	private final GraphFormat format;
+
+	/**
+	 * The ends of the fixed columns of the current line.
+	 */
+	private final int[] ends;
+
+	/**
+	 * For each token of the current graph, the offset of its first argument
+	 * column, or -1 if its fixed columns are malformed.
+	 */
+	private int[] argumentOffsets = new int[64];
+
+	/**
+	 * For each predicate of the current graph, the index of its token.
+	 */
+	private int[] predicates = new int[64];
+
+	/**
+	 * For each predicate of the current graph, a flag indicating whether it
+	 * has outgoing edges.
+	 */
+	private boolean[] hasOutgoingEdges = new boolean[64];
+
+	/**
+	 * Construct a new validator for the specified format.
+	 *
+	 * @param format the format to validate
+	 */
+	public GraphValidator(GraphFormat format) {
+		this.format = format;
+		this.ends = new int[format.getNFixedColumns()];
+	}
+
+	/**
+	 * Returns the format validated by this validator.
+	 *
+	 * @return the format validated by this validator
+	 */
+	public GraphFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Validates a graph given as the lines of a paragraph, and adds the
+	 * violations found to the specified list. The violations of a graph are
+	 * added in the order in which they were found, which is not necessarily
+	 * the order of their line numbers.
+	 *
+	 * @param lines the lines of the graph: the graph ID followed by one line
+	 * per token
+	 * @param firstLineNumber the line number of the graph ID
+	 * @param violations the list to which violations are added
+	 * @return the number of violations found
+	 */
+	public int validate(List<String> lines, long firstLineNumber, List<Violation> violations) {
+		int nViolations = violations.size();
+		if (lines.isEmpty()) {
+			violations.add(new Violation(firstLineNumber, "Unexpected blank line"));
+			return 1;
+		}
+		String id = lines.get(0);
+		if (!isGraphId(id)) {
+			violations.add(new Violation(firstLineNumber, "Malformed graph ID: " + id));
+		}
+		int nTokens = lines.size() - 1;
+		if (nTokens == 0) {
+			violations.add(new Violation(firstLineNumber, "Graph without tokens"));
+		}
+		if (nTokens > argumentOffsets.length) {
+			argumentOffsets = new int[Math.max(nTokens, 2 * argumentOffsets.length)];
+		}
+
+		// Check the fixed columns and collect the predicates.
+		int nPredicates = 0;
+		boolean hasValidPredFlags = true;
+		for (int k = 0; k < nTokens; k++) {
+			String line = lines.get(k + 1);
+			long lineNumber = firstLineNumber + k + 1;
+			argumentOffsets[k] = -1;
+			int nColumns = 0;
+			int start = 0;
+			while (nColumns < ends.length) {
+				int end = line.indexOf('\t', start);
+				ends[nColumns++] = end < 0 ? line.length() : end;
+				start = ends[nColumns - 1] + 1;
+				if (end < 0) {
+					break;
+				}
+			}
+			if (nColumns < ends.length) {
+				violations.add(new Violation(lineNumber, String.format("Expected at least %d columns, found %d", ends.length, nColumns)));
+				hasValidPredFlags = false;
+				continue;
+			}
+			if (!isNumber(line, 0, ends[0], k + 1)) {
+				violations.add(new Violation(lineNumber, String.format("Expected ID %d, found %s", k + 1, line.substring(0, ends[0]))));
+			}
+			if (!isFlag(line, ends[3] + 1, ends[4])) {
+				violations.add(new Violation(lineNumber, "Invalid TOP value: " + line.substring(ends[3] + 1, ends[4])));
+			}
+			if (!isFlag(line, ends[4] + 1, ends[5])) {
+				violations.add(new Violation(lineNumber, "Invalid PRED value: " + line.substring(ends[4] + 1, ends[5])));
+				hasValidPredFlags = false;
+			} else if (line.charAt(ends[4] + 1) == '+') {
+				if (nPredicates == predicates.length) {
+					predicates = Arrays.copyOf(predicates, 2 * nPredicates);
+					hasOutgoingEdges = Arrays.copyOf(hasOutgoingEdges, 2 * nPredicates);
+				}
+				predicates[nPredicates] = k;
+				hasOutgoingEdges[nPredicates] = false;
+				nPredicates++;
+			}
+			argumentOffsets[k] = start;
+		}
+
+		// Check the argument columns. If the PRED column of some token is
+		// malformed, the number of predicates is unknown, and only the
+		// columns themselves are checked.
+		for (int k = 0; k < nTokens; k++) {
+			if (argumentOffsets[k] < 0) {
+				continue;
+			}
+			String line = lines.get(k + 1);
+			long lineNumber = firstLineNumber + k + 1;
+			int i = 0;
+			for (int start = argumentOffsets[k]; start <= line.length(); i++) {
+				int end = line.indexOf('\t', start);
+				if (end < 0) {
+					end = line.length();
+				}
+				if (end == start) {
+					violations.add(new Violation(lineNumber, String.format("Empty argument column %d", i + 1)));
+				} else if (i < nPredicates && !(end - start == 1 && line.charAt(start) == '_')) {
+					hasOutgoingEdges[i] = true;
+				}
+				start = end + 1;
+			}
+			if (hasValidPredFlags && i != nPredicates) {
+				violations.add(new Violation(lineNumber, String.format("Expected %d argument columns, found %d", nPredicates, i)));
+			}
+		}
+
+		// Every predicate should have outgoing edges.
+		for (int i = 0; i < nPredicates; i++) {
+			if (hasValidPredFlags && !hasOutgoingEdges[i]) {
+				violations.add(new Violation(firstLineNumber + predicates[i] + 1, "Predicate without outgoing edges"));
+			}
+		}
+		return violations.size() - nViolations;
+	}
+
+	private static boolean isGraphId(String id) {
+		if (id.length() != 9 || id.charAt(0) != '#' || id.charAt(1) != '2') {
+			return false;
+		}
+		for (int i = 2; i < 9; i++) {
+			if (!isDigit(id.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isNumber(String line, int start, int end, int value) {
+		if (start == end || end - start > 9) {
+			return false;
+		}
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			if (!isDigit(c)) {
+				return false;
+			}
+			n = n * 10 + (c - '0');
+		}
+		return n == value;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isFlag(String line, int start, int end) {
+		return end - start == 1 && (line.charAt(start) == '+' || line.charAt(start) == '-');
+	}
+
+	/**
+	 * Validates the specified file. Uncompressed files are split into chunks
+	 * on paragraph boundaries, and the chunks are validated in parallel;
+	 * compressed files are validated sequentially.
+	 *
+	 * @param file the file to validate
+	 * @param maxViolations the maximal number of violations to return; all
+	 * violations are counted
+	 * @return the result of the validation
+	 * @throws IOException if an I/O error occurs, or if the file starts with
+	 * an unknown format identifier line
+	 */
+	public static Result validate(File file, int maxViolations) throws IOException {
+		GraphFormat format = GraphFormat.detect(file);
+		if (Compression.detectFormat(file) != Compression.Format.NONE) {
+			ParagraphReader reader = new ParagraphReader(file);
+			try {
+				return validate(reader, format, true, maxViolations);
+			} finally {
+				reader.close();
+			}
+		}
+		List<Long> offsets = new ArrayList<Long>();
+		long length = file.length();
+		long offset = 0;
+		do {
+			offsets.add(offset);
+			offset = offset + CHUNK_SIZE < length ? GraphFileSpliterator.findParagraphStart(file, offset + CHUNK_SIZE, length) : length;
+		} while (offset < length);
+		offsets.add(length);
+		List<Result> chunks;
+		try {
+			chunks = IntStream.range(0, offsets.size() - 1).parallel().mapToObj(i -> {
+				try {
+					return validate(file, format, offsets.get(i), offsets.get(i + 1), maxViolations);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		Result result = new Result(maxViolations);
+		for (Result chunk : chunks) {
+			result.add(chunk);
+		}
+		return result;
+	}
+
+	/**
+	 * Validates the specified byte range of an uncompressed file. Line
+	 * numbers are relative to the start of the range.
+	 */
+	private static Result validate(File file, GraphFormat format, long from, long to, int maxViolations) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		channel.position(from);
+		InputStream in = new GraphFileSpliterator.BoundedInputStream(Channels.newInputStream(channel), to - from);
+		ParagraphReader reader = new ParagraphReader(new InputStreamReader(in));
+		try {
+			return validate(reader, format, from == 0, maxViolations);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static Result validate(ParagraphReader reader, GraphFormat format, boolean readFirstLine, int maxViolations) throws IOException {
+		GraphValidator validator = new GraphValidator(format);
+		Result result = new Result(maxViolations);
+		List<String> lines = new ArrayList<String>();
+		List<Violation> violations = new ArrayList<Violation>();
+		if (readFirstLine && format.getFirstLine() != null) {
+			reader.readLine();
+		}
+		long lineNumber = reader.getLineNumber() + 1;
+		while (reader.readParagraph(lines)) {
+			if (!lines.isEmpty()) {
+				result.nGraphs++;
+			}
+			if (validator.validate(lines, lineNumber, violations) > 0) {
+				Collections.sort(violations);
+				for (Violation violation : violations) {
+					result.add(violation);
+				}
+				violations.clear();
+			}
+			lineNumber = reader.getLineNumber() + 1;
+		}
+		result.nLines = reader.getLineNumber();
+		return result;
+	}
+}
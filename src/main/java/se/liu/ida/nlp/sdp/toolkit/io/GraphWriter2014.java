@@ -5,8 +5,8 @@ package se.liu.ida.nlp.sdp.toolkit.io;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import se.liu.ida.nlp.sdp.toolkit.graph.Edge;
 import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
@@ -36,7 +36,9 @@ public class GraphWriter2014 implements GraphWriter {
 	}
 
 	/**
-	 * Create a graph writer that writes to the specified file.
+	 * Create a graph writer that writes to the specified file. The output is
+	 * compressed if the file name has the extension of a compression format
+	 * (see {@link Compression}).
 	 *
 	 * @param file the file to write to
 	 * @throws IOException if the specified file does not exist, is a directory
@@ -44,7 +46,7 @@ public class GraphWriter2014 implements GraphWriter {
 	 * writing
 	 */
 	public GraphWriter2014(File file) throws IOException {
-		this(new PrintWriter(new BufferedWriter(new FileWriter(file))));
+		this(new PrintWriter(new BufferedWriter(new OutputStreamWriter(Compression.create(file)))));
 	}
 
 	/**
@@ -67,6 +69,9 @@ public class GraphWriter2014 implements GraphWriter {
 	 */
 	@Override
 	public void writeGraph(Graph graph) throws IOException {
+		long start = GraphWriter2015.FORMAT_TIME.start();
+		int nLineSeparators = 2;
+		long nChars = graph.id.length();
 		int nNodes = graph.getNNodes();
 
 		String[][] labels = new String[nNodes][nNodes];
@@ -83,13 +88,13 @@ public class GraphWriter2014 implements GraphWriter {
 				sb.append(Integer.toString(node.id));
 				sb.append(Constants.COLUMN_SEPARATOR);
 				// Field 2: FORM
-				sb.append(node.form);
+				sb.append(node.getForm());
 				sb.append(Constants.COLUMN_SEPARATOR);
 				// Field 3: LEMMA
-				sb.append(node.lemma);
+				sb.append(node.getLemma());
 				sb.append(Constants.COLUMN_SEPARATOR);
 				// Field 4: POS
-				sb.append(node.pos);
+				sb.append(node.getPos());
 				sb.append(Constants.COLUMN_SEPARATOR);
 				// Field 5: TOP
 				sb.append(node.isTop ? "+" : "-");
@@ -110,10 +115,15 @@ public class GraphWriter2014 implements GraphWriter {
 				}
 
 				writer.println(sb.toString());
+				nLineSeparators++;
+				nChars += sb.length();
 			}
 		}
 
 		writer.println();
+		GraphWriter2015.FORMAT_TIME.stop(start);
+		GraphWriter2015.GRAPHS.add(1);
+		GraphWriter2015.CHARS.add(nChars + nLineSeparators * System.lineSeparator().length());
 	}
 
 	/**
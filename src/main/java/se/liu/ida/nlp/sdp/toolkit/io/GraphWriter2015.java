@@ -5,8 +5,8 @@ package se.liu.ida.nlp.sdp.toolkit.io;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import se.liu.ida.nlp.sdp.toolkit.graph.Edge;
 import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
@@ -37,7 +37,9 @@ public class GraphWriter2015 implements GraphWriter {
 	}
 
 	/**
-	 * Create a graph writer that writes to the specified file.
+	 * Create a graph writer that writes to the specified file. The output is
+	 * compressed if the file name has the extension of a compression format
+	 * (see {@link Compression}).
 	 *
 	 * @param file the file to write to
 	 * @throws IOException if the specified file does not exist, is a directory
@@ -45,7 +47,7 @@ public class GraphWriter2015 implements GraphWriter {
 	 * writing
 	 */
 	public GraphWriter2015(File file) throws IOException {
-		this(new PrintWriter(new BufferedWriter(new FileWriter(file))));
+		this(new PrintWriter(new BufferedWriter(new OutputStreamWriter(Compression.create(file)))));
 	}
 
 	/**
@@ -75,6 +77,37 @@ public class GraphWriter2015 implements GraphWriter {
 	 */
 	@Override
 	public void writeGraph(Graph graph) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		appendGraph(graph, sb, System.lineSeparator());
+		writer.print(sb);
+	}
+
+	/**
+	 * Metrics for writing: the number of graphs and characters formatted,
+	 * and the formatting time per graph.
+	 */
+	static final Metrics.Counter GRAPHS = Metrics.counter("writer.graphs");
+	static final Metrics.Counter CHARS = Metrics.counter("writer.chars");
+	static final Metrics.Timer FORMAT_TIME = Metrics.timer("writer.formatTime");
+
+	/**
+	 * Appends a single graph in the SDP 2015 format to the specified string
+	 * builder.
+	 *
+	 * @param graph the graph to be appended
+	 * @param sb the string builder to append to
+	 * @param lineSeparator the line separator to use
+	 */
+	static void appendGraph(Graph graph, StringBuilder sb, String lineSeparator) {
+		long start = FORMAT_TIME.start();
+		int length = sb.length();
+		appendLines(graph, sb, lineSeparator);
+		FORMAT_TIME.stop(start);
+		GRAPHS.add(1);
+		CHARS.add(sb.length() - length);
+	}
+
+	private static void appendLines(Graph graph, StringBuilder sb, String lineSeparator) {
 		int nNodes = graph.getNNodes();
 
 		String[][] labels = new String[nNodes][nNodes];
@@ -82,22 +115,22 @@ public class GraphWriter2015 implements GraphWriter {
 			labels[edge.source][edge.target] = edge.label;
 		}
 
-		writer.println(graph.id);
+		sb.append(graph.id);
+		sb.append(lineSeparator);
 
 		for (Node node : graph.getNodes()) {
 			if (node.id > 0) {
-				StringBuilder sb = new StringBuilder();
 				// Field 1: ID
-				sb.append(Integer.toString(node.id));
+				sb.append(node.id);
 				sb.append(Constants.COLUMN_SEPARATOR);
 				// Field 2: FORM
-				sb.append(node.form);
+				sb.append(node.getForm());
 				sb.append(Constants.COLUMN_SEPARATOR);
 				// Field 3: LEMMA
-				sb.append(node.lemma);
+				sb.append(node.getLemma());
 				sb.append(Constants.COLUMN_SEPARATOR);
 				// Field 4: POS
-				sb.append(node.pos);
+				sb.append(node.getPos());
 				sb.append(Constants.COLUMN_SEPARATOR);
 				// Field 5: TOP
 				sb.append(node.isTop ? "+" : "-");
@@ -106,7 +139,7 @@ public class GraphWriter2015 implements GraphWriter {
 				sb.append(node.isPred ? "+" : "-");
 				sb.append(Constants.COLUMN_SEPARATOR);
 				// Field 7: SENSE
-				sb.append(node.sense);
+				sb.append(node.getSense());
 
 				for (Node source : graph.getNodes().subList(1, nNodes)) {
 					if (source.isPred) {
@@ -120,11 +153,11 @@ public class GraphWriter2015 implements GraphWriter {
 					}
 				}
 
-				writer.println(sb.toString());
+				sb.append(lineSeparator);
 			}
 		}
 
-		writer.println();
+		sb.append(lineSeparator);
 	}
 
 	/**
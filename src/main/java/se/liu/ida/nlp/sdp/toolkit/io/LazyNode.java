@@ -0,0 +1,85 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import se.liu.ida.nlp.sdp.toolkit.graph.Node;
+
+/**
+ * A node that decodes its columns from the line it was read from when they
+ * are first accessed. The public attribute fields of a lazy node are
+ * {@code null}; the attributes are only available through the getters.
+ *
+ * @author Marco Kuhlmann
+ */
+final class LazyNode extends Node {
+
+	/**
+	 * The line this node was read from.
+	 */
+	private final String line;
+
+	/**
+	 * The projection specifying which columns can be decoded.
+	 */
+	private final Projection projection;
+
+	/**
+	 * The offsets of the column boundaries in the line: the start of FORM,
+	 * the ends of FORM, LEMMA and POS, and the start and end of SENSE (-1 if
+	 * the format has no SENSE column).
+	 */
+	private final int formStart, formEnd, lemmaEnd, posEnd, senseStart, senseEnd;
+
+	/**
+	 * The decoded columns, or {@code null} if not yet decoded.
+	 */
+	private String decodedForm, decodedLemma, decodedPos, decodedSense;
+
+	/**
+	 * Construct a new lazy node.
+	 */
+	LazyNode(int id, String line, Projection projection, int formStart, int formEnd, int lemmaEnd, int posEnd, int senseStart, int senseEnd, boolean isTop, boolean isPred) {
+		super(id, null, null, null, isTop, isPred, null);
+		this.line = line;
+		this.projection = projection;
+		this.formStart = formStart;
+		this.formEnd = formEnd;
+		this.lemmaEnd = lemmaEnd;
+		this.posEnd = posEnd;
+		this.senseStart = senseStart;
+		this.senseEnd = senseEnd;
+	}
+
+	@Override
+	public String getForm() {
+		if (decodedForm == null && projection.includes(Projection.Column.FORM)) {
+			decodedForm = line.substring(formStart, formEnd);
+		}
+		return decodedForm;
+	}
+
+	@Override
+	public String getLemma() {
+		if (decodedLemma == null && projection.includes(Projection.Column.LEMMA)) {
+			decodedLemma = line.substring(formEnd + 1, lemmaEnd);
+		}
+		return decodedLemma;
+	}
+
+	@Override
+	public String getPos() {
+		if (decodedPos == null && projection.includes(Projection.Column.POS)) {
+			decodedPos = line.substring(lemmaEnd + 1, posEnd);
+		}
+		return decodedPos;
+	}
+
+	@Override
+	public String getSense() {
+		if (decodedSense == null && projection.includes(Projection.Column.SENSE)) {
+			decodedSense = senseStart < 0 ? Constants.UNDEFINED : line.substring(senseStart, senseEnd);
+		}
+		return decodedSense;
+	}
+}
@@ -0,0 +1,495 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+/**
+ * Counters, timers and histograms that report where time goes in the readers,
+ * writers and tools. Metrics are disabled by default; when they are disabled,
+ * instrumented code does not record anything. They are enabled by one of the
+ * following system properties:
+ * <ul>
+ * <li>{@code sdp.metrics=FILE} writes all metrics as a JSON object to the
+ * specified file when the virtual machine exits</li>
+ * <li>{@code sdp.metrics.jmx=true} registers an MBean named
+ * {@code se.liu.ida.nlp.sdp.toolkit:type=Metrics} whose attributes are the
+ * current metric values</li>
+ * </ul>
+ * Metric values are reported under flat names: a counter under its name, a
+ * timer as {@code NAME.count} and {@code NAME.totalMillis}, a histogram as
+ * {@code NAME.count}, {@code NAME.mean}, {@code NAME.max}, percentile
+ * estimates, and one count per power-of-two bucket.
+ *
+ * @author Marco Kuhlmann
+ */
+public final class Metrics {
+
+	/**
+	 * The name of the MBean through which metrics are exposed.
+	 */
+	public static final String MBEAN_NAME = "se.liu.ida.nlp.sdp.toolkit:type=Metrics";
+
+	/**
+	 * A flag indicating whether metrics are recorded.
+	 */
+	private static final boolean IS_ENABLED = System.getProperty("sdp.metrics") != null || Boolean.getBoolean("sdp.metrics.jmx");
+
+	/**
+	 * The registered metrics, by name.
+	 */
+	private static final ConcurrentMap<String, Metric> METRICS = new ConcurrentHashMap<String, Metric>();
+
+	static {
+		String fileName = System.getProperty("sdp.metrics");
+		if (fileName != null) {
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					writeJson(new File(fileName));
+				} catch (IOException e) {
+					System.err.format("Cannot write metrics: %s%n", e.getMessage());
+				}
+			}, "Metrics"));
+		}
+		if (Boolean.getBoolean("sdp.metrics.jmx")) {
+			registerMBean();
+		}
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * Tests whether metrics are recorded.
+	 *
+	 * @return {@code true} if metrics are recorded
+	 */
+	public static boolean isEnabled() {
+		return IS_ENABLED;
+	}
+
+	/**
+	 * A metric that reports one or more values.
+	 */
+	private interface Metric {
+
+		void addValues(String name, Map<String, Number> values);
+	}
+
+	/**
+	 * A counter.
+	 */
+	public static final class Counter implements Metric {
+
+		private final LongAdder value = new LongAdder();
+
+		/**
+		 * Adds the specified amount to this counter, if metrics are enabled.
+		 *
+		 * @param n the amount to add
+		 */
+		public void add(long n) {
+			if (IS_ENABLED) {
+				value.add(n);
+			}
+		}
+
+		/**
+		 * Returns the current value of this counter.
+		 *
+		 * @return the current value of this counter
+		 */
+		public long get() {
+			return value.sum();
+		}
+
+		@Override
+		public void addValues(String name, Map<String, Number> values) {
+			values.put(name, get());
+		}
+	}
+
+	/**
+	 * A value that is set rather than accumulated, such as a rate computed at
+	 * the end of a phase.
+	 */
+	public static final class Gauge implements Metric {
+
+		private volatile double value;
+
+		/**
+		 * Sets the value of this gauge, if metrics are enabled.
+		 *
+		 * @param value the new value
+		 */
+		public void set(double value) {
+			if (IS_ENABLED) {
+				this.value = value;
+			}
+		}
+
+		@Override
+		public void addValues(String name, Map<String, Number> values) {
+			values.put(name, value);
+		}
+	}
+
+	/**
+	 * A timer that accumulates the number and the total duration of timed
+	 * events.
+	 */
+	public static final class Timer implements Metric {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+
+		/**
+		 * Returns the start time of an event, to be passed to
+		 * {@link #stop(long)}.
+		 *
+		 * @return the start time of an event, or 0 if metrics are disabled
+		 */
+		public long start() {
+			return IS_ENABLED ? System.nanoTime() : 0L;
+		}
+
+		/**
+		 * Records an event that started at the specified time.
+		 *
+		 * @param startNanos the value returned by {@link #start()}
+		 */
+		public void stop(long startNanos) {
+			if (IS_ENABLED) {
+				count.increment();
+				totalNanos.add(System.nanoTime() - startNanos);
+			}
+		}
+
+		/**
+		 * Returns the number of recorded events.
+		 *
+		 * @return the number of recorded events
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * Returns the total duration of the recorded events in nanoseconds.
+		 *
+		 * @return the total duration of the recorded events in nanoseconds
+		 */
+		public long getTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		@Override
+		public void addValues(String name, Map<String, Number> values) {
+			values.put(name + ".count", getCount());
+			values.put(name + ".totalMillis", getTotalNanos() / 1e6);
+		}
+	}
+
+	/**
+	 * A histogram of non-negative values with one bucket per power of two.
+	 * Bucket {@code k} holds the values {@code v} with
+	 * {@code 2^(k-1) <= v < 2^k}; bucket 0 holds the value 0.
+	 */
+	public static final class Histogram implements Metric {
+
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+		/**
+		 * Records a value, if metrics are enabled.
+		 *
+		 * @param value the value to record
+		 */
+		public void record(long value) {
+			if (IS_ENABLED) {
+				buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(value, 0L)));
+				sum.add(value);
+				max.accumulate(value);
+			}
+		}
+
+		/**
+		 * Returns an upper bound for the specified quantile of the recorded
+		 * values: the exclusive upper limit of the bucket that contains it,
+		 * capped at the maximal value.
+		 *
+		 * @param q the quantile, between 0 and 1
+		 * @return an upper bound for the quantile
+		 */
+		public long getQuantile(double q) {
+			long count = getCount();
+			long seen = 0;
+			for (int k = 0; k < 64; k++) {
+				seen += buckets.get(k);
+				if (seen > 0 && seen >= q * count) {
+					return Math.min(k == 0 ? 0L : (1L << k) - 1, max.get());
+				}
+			}
+			return max.get();
+		}
+
+		/**
+		 * Returns the number of recorded values.
+		 *
+		 * @return the number of recorded values
+		 */
+		public long getCount() {
+			long count = 0;
+			for (int k = 0; k < 64; k++) {
+				count += buckets.get(k);
+			}
+			return count;
+		}
+
+		@Override
+		public void addValues(String name, Map<String, Number> values) {
+			long count = getCount();
+			values.put(name + ".count", count);
+			values.put(name + ".mean", count == 0 ? 0.0 : (double) sum.sum() / count);
+			values.put(name + ".max", max.get());
+			values.put(name + ".p50", getQuantile(0.5));
+			values.put(name + ".p90", getQuantile(0.9));
+			values.put(name + ".p99", getQuantile(0.99));
+			for (int k = 0; k < 64; k++) {
+				if (buckets.get(k) > 0) {
+					values.put(String.format("%s.lt%d", name, 1L << k), buckets.get(k));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the counter with the specified name, creating it if necessary.
+	 *
+	 * @param name the name of the counter
+	 * @return the counter with the specified name
+	 */
+	public static Counter counter(String name) {
+		return register(name, new Counter());
+	}
+
+	/**
+	 * Returns the gauge with the specified name, creating it if necessary.
+	 *
+	 * @param name the name of the gauge
+	 * @return the gauge with the specified name
+	 */
+	public static Gauge gauge(String name) {
+		return register(name, new Gauge());
+	}
+
+	/**
+	 * Returns the timer with the specified name, creating it if necessary.
+	 *
+	 * @param name the name of the timer
+	 * @return the timer with the specified name
+	 */
+	public static Timer timer(String name) {
+		return register(name, new Timer());
+	}
+
+	/**
+	 * Returns the histogram with the specified name, creating it if
+	 * necessary.
+	 *
+	 * @param name the name of the histogram
+	 * @return the histogram with the specified name
+	 */
+	public static Histogram histogram(String name) {
+		return register(name, new Histogram());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <M extends Metric> M register(String name, M metric) {
+		Metric existing = METRICS.putIfAbsent(name, metric);
+		if (existing == null) {
+			return metric;
+		}
+		if (existing.getClass() != metric.getClass()) {
+			throw new IllegalArgumentException("Metric already registered with a different type: " + name);
+		}
+		return (M) existing;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far, if
+	 * the virtual machine supports this measurement.
+	 *
+	 * @return the number of bytes allocated by the current thread, or -1 if
+	 * this is not supported
+	 */
+	public static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1L;
+	}
+
+	/**
+	 * Returns the current values of all metrics, sorted by name.
+	 *
+	 * @return the current values of all metrics
+	 */
+	public static SortedMap<String, Number> getValues() {
+		SortedMap<String, Number> values = new TreeMap<String, Number>();
+		for (Map.Entry<String, Metric> entry : METRICS.entrySet()) {
+			entry.getValue().addValues(entry.getKey(), values);
+		}
+		return values;
+	}
+
+	/**
+	 * Writes the current values of all metrics to the specified file, as a
+	 * JSON object.
+	 *
+	 * @param file the file to write to
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void writeJson(File file) throws IOException {
+		PrintWriter writer = new PrintWriter(file);
+		try {
+			writeJson(writer);
+		} finally {
+			writer.close();
+		}
+		if (writer.checkError()) {
+			throw new IOException("Cannot write metrics: " + file);
+		}
+	}
+
+	/**
+	 * Writes the current values of all metrics to the specified writer, as a
+	 * JSON object. Values that are not finite numbers are written as
+	 * {@code null}.
+	 *
+	 * @param writer the writer to write to
+	 */
+	public static void writeJson(PrintWriter writer) {
+		writer.print("{");
+		String separator = "\n";
+		for (Map.Entry<String, Number> entry : getValues().entrySet()) {
+			Number value = entry.getValue();
+			boolean isFinite = !(value instanceof Double || value instanceof Float) || Double.isFinite(value.doubleValue());
+			writer.print(separator);
+			writer.print(String.format("  %s: %s", quote(entry.getKey()), isFinite ? value : "null"));
+			separator = ",\n";
+		}
+		writer.print("\n}\n");
+	}
+
+	/**
+	 * Returns the specified string as a JSON string literal.
+	 *
+	 * @param s a string
+	 * @return the JSON string literal for the specified string
+	 */
+	private static String quote(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * Registers the metrics MBean with the platform MBean server, unless it
+	 * has already been registered.
+	 */
+	public static synchronized void registerMBean() {
+		try {
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register metrics MBean", e);
+		}
+	}
+
+	/**
+	 * An MBean that exposes the current metric values as read-only
+	 * attributes.
+	 */
+	private static class MetricsMBean implements DynamicMBean {
+
+		@Override
+		public Object getAttribute(String attribute) {
+			return getValues().get(attribute);
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) {
+			throw new UnsupportedOperationException("Metrics are read-only");
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			SortedMap<String, Number> values = getValues();
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				if (values.containsKey(attribute)) {
+					list.add(new Attribute(attribute, values.get(attribute)));
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			throw new UnsupportedOperationException(actionName);
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			SortedMap<String, Number> values = getValues();
+			MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+			int i = 0;
+			for (Map.Entry<String, Number> entry : values.entrySet()) {
+				attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(), entry.getKey(), true, false, false);
+			}
+			return new MBeanInfo(Metrics.class.getName(), "SDP toolkit metrics", attributes, null, null, null);
+		}
+	}
+}
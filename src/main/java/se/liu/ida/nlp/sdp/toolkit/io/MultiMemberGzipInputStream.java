@@ -0,0 +1,216 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * An input stream that decompresses gzip data consisting of one or more
+ * members, such as the output of {@link BlockGzipOutputStream}. Unlike
+ * {@link java.util.zip.GZIPInputStream}, which only looks for a further member
+ * if the underlying stream reports available bytes, this stream reads members
+ * until the underlying stream actually ends, so that data read from a pipe is
+ * not truncated. Bytes following the last member that do not start another
+ * member are reported as an error.
+ *
+ * @author Marco Kuhlmann
+ */
+class MultiMemberGzipInputStream extends InputStream {
+
+	/**
+	 * The header flags of the gzip format.
+	 */
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	/**
+	 * The underlying stream. Bytes that were read beyond the end of the
+	 * compressed data of a member are pushed back into it.
+	 */
+	private final PushbackInputStream in;
+
+	/**
+	 * The decompressor.
+	 */
+	private final Inflater inflater;
+
+	/**
+	 * The checksum of the current member.
+	 */
+	private final CRC32 crc;
+
+	/**
+	 * The buffer holding compressed input.
+	 */
+	private final byte[] buffer;
+
+	/**
+	 * The number of bytes of compressed input in the buffer.
+	 */
+	private int length;
+
+	/**
+	 * The number of uncompressed bytes of the current member.
+	 */
+	private long memberSize;
+
+	/**
+	 * Indicates whether the end of the last member has been reached.
+	 */
+	private boolean isAtEnd;
+
+	/**
+	 * Create a stream that decompresses the specified stream, and reads the
+	 * header of the first member.
+	 *
+	 * @param in the underlying stream
+	 * @param bufferSize the size of the buffer for compressed input
+	 * @throws IOException if an I/O error occurs, or if the stream does not
+	 * start with a gzip header
+	 */
+	public MultiMemberGzipInputStream(InputStream in, int bufferSize) throws IOException {
+		this.in = new PushbackInputStream(in, bufferSize);
+		this.inflater = new Inflater(true);
+		this.crc = new CRC32();
+		this.buffer = new byte[bufferSize];
+		readHeader(readUnsignedByte());
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (!isAtEnd) {
+			if (inflater.finished()) {
+				finishMember();
+				continue;
+			}
+			if (inflater.needsInput()) {
+				length = in.read(buffer, 0, buffer.length);
+				if (length == -1) {
+					throw new EOFException("Unexpected end of gzip data");
+				}
+				inflater.setInput(buffer, 0, length);
+			}
+			int n;
+			try {
+				n = inflater.inflate(b, off, len);
+			} catch (DataFormatException e) {
+				throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid gzip data");
+			}
+			if (n > 0) {
+				crc.update(b, off, n);
+				memberSize += n;
+				return n;
+			}
+			if (inflater.needsDictionary()) {
+				throw new ZipException("Invalid gzip data");
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads the trailer of the current member and checks it. If another
+	 * member follows, reads its header; otherwise, marks the end of the
+	 * stream.
+	 */
+	private void finishMember() throws IOException {
+		int remaining = inflater.getRemaining();
+		if (remaining > 0) {
+			in.unread(buffer, length - remaining, remaining);
+		}
+		long expectedCrc = readInt() & 0xffffffffL;
+		long expectedSize = readInt() & 0xffffffffL;
+		if (expectedCrc != crc.getValue()) {
+			throw new ZipException("Corrupt gzip data: checksum mismatch");
+		}
+		if (expectedSize != (memberSize & 0xffffffffL)) {
+			throw new ZipException("Corrupt gzip data: size mismatch");
+		}
+		int b = in.read();
+		if (b == -1) {
+			isAtEnd = true;
+		} else {
+			inflater.reset();
+			crc.reset();
+			memberSize = 0;
+			readHeader(b);
+		}
+	}
+
+	/**
+	 * Reads the header of a member, given its first byte.
+	 */
+	private void readHeader(int first) throws IOException {
+		if (first != 0x1f || readUnsignedByte() != 0x8b) {
+			throw new ZipException("Not in gzip format");
+		}
+		if (readUnsignedByte() != 8) {
+			throw new ZipException("Unsupported gzip compression method");
+		}
+		int flags = readUnsignedByte();
+		// Skip the modification time, the extra flags and the operating system.
+		skipBytes(6);
+		if ((flags & FEXTRA) != 0) {
+			skipBytes(readUnsignedByte() | readUnsignedByte() << 8);
+		}
+		if ((flags & FNAME) != 0) {
+			while (readUnsignedByte() != 0) {
+			}
+		}
+		if ((flags & FCOMMENT) != 0) {
+			while (readUnsignedByte() != 0) {
+			}
+		}
+		if ((flags & FHCRC) != 0) {
+			skipBytes(2);
+		}
+	}
+
+	private int readInt() throws IOException {
+		return readUnsignedByte() | readUnsignedByte() << 8 | readUnsignedByte() << 16 | readUnsignedByte() << 24;
+	}
+
+	private void skipBytes(int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			readUnsignedByte();
+		}
+	}
+
+	private int readUnsignedByte() throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException("Unexpected end of gzip data");
+		}
+		return b;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return isAtEnd ? 0 : 1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		inflater.end();
+		in.close();
+	}
+}
@@ -5,12 +5,12 @@ package se.liu.ida.nlp.sdp.toolkit.io;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.LineNumberReader;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -42,7 +42,8 @@ public class ParagraphReader extends LineNumberReader {
 
     /**
      * Create a paragraph reader that reads from the specified file. The file
-     * will be read using the default input-buffer size.
+     * will be read using the default input-buffer size. Compressed files are
+     * decompressed transparently (see {@link Compression}).
      *
      * @param file the file to read from
      * @throws FileNotFoundException if the specified file does not exist, is a
@@ -50,12 +51,13 @@ public class ParagraphReader extends LineNumberReader {
      * opened for reading
      */
     public ParagraphReader(File file) throws FileNotFoundException {
-        super(new FileReader(file));
+        super(new InputStreamReader(Compression.open(file)));
     }
 
     /**
      * Create a paragraph reader that reads from the specified file. The file
-     * will be read using the default input-buffer size.
+     * will be read using the default input-buffer size. Compressed files are
+     * decompressed transparently (see {@link Compression}).
      *
      * @param fileName the name of the file to read from
      * @throws FileNotFoundException if the specified file does not exist, is a
@@ -63,7 +65,7 @@ public class ParagraphReader extends LineNumberReader {
      * opened for reading
      */
     public ParagraphReader(String fileName) throws FileNotFoundException {
-        super(new FileReader(fileName));
+        this(new File(fileName));
     }
 
     /**
@@ -82,7 +84,7 @@ public class ParagraphReader extends LineNumberReader {
             if (line.isEmpty()) {
                 return Collections.<String>emptyList();
             } else {
-                List<String> lines = new LinkedList<String>();
+                List<String> lines = new ArrayList<String>();
                 do {
                     lines.add(line);
                 } while ((line = super.readLine()) != null && !line.isEmpty());
@@ -90,4 +92,27 @@ public class ParagraphReader extends LineNumberReader {
             }
         }
     }
+
+    /**
+     * Reads a single paragraph into the specified list, replacing its
+     * contents. This allows a caller that reads many paragraphs to reuse the
+     * same list.
+     *
+     * @param lines the list to fill with the lines of the paragraph read
+     * @return {@code false} if the end of the stream has been reached
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean readParagraph(List<String> lines) throws IOException {
+        lines.clear();
+        String line = super.readLine();
+        if (line == null) {
+            return false;
+        } else {
+            while (line != null && !line.isEmpty()) {
+                lines.add(line);
+                line = super.readLine();
+            }
+            return true;
+        }
+    }
 }
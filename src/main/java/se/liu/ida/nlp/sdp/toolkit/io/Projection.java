@@ -0,0 +1,104 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Specifies which token attributes a graph reader decodes, and when. Columns
+ * that are not part of the projection are skipped, and the corresponding
+ * attributes of the nodes read are {@code null}. In lazy mode, the included
+ * columns are decoded only when they are first accessed through the getters
+ * of {@link se.liu.ida.nlp.sdp.toolkit.graph.Node}; until then, a node only
+ * records the offsets of its columns in the line it was read from. The ID,
+ * TOP and PRED columns and the edges are always decoded.
+ *
+ * @author Marco Kuhlmann
+ */
+public final class Projection {
+
+	/**
+	 * The columns that can be skipped or decoded lazily.
+	 */
+	public enum Column {
+		FORM, LEMMA, POS, SENSE
+	}
+
+	/**
+	 * The projection that eagerly decodes all columns.
+	 */
+	public static final Projection ALL = new Projection(EnumSet.allOf(Column.class), false);
+
+	/**
+	 * The projection that only decodes the structure of the graph.
+	 */
+	public static final Projection STRUCTURE = new Projection(EnumSet.noneOf(Column.class), false);
+
+	/**
+	 * The columns included in this projection.
+	 */
+	private final Set<Column> columns;
+
+	/**
+	 * A flag indicating whether the included columns are decoded lazily.
+	 */
+	private final boolean isLazy;
+
+	private Projection(Set<Column> columns, boolean isLazy) {
+		this.columns = columns;
+		this.isLazy = isLazy;
+	}
+
+	/**
+	 * Returns a projection that eagerly decodes the specified columns.
+	 *
+	 * @param columns the columns to decode
+	 * @return a projection that eagerly decodes the specified columns
+	 */
+	public static Projection of(Column... columns) {
+		Set<Column> set = EnumSet.noneOf(Column.class);
+		set.addAll(Arrays.asList(columns));
+		return new Projection(set, false);
+	}
+
+	/**
+	 * Returns a projection that decodes the same columns as this projection,
+	 * but lazily.
+	 *
+	 * @return a lazy version of this projection
+	 */
+	public Projection lazy() {
+		return new Projection(columns, true);
+	}
+
+	/**
+	 * Tests whether this projection includes the specified column.
+	 *
+	 * @param column a column
+	 * @return {@code true} if this projection includes the specified column
+	 */
+	public boolean includes(Column column) {
+		return columns.contains(column);
+	}
+
+	/**
+	 * Tests whether the included columns are decoded lazily.
+	 *
+	 * @return {@code true} if the included columns are decoded lazily
+	 */
+	public boolean isLazy() {
+		return isLazy;
+	}
+
+	/**
+	 * Tests whether this projection decodes all columns eagerly.
+	 *
+	 * @return {@code true} if this projection decodes all columns eagerly
+	 */
+	boolean isAll() {
+		return !isLazy && columns.size() == Column.values().length;
+	}
+}
@@ -0,0 +1,422 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * A corpus that is stored as a sequence of shard files. The shards are
+ * listed in a manifest file, which records for each shard its file name
+ * (relative to the manifest), the number of graphs, the IDs of the first and
+ * the last graph, the size of the file, and a CRC-32 checksum of the file.
+ * The manifest is a text file whose first line is {@code #SDP-SHARDS 1},
+ * followed by one tab-separated line per shard.
+ *
+ * @author Marco Kuhlmann
+ */
+public class ShardedCorpus {
+
+	/**
+	 * The format identifier line of a manifest file.
+	 */
+	static final String FIRST_LINE = "#SDP-SHARDS 1";
+
+	/**
+	 * A single shard of a sharded corpus.
+	 */
+	public static final class Shard {
+
+		private final File file;
+		private final long nGraphs;
+		private final String firstId;
+		private final String lastId;
+		private final long size;
+		private final long checksum;
+
+		/**
+		 * Construct a new shard description.
+		 *
+		 * @param file the shard file
+		 * @param nGraphs the number of graphs in the shard
+		 * @param firstId the ID of the first graph in the shard
+		 * @param lastId the ID of the last graph in the shard
+		 * @param size the size of the shard file in bytes
+		 * @param checksum the CRC-32 checksum of the shard file
+		 */
+		public Shard(File file, long nGraphs, String firstId, String lastId, long size, long checksum) {
+			this.file = file;
+			this.nGraphs = nGraphs;
+			this.firstId = firstId;
+			this.lastId = lastId;
+			this.size = size;
+			this.checksum = checksum;
+		}
+
+		/**
+		 * Returns the shard file.
+		 *
+		 * @return the shard file
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Returns the number of graphs in this shard.
+		 *
+		 * @return the number of graphs in this shard
+		 */
+		public long getNGraphs() {
+			return nGraphs;
+		}
+
+		/**
+		 * Returns the ID of the first graph in this shard.
+		 *
+		 * @return the ID of the first graph in this shard
+		 */
+		public String getFirstId() {
+			return firstId;
+		}
+
+		/**
+		 * Returns the ID of the last graph in this shard.
+		 *
+		 * @return the ID of the last graph in this shard
+		 */
+		public String getLastId() {
+			return lastId;
+		}
+
+		/**
+		 * Returns the size of the shard file in bytes.
+		 *
+		 * @return the size of the shard file in bytes
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Returns the CRC-32 checksum of the shard file.
+		 *
+		 * @return the CRC-32 checksum of the shard file
+		 */
+		public long getChecksum() {
+			return checksum;
+		}
+
+		/**
+		 * Opens a reader for the graphs in this shard.
+		 *
+		 * @return a reader for the graphs in this shard
+		 * @throws IOException if an I/O error occurs
+		 */
+		public GraphReader openReader() throws IOException {
+			return GraphReaders.open(file);
+		}
+
+		/**
+		 * Opens a reader for the graphs in this shard that decodes columns
+		 * according to the specified projection.
+		 *
+		 * @param projection the projection specifying which columns are
+		 * decoded, and when
+		 * @return a reader for the graphs in this shard
+		 * @throws IOException if an I/O error occurs
+		 */
+		public GraphReader openReader(Projection projection) throws IOException {
+			return GraphReaders.open(file, projection);
+		}
+
+		/**
+		 * Tests whether the shard file has the size and checksum recorded in
+		 * the manifest.
+		 *
+		 * @return {@code true} if the shard file has the recorded size and
+		 * checksum
+		 * @throws IOException if an I/O error occurs
+		 */
+		public boolean verify() throws IOException {
+			return file.length() == size && computeChecksum(file) == checksum;
+		}
+	}
+
+	/**
+	 * The manifest file.
+	 */
+	private final File manifest;
+
+	/**
+	 * The shards of this corpus.
+	 */
+	private final List<Shard> shards;
+
+	/**
+	 * Construct a new sharded corpus.
+	 *
+	 * @param manifest the manifest file
+	 * @param shards the shards of the corpus
+	 */
+	public ShardedCorpus(File manifest, List<Shard> shards) {
+		this.manifest = manifest;
+		this.shards = Collections.unmodifiableList(new ArrayList<Shard>(shards));
+	}
+
+	/**
+	 * Tests whether the specified file is a manifest file.
+	 *
+	 * @param file a file
+	 * @return {@code true} if the specified file is a manifest file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static boolean isManifest(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			return FIRST_LINE.equals(reader.readLine());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads a sharded corpus from the specified manifest file.
+	 *
+	 * @param manifest the manifest file
+	 * @return the sharded corpus described by the manifest
+	 * @throws IOException if an I/O error occurs, or if the manifest is
+	 * malformed
+	 */
+	public static ShardedCorpus read(File manifest) throws IOException {
+		List<Shard> shards = new ArrayList<Shard>();
+		BufferedReader reader = new BufferedReader(new FileReader(manifest));
+		try {
+			String line = reader.readLine();
+			if (!FIRST_LINE.equals(line)) {
+				throw new IOException("Not a manifest file: " + manifest);
+			}
+			int lineNumber = 1;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] columns = line.split(Constants.COLUMN_SEPARATOR);
+				if (columns.length != 6) {
+					throw new IOException(String.format("%s:%d: Expected 6 columns", manifest, lineNumber));
+				}
+				try {
+					File file = new File(columns[0]);
+					if (!file.isAbsolute()) {
+						file = new File(manifest.getAbsoluteFile().getParentFile(), columns[0]);
+					}
+					shards.add(new Shard(file, Long.parseLong(columns[1]), columns[2], columns[3], Long.parseLong(columns[4]), Long.parseLong(columns[5], 16)));
+				} catch (NumberFormatException e) {
+					throw new IOException(String.format("%s:%d: %s", manifest, lineNumber, e.getMessage()));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return new ShardedCorpus(manifest, shards);
+	}
+
+	/**
+	 * Writes the manifest file of this corpus. Shard files are recorded
+	 * relative to the directory of the manifest file, so that the corpus can
+	 * be moved as a whole; only shards that cannot be reached by a relative
+	 * path (such as shards on another drive) are recorded by their absolute
+	 * path.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void write() throws IOException {
+		Path directory = manifest.getAbsoluteFile().getParentFile().toPath().normalize();
+		PrintWriter writer = new PrintWriter(manifest);
+		try {
+			writer.print(FIRST_LINE);
+			writer.print('\n');
+			for (Shard shard : shards) {
+				Path file = shard.getFile().getAbsoluteFile().toPath().normalize();
+				String name;
+				try {
+					name = directory.relativize(file).toString();
+				} catch (IllegalArgumentException e) {
+					name = file.toString();
+				}
+				writer.print(String.format("%s\t%d\t%s\t%s\t%d\t%08x\n", name, shard.getNGraphs(), shard.getFirstId(), shard.getLastId(), shard.getSize(), shard.getChecksum()));
+			}
+		} finally {
+			writer.close();
+		}
+		if (writer.checkError()) {
+			throw new IOException("Cannot write manifest: " + manifest);
+		}
+	}
+
+	/**
+	 * Returns the manifest file of this corpus.
+	 *
+	 * @return the manifest file of this corpus
+	 */
+	public File getManifest() {
+		return manifest;
+	}
+
+	/**
+	 * Returns the shards of this corpus.
+	 *
+	 * @return the shards of this corpus
+	 */
+	public List<Shard> getShards() {
+		return shards;
+	}
+
+	/**
+	 * Returns the total number of graphs in this corpus.
+	 *
+	 * @return the total number of graphs in this corpus
+	 */
+	public long getNGraphs() {
+		long nGraphs = 0;
+		for (Shard shard : shards) {
+			nGraphs += shard.getNGraphs();
+		}
+		return nGraphs;
+	}
+
+	/**
+	 * Opens a reader that reads the graphs in all shards, in order.
+	 *
+	 * @return a reader for the graphs in this corpus
+	 */
+	public GraphReader openReader() {
+		return openReader(Projection.ALL);
+	}
+
+	/**
+	 * Opens a reader that reads the graphs in all shards, in order, and
+	 * decodes columns according to the specified projection.
+	 *
+	 * @param projection the projection specifying which columns are decoded,
+	 * and when
+	 * @return a reader for the graphs in this corpus
+	 */
+	public GraphReader openReader(Projection projection) {
+		return new ShardedGraphReader(shards.iterator(), projection);
+	}
+
+	/**
+	 * Returns a stream of the graphs in all shards, in order. A parallel
+	 * stream processes several shards in parallel.
+	 *
+	 * @return a stream of the graphs in this corpus
+	 */
+	public Stream<Graph> stream() {
+		return shards.stream().flatMap(shard -> {
+			try {
+				return shard.openReader().stream();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Computes the CRC-32 checksum of the specified file.
+	 *
+	 * @param file a file
+	 * @return the CRC-32 checksum of the specified file
+	 * @throws IOException if an I/O error occurs
+	 */
+	static long computeChecksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * A reader that reads the shards of a corpus one after the other.
+	 */
+	private static class ShardedGraphReader implements GraphReader {
+
+		private final Iterator<Shard> shards;
+
+		private final Projection projection;
+
+		private GraphReader reader;
+
+		public ShardedGraphReader(Iterator<Shard> shards, Projection projection) {
+			this.shards = shards;
+			this.projection = projection;
+		}
+
+		@Override
+		public Graph readGraph() throws IOException {
+			while (true) {
+				if (reader == null) {
+					if (!shards.hasNext()) {
+						return null;
+					}
+					reader = shards.next().openReader(projection);
+				}
+				Graph graph = reader.readGraph();
+				if (graph != null) {
+					return graph;
+				}
+				reader.close();
+				reader = null;
+			}
+		}
+
+		@Override
+		public boolean readGraph(GraphBuffer buffer) throws IOException {
+			while (true) {
+				if (reader == null) {
+					if (!shards.hasNext()) {
+						return false;
+					}
+					reader = shards.next().openReader(projection);
+				}
+				if (reader.readGraph(buffer)) {
+					return true;
+				}
+				reader.close();
+				reader = null;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (reader != null) {
+				reader.close();
+				reader = null;
+			}
+		}
+	}
+}
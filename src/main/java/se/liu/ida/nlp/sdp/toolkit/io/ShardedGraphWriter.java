@@ -0,0 +1,209 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * Write semantic dependency graphs in the SDP 2015 format to a sharded
+ * corpus. A new shard is started whenever the current shard has reached a
+ * size threshold or, optionally, a number of graphs; shards always contain
+ * complete graphs. When the writer is closed, the manifest describing the
+ * shards is written (see {@link ShardedCorpus}).
+ *
+ * @author Marco Kuhlmann
+ */
+public class ShardedGraphWriter implements GraphWriter {
+
+	/**
+	 * The default shard size threshold (64 MB).
+	 */
+	public static final long DEFAULT_SHARD_SIZE = 64L << 20;
+
+	/**
+	 * The manifest file.
+	 */
+	private final File manifest;
+
+	/**
+	 * The pattern for shard file names.
+	 */
+	private final String shardNamePattern;
+
+	/**
+	 * The number of characters after which a new shard is started.
+	 */
+	private final long shardSize;
+
+	/**
+	 * The number of graphs after which a new shard is started, or 0 for no
+	 * limit.
+	 */
+	private long shardGraphs;
+
+	/**
+	 * The shards written so far.
+	 */
+	private final List<ShardedCorpus.Shard> shards;
+
+	/**
+	 * A buffer for formatted graphs.
+	 */
+	private final StringBuilder sb;
+
+	/**
+	 * The current shard file, or {@code null} if no shard is open.
+	 */
+	private File file;
+
+	/**
+	 * The stream computing the checksum of the current shard file.
+	 */
+	private CheckedOutputStream checkedOut;
+
+	/**
+	 * The writer for the current shard.
+	 */
+	private Writer writer;
+
+	/**
+	 * Statistics about the current shard.
+	 */
+	private long nGraphs;
+	private long nChars;
+	private String firstId;
+	private String lastId;
+
+	/**
+	 * Create a sharded writer. The shards are named after the manifest file:
+	 * for a manifest {@code corpus.manifest}, the shards are named
+	 * {@code corpus-00000.sdp}, {@code corpus-00001.sdp}, and so on.
+	 *
+	 * @param manifest the manifest file
+	 * @param shardSize the number of characters after which a new shard is
+	 * started
+	 */
+	public ShardedGraphWriter(File manifest, long shardSize) {
+		this(manifest, getBaseName(manifest) + "-%05d.sdp", shardSize);
+	}
+
+	/**
+	 * Create a sharded writer.
+	 *
+	 * @param manifest the manifest file
+	 * @param shardNamePattern a format string for the names of the shard
+	 * files, relative to the directory of the manifest unless it is an
+	 * absolute path; it is formatted with
+	 * the number of the shard. The shards are compressed if the pattern has
+	 * the extension of a compression format (see {@link Compression}).
+	 * @param shardSize the number of uncompressed characters after which a
+	 * new shard is started
+	 */
+	public ShardedGraphWriter(File manifest, String shardNamePattern, long shardSize) {
+		this.manifest = manifest;
+		this.shardNamePattern = shardNamePattern;
+		this.shardSize = shardSize;
+		this.shards = new ArrayList<ShardedCorpus.Shard>();
+		this.sb = new StringBuilder();
+	}
+
+	private static String getBaseName(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	/**
+	 * Sets the number of graphs after which a new shard is started, in
+	 * addition to the size threshold. Sharding two corpora with the same
+	 * number of graphs per shard yields aligned shards, which can be scored
+	 * in parallel.
+	 *
+	 * @param shardGraphs the maximal number of graphs per shard, or 0 for no
+	 * limit
+	 */
+	public void setShardGraphs(long shardGraphs) {
+		this.shardGraphs = shardGraphs;
+	}
+
+	/**
+	 * Writes a single graph.
+	 *
+	 * @param graph the graph to be written
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void writeGraph(Graph graph) throws IOException {
+		if (writer == null) {
+			openShard();
+		}
+		sb.setLength(0);
+		GraphWriter2015.appendGraph(graph, sb, "\n");
+		writer.append(sb);
+		nChars += sb.length();
+		nGraphs++;
+		if (firstId == null) {
+			firstId = graph.id;
+		}
+		lastId = graph.id;
+		if (nChars >= shardSize || nGraphs == shardGraphs) {
+			closeShard();
+		}
+	}
+
+	/**
+	 * Closes the current shard and writes the manifest.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if (writer != null) {
+			closeShard();
+		}
+		new ShardedCorpus(manifest, shards).write();
+	}
+
+	/**
+	 * Returns the shards that have been completed.
+	 *
+	 * @return the shards that have been completed
+	 */
+	public List<ShardedCorpus.Shard> getShards() {
+		return shards;
+	}
+
+	private void openShard() throws IOException {
+		String name = String.format(shardNamePattern, shards.size());
+		file = new File(name);
+		if (!file.isAbsolute()) {
+			file = new File(manifest.getAbsoluteFile().getParentFile(), name);
+		}
+		checkedOut = new CheckedOutputStream(new FileOutputStream(file), new CRC32());
+		writer = new BufferedWriter(new OutputStreamWriter(Compression.compress(checkedOut, Compression.getFormatForName(name))), 1 << 16);
+		writer.write("#SDP 2015\n");
+		nGraphs = 0;
+		nChars = 0;
+		firstId = null;
+		lastId = null;
+	}
+
+	private void closeShard() throws IOException {
+		writer.close();
+		shards.add(new ShardedCorpus.Shard(file, nGraphs, firstId, lastId, file.length(), checkedOut.getChecksum().getValue()));
+		writer = null;
+		checkedOut = null;
+		file = null;
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+
+/**
+ * An input stream that follows a file in one of the SDP formats as it is
+ * written, like {@code tail -f}. The stream only passes on complete
+ * paragraphs, that is, data up to the last blank line written so far; when
+ * it has passed on all of these, it waits for more data to be appended
+ * instead of signalling the end of the stream. The end of the stream is only
+ * signalled when no data has been appended for a given time, and a paragraph
+ * that is incomplete at that time is dropped. The file need not exist when
+ * the stream is created.
+ *
+ * @author Marco Kuhlmann
+ */
+public class TailInputStream extends InputStream {
+
+	/**
+	 * The time between two checks for new data, in milliseconds.
+	 */
+	private static final long POLL_INTERVAL = 200;
+
+	/**
+	 * The file followed.
+	 */
+	private final File file;
+
+	/**
+	 * The time without new data after which the end of the stream is
+	 * signalled, in milliseconds.
+	 */
+	private final long timeout;
+
+	/**
+	 * The stream reading the file, or {@code null} if the file has not been
+	 * opened yet.
+	 */
+	private InputStream in;
+
+	/**
+	 * The number of bytes read from the file.
+	 */
+	private long position;
+
+	/**
+	 * The bytes read from the file but not yet passed on. The bytes up to
+	 * {@code nComplete} belong to complete paragraphs.
+	 */
+	private byte[] buffer = new byte[1 << 16];
+	private int start;
+	private int nComplete;
+	private int end;
+
+	/**
+	 * A flag indicating whether the last byte read from the file was a line
+	 * separator.
+	 */
+	private boolean afterNewline;
+
+	/**
+	 * The time at which data was last read from the file.
+	 */
+	private long lastReadTime;
+
+	/**
+	 * A flag indicating whether the end of the stream has been signalled.
+	 */
+	private boolean isFinished;
+
+	/**
+	 * Create a stream that follows the specified file.
+	 *
+	 * @param file the file to follow
+	 * @param timeout the time without new data after which the end of the
+	 * stream is signalled, in milliseconds
+	 */
+	public TailInputStream(File file, long timeout) {
+		this.file = file;
+		this.timeout = timeout;
+		this.lastReadTime = System.currentTimeMillis();
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (start == nComplete) {
+			if (isFinished || !fill()) {
+				return -1;
+			}
+		}
+		int n = Math.min(len, nComplete - start);
+		System.arraycopy(buffer, start, b, off, n);
+		start += n;
+		return n;
+	}
+
+	/**
+	 * Reads more data from the file, waiting for it to be appended if
+	 * necessary.
+	 *
+	 * @return {@code false} if no data has been appended for the timeout
+	 * @throws IOException if an I/O error occurs
+	 */
+	private boolean fill() throws IOException {
+		if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, end - start);
+			nComplete -= start;
+			end -= start;
+			start = 0;
+		}
+		if (end == buffer.length) {
+			buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+		}
+		while (true) {
+			if (in == null && file.exists()) {
+				in = new FileInputStream(file);
+			}
+			if (in != null) {
+				if (file.length() < position) {
+					throw new IOException("File truncated while following it: " + file);
+				}
+				int n = in.read(buffer, end, buffer.length - end);
+				if (n > 0) {
+					for (int i = end; i < end + n; i++) {
+						if (buffer[i] == '\n') {
+							if (afterNewline) {
+								nComplete = i + 1;
+							}
+							afterNewline = true;
+						} else if (buffer[i] != '\r') {
+							afterNewline = false;
+						}
+					}
+					end += n;
+					position += n;
+					lastReadTime = System.currentTimeMillis();
+					return true;
+				}
+			}
+			if (System.currentTimeMillis() - lastReadTime >= timeout) {
+				isFinished = true;
+				return false;
+			}
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while following " + file);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		isFinished = true;
+		if (in != null) {
+			in.close();
+		}
+	}
+}
@@ -3,17 +3,23 @@
  */
 package se.liu.ida.nlp.sdp.toolkit.tools;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.text.NumberFormat;
-import java.util.HashSet;
-import java.util.Locale;
-import java.util.Set;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import se.liu.ida.nlp.sdp.toolkit.graph.Edge;
 import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
 import se.liu.ida.nlp.sdp.toolkit.graph.InspectedGraph;
 import se.liu.ida.nlp.sdp.toolkit.graph.Node;
+import se.liu.ida.nlp.sdp.toolkit.io.Compression;
 import se.liu.ida.nlp.sdp.toolkit.io.GraphReader;
-import se.liu.ida.nlp.sdp.toolkit.io.GraphReader2015;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReaders;
+import se.liu.ida.nlp.sdp.toolkit.io.Projection;
 
 /**
  * Print statistics about a collection of graphs.
@@ -31,8 +37,13 @@ public class Analyzer {
     // The number of edges seen.
     private int nEdges;
 
-    // Set of labels seen.
-    private final Set<String> labels = new HashSet<String>();
+    // Frequencies of the labels seen.
+    private final FrequencyCounter labels;
+
+    // Frequencies of the part-of-speech tags, lemmas and forms seen.
+    private final FrequencyCounter tags;
+    private final FrequencyCounter lemmas;
+    private final FrequencyCounter forms;
 
     // The number of singleton nodes.
     private int nSingletons;
@@ -67,12 +78,34 @@ public class Analyzer {
     // Number of projective graphs.
     private int nProjectiveGraphs;
 
-    // Set of senses seen.
-    private final Set<String> senses = new HashSet<String>();
+    // Frequencies of the senses seen.
+    private final FrequencyCounter senses;
 
     // Number of (non-singleton) nodes with senses.
     private int nScorablePredicates;
 
+    /**
+     * Construct a new analyzer.
+     */
+    public Analyzer() {
+        this(FrequencyCounter.DEFAULT_N_HEAVY_HITTERS);
+    }
+
+    /**
+     * Construct a new analyzer that tracks the specified number of most
+     * frequent items of vocabularies that are too large to be counted
+     * exactly.
+     *
+     * @param nHeavyHitters the number of most frequent items tracked
+     */
+    public Analyzer(int nHeavyHitters) {
+        this.labels = new FrequencyCounter(FrequencyCounter.DEFAULT_CAPACITY, nHeavyHitters);
+        this.tags = new FrequencyCounter(FrequencyCounter.DEFAULT_CAPACITY, nHeavyHitters);
+        this.lemmas = new FrequencyCounter(FrequencyCounter.DEFAULT_CAPACITY, nHeavyHitters);
+        this.forms = new FrequencyCounter(FrequencyCounter.DEFAULT_CAPACITY, nHeavyHitters);
+        this.senses = new FrequencyCounter(FrequencyCounter.DEFAULT_CAPACITY, nHeavyHitters);
+    }
+
     /**
      * Updates the statistics with the specified graph.
      *
@@ -127,6 +160,15 @@ public class Analyzer {
             nTopNodes += node.isTop ? 1 : 0;
         }
 
+        // part-of-speech tags, lemmas and forms
+        for (Node node : graph.getNodes()) {
+            if (node.id != 0) {
+                tags.add(node.getPos());
+                lemmas.add(node.getLemma());
+                forms.add(node.getForm());
+            }
+        }
+
         // number of special nodes
         for (Node node : graph.getNodes()) {
             nSpecialNodes += node.id != 0 && !inspectedGraph.isSingleton(node.id) && !node.hasIncomingEdges() && !node.isTop ? 1 : 0;
@@ -140,39 +182,151 @@ public class Analyzer {
 
         // number of senses
         for (Node node : graph.getNodes()) {
-            if (node.id != 0 && !inspectedGraph.isSingleton(node.id) && node.isPred && node.pos.startsWith("V") && !node.sense.equals("_")) {
-                senses.add(node.sense);
+            if (node.id != 0 && !inspectedGraph.isSingleton(node.id) && node.isPred && node.getPos().startsWith("V") && !node.getSense().equals("_")) {
+                senses.add(node.getSense());
                 nScorablePredicates += 1;
             }
         }
     }
 
     /**
-     * Prints statistics about a set of graphs.
+     * Adds the statistics collected by the specified analyzer to the
+     * statistics of this analyzer. The result is the same as if this analyzer
+     * had been updated with all graphs that the other analyzer was updated
+     * with.
      *
-     * @param args names of files from which to read graphs
-     * @throws Exception if an I/O exception occurs
+     * @param other an analyzer
      */
-    public static void main(String[] args) throws Exception {
-        Analyzer analyzer = new Analyzer();
-        GraphReader reader = new GraphReader2015(new InputStreamReader(System.in));
+    public void merge(Analyzer other) {
+        nGraphs += other.nGraphs;
+        nNonWallNodes += other.nNonWallNodes;
+        nEdges += other.nEdges;
+        labels.merge(other.labels);
+        tags.merge(other.tags);
+        lemmas.merge(other.lemmas);
+        forms.merge(other.forms);
+        nSingletons += other.nSingletons;
+        nCyclic += other.nCyclic;
+        nForests += other.nForests;
+        nTrees += other.nTrees;
+        nFragmented += other.nFragmented;
+        nReentrantNodes += other.nReentrantNodes;
+        nToplessGraphs += other.nToplessGraphs;
+        nTopNodes += other.nTopNodes;
+        nSpecialNodes += other.nSpecialNodes;
+        nNoncrossingGraphs += other.nNoncrossingGraphs;
+        nProjectiveGraphs += other.nProjectiveGraphs;
+        senses.merge(other.senses);
+        nScorablePredicates += other.nScorablePredicates;
+    }
+
+    /**
+     * Updates this analyzer with all graphs read by the specified reader,
+     * and closes the reader.
+     *
+     * @param reader a graph reader
+     * @throws IOException if an I/O error occurs
+     */
+    private void update(GraphReader reader) throws IOException {
         Graph graph;
         while ((graph = reader.readGraph()) != null) {
-            analyzer.update(graph);
+            update(graph);
         }
         reader.close();
-        System.err.format("number of labels:\t%d%n", analyzer.labels.size());
-        System.err.format("percentage of singletons:\t%s%n", percentage(analyzer.nSingletons, analyzer.nNonWallNodes));
-        System.err.format("edge density:\t%s%n", fraction(analyzer.nEdges, analyzer.nNonWallNodes - analyzer.nSingletons, 2));
-        System.err.format("percentage of graphs that are trees:\t%s%n", percentage(analyzer.nTrees, analyzer.nGraphs));
-        System.err.format("percentage of graphs that are projective:\t%s%n", percentage(analyzer.nProjectiveGraphs, analyzer.nGraphs));
-        System.err.format("percentage of graphs that are fragmented:\t%s%n", percentage(analyzer.nFragmented, analyzer.nGraphs));
-        System.err.format("percentage of nodes that have reentrancies:\t%s%n", percentage(analyzer.nReentrantNodes, analyzer.nNonWallNodes - analyzer.nSingletons));
-        System.err.format("percentage of graphs that are topless:\t%s%n", percentage(analyzer.nToplessGraphs, analyzer.nGraphs));
-        System.err.format("number of top nodes per graph:\t%s%n", fraction(analyzer.nTopNodes, analyzer.nGraphs));
-        System.err.format("percentage of nodes that are non-top roots:\t%s%n", percentage(analyzer.nSpecialNodes, analyzer.nNonWallNodes - analyzer.nSingletons));
-        System.err.format("number of senses:\t%d%n", analyzer.senses.size());
-        System.err.format("percentage of predicates with senses:\t%s%n", percentage(analyzer.nScorablePredicates, analyzer.nNonWallNodes - analyzer.nSingletons));
+    }
+
+    /**
+     * Prints a frequency distribution.
+     *
+     * @param name the name of the items counted
+     * @param counter the counter holding the distribution
+     * @param n the number of most frequent items to print
+     * @param out the stream to print to
+     */
+    private static void printDistribution(String name, FrequencyCounter counter, int n, PrintStream out) {
+        out.format("number of %s:\t%d%s%n", name, counter.getNDistinct(), counter.isExact() ? "" : " (estimated)");
+        for (Map.Entry<String, Long> entry : counter.getMostFrequent(n)) {
+            out.format("  %s\t%d\t%s%n", entry.getKey(), entry.getValue(), percentage(entry.getValue(), counter.getTotal()));
+        }
+    }
+
+    /**
+     * Prints statistics about a set of graphs. The graphs are read from the
+     * files given as arguments, which are analyzed in parallel, or from
+     * standard input if no files are given. The option {@code top=N} prints
+     * the frequency distributions of labels, part-of-speech tags, senses,
+     * lemmas and forms, with the N most frequent items; the distributions are
+     * computed in bounded memory (see {@link FrequencyCounter}), with at least
+     * N items tracked per distribution.
+     *
+     * @param args files and options
+     * @throws Exception if an I/O exception occurs
+     */
+    public static void main(String[] args) throws Exception {
+        run(args, System.err, GraphSource.FILES);
+    }
+
+    /**
+     * Prints statistics about a set of graphs, as in {@link #main(String[])},
+     * to the specified stream.
+     *
+     * @param args files and options
+     * @param out the stream to print to
+     * @param source the source from which the files are read
+     * @throws IOException if an I/O error occurs
+     */
+    static void run(String[] args, PrintStream out, GraphSource source) throws IOException {
+        int top = -1;
+        List<String> files = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.startsWith("top=")) {
+                top = Integer.parseInt(arg.substring(4));
+            } else {
+                files.add(arg);
+            }
+        }
+        // Track at least as many frequent items as are printed.
+        final int nHeavyHitters = Math.max(FrequencyCounter.DEFAULT_N_HEAVY_HITTERS, top);
+        Analyzer analyzer = new Analyzer(nHeavyHitters);
+        if (files.isEmpty()) {
+            analyzer.update(GraphReaders.open(new InputStreamReader(Compression.decompress(System.in))));
+        } else {
+            try {
+                List<Analyzer> partialAnalyzers = files.parallelStream().map(file -> {
+                    Analyzer partialAnalyzer = new Analyzer(nHeavyHitters);
+                    try {
+                        partialAnalyzer.update(source.open(new File(file), Projection.ALL));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return partialAnalyzer;
+                }).collect(Collectors.toList());
+                for (Analyzer partialAnalyzer : partialAnalyzers) {
+                    analyzer.merge(partialAnalyzer);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        out.format("number of labels:\t%d%n", analyzer.labels.getNDistinct());
+        out.format("percentage of singletons:\t%s%n", percentage(analyzer.nSingletons, analyzer.nNonWallNodes));
+        out.format("edge density:\t%s%n", fraction(analyzer.nEdges, analyzer.nNonWallNodes - analyzer.nSingletons, 2));
+        out.format("percentage of graphs that are trees:\t%s%n", percentage(analyzer.nTrees, analyzer.nGraphs));
+        out.format("percentage of graphs that are projective:\t%s%n", percentage(analyzer.nProjectiveGraphs, analyzer.nGraphs));
+        out.format("percentage of graphs that are fragmented:\t%s%n", percentage(analyzer.nFragmented, analyzer.nGraphs));
+        out.format("percentage of nodes that have reentrancies:\t%s%n", percentage(analyzer.nReentrantNodes, analyzer.nNonWallNodes - analyzer.nSingletons));
+        out.format("percentage of graphs that are topless:\t%s%n", percentage(analyzer.nToplessGraphs, analyzer.nGraphs));
+        out.format("number of top nodes per graph:\t%s%n", fraction(analyzer.nTopNodes, analyzer.nGraphs));
+        out.format("percentage of nodes that are non-top roots:\t%s%n", percentage(analyzer.nSpecialNodes, analyzer.nNonWallNodes - analyzer.nSingletons));
+        out.format("number of senses:\t%d%n", analyzer.senses.getNDistinct());
+        out.format("percentage of predicates with senses:\t%s%n", percentage(analyzer.nScorablePredicates, analyzer.nNonWallNodes - analyzer.nSingletons));
+        if (top >= 0) {
+            printDistribution("labels", analyzer.labels, top, out);
+            printDistribution("part-of-speech tags", analyzer.tags, top, out);
+            printDistribution("senses", analyzer.senses, top, out);
+            printDistribution("lemmas", analyzer.lemmas, top, out);
+            printDistribution("forms", analyzer.forms, top, out);
+        }
     }
 
     public static String fraction(int a, int b, int digits) {
@@ -183,7 +337,7 @@ public class Analyzer {
         return fraction(a, b, 4);
     }
 
-    public static String percentage(int enumerator, int denominator) {
+    public static String percentage(long enumerator, long denominator) {
         return String.format("%.2f", (double) enumerator / (double) denominator * 100);
     }
 }
@@ -6,7 +6,8 @@ package se.liu.ida.nlp.sdp.toolkit.tools;
 import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
 import se.liu.ida.nlp.sdp.toolkit.graph.InspectedGraph;
 import se.liu.ida.nlp.sdp.toolkit.io.GraphReader;
-import se.liu.ida.nlp.sdp.toolkit.io.GraphReader2015;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReaders;
+import se.liu.ida.nlp.sdp.toolkit.io.Projection;
 
 /**
  * Print some basic statistics about a collection of graphs.
@@ -17,7 +18,7 @@ public class BasicAnalyzer {
 
     public static void main(String[] args) throws Exception {
         for (String arg : args) {
-            GraphReader reader = new GraphReader2015(arg);
+            GraphReader reader = GraphReaders.open(arg, Projection.STRUCTURE);
             int nGraphs = 0;
             int nTokens = 0;
             int nCyclic = 0;
@@ -0,0 +1,426 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import se.liu.ida.nlp.sdp.toolkit.graph.Edge;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+import se.liu.ida.nlp.sdp.toolkit.graph.Node;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReader;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReaders;
+import se.liu.ida.nlp.sdp.toolkit.io.Projection;
+
+/**
+ * A graph source that holds recently used corpora in memory. Each corpus is
+ * held in the compact form of a {@link CompactCorpus}, decoded with the
+ * projection that it was requested with, so a corpus used by the
+ * {@link Scorer} only keeps the part-of-speech tags and senses of its tokens.
+ * Graphs are rebuilt from the compact form whenever a corpus is read. An
+ * entry is only used as long as its file has not been modified. When the
+ * estimated total size of the corpora held exceeds the capacity of the
+ * cache, the least recently used corpora are evicted.
+ * <p>
+ * Caches can be used from several threads at the same time.
+ *
+ * @author Marco Kuhlmann
+ */
+class CorpusCache implements GraphSource {
+
+	/**
+	 * The maximal estimated total size of the corpora held, in bytes.
+	 */
+	private final long capacity;
+
+	/**
+	 * The cached corpora, from least to most recently used.
+	 */
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+	/**
+	 * The estimated total size of the corpora held, in bytes.
+	 */
+	private long size;
+
+	/**
+	 * The number of requests served from memory, and from files.
+	 */
+	private long nHits;
+	private long nMisses;
+
+	/**
+	 * The key of a cached corpus: its file and the projection that it was
+	 * decoded with. Projections are compared by identity.
+	 */
+	private static final class Key {
+
+		final String path;
+		final Projection projection;
+
+		Key(String path, Projection projection) {
+			this.path = path;
+			this.projection = projection;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && ((Key) other).path.equals(path) && ((Key) other).projection == projection;
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode() * 31 + System.identityHashCode(projection);
+		}
+	}
+
+	/**
+	 * A cached corpus, together with the modification time and length of its
+	 * file when it was read.
+	 */
+	private static final class Entry {
+
+		final CompactCorpus corpus;
+		final long lastModified;
+		final long length;
+
+		Entry(CompactCorpus corpus, long lastModified, long length) {
+			this.corpus = corpus;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Construct a new cache.
+	 *
+	 * @param capacity the maximal estimated total size of the corpora held,
+	 * in bytes
+	 */
+	public CorpusCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Opens a graph reader for the specified file. If the corpus is held in
+	 * memory and its file has not been modified since it was read, the
+	 * graphs are rebuilt from memory. Otherwise, the corpus is read from its
+	 * file and added to the cache.
+	 *
+	 * @param file the file to read from
+	 * @param projection the projection specifying which columns are decoded
+	 * @return a graph reader for the specified file
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public GraphReader open(File file, Projection projection) throws IOException {
+		Key key = new Key(file.getCanonicalPath(), projection);
+		long lastModified = file.lastModified();
+		long length = file.length();
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+				nHits++;
+				return entry.corpus.getReader();
+			}
+			nMisses++;
+		}
+		CompactCorpus corpus = CompactCorpus.read(GraphReaders.open(file, projection));
+		if (corpus.getSize() <= capacity) {
+			put(key, new Entry(corpus, lastModified, length));
+		}
+		return corpus.getReader();
+	}
+
+	private synchronized void put(Key key, Entry entry) {
+		Entry oldEntry = entries.put(key, entry);
+		if (oldEntry != null) {
+			size -= oldEntry.corpus.getSize();
+		}
+		size += entry.corpus.getSize();
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (size > capacity && iterator.hasNext()) {
+			Entry eldest = iterator.next();
+			iterator.remove();
+			size -= eldest.corpus.getSize();
+		}
+	}
+
+	/**
+	 * Returns a summary of the state of this cache: the corpora held, with
+	 * their numbers of graphs and nodes and their estimated sizes, and the
+	 * numbers of hits and misses.
+	 *
+	 * @return a summary of the state of this cache
+	 */
+	public synchronized String getStatus() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+			CompactCorpus corpus = entry.getValue().corpus;
+			sb.append(String.format("%s\t%d graphs\t%d nodes\t%d bytes%n", entry.getKey().path, corpus.getNGraphs(), corpus.getNNodes(), corpus.getSize()));
+		}
+		sb.append(String.format("bytes held: %d of %d%n", size, capacity));
+		sb.append(String.format("hits: %d%nmisses: %d%n", nHits, nMisses));
+		return sb.toString();
+	}
+
+	/**
+	 * A corpus held in parallel arrays rather than as graph objects. The
+	 * nodes and edges of all graphs are stored one after the other, and the
+	 * strings of the nodes and edges (forms, lemmas, part-of-speech tags,
+	 * senses and labels) are stored once, as indices into a table of names.
+	 */
+	static final class CompactCorpus {
+
+		/**
+		 * The IDs of the graphs.
+		 */
+		private final String[] ids;
+
+		/**
+		 * The index of the first node and the first edge of each graph; the
+		 * last elements hold the total numbers of nodes and edges.
+		 */
+		private final int[] nodeOffsets;
+		private final int[] edgeOffsets;
+
+		/**
+		 * The forms, lemmas, part-of-speech tags and senses of the nodes, as
+		 * indices into the table of names, or -1 for {@code null}.
+		 */
+		private final int[] forms;
+		private final int[] lemmas;
+		private final int[] tags;
+		private final int[] senses;
+
+		/**
+		 * The flags of the nodes: 1 for top nodes, 2 for predicates.
+		 */
+		private final byte[] flags;
+
+		/**
+		 * The sources and targets of the edges, relative to the graph, and
+		 * their labels, as indices into the table of names.
+		 */
+		private final int[] sources;
+		private final int[] targets;
+		private final int[] labels;
+
+		/**
+		 * The table of names.
+		 */
+		private final String[] names;
+
+		/**
+		 * The estimated size of this corpus in memory, in bytes.
+		 */
+		private final long size;
+
+		private CompactCorpus(Builder builder) {
+			int nGraphs = builder.ids.size();
+			int nNodes = builder.nodeOffsets[nGraphs];
+			int nEdges = builder.edgeOffsets[nGraphs];
+			this.ids = builder.ids.toArray(new String[nGraphs]);
+			this.nodeOffsets = Arrays.copyOf(builder.nodeOffsets, nGraphs + 1);
+			this.edgeOffsets = Arrays.copyOf(builder.edgeOffsets, nGraphs + 1);
+			this.forms = Arrays.copyOf(builder.forms, nNodes);
+			this.lemmas = Arrays.copyOf(builder.lemmas, nNodes);
+			this.tags = Arrays.copyOf(builder.tags, nNodes);
+			this.senses = Arrays.copyOf(builder.senses, nNodes);
+			this.flags = Arrays.copyOf(builder.flags, nNodes);
+			this.sources = Arrays.copyOf(builder.sources, nEdges);
+			this.targets = Arrays.copyOf(builder.targets, nEdges);
+			this.labels = Arrays.copyOf(builder.labels, nEdges);
+			this.names = builder.names.toArray(new String[builder.names.size()]);
+			long size = 8L * (nGraphs + 1) + 17L * nNodes + 12L * nEdges;
+			for (String id : ids) {
+				size += getSize(id);
+			}
+			for (String name : names) {
+				size += getSize(name);
+			}
+			this.size = size;
+		}
+
+		/**
+		 * Returns an estimate of the memory used by the specified string,
+		 * including the reference to it: 4 bytes for the reference, 24 bytes
+		 * for the string object, and 16 bytes plus one byte per character for
+		 * its array.
+		 */
+		private static long getSize(String s) {
+			return 44 + s.length();
+		}
+
+		/**
+		 * Reads all graphs from the specified reader into a compact corpus,
+		 * and closes the reader.
+		 *
+		 * @param reader a graph reader
+		 * @return the compact corpus holding the graphs read
+		 * @throws IOException if an I/O error occurs
+		 */
+		static CompactCorpus read(GraphReader reader) throws IOException {
+			Builder builder = new Builder();
+			try {
+				Graph graph;
+				while ((graph = reader.readGraph()) != null) {
+					builder.add(graph);
+				}
+			} finally {
+				reader.close();
+			}
+			return new CompactCorpus(builder);
+		}
+
+		/**
+		 * Returns the number of graphs in this corpus.
+		 *
+		 * @return the number of graphs in this corpus
+		 */
+		int getNGraphs() {
+			return ids.length;
+		}
+
+		/**
+		 * Returns the total number of nodes in this corpus.
+		 *
+		 * @return the total number of nodes in this corpus
+		 */
+		int getNNodes() {
+			return nodeOffsets[ids.length];
+		}
+
+		/**
+		 * Returns the estimated size of this corpus in memory, in bytes.
+		 *
+		 * @return the estimated size of this corpus in memory, in bytes
+		 */
+		long getSize() {
+			return size;
+		}
+
+		/**
+		 * Rebuilds the graph with the specified index.
+		 *
+		 * @param i the index of a graph
+		 * @return the graph with the specified index
+		 */
+		Graph getGraph(int i) {
+			Graph graph = new Graph(ids[i]);
+			for (int node = nodeOffsets[i]; node < nodeOffsets[i + 1]; node++) {
+				graph.addNode(getName(forms[node]), getName(lemmas[node]), getName(tags[node]), (flags[node] & 1) != 0, (flags[node] & 2) != 0, getName(senses[node]));
+			}
+			for (int edge = edgeOffsets[i]; edge < edgeOffsets[i + 1]; edge++) {
+				graph.addEdge(sources[edge], targets[edge], names[labels[edge]]);
+			}
+			return graph;
+		}
+
+		private String getName(int index) {
+			return index < 0 ? null : names[index];
+		}
+
+		/**
+		 * Returns a reader that rebuilds the graphs of this corpus in order.
+		 *
+		 * @return a reader for the graphs of this corpus
+		 */
+		GraphReader getReader() {
+			return new GraphReader() {
+
+				private int next;
+
+				@Override
+				public Graph readGraph() {
+					return next < ids.length ? getGraph(next++) : null;
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+
+		/**
+		 * Collects the graphs of a compact corpus in growing arrays.
+		 */
+		private static final class Builder {
+
+			final List<String> ids = new ArrayList<String>();
+			int[] nodeOffsets = new int[1024];
+			int[] edgeOffsets = new int[1024];
+			int[] forms = new int[1 << 14];
+			int[] lemmas = new int[1 << 14];
+			int[] tags = new int[1 << 14];
+			int[] senses = new int[1 << 14];
+			byte[] flags = new byte[1 << 14];
+			int[] sources = new int[1 << 14];
+			int[] targets = new int[1 << 14];
+			int[] labels = new int[1 << 14];
+			final List<String> names = new ArrayList<String>();
+			final Map<String, Integer> nameIndices = new HashMap<String, Integer>();
+
+			void add(Graph graph) {
+				int nGraphs = ids.size();
+				if (nGraphs + 2 > nodeOffsets.length) {
+					nodeOffsets = Arrays.copyOf(nodeOffsets, 2 * nodeOffsets.length);
+					edgeOffsets = Arrays.copyOf(edgeOffsets, 2 * edgeOffsets.length);
+				}
+				int node = nodeOffsets[nGraphs];
+				int edge = edgeOffsets[nGraphs];
+				if (node + graph.getNNodes() > forms.length) {
+					int length = Math.max(node + graph.getNNodes(), 2 * forms.length);
+					forms = Arrays.copyOf(forms, length);
+					lemmas = Arrays.copyOf(lemmas, length);
+					tags = Arrays.copyOf(tags, length);
+					senses = Arrays.copyOf(senses, length);
+					flags = Arrays.copyOf(flags, length);
+				}
+				if (edge + graph.getNEdges() > sources.length) {
+					int length = Math.max(edge + graph.getNEdges(), 2 * sources.length);
+					sources = Arrays.copyOf(sources, length);
+					targets = Arrays.copyOf(targets, length);
+					labels = Arrays.copyOf(labels, length);
+				}
+				for (Node n : graph.getNodes()) {
+					forms[node] = getNameIndex(n.getForm());
+					lemmas[node] = getNameIndex(n.getLemma());
+					tags[node] = getNameIndex(n.getPos());
+					senses[node] = getNameIndex(n.getSense());
+					flags[node] = (byte) ((n.isTop ? 1 : 0) | (n.isPred ? 2 : 0));
+					node++;
+				}
+				for (Edge e : graph.getEdges()) {
+					sources[edge] = e.source;
+					targets[edge] = e.target;
+					labels[edge] = getNameIndex(e.label);
+					edge++;
+				}
+				ids.add(graph.id);
+				nodeOffsets[nGraphs + 1] = node;
+				edgeOffsets[nGraphs + 1] = edge;
+			}
+
+			private int getNameIndex(String name) {
+				if (name == null) {
+					return -1;
+				}
+				Integer index = nameIndices.get(name);
+				if (index == null) {
+					index = names.size();
+					nameIndices.put(name, index);
+					names.add(name);
+				}
+				return index;
+			}
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+/**
+ * A count-min sketch for estimating the frequencies of items in a stream.
+ * The sketch consists of {@code depth} rows of {@code width} counters; its
+ * memory use does not depend on the number of items added. Estimates never
+ * underestimate the true frequency, and overestimate it by at most
+ * {@code 2N / width} (where {@code N} is the total count) with probability
+ * {@code 1 - 2^-depth}. Items are added in the form of 64-bit hashes. Two
+ * sketches with the same dimensions can be merged.
+ *
+ * @author Marco Kuhlmann
+ */
+public final class CountMinSketch {
+
+	/**
+	 * The number of rows.
+	 */
+	private final int depth;
+
+	/**
+	 * The number of counters per row; a power of two.
+	 */
+	private final int width;
+
+	/**
+	 * The counters, stored row by row.
+	 */
+	private final long[] counts;
+
+	/**
+	 * The total count of all items added.
+	 */
+	private long total;
+
+	/**
+	 * Construct a new, empty sketch.
+	 *
+	 * @param depth the number of rows
+	 * @param width the number of counters per row; must be a power of two
+	 */
+	public CountMinSketch(int depth, int width) {
+		if (depth < 1 || width < 1 || Integer.bitCount(width) != 1) {
+			throw new IllegalArgumentException(String.format("Invalid dimensions: %d x %d", depth, width));
+		}
+		this.depth = depth;
+		this.width = width;
+		this.counts = new long[depth * width];
+	}
+
+	/**
+	 * Adds an item to this sketch and returns its new estimated frequency.
+	 *
+	 * @param hash a 64-bit hash of the item
+	 * @param n the number of occurrences to add
+	 * @return the new estimated frequency of the item
+	 */
+	public long add(long hash, long n) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int i = 0; i < depth; i++) {
+			int j = i * width + ((h1 + i * h2) & (width - 1));
+			counts[j] += n;
+			estimate = Math.min(estimate, counts[j]);
+		}
+		total += n;
+		return estimate;
+	}
+
+	/**
+	 * Returns the estimated frequency of an item.
+	 *
+	 * @param hash a 64-bit hash of the item
+	 * @return the estimated frequency of the item
+	 */
+	public long estimate(long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int i = 0; i < depth; i++) {
+			estimate = Math.min(estimate, counts[i * width + ((h1 + i * h2) & (width - 1))]);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Returns the total count of all items added to this sketch.
+	 *
+	 * @return the total count of all items added to this sketch
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Adds the counts of the specified sketch to this sketch.
+	 *
+	 * @param other a sketch with the same dimensions as this sketch
+	 */
+	public void merge(CountMinSketch other) {
+		if (other.depth != depth || other.width != width) {
+			throw new IllegalArgumentException("Cannot merge sketches with different dimensions");
+		}
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		total += other.total;
+	}
+}
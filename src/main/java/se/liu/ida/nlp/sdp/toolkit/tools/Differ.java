@@ -0,0 +1,411 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import se.liu.ida.nlp.sdp.toolkit.graph.Edge;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+import se.liu.ida.nlp.sdp.toolkit.graph.Node;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphBuffer;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReader;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReaders;
+
+/**
+ * Compares two files of graphs, for example two system outputs or two
+ * releases of a gold standard, and reports which graphs differ and how.
+ * Graphs are aligned by their IDs. Each pair of graphs is first compared by
+ * fingerprints of the lines read from the files; only pairs with different
+ * fingerprints are decoded and compared edge by edge and node by node.
+ * <p>
+ * The files are read in a single pass. Graphs that occur at the same
+ * position in both files are compared directly; other graphs are kept in
+ * memory until the graph with the same ID has been read from the other file,
+ * so files in the same order are compared in constant memory. Each file is
+ * read and fingerprinted on a background thread.
+ *
+ * @author Marco Kuhlmann
+ */
+public class Differ {
+
+	/**
+	 * The number of graphs that are read ahead of the comparison.
+	 */
+	private static final int READ_AHEAD = 256;
+
+	/**
+	 * The stream to which the differences are printed.
+	 */
+	private final PrintStream out;
+
+	/**
+	 * The graphs from the first and the second file that have not been
+	 * aligned yet, by ID, in the order in which they were read.
+	 */
+	private final Map<String, Graph> pendingA = new LinkedHashMap<String, Graph>();
+	private final Map<String, Graph> pendingB = new LinkedHashMap<String, Graph>();
+
+	/**
+	 * The numbers of aligned graphs, and of aligned graphs that differ.
+	 */
+	private int nGraphs;
+	private int nChangedGraphs;
+
+	/**
+	 * The numbers of graphs that only occur in the first or the second file.
+	 */
+	private int nRemovedGraphs;
+	private int nAddedGraphs;
+
+	/**
+	 * The numbers of edges that only occur in the first or the second file.
+	 */
+	private int nRemovedEdges;
+	private int nAddedEdges;
+
+	/**
+	 * The number of changed node attributes.
+	 */
+	private int nChangedAttributes;
+
+	/**
+	 * Construct a new differ.
+	 *
+	 * @param out the stream to which the differences are printed
+	 */
+	Differ(PrintStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Compares the graphs read from the specified readers and prints the
+	 * differences. Each difference is printed as one tab-separated line that
+	 * starts with the ID of the graph and the kind of the difference:
+	 * <ul>
+	 * <li>{@code -graph} and {@code +graph} for a graph that only occurs in
+	 * the first or the second file,</li>
+	 * <li>{@code nodes}, followed by the numbers of tokens in both files, for
+	 * a graph whose tokens have changed (no other differences are printed for
+	 * such a graph),</li>
+	 * <li>{@code -edge} and {@code +edge}, followed by the source, the target
+	 * and the label, for an edge that only occurs in the first or the second
+	 * file, and</li>
+	 * <li>{@code form}, {@code lemma}, {@code pos}, {@code top},
+	 * {@code pred} and {@code sense}, followed by the node and the values in
+	 * both files, for a changed node attribute.</li>
+	 * </ul>
+	 * The graphs that only occur in one file are printed last.
+	 *
+	 * @param readerA the reader for the first file
+	 * @param readerB the reader for the second file
+	 * @throws IOException if an I/O error occurs
+	 */
+	void diff(GraphReader readerA, GraphReader readerB) throws IOException {
+		Prefetcher prefetcherA = new Prefetcher(readerA, "Differ-1");
+		Prefetcher prefetcherB = new Prefetcher(readerB, "Differ-2");
+		Slot slotA = prefetcherA.take();
+		Slot slotB = prefetcherB.take();
+		while (slotA != null || slotB != null) {
+			if (slotA != null && slotB != null && slotA.buffer.getId().equals(slotB.buffer.getId())) {
+				nGraphs++;
+				if (slotA.fingerprint != slotB.fingerprint) {
+					compare(slotA.buffer.toGraph(), slotB.buffer.toGraph());
+				}
+			} else {
+				if (slotA != null) {
+					align(slotA.buffer.toGraph(), pendingA, pendingB, true);
+				}
+				if (slotB != null) {
+					align(slotB.buffer.toGraph(), pendingB, pendingA, false);
+				}
+			}
+			if (slotA != null) {
+				prefetcherA.release(slotA);
+				slotA = prefetcherA.take();
+			}
+			if (slotB != null) {
+				prefetcherB.release(slotB);
+				slotB = prefetcherB.take();
+			}
+		}
+		for (String id : pendingA.keySet()) {
+			out.format("%s\t-graph%n", id);
+			nRemovedGraphs++;
+		}
+		for (String id : pendingB.keySet()) {
+			out.format("%s\t+graph%n", id);
+			nAddedGraphs++;
+		}
+	}
+
+	/**
+	 * Compares the specified graph with the graph with the same ID from the
+	 * other file, if that graph has already been read. Otherwise, the graph
+	 * is kept until the other graph is read.
+	 *
+	 * @param graph a graph
+	 * @param pending the pending graphs from the file of the graph
+	 * @param otherPending the pending graphs from the other file
+	 * @param isFirst {@code true} if the graph was read from the first file
+	 */
+	private void align(Graph graph, Map<String, Graph> pending, Map<String, Graph> otherPending, boolean isFirst) {
+		Graph other = otherPending.remove(graph.id);
+		if (other == null) {
+			pending.put(graph.id, graph);
+		} else {
+			nGraphs++;
+			if (isFirst) {
+				compare(graph, other);
+			} else {
+				compare(other, graph);
+			}
+		}
+	}
+
+	/**
+	 * Compares two graphs with the same ID and prints their differences.
+	 *
+	 * @param graphA the graph from the first file
+	 * @param graphB the graph from the second file
+	 */
+	private void compare(Graph graphA, Graph graphB) {
+		if (graphA.getNNodes() != graphB.getNNodes()) {
+			out.format("%s\tnodes\t%d\t%d%n", graphA.id, graphA.getNNodes() - 1, graphB.getNNodes() - 1);
+			nChangedGraphs++;
+			return;
+		}
+		int nChanges = 0;
+		for (int i = 1; i < graphA.getNNodes(); i++) {
+			Node nodeA = graphA.getNode(i);
+			Node nodeB = graphB.getNode(i);
+			nChanges += compare(graphA.id, i, "form", nodeA.getForm(), nodeB.getForm());
+			nChanges += compare(graphA.id, i, "lemma", nodeA.getLemma(), nodeB.getLemma());
+			nChanges += compare(graphA.id, i, "pos", nodeA.getPos(), nodeB.getPos());
+			nChanges += compare(graphA.id, i, "top", nodeA.isTop ? "+" : "-", nodeB.isTop ? "+" : "-");
+			nChanges += compare(graphA.id, i, "pred", nodeA.isPred ? "+" : "-", nodeB.isPred ? "+" : "-");
+			nChanges += compare(graphA.id, i, "sense", nodeA.getSense(), nodeB.getSense());
+		}
+		nChangedAttributes += nChanges;
+		List<Edge> edgesA = new ArrayList<Edge>(graphA.getEdges());
+		List<Edge> edgesB = new ArrayList<Edge>(graphB.getEdges());
+		Collections.sort(edgesA);
+		Collections.sort(edgesB);
+		int a = 0;
+		int b = 0;
+		while (a < edgesA.size() || b < edgesB.size()) {
+			int c = a == edgesA.size() ? 1 : b == edgesB.size() ? -1 : edgesA.get(a).compareTo(edgesB.get(b));
+			if (c == 0 && edgesA.get(a).label.equals(edgesB.get(b).label)) {
+				a++;
+				b++;
+				continue;
+			}
+			if (c <= 0) {
+				print(graphA.id, "-edge", edgesA.get(a++));
+				nRemovedEdges++;
+				nChanges++;
+			}
+			if (c >= 0) {
+				print(graphA.id, "+edge", edgesB.get(b++));
+				nAddedEdges++;
+				nChanges++;
+			}
+		}
+		if (nChanges > 0) {
+			nChangedGraphs++;
+		}
+	}
+
+	private int compare(String id, int node, String attribute, String valueA, String valueB) {
+		if (Objects.equals(valueA, valueB)) {
+			return 0;
+		} else {
+			out.format("%s\t%s\t%d\t%s\t%s%n", id, attribute, node, valueA, valueB);
+			return 1;
+		}
+	}
+
+	private void print(String id, String kind, Edge edge) {
+		out.format("%s\t%s\t%d\t%d\t%s%n", id, kind, edge.source, edge.target, edge.label);
+	}
+
+	/**
+	 * Computes a fingerprint of the graph in the specified buffer, based on
+	 * its ID and the lines of its tokens. Graphs with the same fingerprint are
+	 * taken to be equal. Graphs with different fingerprints may still be
+	 * equal, for example if they were read from files in different formats.
+	 *
+	 * @param buffer a buffer holding a graph
+	 * @return a 64-bit fingerprint of the graph
+	 */
+	private static long getFingerprint(GraphBuffer buffer) {
+		long h = FrequencyCounter.hash(buffer.getId());
+		for (int i = 1; i < buffer.getNNodes(); i++) {
+			h = h * 0x9e3779b97f4a7c15L + FrequencyCounter.hash(buffer.getLine(i));
+		}
+		return h;
+	}
+
+	/**
+	 * A buffer holding a graph that has been read ahead, together with the
+	 * fingerprint of that graph.
+	 */
+	private static final class Slot {
+
+		final GraphBuffer buffer = new GraphBuffer();
+		long fingerprint;
+	}
+
+	/**
+	 * Reads graphs on a background thread. Graphs are read into a fixed pool
+	 * of slots, which are handed over to the comparing thread through a
+	 * bounded queue and returned through another one.
+	 */
+	private static final class Prefetcher {
+
+		/**
+		 * Marker that signals the end of the file.
+		 */
+		private static final Slot END = new Slot();
+
+		private final GraphReader reader;
+		private final BlockingQueue<Slot> free = new ArrayBlockingQueue<Slot>(READ_AHEAD);
+		private final BlockingQueue<Slot> full = new ArrayBlockingQueue<Slot>(READ_AHEAD + 1);
+
+		/**
+		 * The exception that occurred on the background thread, if any.
+		 */
+		private volatile IOException failure;
+
+		Prefetcher(GraphReader reader, String name) {
+			this.reader = reader;
+			for (int i = 0; i < READ_AHEAD; i++) {
+				free.add(new Slot());
+			}
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					readGraphs();
+				}
+			}, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/**
+		 * Reads graphs into free slots until the end of the file is reached.
+		 * Runs on the background thread.
+		 */
+		private void readGraphs() {
+			try {
+				while (true) {
+					Slot slot = free.take();
+					if (!reader.readGraph(slot.buffer)) {
+						break;
+					}
+					slot.fingerprint = getFingerprint(slot.buffer);
+					full.put(slot);
+				}
+			} catch (IOException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				failure = new IOException(e.getMessage(), e);
+			} catch (InterruptedException e) {
+				failure = new InterruptedIOException();
+			}
+			// There is always room for the marker, as there is one more
+			// place in the queue than there are slots.
+			full.add(END);
+		}
+
+		/**
+		 * Returns the next slot, waiting for it to be read if necessary.
+		 *
+		 * @return the next slot, or {@code null} at the end of the file
+		 * @throws IOException if an I/O error occurred on the background
+		 * thread, or if the calling thread is interrupted while waiting
+		 */
+		Slot take() throws IOException {
+			Slot slot;
+			try {
+				slot = full.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if (slot == END) {
+				if (failure != null) {
+					throw failure;
+				}
+				return null;
+			}
+			return slot;
+		}
+
+		/**
+		 * Returns a slot that has been taken, so that it can be reused.
+		 *
+		 * @param slot the slot
+		 */
+		void release(Slot slot) {
+			free.add(slot);
+		}
+	}
+
+	/**
+	 * Prints a summary of the differences found so far.
+	 *
+	 * @param out the stream to which the summary is printed
+	 */
+	void printSummary(PrintStream out) {
+		out.format("%d graphs aligned, %d changed, %d removed, %d added%n", nGraphs, nChangedGraphs, nRemovedGraphs, nAddedGraphs);
+		out.format("%d edges removed, %d edges added, %d node attributes changed%n", nRemovedEdges, nAddedEdges, nChangedAttributes);
+	}
+
+	/**
+	 * Tests whether any differences have been found.
+	 *
+	 * @return {@code true} if any differences have been found
+	 */
+	boolean hasDifferences() {
+		return nChangedGraphs > 0 || nRemovedGraphs > 0 || nAddedGraphs > 0;
+	}
+
+	/**
+	 * Compares two files of graphs. The positional arguments are the two
+	 * files; manifests of sharded corpora and compressed files are accepted.
+	 * The differences are printed to standard output (see
+	 * {@link #diff(GraphReader, GraphReader)}), and a summary is printed to
+	 * standard error. Exits with status 1 if the files differ.
+	 *
+	 * @param args the command-line arguments
+	 * @throws Exception if an I/O error occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("Usage: Differ FILE1 FILE2");
+			System.exit(1);
+		}
+		PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false);
+		Differ differ = new Differ(out);
+		GraphReader readerA = GraphReaders.open(new File(args[0]));
+		GraphReader readerB = GraphReaders.open(new File(args[1]));
+		differ.diff(readerA, readerB);
+		readerA.close();
+		readerB.close();
+		out.flush();
+		differ.printSummary(System.err);
+		System.exit(differ.hasDifferences() ? 1 : 0);
+	}
+}
@@ -0,0 +1,437 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A frequency distribution over strings that runs in bounded memory. As long
+ * as the number of distinct items is at most the capacity of the counter,
+ * the items are counted exactly. When the capacity is exceeded, the counter
+ * switches to sketches: a {@link HyperLogLog} sketch estimates the number of
+ * distinct items, a {@link CountMinSketch} estimates their frequencies, and a
+ * bounded set of candidates tracks the most frequent items. Closed
+ * vocabularies such as edge labels and part-of-speech tags therefore remain
+ * exact, while open vocabularies such as word forms and lemmas use fixed
+ * memory. The candidates are held in a min-heap indexed by item, so that
+ * replacing the least frequent candidate takes logarithmic time in the number
+ * of candidates. Exact counts are held in an open-addressing table keyed by the
+ * 64-bit hash of each item, with the items and their counts in parallel
+ * arrays, so that counting an item that has been seen before does not
+ * allocate. Counters can be merged, so that parts of a corpus can be counted
+ * in separate threads or runs.
+ *
+ * @author Marco Kuhlmann
+ */
+public final class FrequencyCounter {
+
+	/**
+	 * The default maximal number of distinct items counted exactly.
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/**
+	 * The default number of most frequent items tracked by the sketches.
+	 */
+	public static final int DEFAULT_N_HEAVY_HITTERS = 100;
+
+	/**
+	 * The precision of the HyperLogLog sketch.
+	 */
+	private static final int PRECISION = 14;
+
+	/**
+	 * The dimensions of the count-min sketch.
+	 */
+	private static final int DEPTH = 4;
+	private static final int WIDTH = 1 << 16;
+
+	/**
+	 * The maximal number of distinct items counted exactly.
+	 */
+	private final int capacity;
+
+	/**
+	 * The number of most frequent items tracked by the sketches.
+	 */
+	private final int nHeavyHitters;
+
+	/**
+	 * The initial number of slots of the table of exact counts.
+	 */
+	private static final int INITIAL_N_SLOTS = 16;
+
+	/**
+	 * The table of exact counts: for each slot, the hash of the item, the
+	 * item itself, and its count. A slot is empty if its item is
+	 * {@code null}. The items are {@code null} if this counter uses
+	 * sketches.
+	 */
+	private long[] hashes;
+	private String[] items;
+	private long[] counts;
+
+	/**
+	 * The number of distinct items in the table of exact counts.
+	 */
+	private int nItems;
+
+	/**
+	 * The sketches, or {@code null} if this counter counts exactly.
+	 */
+	private HyperLogLog distinct;
+	private CountMinSketch frequencies;
+
+	/**
+	 * A candidate for the most frequent items: the item, its estimated
+	 * frequency, and its position in the heap of candidates.
+	 */
+	private static final class Candidate {
+
+		String item;
+		long count;
+		int position;
+
+		Candidate(String item, long count) {
+			this.item = item;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * The candidates for the most frequent items, by item, or {@code null}
+	 * if this counter counts exactly.
+	 */
+	private Map<String, Candidate> heavyHitters;
+
+	/**
+	 * The candidates as a binary min-heap ordered by estimated frequency, and
+	 * the number of candidates in it.
+	 */
+	private Candidate[] heap;
+	private int heapSize;
+
+	/**
+	 * The total number of items counted.
+	 */
+	private long total;
+
+	/**
+	 * Construct a new counter with the default capacity.
+	 */
+	public FrequencyCounter() {
+		this(DEFAULT_CAPACITY, DEFAULT_N_HEAVY_HITTERS);
+	}
+
+	/**
+	 * Construct a new counter.
+	 *
+	 * @param capacity the maximal number of distinct items counted exactly
+	 * @param nHeavyHitters the number of most frequent items tracked when
+	 * the capacity is exceeded
+	 */
+	public FrequencyCounter(int capacity, int nHeavyHitters) {
+		this.capacity = capacity;
+		this.nHeavyHitters = nHeavyHitters;
+		this.hashes = new long[INITIAL_N_SLOTS];
+		this.items = new String[INITIAL_N_SLOTS];
+		this.counts = new long[INITIAL_N_SLOTS];
+	}
+
+	/**
+	 * Counts one occurrence of the specified item.
+	 *
+	 * @param item the item
+	 */
+	public void add(String item) {
+		add(item, 1);
+	}
+
+	/**
+	 * Counts the specified number of occurrences of the specified item.
+	 *
+	 * @param item the item
+	 * @param n the number of occurrences
+	 */
+	public void add(String item, long n) {
+		total += n;
+		long hash = hash(item);
+		if (items != null) {
+			int slot = findSlot(item, hash);
+			if (items[slot] == null) {
+				if (nItems == capacity) {
+					switchToSketches();
+					addToSketches(item, hash, n);
+					return;
+				}
+				if (2 * (nItems + 1) > items.length) {
+					grow();
+					slot = findSlot(item, hash);
+				}
+				hashes[slot] = hash;
+				items[slot] = item;
+				nItems++;
+			}
+			counts[slot] += n;
+		} else {
+			addToSketches(item, hash, n);
+		}
+	}
+
+	/**
+	 * Returns the slot of the table of exact counts that holds the specified
+	 * item, or the empty slot where it would be inserted.
+	 */
+	private int findSlot(String item, long hash) {
+		int mask = items.length - 1;
+		int slot = (int) hash & mask;
+		while (items[slot] != null && (hashes[slot] != hash || !items[slot].equals(item))) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Doubles the number of slots of the table of exact counts.
+	 */
+	private void grow() {
+		long[] oldHashes = hashes;
+		String[] oldItems = items;
+		long[] oldCounts = counts;
+		hashes = new long[2 * oldItems.length];
+		items = new String[2 * oldItems.length];
+		counts = new long[2 * oldItems.length];
+		for (int i = 0; i < oldItems.length; i++) {
+			if (oldItems[i] != null) {
+				int slot = findSlot(oldItems[i], oldHashes[i]);
+				hashes[slot] = oldHashes[i];
+				items[slot] = oldItems[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	private void addToSketches(String item, long hash, long n) {
+		distinct.add(hash);
+		long estimate = frequencies.add(hash, n);
+		Candidate candidate = heavyHitters.get(item);
+		if (candidate != null) {
+			// Estimates never decrease, so the candidate can only move down.
+			candidate.count = estimate;
+			siftDown(candidate.position);
+		} else if (heapSize < nHeavyHitters) {
+			addCandidate(item, estimate);
+		} else if (heapSize > 0 && estimate > heap[0].count) {
+			// Replace the candidate with the smallest estimate.
+			candidate = heap[0];
+			heavyHitters.remove(candidate.item);
+			candidate.item = item;
+			candidate.count = estimate;
+			heavyHitters.put(item, candidate);
+			siftDown(0);
+		}
+	}
+
+	private void addCandidate(String item, long count) {
+		Candidate candidate = new Candidate(item, count);
+		heavyHitters.put(item, candidate);
+		heap[heapSize] = candidate;
+		candidate.position = heapSize;
+		siftUp(heapSize++);
+	}
+
+	private void siftUp(int position) {
+		Candidate candidate = heap[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (heap[parent].count <= candidate.count) {
+				break;
+			}
+			heap[position] = heap[parent];
+			heap[position].position = position;
+			position = parent;
+		}
+		heap[position] = candidate;
+		candidate.position = position;
+	}
+
+	private void siftDown(int position) {
+		Candidate candidate = heap[position];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heap[child + 1].count < heap[child].count) {
+				child++;
+			}
+			if (candidate.count <= heap[child].count) {
+				break;
+			}
+			heap[position] = heap[child];
+			heap[position].position = position;
+			position = child;
+		}
+		heap[position] = candidate;
+		candidate.position = position;
+	}
+
+	private void switchToSketches() {
+		distinct = new HyperLogLog(PRECISION);
+		frequencies = new CountMinSketch(DEPTH, WIDTH);
+		heavyHitters = new HashMap<String, Candidate>();
+		heap = new Candidate[nHeavyHitters];
+		heapSize = 0;
+		long[] oldHashes = hashes;
+		String[] oldItems = items;
+		long[] oldCounts = counts;
+		hashes = null;
+		items = null;
+		counts = null;
+		nItems = 0;
+		for (int i = 0; i < oldItems.length; i++) {
+			if (oldItems[i] != null) {
+				addToSketches(oldItems[i], oldHashes[i], oldCounts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Tests whether this counter counts exactly, that is, whether its
+	 * capacity has not been exceeded.
+	 *
+	 * @return {@code true} if this counter counts exactly
+	 */
+	public boolean isExact() {
+		return items != null;
+	}
+
+	/**
+	 * Returns the total number of items counted.
+	 *
+	 * @return the total number of items counted
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns the number of distinct items counted. This is an estimate if
+	 * the counter does not count exactly.
+	 *
+	 * @return the number of distinct items counted
+	 */
+	public long getNDistinct() {
+		return items != null ? nItems : distinct.estimate();
+	}
+
+	/**
+	 * Returns the frequency of the specified item. This is an estimate (and
+	 * never an underestimate) if the counter does not count exactly.
+	 *
+	 * @param item an item
+	 * @return the frequency of the specified item
+	 */
+	public long getCount(String item) {
+		if (items != null) {
+			int slot = findSlot(item, hash(item));
+			return items[slot] == null ? 0 : counts[slot];
+		} else {
+			return frequencies.estimate(hash(item));
+		}
+	}
+
+	/**
+	 * Returns the most frequent items with their frequencies, sorted by
+	 * decreasing frequency and then by item. If the counter does not count
+	 * exactly, the list contains at most as many items as are tracked, and
+	 * the frequencies are estimates.
+	 *
+	 * @param n the maximal number of items to return
+	 * @return the most frequent items with their frequencies
+	 */
+	public List<Map.Entry<String, Long>> getMostFrequent(int n) {
+		List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>();
+		if (items != null) {
+			for (int i = 0; i < items.length; i++) {
+				if (items[i] != null) {
+					entries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(items[i], counts[i]));
+				}
+			}
+		} else {
+			for (int i = 0; i < heapSize; i++) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(heap[i].item, heap[i].count));
+			}
+		}
+		entries.sort((a, b) -> a.getValue().equals(b.getValue()) ? a.getKey().compareTo(b.getKey()) : Long.compare(b.getValue(), a.getValue()));
+		return entries.subList(0, Math.min(n, entries.size()));
+	}
+
+	/**
+	 * Adds the counts of the specified counter to this counter. The result
+	 * is exact if both counters are exact and the combined number of distinct
+	 * items does not exceed the capacity.
+	 *
+	 * @param other a counter with the same capacity as this counter
+	 */
+	public void merge(FrequencyCounter other) {
+		if (other.capacity != capacity || other.nHeavyHitters != nHeavyHitters) {
+			throw new IllegalArgumentException("Cannot merge counters with different configurations");
+		}
+		if (other.items != null) {
+			for (int i = 0; i < other.items.length; i++) {
+				if (other.items[i] != null) {
+					add(other.items[i], other.counts[i]);
+				}
+			}
+		} else {
+			if (items != null) {
+				switchToSketches();
+			}
+			total += other.total;
+			distinct.merge(other.distinct);
+			frequencies.merge(other.frequencies);
+			// Re-estimate the candidates of both counters against the merged
+			// sketch, and keep the most frequent ones.
+			Set<String> candidates = new HashSet<String>(heavyHitters.keySet());
+			candidates.addAll(other.heavyHitters.keySet());
+			List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>();
+			for (String item : candidates) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(item, frequencies.estimate(hash(item))));
+			}
+			entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+			heavyHitters.clear();
+			heapSize = 0;
+			for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(nHeavyHitters, entries.size()))) {
+				addCandidate(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Computes a 64-bit hash of the specified string: FNV-1a over the
+	 * characters, followed by the MurmurHash3 finalizer.
+	 *
+	 * @param s a string
+	 * @return a 64-bit hash of the string
+	 */
+	static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,608 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generate synthetic corpora in the SDP 2015 format. The generated graphs are
+ * valid but meaningless; they are intended for load testing. Generation is
+ * deterministic for a given seed and set of parameters.
+ *
+ * @author Marco Kuhlmann
+ */
+public class Generator {
+
+	/**
+	 * Labels typical of the DM representation.
+	 */
+	public static final String[] DM_LABELS = {"ARG1", "ARG2", "BV", "compound", "_and_c", "poss", "ARG3", "mwe", "loc", "times", "appos", "_or_c", "neg", "_but_c", "subord", "part_of"};
+
+	/**
+	 * Labels typical of the PAS representation.
+	 */
+	public static final String[] PAS_LABELS = {"det_ARG1", "adj_ARG1", "verb_ARG1", "prep_ARG1", "prep_ARG2", "noun_ARG1", "verb_ARG2", "coord_ARG1", "coord_ARG2", "punct_ARG1", "aux_ARG1", "adj_MOD", "verb_MOD", "verb_ARG3", "prep_MOD", "adj_ARG2"};
+
+	/**
+	 * Labels typical of the PSD representation.
+	 */
+	public static final String[] PSD_LABELS = {"RSTR", "ACT-arg", "PAT-arg", "CONJ.member", "APP", "PRED", "ADDR-arg", "TWHEN", "LOC", "MANN", "EFF-arg", "EXT", "MEANS", "CPR", "ORIG-arg", "DISJ.member"};
+
+	/**
+	 * Part-of-speech tags, roughly in order of decreasing frequency.
+	 */
+	private static final String[] POS_TAGS = {"NN", "IN", "NNP", "DT", "JJ", "NNS", ",", ".", "VBD", "RB", "VB", "CC", "VBZ", "VBN", "PRP", "TO", "VBG", "CD", "VBP", "MD", ":", "(", ")"};
+
+	/**
+	 * The maximal number of graphs with distinct IDs in one shard. Graphs in
+	 * different shards (see {@link #setShard(int)}) have distinct IDs, so
+	 * that up to ten times this number of graphs can be generated.
+	 */
+	public static final long MAX_GRAPHS = 10000000;
+
+	/**
+	 * The number of shards with distinct IDs.
+	 */
+	public static final int N_SHARDS = 10;
+
+	/**
+	 * The number of bytes after which the output buffer is written out.
+	 */
+	private static final int FLUSH_THRESHOLD = 1 << 20;
+
+	/**
+	 * The maximal number of attempts to place an edge, per requested edge.
+	 */
+	private static final int MAX_ATTEMPTS = 10;
+
+	private final SplittableRandom random;
+
+	private int minLength = 1;
+	private int meanLength = 24;
+	private int maxLength = 100;
+	private double density = 1.0;
+	private double reentrancyRate = 0.2;
+	private double crossingRate = 0.1;
+	private double cycleRate = 0.0;
+	private String[] labels = DM_LABELS;
+	private int vocabularySize = 50000;
+	private int shard = 2;
+
+	// Cumulative Zipf distributions over labels and POS tags.
+	private double[] labelDistribution;
+	private double[] posDistribution;
+
+	// Per-sentence scratch space.
+	private int[] sources = new int[0];
+	private int[] targets = new int[0];
+	private int[] labelIds = new int[0];
+	private int[] indegree = new int[0];
+	private int[] outdegree = new int[0];
+	private int[] labelMatrix = new int[0];
+	private int[] predicateColumn = new int[0];
+	private int[] stack = new int[0];
+	private boolean[] visited = new boolean[0];
+
+	// Output buffer.
+	private byte[] buffer = new byte[2 * FLUSH_THRESHOLD];
+	private int bufferLength;
+
+	/**
+	 * Construct a new generator.
+	 *
+	 * @param seed the seed for the random number generator
+	 */
+	public Generator(long seed) {
+		this.random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * Sets the distribution of sentence lengths. Lengths are drawn from a
+	 * log-normal distribution with the specified mean and clipped to the
+	 * specified range.
+	 *
+	 * @param minLength the minimal number of tokens per sentence
+	 * @param meanLength the mean number of tokens per sentence
+	 * @param maxLength the maximal number of tokens per sentence
+	 */
+	public void setLengths(int minLength, int meanLength, int maxLength) {
+		assert 1 <= minLength && minLength <= meanLength && meanLength <= maxLength;
+		this.minLength = minLength;
+		this.meanLength = meanLength;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Sets the number of edges per token.
+	 *
+	 * @param density the number of edges per token
+	 */
+	public void setDensity(double density) {
+		this.density = density;
+	}
+
+	/**
+	 * Sets the probability with which an edge enters a node that already has
+	 * an incoming edge.
+	 *
+	 * @param reentrancyRate the probability of a reentrant edge
+	 */
+	public void setReentrancyRate(double reentrancyRate) {
+		this.reentrancyRate = reentrancyRate;
+	}
+
+	/**
+	 * Sets the probability with which an edge is allowed to cross an edge
+	 * generated before it.
+	 *
+	 * @param crossingRate the probability of allowing a crossing edge
+	 */
+	public void setCrossingRate(double crossingRate) {
+		this.crossingRate = crossingRate;
+	}
+
+	/**
+	 * Sets the probability with which an edge is allowed to close a directed
+	 * cycle.
+	 *
+	 * @param cycleRate the probability of allowing an edge to close a cycle
+	 */
+	public void setCycleRate(double cycleRate) {
+		this.cycleRate = cycleRate;
+	}
+
+	/**
+	 * Sets the label vocabulary. Labels are drawn from a Zipf distribution, in
+	 * the order given.
+	 *
+	 * @param labels the label vocabulary
+	 */
+	public void setLabels(String[] labels) {
+		this.labels = labels;
+	}
+
+	/**
+	 * Sets the number of distinct word forms (and lemmas).
+	 *
+	 * @param vocabularySize the number of distinct word forms
+	 */
+	public void setVocabularySize(int vocabularySize) {
+		this.vocabularySize = vocabularySize;
+	}
+
+	/**
+	 * Sets the shard of the generated graphs, which is the first digit of
+	 * their IDs. The default is 2, as in the SDP corpora. Graphs generated in
+	 * different shards have distinct IDs; to obtain distinct graphs as well,
+	 * the shards should be generated with different seeds.
+	 *
+	 * @param shard the shard, between 0 and 9
+	 * @throws IllegalArgumentException if the shard is out of range
+	 */
+	public void setShard(int shard) {
+		if (shard < 0 || shard >= N_SHARDS) {
+			throw new IllegalArgumentException(String.format("Shard must be between 0 and %d", N_SHARDS - 1));
+		}
+		this.shard = shard;
+	}
+
+	/**
+	 * Generates the specified number of graphs and writes them to the
+	 * specified stream. The stream is not closed.
+	 *
+	 * @param nGraphs the number of graphs to generate
+	 * @param out the stream to write to
+	 * @throws IOException if an I/O error occurs
+	 * @throws IllegalArgumentException if more than {@link #MAX_GRAPHS}
+	 * graphs are requested, as their IDs would not be unique within the
+	 * shard
+	 */
+	public void generate(long nGraphs, OutputStream out) throws IOException {
+		if (nGraphs > MAX_GRAPHS) {
+			throw new IllegalArgumentException(String.format("Cannot generate more than %d graphs with unique IDs per shard", MAX_GRAPHS));
+		}
+		labelDistribution = zipf(labels.length);
+		posDistribution = zipf(POS_TAGS.length);
+		bufferLength = 0;
+		append("#SDP 2015\n");
+		for (long i = 0; i < nGraphs; i++) {
+			generateGraph(i);
+			if (bufferLength > FLUSH_THRESHOLD) {
+				out.write(buffer, 0, bufferLength);
+				bufferLength = 0;
+			}
+		}
+		out.write(buffer, 0, bufferLength);
+		out.flush();
+	}
+
+	/**
+	 * Generates a single graph and appends it to the output buffer.
+	 *
+	 * @param i the index of the graph
+	 */
+	private void generateGraph(long i) {
+		int nTokens = sampleLength();
+		ensureCapacity(nTokens);
+		int nEdges = sampleEdges(nTokens);
+
+		// Arrange the edges in a matrix indexed by predicate column and target.
+		Arrays.fill(predicateColumn, 0, nTokens + 1, -1);
+		for (int e = 0; e < nEdges; e++) {
+			predicateColumn[sources[e]] = 0;
+		}
+		int nPredicates = 0;
+		for (int node = 1; node <= nTokens; node++) {
+			if (predicateColumn[node] == 0) {
+				predicateColumn[node] = nPredicates++;
+			}
+		}
+		Arrays.fill(labelMatrix, 0, nPredicates * (nTokens + 1), -1);
+		for (int e = 0; e < nEdges; e++) {
+			labelMatrix[predicateColumn[sources[e]] * (nTokens + 1) + targets[e]] = labelIds[e];
+		}
+
+		// Choose the top node among the nodes without incoming edges.
+		int top = 1 + random.nextInt(nTokens);
+		for (int k = 0; k < nTokens && indegree[top] > 0; k++) {
+			top = top % nTokens + 1;
+		}
+
+		// Graph ID: #KSSNNNNN, where K is the shard and the seven digits
+		// SSNNNNN are the index of the graph, so that IDs are unique for up
+		// to MAX_GRAPHS graphs per shard. Each block of 100,000 graphs falls
+		// into one section SS.
+		ensureBufferCapacity(16);
+		appendByte('#');
+		appendByte((char) ('0' + shard));
+		appendPadded((int) i, 7);
+		appendByte('\n');
+
+		for (int node = 1; node <= nTokens; node++) {
+			ensureBufferCapacity(64 + nPredicates * 24);
+			int word = sampleWord();
+			String pos = POS_TAGS[sample(posDistribution)];
+			boolean isPred = predicateColumn[node] >= 0;
+			appendInt(node);
+			appendByte('\t');
+			appendByte('w');
+			appendInt(word);
+			appendByte('\t');
+			appendByte('l');
+			appendInt(word);
+			appendByte('\t');
+			append(pos);
+			appendByte('\t');
+			appendByte(node == top ? '+' : '-');
+			appendByte('\t');
+			appendByte(isPred ? '+' : '-');
+			appendByte('\t');
+			if (isPred) {
+				appendPadded(1 + random.nextInt(3), 2);
+			} else {
+				appendByte('_');
+			}
+			for (int p = 0; p < nPredicates; p++) {
+				appendByte('\t');
+				int label = labelMatrix[p * (nTokens + 1) + node];
+				if (label < 0) {
+					appendByte('_');
+				} else {
+					append(labels[label]);
+				}
+			}
+			appendByte('\n');
+		}
+		appendByte('\n');
+	}
+
+	/**
+	 * Samples a sentence length.
+	 *
+	 * @return a sentence length
+	 */
+	private int sampleLength() {
+		// Log-normal distribution with sigma = 0.5 and the configured mean.
+		double sigma = 0.5;
+		double mu = Math.log(meanLength) - sigma * sigma / 2;
+		double length = Math.exp(mu + sigma * gaussian());
+		return (int) Math.max(minLength, Math.min(maxLength, Math.round(length)));
+	}
+
+	/**
+	 * Samples the edges of a sentence with the specified number of tokens.
+	 *
+	 * @param nTokens the number of tokens
+	 * @return the number of edges sampled
+	 */
+	private int sampleEdges(int nTokens) {
+		Arrays.fill(indegree, 0, nTokens + 1, 0);
+		Arrays.fill(outdegree, 0, nTokens + 1, 0);
+		int nRequested = (int) Math.round(density * nTokens);
+		int nEdges = 0;
+		for (int attempt = 0; nTokens > 1 && nEdges < nRequested && attempt < MAX_ATTEMPTS * nRequested; attempt++) {
+			int target = sampleTarget(nTokens, nEdges);
+			// Prefer short edges, as in natural language data.
+			int distance = 1 + (int) Math.min(nTokens, -Math.log(1.0 - random.nextDouble()) * 2.5);
+			int source = random.nextBoolean() ? target - distance : target + distance;
+			if (source < 1 || source > nTokens || hasEdge(nEdges, source, target)) {
+				continue;
+			}
+			if (random.nextDouble() >= crossingRate && crossesEdge(nEdges, source, target)) {
+				continue;
+			}
+			if (random.nextDouble() >= cycleRate && isReachable(nTokens, nEdges, target, source)) {
+				continue;
+			}
+			sources[nEdges] = source;
+			targets[nEdges] = target;
+			labelIds[nEdges] = sample(labelDistribution);
+			indegree[target]++;
+			outdegree[source]++;
+			nEdges++;
+		}
+		return nEdges;
+	}
+
+	/**
+	 * Samples the target node of an edge, taking the reentrancy rate into
+	 * account.
+	 */
+	private int sampleTarget(int nTokens, int nEdges) {
+		boolean reentrant = nEdges > 0 && random.nextDouble() < reentrancyRate;
+		int target = 1 + random.nextInt(nTokens);
+		for (int k = 0; k < nTokens; k++) {
+			if (reentrant == indegree[target] > 0) {
+				return target;
+			}
+			target = target % nTokens + 1;
+		}
+		return target;
+	}
+
+	private boolean hasEdge(int nEdges, int source, int target) {
+		for (int e = 0; e < nEdges; e++) {
+			if (sources[e] == source && targets[e] == target) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean crossesEdge(int nEdges, int source, int target) {
+		int min1 = Math.min(source, target);
+		int max1 = Math.max(source, target);
+		for (int e = 0; e < nEdges; e++) {
+			int min2 = Math.min(sources[e], targets[e]);
+			int max2 = Math.max(sources[e], targets[e]);
+			if (min1 < min2 && min2 < max1 && max1 < max2 || min2 < min1 && min1 < max2 && max2 < max1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tests whether there is a directed path from one node to another.
+	 */
+	private boolean isReachable(int nTokens, int nEdges, int from, int to) {
+		if (outdegree[from] == 0) {
+			return false;
+		}
+		Arrays.fill(visited, 0, nTokens + 1, false);
+		int top = 0;
+		stack[top++] = from;
+		visited[from] = true;
+		while (top > 0) {
+			int node = stack[--top];
+			if (node == to) {
+				return true;
+			}
+			for (int e = 0; e < nEdges; e++) {
+				if (sources[e] == node && !visited[targets[e]]) {
+					visited[targets[e]] = true;
+					stack[top++] = targets[e];
+				}
+			}
+		}
+		return false;
+	}
+
+	private void ensureCapacity(int nTokens) {
+		int maxEdges = (int) Math.round(density * nTokens) + 1;
+		if (sources.length < maxEdges) {
+			sources = new int[maxEdges];
+			targets = new int[maxEdges];
+			labelIds = new int[maxEdges];
+		}
+		if (indegree.length < nTokens + 1) {
+			indegree = new int[nTokens + 1];
+			outdegree = new int[nTokens + 1];
+			predicateColumn = new int[nTokens + 1];
+			stack = new int[nTokens + 1];
+			visited = new boolean[nTokens + 1];
+		}
+		if (labelMatrix.length < nTokens * (nTokens + 1)) {
+			labelMatrix = new int[nTokens * (nTokens + 1)];
+		}
+	}
+
+	/**
+	 * Returns the cumulative Zipf distribution over the specified number of
+	 * outcomes.
+	 */
+	private static double[] zipf(int n) {
+		double[] cdf = new double[n];
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			sum += 1.0 / (i + 1);
+			cdf[i] = sum;
+		}
+		for (int i = 0; i < n; i++) {
+			cdf[i] /= sum;
+		}
+		return cdf;
+	}
+
+	private int sample(double[] cdf) {
+		int i = Arrays.binarySearch(cdf, random.nextDouble());
+		return Math.min(cdf.length - 1, i < 0 ? -i - 1 : i);
+	}
+
+	/**
+	 * Samples a word from an approximate Zipf distribution over the
+	 * vocabulary. This uses the continuous approximation of the distribution,
+	 * which avoids a table lookup for large vocabularies.
+	 */
+	private int sampleWord() {
+		double x = Math.pow(vocabularySize + 1, random.nextDouble());
+		return Math.min(vocabularySize - 1, (int) x - 1);
+	}
+
+	private double gaussian() {
+		// Box-Muller transform.
+		double u = 1.0 - random.nextDouble();
+		double v = random.nextDouble();
+		return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+	}
+
+	private void ensureBufferCapacity(int n) {
+		if (bufferLength + n > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, bufferLength + n));
+		}
+	}
+
+	private void appendByte(char c) {
+		buffer[bufferLength++] = (byte) c;
+	}
+
+	private void append(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			buffer[bufferLength++] = (byte) s.charAt(i);
+		}
+	}
+
+	private void appendInt(int n) {
+		int start = bufferLength;
+		do {
+			buffer[bufferLength++] = (byte) ('0' + n % 10);
+			n /= 10;
+		} while (n > 0);
+		for (int i = start, j = bufferLength - 1; i < j; i++, j--) {
+			byte tmp = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = tmp;
+		}
+	}
+
+	private void appendPadded(int n, int width) {
+		for (int divisor = (int) Math.pow(10, width - 1); divisor > 0; divisor /= 10) {
+			buffer[bufferLength++] = (byte) ('0' + n / divisor % 10);
+		}
+	}
+
+	/**
+	 * Generates a synthetic corpus.
+	 *
+	 * @param args the name of the output file (or {@code -} for the standard
+	 * output), followed by options of the form {@code name=value}
+	 * @throws Exception if an I/O error occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		long nGraphs = 1000;
+		long seed = 42;
+		int minLength = 1;
+		int meanLength = 24;
+		int maxLength = 100;
+		double density = 1.0;
+		double reentrancyRate = 0.2;
+		double crossingRate = 0.1;
+		double cycleRate = 0.0;
+		String[] labels = DM_LABELS;
+		int vocabularySize = 50000;
+		int shard = 2;
+		for (String arg : args) {
+			if (arg.startsWith("n=")) {
+				nGraphs = Long.parseLong(arg.substring(2));
+			}
+			if (arg.startsWith("seed=")) {
+				seed = Long.parseLong(arg.substring(5));
+			}
+			if (arg.startsWith("minLength=")) {
+				minLength = Integer.parseInt(arg.substring(10));
+			}
+			if (arg.startsWith("meanLength=")) {
+				meanLength = Integer.parseInt(arg.substring(11));
+			}
+			if (arg.startsWith("maxLength=")) {
+				maxLength = Integer.parseInt(arg.substring(10));
+			}
+			if (arg.startsWith("density=")) {
+				density = Double.parseDouble(arg.substring(8));
+			}
+			if (arg.startsWith("reentrancy=")) {
+				reentrancyRate = Double.parseDouble(arg.substring(11));
+			}
+			if (arg.startsWith("crossing=")) {
+				crossingRate = Double.parseDouble(arg.substring(9));
+			}
+			if (arg.startsWith("cycles=")) {
+				cycleRate = Double.parseDouble(arg.substring(7));
+			}
+			if (arg.startsWith("vocabulary=")) {
+				vocabularySize = Integer.parseInt(arg.substring(11));
+			}
+			if (arg.startsWith("labels=")) {
+				labels = getLabels(arg.substring(7));
+			}
+			if (arg.startsWith("shard=")) {
+				shard = Integer.parseInt(arg.substring(6));
+			}
+		}
+		Generator generator = new Generator(seed);
+		generator.setLengths(minLength, meanLength, maxLength);
+		generator.setDensity(density);
+		generator.setReentrancyRate(reentrancyRate);
+		generator.setCrossingRate(crossingRate);
+		generator.setCycleRate(cycleRate);
+		generator.setLabels(labels);
+		generator.setVocabularySize(vocabularySize);
+		generator.setShard(shard);
+		OutputStream out = args[0].equals("-") ? System.out : new FileOutputStream(args[0]);
+		long start = System.nanoTime();
+		generator.generate(nGraphs, out);
+		out.close();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.format("Generated %d graphs in %.2f seconds.%n", nGraphs, seconds);
+	}
+
+	/**
+	 * Returns the label vocabulary with the specified name. This is either the
+	 * name of a representation ({@code DM}, {@code PAS}, {@code PSD}), or a
+	 * number, in which case that many artificial labels are returned.
+	 *
+	 * @param name the name of the label vocabulary
+	 * @return the label vocabulary
+	 */
+	public static String[] getLabels(String name) {
+		switch (name.toLowerCase()) {
+			case "dm":
+				return DM_LABELS;
+			case "pas":
+				return PAS_LABELS;
+			case "psd":
+				return PSD_LABELS;
+			default:
+				String[] labels = new String[Integer.parseInt(name)];
+				for (int i = 0; i < labels.length; i++) {
+					labels[i] = "L" + i;
+				}
+				return labels;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.File;
+import java.io.IOException;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReader;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReaders;
+import se.liu.ida.nlp.sdp.toolkit.io.Projection;
+
+/**
+ * Opens graph readers for corpus files. Tools that can be run by the
+ * {@link ScoreServer} open corpora through a source, so that the server can
+ * serve frequently used corpora from memory (see {@link CorpusCache}).
+ *
+ * @author Marco Kuhlmann
+ */
+interface GraphSource {
+
+	/**
+	 * A source that reads every corpus from its file.
+	 */
+	static final GraphSource FILES = GraphReaders::open;
+
+	/**
+	 * Opens a graph reader for the specified file that decodes columns
+	 * according to the specified projection.
+	 *
+	 * @param file the file to read from
+	 * @param projection the projection specifying which columns are decoded
+	 * @return a graph reader for the specified file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public GraphReader open(File file, Projection projection) throws IOException;
+}
@@ -0,0 +1,249 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+
+/**
+ * A key extractor that assigns scored edges to groups, for stratified
+ * scoring (see {@link Scorer}). Keys either depend on the graph only (such as
+ * the WSJ section or the length of the sentence), in which case all edges of
+ * a graph are assigned to the same group, or on the head of each edge (such
+ * as its part-of-speech tag). Keys are computed on the gold standard graph.
+ *
+ * @author Marco Kuhlmann
+ */
+public interface GroupKey {
+
+	/**
+	 * Tests whether the keys extracted by this extractor depend on the head
+	 * of an edge, rather than on the graph only.
+	 *
+	 * @return {@code true} if the keys depend on the head of an edge
+	 */
+	public boolean dependsOnHead();
+
+	/**
+	 * Returns the key of the edges with the specified head in the specified
+	 * graph. Virtual edges to top nodes have the wall node as their head.
+	 *
+	 * @param graph a gold standard graph
+	 * @param head the ID of the head node; this is always 0 if the keys do
+	 * not depend on the head of an edge
+	 * @return the key of the edges with the specified head, or {@code null}
+	 * if these edges should not be assigned to any group
+	 */
+	public String getKey(Graph graph, int head);
+
+	/**
+	 * Returns a key extractor that groups graphs by the WSJ section encoded
+	 * in the graph ID (the two digits following the initial {@code #2}).
+	 *
+	 * @return a key extractor that groups graphs by section
+	 */
+	public static GroupKey sections() {
+		return new GroupKey() {
+			@Override
+			public boolean dependsOnHead() {
+				return false;
+			}
+
+			@Override
+			public String getKey(Graph graph, int head) {
+				return graph.id.length() >= 4 ? graph.id.substring(2, 4) : null;
+			}
+		};
+	}
+
+	/**
+	 * Returns a key extractor that groups graphs by named ranges of WSJ
+	 * sections.
+	 *
+	 * @param names the names of the groups
+	 * @param sections for each group, the sections assigned to it
+	 * @return a key extractor that groups graphs by ranges of sections
+	 */
+	public static GroupKey sections(String[] names, int[][] sections) {
+		final String[] keys = new String[100];
+		for (int i = 0; i < sections.length; i++) {
+			for (int section : sections[i]) {
+				keys[section] = names[i];
+			}
+		}
+		return new GroupKey() {
+			@Override
+			public boolean dependsOnHead() {
+				return false;
+			}
+
+			@Override
+			public String getKey(Graph graph, int head) {
+				String id = graph.id;
+				if (id.length() >= 4 && Character.isDigit(id.charAt(2)) && Character.isDigit(id.charAt(3))) {
+					return keys[(id.charAt(2) - '0') * 10 + (id.charAt(3) - '0')];
+				} else {
+					return null;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns a key extractor that groups graphs by their number of tokens.
+	 * The groups are named by the ranges of lengths they contain, such as
+	 * {@code 10-19} or {@code 40-}.
+	 *
+	 * @param bounds the increasing bucket bounds
+	 * @return a key extractor that groups graphs by length
+	 */
+	public static GroupKey lengths(int[] bounds) {
+		final String[] keys = new String[bounds.length + 1];
+		for (int i = 0; i < keys.length; i++) {
+			int from = i == 0 ? 0 : bounds[i - 1];
+			keys[i] = i < bounds.length ? String.format("%d-%d", from, bounds[i] - 1) : String.format("%d-", from);
+		}
+		return new GroupKey() {
+			@Override
+			public boolean dependsOnHead() {
+				return false;
+			}
+
+			@Override
+			public String getKey(Graph graph, int head) {
+				int nTokens = graph.getNNodes() - 1;
+				int i = 0;
+				while (i < bounds.length && nTokens >= bounds[i]) {
+					i++;
+				}
+				return keys[i];
+			}
+		};
+	}
+
+	/**
+	 * Returns a key extractor that groups graphs as specified in a file. Each
+	 * line of the file contains a graph ID and a group name, separated by a
+	 * tab; graphs that are not listed are not assigned to any group.
+	 *
+	 * @param file the file specifying the groups
+	 * @return a key extractor that groups graphs as specified in the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static GroupKey ids(File file) throws IOException {
+		final Map<String, String> keys = new HashMap<String, String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab >= 0) {
+					keys.put(line.substring(0, tab), line.substring(tab + 1));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return new GroupKey() {
+			@Override
+			public boolean dependsOnHead() {
+				return false;
+			}
+
+			@Override
+			public String getKey(Graph graph, int head) {
+				return keys.get(graph.id);
+			}
+		};
+	}
+
+	/**
+	 * Returns a key extractor that groups edges by the part-of-speech tag of
+	 * their head.
+	 *
+	 * @return a key extractor that groups edges by the tag of their head
+	 */
+	public static GroupKey headPos() {
+		return new GroupKey() {
+			@Override
+			public boolean dependsOnHead() {
+				return true;
+			}
+
+			@Override
+			public String getKey(Graph graph, int head) {
+				return graph.getNode(head).getPos();
+			}
+		};
+	}
+
+	/**
+	 * Returns a key extractor that groups edges by the sense of their head.
+	 *
+	 * @return a key extractor that groups edges by the sense of their head
+	 */
+	public static GroupKey headSense() {
+		return new GroupKey() {
+			@Override
+			public boolean dependsOnHead() {
+				return true;
+			}
+
+			@Override
+			public String getKey(Graph graph, int head) {
+				return graph.getNode(head).getSense();
+			}
+		};
+	}
+
+	/**
+	 * Parses a key extractor from its specification on the command line:
+	 * {@code section}, {@code sections:00-19+21-24,20} (one list of section
+	 * ranges per group), {@code length:10,20,40} (length buckets),
+	 * {@code ids:FILE} (groups listed in a file), {@code headPos}, or
+	 * {@code headSense}.
+	 *
+	 * @param spec the specification
+	 * @return the specified key extractor
+	 * @throws IOException if the specification refers to a file that cannot
+	 * be read
+	 * @throws IllegalArgumentException if the specification is malformed
+	 */
+	public static GroupKey parse(String spec) throws IOException {
+		if (spec.equals("section")) {
+			return sections();
+		}
+		if (spec.startsWith("sections:")) {
+			String[] names = spec.substring(9).split(",");
+			int[][] sections = new int[names.length][];
+			for (int i = 0; i < names.length; i++) {
+				sections[i] = Splitter.parseSections(names[i]);
+			}
+			return sections(names, sections);
+		}
+		if (spec.startsWith("length:")) {
+			String[] parts = spec.substring(7).split(",");
+			int[] bounds = new int[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				bounds[i] = Integer.parseInt(parts[i]);
+			}
+			return lengths(bounds);
+		}
+		if (spec.startsWith("ids:")) {
+			return ids(new File(spec.substring(4)));
+		}
+		if (spec.equals("headPos")) {
+			return headPos();
+		}
+		if (spec.equals("headSense")) {
+			return headSense();
+		}
+		throw new IllegalArgumentException("Unknown grouping: " + spec);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+/**
+ * A HyperLogLog sketch for estimating the number of distinct items in a
+ * stream. The sketch consists of 2<sup>p</sup> one-byte registers, where
+ * {@code p} is the precision; its memory use does not depend on the number
+ * of items added, and its relative standard error is about
+ * 1.04 / sqrt(2<sup>p</sup>). Items are added in the form of 64-bit hashes.
+ * Two sketches with the same precision can be merged; the result is the same
+ * as if all items had been added to one sketch.
+ *
+ * @author Marco Kuhlmann
+ */
+public final class HyperLogLog {
+
+	/**
+	 * The precision (the number of index bits).
+	 */
+	private final int precision;
+
+	/**
+	 * The registers.
+	 */
+	private final byte[] registers;
+
+	/**
+	 * Construct a new, empty sketch.
+	 *
+	 * @param precision the precision, between 4 and 18
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 18) {
+			throw new IllegalArgumentException("Precision must be between 4 and 18: " + precision);
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Returns the precision of this sketch.
+	 *
+	 * @return the precision of this sketch
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Adds an item to this sketch.
+	 *
+	 * @param hash a 64-bit hash of the item
+	 */
+	public void add(long hash) {
+		int index = (int) (hash >>> (64 - precision));
+		// Set a guard bit so that the rank is at most 64 - precision + 1.
+		long rest = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > registers[index]) {
+			registers[index] = rank;
+		}
+	}
+
+	/**
+	 * Adds the items of the specified sketch to this sketch.
+	 *
+	 * @param other a sketch with the same precision as this sketch
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Cannot merge sketches with different precisions");
+		}
+		for (int i = 0; i < registers.length; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the estimated number of distinct items added to this sketch.
+	 *
+	 * @return the estimated number of distinct items
+	 */
+	public long estimate() {
+		int m = registers.length;
+		double sum = 0.0;
+		int nZeros = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				nZeros++;
+			}
+		}
+		double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1.0 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && nZeros > 0) {
+			// Use linear counting for small cardinalities.
+			estimate = m * Math.log((double) m / nZeros);
+		}
+		return Math.round(estimate);
+	}
+}
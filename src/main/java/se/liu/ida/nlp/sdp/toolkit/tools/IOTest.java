@@ -5,7 +5,7 @@ package se.liu.ida.nlp.sdp.toolkit.tools;
 
 import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
 import se.liu.ida.nlp.sdp.toolkit.io.GraphReader;
-import se.liu.ida.nlp.sdp.toolkit.io.GraphReader2015;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReaders;
 import se.liu.ida.nlp.sdp.toolkit.io.GraphWriter;
 import se.liu.ida.nlp.sdp.toolkit.io.GraphWriter2015;
 
@@ -18,7 +18,7 @@ public class IOTest {
 
     public static void main(String[] args) throws Exception {
         for (String arg : args) {
-            GraphReader reader = new GraphReader2015(arg);
+            GraphReader reader = GraphReaders.open(arg);
             GraphWriter writer = new GraphWriter2015(arg + ".out");
             int nGraphs = 0;
             int nTokens = 0;
@@ -14,7 +14,9 @@ import se.liu.ida.nlp.sdp.toolkit.graph.Edge;
 import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
 import se.liu.ida.nlp.sdp.toolkit.graph.Node;
 import se.liu.ida.nlp.sdp.toolkit.io.GraphReader;
-import se.liu.ida.nlp.sdp.toolkit.io.GraphReader2015;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReaders;
+import se.liu.ida.nlp.sdp.toolkit.io.Metrics;
+import se.liu.ida.nlp.sdp.toolkit.io.Projection;
 
 /**
  *
@@ -27,10 +29,18 @@ public class PairedBootstrap {
     private static final int SEED = 42;
     private static final Random R = new Random(SEED);
 
+    /**
+     * Metrics for the phases of the test (see {@link Metrics}).
+     */
+    private static final Metrics.Timer READ_PHASE = Metrics.timer("bootstrap.phase.read");
+    private static final Metrics.Timer SAMPLE_PHASE = Metrics.timer("bootstrap.phase.sample");
+
     public static void main(String[] args) throws Exception {
+	long start = READ_PHASE.start();
 	List<Graph> graphs0 = readGraphs(args[0]);
 	List<Graph> graphs1 = readGraphs(args[1]); // baseline
 	List<Graph> graphs2 = readGraphs(args[2]); // system
+	READ_PHASE.stop(start);
 
 	assert graphs0.size() == graphs1.size();
 	assert graphs0.size() == graphs2.size();
@@ -57,7 +67,9 @@ public class PairedBootstrap {
 
 	System.err.println("Q: Could it be that the victory was just a random fluke?");
 
+	start = SAMPLE_PHASE.start();
 	double p = getP(items);
+	SAMPLE_PHASE.stop(start);
 
 	if (p < 0.05) {
 	    System.err.print("A: No; the difference is most probably real");
@@ -70,7 +82,7 @@ public class PairedBootstrap {
 
     private static List<Graph> readGraphs(String fileName) throws FileNotFoundException, IOException {
 	List<Graph> graphs = new ArrayList<Graph>();
-	GraphReader reader = new GraphReader2015(fileName);
+	GraphReader reader = GraphReaders.open(fileName, Projection.STRUCTURE);
 	Graph graph;
 	while ((graph = reader.readGraph()) != null) {
 	    graphs.add(graph);
@@ -78,7 +90,7 @@ public class PairedBootstrap {
 	return graphs;
     }
 
-    private static List<Item> getSample(List<Item> base) {
+    static List<Item> getSample(List<Item> base) {
 	int n = base.size();
 	List<Item> sample = new ArrayList<Item>(n);
 	for (int i = 0; i < n; i++) {
@@ -101,7 +113,7 @@ public class PairedBootstrap {
 	return p;
     }
 
-    private static double getDelta(List<Item> sample) {
+    static double getDelta(List<Item> sample) {
 	Set<MyEdge> edges0 = new HashSet<MyEdge>();
 	Set<MyEdge> edges1 = new HashSet<MyEdge>();
 	Set<MyEdge> edges2 = new HashSet<MyEdge>();
@@ -148,7 +160,7 @@ public class PairedBootstrap {
 	return intersection;
     }
 
-    private static class Item {
+    static class Item {
 
 	public final Graph graph0;
 	public final Graph graph1;
@@ -0,0 +1,522 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import se.liu.ida.nlp.sdp.toolkit.graph.Edge;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+import se.liu.ida.nlp.sdp.toolkit.graph.Node;
+
+/**
+ * A cache for the contributions of pairs of graphs to a {@link ScoreSnapshot},
+ * keyed by fingerprints of the gold standard graph and the system output
+ * graph. When a system output is rescored after a change that affects only
+ * some of its graphs, the counts for the unchanged pairs are taken from the
+ * cache rather than recomputed, so the report is the same as without the
+ * cache.
+ * <p>
+ * The counts of a pair are held as a vector of variable-length integers (see
+ * {@link Encoder}), written by {@link Scorer#writeRecordedCounts} and read by
+ * {@link Scorer#addCounts(Decoder, ScoreCache)}. Labels and group keys are
+ * referred to by their indices in a table of names held by the cache.
+ * <p>
+ * A cache is stored in a binary file that starts with the line
+ * {@code #SDP-SCORE-CACHE 2} and the fingerprint of the scoring
+ * configuration, followed by records that either add a name to the table of
+ * names or hold the counts of a pair. A cache file only holds entries for one
+ * configuration; if the configuration changes, the cache starts out empty.
+ * When the cache is saved, entries that were not used in the current run are
+ * dropped; if all entries were used, new entries are appended to the file
+ * rather than the file being rewritten. Caches can be used from several
+ * threads at the same time.
+ *
+ * @author Marco Kuhlmann
+ */
+class ScoreCache {
+
+	/**
+	 * The format identifier line of a cache file.
+	 */
+	static final String FIRST_LINE = "#SDP-SCORE-CACHE 2";
+
+	/**
+	 * The types of records in a cache file.
+	 */
+	private static final int NAME_RECORD = 1;
+	private static final int ENTRY_RECORD = 2;
+
+	/**
+	 * The cache file.
+	 */
+	private final File file;
+
+	/**
+	 * The fingerprint of the scoring configuration.
+	 */
+	private final long configuration;
+
+	/**
+	 * The cached entries, by pair of fingerprints.
+	 */
+	private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+	/**
+	 * The table of names (labels and group keys), and the index of each name.
+	 */
+	private final List<String> names = new ArrayList<String>();
+	private final Map<String, Integer> nameIndices = new HashMap<String, Integer>();
+
+	/**
+	 * The number of names stored in the cache file, and a flag indicating
+	 * whether the file is valid for the current configuration, so that new
+	 * names and entries can be appended to it.
+	 */
+	private int nStoredNames;
+	private boolean isAppendable;
+
+	/**
+	 * The numbers of pairs found and not found in the cache.
+	 */
+	private final AtomicLong nHits = new AtomicLong();
+	private final AtomicLong nMisses = new AtomicLong();
+
+	/**
+	 * The fingerprints of a pair of graphs.
+	 */
+	private static final class Key {
+
+		final long goldStandard;
+		final long systemOutput;
+
+		Key(long goldStandard, long systemOutput) {
+			this.goldStandard = goldStandard;
+			this.systemOutput = systemOutput;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && ((Key) other).goldStandard == goldStandard && ((Key) other).systemOutput == systemOutput;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(goldStandard * 31 + systemOutput);
+		}
+	}
+
+	/**
+	 * The encoded counts of a pair, together with flags indicating whether
+	 * the entry is stored in the cache file and whether it has been used in
+	 * the current run.
+	 */
+	private static final class Entry {
+
+		final byte[] counts;
+		volatile boolean isStored;
+		volatile boolean isUsed;
+
+		Entry(byte[] counts, boolean isStored) {
+			this.counts = counts;
+			this.isStored = isStored;
+		}
+	}
+
+	/**
+	 * Construct a new cache that is stored in the specified file. If the file
+	 * exists and was written for the same scoring configuration, the entries
+	 * stored in it are loaded.
+	 *
+	 * @param file the cache file
+	 * @param configuration the fingerprint of the scoring configuration (see
+	 * {@link #getFingerprint(List)})
+	 * @throws IOException if an I/O error occurs, or if the file exists but
+	 * is not a well-formed cache file
+	 */
+	ScoreCache(File file, long configuration) throws IOException {
+		this.file = file;
+		this.configuration = configuration;
+		if (file.exists()) {
+			load();
+		}
+	}
+
+	private void load() throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		byte[] firstLine = (FIRST_LINE + "\n").getBytes(StandardCharsets.UTF_8);
+		if (bytes.length < firstLine.length || !Arrays.equals(Arrays.copyOf(bytes, firstLine.length), firstLine)) {
+			throw new IOException("Not a score cache file: " + file);
+		}
+		Decoder in = new Decoder(bytes, firstLine.length);
+		try {
+			if (in.readLong() != configuration) {
+				// The cache was written for a different configuration.
+				return;
+			}
+			while (in.hasRemaining()) {
+				int type = in.readInt();
+				if (type == NAME_RECORD) {
+					addName(new String(in.readBytes(in.readInt()), StandardCharsets.UTF_8));
+				} else if (type == ENTRY_RECORD) {
+					Key key = new Key(in.readLong(), in.readLong());
+					entries.put(key, new Entry(in.readBytes(in.readInt()), true));
+				} else {
+					throw new IOException(String.format("%s: Unknown record type %d", file, type));
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException(String.format("%s: Unexpected end of file", file));
+		}
+		nStoredNames = names.size();
+		isAppendable = true;
+	}
+
+	/**
+	 * Returns the cached counts for the specified pair of graphs.
+	 *
+	 * @param goldStandard the fingerprint of the gold standard graph
+	 * @param systemOutput the fingerprint of the system output graph
+	 * @return the cached counts, or {@code null} if the pair is not in the
+	 * cache
+	 */
+	byte[] get(long goldStandard, long systemOutput) {
+		Entry entry = entries.get(new Key(goldStandard, systemOutput));
+		if (entry != null) {
+			entry.isUsed = true;
+			nHits.incrementAndGet();
+			return entry.counts;
+		} else {
+			nMisses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Adds the counts for the specified pair of graphs to this cache.
+	 *
+	 * @param goldStandard the fingerprint of the gold standard graph
+	 * @param systemOutput the fingerprint of the system output graph
+	 * @param counts the encoded counts
+	 */
+	void put(long goldStandard, long systemOutput, byte[] counts) {
+		Entry entry = new Entry(counts, false);
+		entry.isUsed = true;
+		entries.putIfAbsent(new Key(goldStandard, systemOutput), entry);
+	}
+
+	/**
+	 * Returns the index of the specified name, adding the name to the table
+	 * of names if necessary.
+	 *
+	 * @param name a label or group key
+	 * @return the index of the specified name
+	 */
+	synchronized int getNameIndex(String name) {
+		Integer index = nameIndices.get(name);
+		return index != null ? index : addName(name);
+	}
+
+	/**
+	 * Returns the name with the specified index.
+	 *
+	 * @param index the index of a name
+	 * @return the name with the specified index
+	 */
+	synchronized String getName(int index) {
+		return names.get(index);
+	}
+
+	private int addName(String name) {
+		nameIndices.put(name, names.size());
+		names.add(name);
+		return names.size() - 1;
+	}
+
+	/**
+	 * Returns the number of pairs of graphs found in this cache.
+	 *
+	 * @return the number of pairs of graphs found in this cache
+	 */
+	long getNHits() {
+		return nHits.get();
+	}
+
+	/**
+	 * Returns the number of pairs of graphs not found in this cache.
+	 *
+	 * @return the number of pairs of graphs not found in this cache
+	 */
+	long getNMisses() {
+		return nMisses.get();
+	}
+
+	/**
+	 * Writes this cache to its file. Entries that have not been used since
+	 * the cache was loaded are dropped. If the file holds no such entries,
+	 * the new names and entries are appended to it; otherwise, the file is
+	 * rewritten.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	synchronized void save() throws IOException {
+		boolean hasUnusedEntries = false;
+		boolean hasNewEntries = false;
+		for (Entry entry : entries.values()) {
+			hasUnusedEntries = hasUnusedEntries || !entry.isUsed;
+			hasNewEntries = hasNewEntries || !entry.isStored;
+		}
+		boolean append = isAppendable && !hasUnusedEntries;
+		if (append && !hasNewEntries) {
+			return;
+		}
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file, append), 1 << 16);
+		try {
+			Encoder encoder = new Encoder();
+			if (!append) {
+				encoder.writeBytes((FIRST_LINE + "\n").getBytes(StandardCharsets.UTF_8));
+				encoder.writeLong(configuration);
+				out.write(encoder.bytes, 0, encoder.length);
+				nStoredNames = 0;
+			}
+			for (; nStoredNames < names.size(); nStoredNames++) {
+				byte[] name = names.get(nStoredNames).getBytes(StandardCharsets.UTF_8);
+				encoder.reset();
+				encoder.writeInt(NAME_RECORD);
+				encoder.writeInt(name.length);
+				encoder.writeBytes(name);
+				out.write(encoder.bytes, 0, encoder.length);
+			}
+			for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+				Entry value = entry.getValue();
+				if (value.isUsed && !(append && value.isStored)) {
+					encoder.reset();
+					encoder.writeInt(ENTRY_RECORD);
+					encoder.writeLong(entry.getKey().goldStandard);
+					encoder.writeLong(entry.getKey().systemOutput);
+					encoder.writeInt(value.counts.length);
+					encoder.writeBytes(value.counts);
+					out.write(encoder.bytes, 0, encoder.length);
+					value.isStored = true;
+				}
+			}
+		} finally {
+			out.close();
+		}
+		isAppendable = true;
+	}
+
+	/**
+	 * Computes a fingerprint of a scoring configuration. The fingerprint
+	 * covers the options that affect the scores, and the contents of the
+	 * files that these options refer to.
+	 *
+	 * @param options the scoring options
+	 * @return a 64-bit fingerprint of the configuration
+	 * @throws IOException if a file referred to by an option cannot be read
+	 */
+	static long getFingerprint(List<String> options) throws IOException {
+		List<String> sortedOptions = new ArrayList<String>();
+		for (String option : options) {
+			if (!option.startsWith("max=")) {
+				sortedOptions.add(option);
+			}
+		}
+		Collections.sort(sortedOptions);
+		long h = 0xcbf29ce484222325L;
+		for (String option : sortedOptions) {
+			h = mix(h, FrequencyCounter.hash(option));
+			String fileName = null;
+			if (option.startsWith("corePredicates=")) {
+				fileName = option.substring(15);
+			} else if (option.startsWith("punctuationTags=")) {
+				fileName = option.substring(16);
+			} else if (option.startsWith("groupBy=ids:")) {
+				fileName = option.substring(12);
+			}
+			if (fileName != null) {
+				for (byte b : Files.readAllBytes(new File(fileName).toPath())) {
+					h = mix(h, b);
+				}
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Computes a fingerprint of the content of the specified graph that is
+	 * relevant for scoring: its ID, the part-of-speech tags, senses and flags
+	 * of its nodes, and its edges.
+	 *
+	 * @param graph a graph
+	 * @return a 64-bit fingerprint of the graph
+	 */
+	static long getFingerprint(Graph graph) {
+		long h = 0xcbf29ce484222325L;
+		h = mix(h, FrequencyCounter.hash(graph.id));
+		h = mix(h, graph.getNNodes());
+		for (Node node : graph.getNodes()) {
+			h = mix(h, (node.isTop ? 1 : 0) | (node.isPred ? 2 : 0));
+			h = mix(h, hash(node.getPos()));
+			h = mix(h, hash(node.getSense()));
+		}
+		h = mix(h, graph.getNEdges());
+		for (Edge edge : graph.getEdges()) {
+			h = mix(h, edge.source);
+			h = mix(h, edge.target);
+			h = mix(h, FrequencyCounter.hash(edge.label));
+		}
+		return h;
+	}
+
+	private static long hash(String s) {
+		return s == null ? 0 : FrequencyCounter.hash(s);
+	}
+
+	private static long mix(long h, long value) {
+		h = (h ^ value) * 0x100000001b3L;
+		return h ^ (h >>> 29);
+	}
+
+	/**
+	 * A growable buffer to which non-negative integers are written as
+	 * variable-length integers, seven bits per byte.
+	 */
+	static final class Encoder {
+
+		private byte[] bytes = new byte[256];
+		private int length;
+
+		/**
+		 * Empties this buffer.
+		 */
+		void reset() {
+			length = 0;
+		}
+
+		/**
+		 * Writes the specified non-negative integer.
+		 *
+		 * @param value a non-negative integer
+		 */
+		void writeInt(int value) {
+			if (length + 5 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+			}
+			while ((value & ~0x7f) != 0) {
+				bytes[length++] = (byte) (value & 0x7f | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+
+		private void writeLong(long value) {
+			for (int i = 0; i < 8; i++) {
+				writeByte((int) (value >>> (8 * i)));
+			}
+		}
+
+		private void writeByte(int b) {
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+			}
+			bytes[length++] = (byte) b;
+		}
+
+		private void writeBytes(byte[] b) {
+			if (length + b.length > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(length + b.length, 2 * bytes.length));
+			}
+			System.arraycopy(b, 0, bytes, length, b.length);
+			length += b.length;
+		}
+
+		/**
+		 * Returns the bytes written to this buffer.
+		 *
+		 * @return the bytes written to this buffer
+		 */
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, length);
+		}
+	}
+
+	/**
+	 * A reader for integers written by an {@link Encoder}.
+	 */
+	static final class Decoder {
+
+		private byte[] bytes;
+		private int position;
+
+		Decoder() {
+			this(new byte[0], 0);
+		}
+
+		private Decoder(byte[] bytes, int position) {
+			this.bytes = bytes;
+			this.position = position;
+		}
+
+		/**
+		 * Starts reading the specified bytes.
+		 *
+		 * @param bytes the bytes written by an encoder
+		 */
+		void reset(byte[] bytes) {
+			this.bytes = bytes;
+			this.position = 0;
+		}
+
+		/**
+		 * Reads the next non-negative integer.
+		 *
+		 * @return the next non-negative integer
+		 */
+		int readInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			while ((b = bytes[position++]) < 0) {
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			}
+			return value | b << shift;
+		}
+
+		private long readLong() {
+			long value = 0;
+			for (int i = 0; i < 8; i++) {
+				value |= (bytes[position++] & 0xffL) << (8 * i);
+			}
+			return value;
+		}
+
+		private byte[] readBytes(int n) {
+			if (position + n > bytes.length) {
+				throw new ArrayIndexOutOfBoundsException(position + n);
+			}
+			byte[] b = Arrays.copyOfRange(bytes, position, position + n);
+			position += n;
+			return b;
+		}
+
+		private boolean hasRemaining() {
+			return position < bytes.length;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A client for the {@link ScoreServer}.
+ *
+ * @author Marco Kuhlmann
+ */
+public class ScoreClient {
+
+	/**
+	 * The options whose values are file names.
+	 */
+	private static final Set<String> FILE_OPTIONS = new HashSet<String>(Arrays.asList("snapshot", "sentences", "confusion", "corePredicates", "punctuationTags", "cache"));
+
+	/**
+	 * Sends a request to a running server and prints the response. The first
+	 * argument is the name of the tool, {@code Scorer} or {@code Analyzer},
+	 * followed by the arguments of the tool; the names of existing files, and
+	 * of the files given in options such as {@code snapshot=}, are made
+	 * absolute before they are sent. The argument {@code status} prints the state of
+	 * the cache instead. The port of the server can be given as
+	 * {@code port=}, and the file holding the token of the server as
+	 * {@code tokenFile=}, before the name of the tool. Exits with status 1 if
+	 * the request failed.
+	 *
+	 * @param args the command-line arguments
+	 * @throws Exception if an I/O error occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = ScoreServer.DEFAULT_PORT;
+		File tokenFile = ScoreServer.DEFAULT_TOKEN_FILE;
+		int i = 0;
+		for (; i < args.length; i++) {
+			if (args[i].startsWith("port=")) {
+				port = Integer.parseInt(args[i].substring(5));
+			} else if (args[i].startsWith("tokenFile=")) {
+				tokenFile = new File(args[i].substring(10));
+			} else {
+				break;
+			}
+		}
+		if (i >= args.length) {
+			System.err.println("Usage: ScoreClient [port=N] [tokenFile=FILE] Scorer|Analyzer ARGS...");
+			System.err.println("       ScoreClient [port=N] [tokenFile=FILE] status");
+			System.exit(1);
+		}
+		String tool = args[i++];
+		String token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8).trim();
+		HttpURLConnection connection = (HttpURLConnection) new URL("http", "localhost", port, "/" + tool).openConnection();
+		connection.setRequestProperty(ScoreServer.TOKEN_HEADER, token);
+		if (!tool.equals("status")) {
+			StringBuilder sb = new StringBuilder();
+			for (; i < args.length; i++) {
+				sb.append(resolve(args[i])).append('\n');
+			}
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			OutputStream out = connection.getOutputStream();
+			out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+			out.close();
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		byte[] buffer = new byte[1 << 12];
+		int n;
+		while (in != null && (n = in.read(buffer)) > 0) {
+			System.err.write(buffer, 0, n);
+		}
+		System.err.flush();
+		System.exit(status == 200 ? 0 : 1);
+	}
+
+	/**
+	 * Makes the file name in the specified argument absolute, so that it can
+	 * be resolved by a server with a different working directory.
+	 *
+	 * @param arg a command-line argument
+	 * @return the argument with an absolute file name
+	 */
+	private static String resolve(String arg) {
+		int equals = arg.indexOf('=');
+		if (equals < 0) {
+			// Flags such as excludePunctuation are not file names.
+			return new File(arg).exists() ? new File(arg).getAbsolutePath() : arg;
+		}
+		String key = arg.substring(0, equals);
+		String value = arg.substring(equals + 1);
+		if (FILE_OPTIONS.contains(key)) {
+			return key + "=" + new File(value).getAbsolutePath();
+		}
+		if (key.equals("groupBy") && value.startsWith("ids:")) {
+			return key + "=ids:" + new File(value.substring(4)).getAbsolutePath();
+		}
+		return arg;
+	}
+}
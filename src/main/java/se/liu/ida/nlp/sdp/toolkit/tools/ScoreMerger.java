@@ -0,0 +1,57 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges score snapshots written by {@link Scorer} for different parts of a
+ * corpus, and prints the evaluation report for the complete corpus.
+ *
+ * @author Marco Kuhlmann
+ */
+public class ScoreMerger {
+
+	/**
+	 * Merges score snapshots. The positional arguments are the snapshot
+	 * files; the merged snapshot can be written to a file using
+	 * {@code output=}, so that merging can proceed in several stages. The
+	 * option {@code confusion=} writes the merged label confusion matrix.
+	 *
+	 * @param args the command-line arguments
+	 * @throws Exception if an I/O error occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		List<File> files = new ArrayList<File>();
+		String outputFileName = null;
+		String confusionFileName = null;
+		for (String arg : args) {
+			if (arg.startsWith("output=")) {
+				outputFileName = arg.substring(7);
+			} else if (arg.startsWith("confusion=")) {
+				confusionFileName = arg.substring(10);
+			} else {
+				files.add(new File(arg));
+			}
+		}
+		if (files.isEmpty()) {
+			System.err.println("Usage: ScoreMerger SNAPSHOT... [output=FILE] [confusion=FILE]");
+			System.exit(1);
+		}
+		ScoreSnapshot snapshot = ScoreSnapshot.read(files.get(0));
+		for (int i = 1; i < files.size(); i++) {
+			snapshot.merge(ScoreSnapshot.read(files.get(i)));
+		}
+		if (outputFileName != null) {
+			snapshot.write(new File(outputFileName));
+		}
+		if (confusionFileName != null) {
+			snapshot.writeConfusionMatrix(new File(confusionFileName));
+		}
+		snapshot.printOptions(System.err);
+		snapshot.printReport(System.err);
+	}
+}
@@ -0,0 +1,333 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-running local service that runs the {@link Scorer} and the
+ * {@link Analyzer}. Running the tools in a server that is already warmed up
+ * avoids the cost of starting a virtual machine for every evaluation, and
+ * gold standard corpora are read from memory rather than parsed anew (see
+ * {@link CorpusCache}). The server listens on the loopback interface only.
+ * <p>
+ * A request is a {@code POST} to {@code /Scorer} or {@code /Analyzer} whose
+ * body holds the command-line arguments of the tool, one per line; file names
+ * are resolved relative to the working directory of the server. The response
+ * holds the output that the tool would print. A {@code GET} to
+ * {@code /status} returns the state of the cache. Requests are served in
+ * parallel by a pool of threads. See {@link ScoreClient} for a client.
+ * <p>
+ * Every request must carry the token that the server writes to its token
+ * file at start-up in the header {@link #TOKEN_HEADER}, and a {@code Host}
+ * header that names the loopback interface. This keeps web pages, which can
+ * send requests to local ports but cannot read the token file, from using
+ * the server. Options that write files are only accepted if the server was
+ * started with an output directory, and only for files inside it; the
+ * option {@code follow} is not accepted.
+ *
+ * @author Marco Kuhlmann
+ */
+public class ScoreServer {
+
+	/**
+	 * The default port of the server.
+	 */
+	static final int DEFAULT_PORT = 7015;
+
+	/**
+	 * The default capacity of the cache, in bytes: half of the memory
+	 * available to the virtual machine.
+	 */
+	private static final long DEFAULT_CACHE_SIZE = Runtime.getRuntime().maxMemory() / 2;
+
+	/**
+	 * The header that carries the token of the server.
+	 */
+	static final String TOKEN_HEADER = "X-SDP-Token";
+
+	/**
+	 * The default file to which the token of the server is written.
+	 */
+	static final File DEFAULT_TOKEN_FILE = new File(System.getProperty("user.home"), ".sdp-score-server");
+
+	/**
+	 * The options of the tools whose values are files that are written.
+	 */
+	private static final Set<String> OUTPUT_OPTIONS = new HashSet<String>(Arrays.asList("snapshot", "sentences", "confusion", "cache"));
+
+	/**
+	 * The host names under which the loopback interface can be addressed.
+	 */
+	private static final Set<String> LOOPBACK_HOSTS = new HashSet<String>(Arrays.asList("localhost", "127.0.0.1", "[::1]"));
+
+	/**
+	 * A tool that can be run by the server.
+	 */
+	private interface Tool {
+
+		void run(String[] args, PrintStream out, GraphSource source) throws IOException;
+	}
+
+	/**
+	 * The port of the server.
+	 */
+	private final int port;
+
+	/**
+	 * The token that requests must carry.
+	 */
+	private final byte[] token;
+
+	/**
+	 * The canonical directory inside which the tools may write files, or
+	 * {@code null} if they may not write files.
+	 */
+	private final File outputDirectory;
+
+	/**
+	 * The cache of corpora.
+	 */
+	private final CorpusCache cache;
+
+	private ScoreServer(int port, String token, File outputDirectory, CorpusCache cache) {
+		this.port = port;
+		this.token = token.getBytes(StandardCharsets.UTF_8);
+		this.outputDirectory = outputDirectory;
+		this.cache = cache;
+	}
+
+	/**
+	 * Starts the server. The port can be set using {@code port=}, the number
+	 * of threads serving requests using {@code threads=}, and the capacity of
+	 * the cache (in megabytes, default half of the maximal heap size) using
+	 * {@code cacheSize=}. A new random token is written to the file given by
+	 * {@code tokenFile=} (default {@code ~/.sdp-score-server}), readable only
+	 * by the current user. With {@code outputDirectory=DIR}, requests may
+	 * write snapshots, per-sentence statistics, confusion matrices and caches
+	 * to files inside that directory.
+	 *
+	 * @param args the command-line arguments
+	 * @throws Exception if the server cannot be started
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = DEFAULT_PORT;
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		long cacheSize = DEFAULT_CACHE_SIZE;
+		File tokenFile = DEFAULT_TOKEN_FILE;
+		File outputDirectory = null;
+		for (String arg : args) {
+			if (arg.startsWith("port=")) {
+				port = Integer.parseInt(arg.substring(5));
+			} else if (arg.startsWith("threads=")) {
+				nThreads = Integer.parseInt(arg.substring(8));
+			} else if (arg.startsWith("cacheSize=")) {
+				cacheSize = Long.parseLong(arg.substring(10)) << 20;
+			} else if (arg.startsWith("tokenFile=")) {
+				tokenFile = new File(arg.substring(10));
+			} else if (arg.startsWith("outputDirectory=")) {
+				outputDirectory = new File(arg.substring(16)).getCanonicalFile();
+				if (!outputDirectory.isDirectory()) {
+					System.err.format("Not a directory: %s%n", outputDirectory);
+					System.exit(1);
+				}
+			} else {
+				System.err.println("Usage: ScoreServer [port=N] [threads=N] [cacheSize=MB] [tokenFile=FILE] [outputDirectory=DIR]");
+				System.exit(1);
+			}
+		}
+		String token = newToken();
+		writeToken(tokenFile, token);
+		final ScoreServer scoreServer = new ScoreServer(port, token, outputDirectory, new CorpusCache(cacheSize));
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/Scorer", exchange -> scoreServer.handle(exchange, Scorer::run));
+		server.createContext("/Analyzer", exchange -> scoreServer.handle(exchange, Analyzer::run));
+		server.createContext("/status", exchange -> scoreServer.handleStatus(exchange));
+		server.setExecutor(Executors.newFixedThreadPool(nThreads));
+		server.start();
+		System.err.format("Listening on %s, token in %s%n", server.getAddress(), tokenFile);
+	}
+
+	private static String newToken() {
+		byte[] bytes = new byte[16];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the specified token to a file that only the current user can
+	 * read, replacing any previous token.
+	 */
+	private static void writeToken(File file, String token) throws IOException {
+		Path path = file.toPath();
+		Files.deleteIfExists(path);
+		try {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			Files.createFile(path);
+			file.setReadable(false, false);
+			file.setReadable(true, true);
+		}
+		Files.write(path, token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Responds with the state of the cache.
+	 */
+	private void handleStatus(HttpExchange exchange) throws IOException {
+		if (isAuthorized(exchange)) {
+			respond(exchange, 200, cache.getStatus());
+		}
+	}
+
+	/**
+	 * Runs the specified tool with the arguments given in a request, and
+	 * responds with its output.
+	 */
+	private void handle(HttpExchange exchange, Tool tool) throws IOException {
+		if (!isAuthorized(exchange)) {
+			return;
+		}
+		if (!exchange.getRequestMethod().equals("POST")) {
+			respond(exchange, 405, "Expected a POST request\n");
+			return;
+		}
+		String[] args = readArguments(exchange.getRequestBody());
+		boolean hasFiles = false;
+		for (String arg : args) {
+			hasFiles = hasFiles || !arg.contains("=");
+		}
+		if (!hasFiles) {
+			respond(exchange, 400, "No files given\n");
+			return;
+		}
+		for (String arg : args) {
+			String error = checkArgument(arg);
+			if (error != null) {
+				respond(exchange, 403, error + "\n");
+				return;
+			}
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bytes, false, "UTF-8");
+		int status = 200;
+		try {
+			tool.run(args, out, cache);
+		} catch (Exception e) {
+			out.println(e);
+			status = 500;
+		}
+		out.flush();
+		respond(exchange, status, bytes.toByteArray());
+	}
+
+	/**
+	 * Checks the {@code Host} header and the token of a request. If the
+	 * request is rejected, an error response is sent.
+	 *
+	 * @return {@code true} if the request may be served
+	 */
+	private boolean isAuthorized(HttpExchange exchange) throws IOException {
+		String host = exchange.getRequestHeaders().getFirst("Host");
+		if (host == null || !isLoopbackHost(host)) {
+			respond(exchange, 403, "Unexpected Host header\n");
+			return false;
+		}
+		String requestToken = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+		if (requestToken == null || !MessageDigest.isEqual(token, requestToken.getBytes(StandardCharsets.UTF_8))) {
+			respond(exchange, 403, "Missing or wrong " + TOKEN_HEADER + " header\n");
+			return false;
+		}
+		return true;
+	}
+
+	private boolean isLoopbackHost(String host) {
+		int colon = host.lastIndexOf(':');
+		if (colon >= 0 && colon > host.lastIndexOf(']')) {
+			if (!host.substring(colon + 1).equals(Integer.toString(port))) {
+				return false;
+			}
+			host = host.substring(0, colon);
+		}
+		return LOOPBACK_HOSTS.contains(host.toLowerCase());
+	}
+
+	/**
+	 * Checks that an argument of a request is allowed.
+	 *
+	 * @param arg an argument
+	 * @return an error message, or {@code null} if the argument is allowed
+	 */
+	private String checkArgument(String arg) throws IOException {
+		if (arg.equals("follow")) {
+			return "Option not accepted by the server: follow";
+		}
+		int equals = arg.indexOf('=');
+		if (equals < 0 || !OUTPUT_OPTIONS.contains(arg.substring(0, equals))) {
+			return null;
+		}
+		if (outputDirectory == null) {
+			return String.format("Option not accepted by the server: %s= (start the server with outputDirectory=DIR)", arg.substring(0, equals));
+		}
+		File file = new File(arg.substring(equals + 1)).getCanonicalFile();
+		if (!file.toPath().startsWith(outputDirectory.toPath())) {
+			return String.format("File outside of the output directory %s: %s", outputDirectory, file);
+		}
+		return null;
+	}
+
+	private static String[] readArguments(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1 << 12];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			bytes.write(buffer, 0, n);
+		}
+		in.close();
+		List<String> args = new ArrayList<String>();
+		for (String line : new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+			if (!line.isEmpty()) {
+				args.add(line);
+			}
+		}
+		return args.toArray(new String[args.size()]);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		respond(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+}
@@ -0,0 +1,518 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+import se.liu.ida.nlp.sdp.toolkit.io.Constants;
+
+/**
+ * The complete state of an evaluation run by {@link Scorer}: the counts of
+ * the labeled and unlabeled scorers, with and without virtual dependencies to
+ * top nodes, together with the scoring options and the names of the scored
+ * files. Snapshots of evaluations of different parts of a corpus can be
+ * written to files, read back, and merged; the merged snapshot prints the
+ * same report as an evaluation of the complete corpus.
+ * <p>
+ * A snapshot file is a text file whose first line is {@code #SDP-SCORES 1}.
+ * It is followed by one tab-separated line per option and per pair of scored
+ * files, and by the counts of each of the four scorers, each introduced by a
+ * {@code scorer} line and terminated by an {@code end} line.
+ *
+ * @author Marco Kuhlmann
+ */
+public class ScoreSnapshot {
+
+	/**
+	 * The format identifier line of a snapshot file.
+	 */
+	static final String FIRST_LINE = "#SDP-SCORES 1";
+
+	/**
+	 * The names of the four scorers, in the order in which they are written.
+	 */
+	private static final String[] SCORER_NAMES = {"LWithTop", "UWithTop", "LWithoutTop", "UWithoutTop"};
+
+	/**
+	 * The scoring options, as given on the command line.
+	 */
+	private final List<String> options;
+
+	/**
+	 * The filter for core arguments, or {@code null} if this snapshot was read
+	 * from a file.
+	 */
+	private final Scorer.ArgumentFilter labelPredicate;
+
+	/**
+	 * The part-of-speech tags of punctuation tokens, or {@code null} if this
+	 * snapshot was read from a file.
+	 */
+	private final Set<String> punctuationTags;
+
+	/**
+	 * The names of the scored files.
+	 */
+	private final List<String> goldStandardFiles;
+	private final List<String> systemOutputFiles;
+
+	/**
+	 * The scorers: labeled and unlabeled scoring, with and without virtual
+	 * dependencies to top nodes.
+	 */
+	private final Scorer[] scorers;
+
+	/**
+	 * The key extractor for stratified scoring, or {@code null}.
+	 */
+	private GroupKey groupKey;
+
+	/**
+	 * The writer for per-sentence statistics, or {@code null}.
+	 */
+	private Writer sentenceWriter;
+
+	/**
+	 * The cache for the counts of pairs of graphs, or {@code null}.
+	 */
+	private ScoreCache cache;
+
+	/**
+	 * Buffers for the counts of a pair of graphs written to and read from
+	 * the cache.
+	 */
+	private final ScoreCache.Encoder encoder;
+	private final ScoreCache.Decoder decoder;
+
+	/**
+	 * Buffers for the counts before and after an update, and for a line of
+	 * per-sentence statistics.
+	 */
+	private final int[] countsBefore;
+	private final int[] countsAfter;
+	private final StringBuilder sb;
+
+	/**
+	 * Construct a new, empty snapshot.
+	 *
+	 * @param options the scoring options
+	 * @param labelPredicate the filter for core arguments, or {@code null} if
+	 * the snapshot will not be updated with graphs
+	 * @param punctuationTags the part-of-speech tags of punctuation tokens, or
+	 * {@code null} if the snapshot will not be updated with graphs
+	 */
+	ScoreSnapshot(List<String> options, Scorer.ArgumentFilter labelPredicate, Set<String> punctuationTags) {
+		this.options = Collections.unmodifiableList(new ArrayList<String>(options));
+		this.labelPredicate = labelPredicate;
+		this.punctuationTags = punctuationTags;
+		this.goldStandardFiles = new ArrayList<String>();
+		this.systemOutputFiles = new ArrayList<String>();
+		boolean includePunctuation = !options.contains("excludePunctuation");
+		boolean treatEdgesAsUndirected = options.contains("treatEdgesAsUndirected");
+		this.scorers = new Scorer[]{
+			new Scorer(true, true, includePunctuation, treatEdgesAsUndirected, labelPredicate, punctuationTags),
+			new Scorer(false, true, includePunctuation, treatEdgesAsUndirected, labelPredicate, punctuationTags),
+			new Scorer(true, false, includePunctuation, treatEdgesAsUndirected, labelPredicate, punctuationTags),
+			new Scorer(false, false, includePunctuation, treatEdgesAsUndirected, labelPredicate, punctuationTags)
+		};
+		this.countsBefore = new int[4 * scorers.length + 6];
+		this.countsAfter = new int[countsBefore.length];
+		this.sb = new StringBuilder();
+		this.encoder = new ScoreCache.Encoder();
+		this.decoder = new ScoreCache.Decoder();
+	}
+
+	/**
+	 * Returns a new, empty snapshot with the same options as this snapshot.
+	 *
+	 * @return a new, empty snapshot with the same options as this snapshot
+	 */
+	ScoreSnapshot newPartialSnapshot() {
+		ScoreSnapshot snapshot = new ScoreSnapshot(options, labelPredicate, punctuationTags);
+		snapshot.setGroupKey(groupKey);
+		snapshot.setCache(cache);
+		return snapshot;
+	}
+
+	/**
+	 * Sets the cache from which the counts of pairs of graphs that have been
+	 * scored before are taken, and to which the counts of new pairs are
+	 * added. The cache must have been created for the options of this
+	 * snapshot.
+	 *
+	 * @param cache the cache, or {@code null} for no cache
+	 */
+	void setCache(ScoreCache cache) {
+		this.cache = cache;
+		for (Scorer scorer : scorers) {
+			scorer.setRecordsCounts(cache != null);
+		}
+	}
+
+	/**
+	 * Sets the key extractor used to break down the scores by group.
+	 *
+	 * @param groupKey the key extractor, or {@code null} for no grouping
+	 * @throws IllegalArgumentException if the keys depend on the head of an
+	 * edge, but edges are treated as undirected
+	 */
+	void setGroupKey(GroupKey groupKey) {
+		this.groupKey = groupKey;
+		for (Scorer scorer : scorers) {
+			scorer.setGroupKey(groupKey);
+		}
+	}
+
+	/**
+	 * Records the names of a pair of scored files.
+	 *
+	 * @param goldStandardFile the name of the gold standard file
+	 * @param systemOutputFile the name of the system output file
+	 */
+	void addFiles(String goldStandardFile, String systemOutputFile) {
+		goldStandardFiles.add(goldStandardFile);
+		systemOutputFiles.add(systemOutputFile);
+	}
+
+	/**
+	 * Returns the scoring options of this snapshot.
+	 *
+	 * @return the scoring options of this snapshot
+	 */
+	public List<String> getOptions() {
+		return options;
+	}
+
+	/**
+	 * Returns the number of graphs scored.
+	 *
+	 * @return the number of graphs scored
+	 */
+	public int getNGraphs() {
+		return scorers[0].getNGraphs();
+	}
+
+	/**
+	 * Sets a writer to which per-sentence statistics are written as the
+	 * snapshot is updated. The statistics are written as comma-separated
+	 * values, with a header line that is written immediately. For each pair
+	 * of graphs, a line records the graph ID; for each of the four scorers,
+	 * the number of edges in the gold standard, in the system output, and in
+	 * common, and whether the graphs match exactly (1 or 0); and the numbers
+	 * of semantic frames and core predications in the gold standard, in the
+	 * system output, and in common. The caller is responsible for closing the
+	 * writer.
+	 *
+	 * @param writer the writer for per-sentence statistics
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void setSentenceWriter(Writer writer) throws IOException {
+		this.sentenceWriter = writer;
+		sb.setLength(0);
+		sb.append("id");
+		for (String name : SCORER_NAMES) {
+			sb.append(',').append(name).append("_gold");
+			sb.append(',').append(name).append("_system");
+			sb.append(',').append(name).append("_common");
+			sb.append(',').append(name).append("_exact");
+		}
+		sb.append(",frames_gold,frames_system,frames_common");
+		sb.append(",predications_gold,predications_system,predications_common\n");
+		writer.append(sb);
+	}
+
+	/**
+	 * Updates this snapshot with the specified pair of graphs.
+	 *
+	 * @param goldStandard the gold standard graph
+	 * @param systemOutput the system output graph
+	 * @throws IllegalStateException if this snapshot was read from a file
+	 * @throws UncheckedIOException if per-sentence statistics cannot be
+	 * written
+	 */
+	public void update(Graph goldStandard, Graph systemOutput) {
+		if (labelPredicate == null) {
+			throw new IllegalStateException("Snapshots read from files cannot be updated");
+		}
+		if (sentenceWriter != null) {
+			getCounts(countsBefore);
+		}
+		if (cache != null) {
+			updateFromCache(goldStandard, systemOutput);
+		} else {
+			for (Scorer scorer : scorers) {
+				scorer.update(goldStandard, systemOutput);
+			}
+		}
+		if (sentenceWriter != null) {
+			getCounts(countsAfter);
+			sb.setLength(0);
+			sb.append(goldStandard.id);
+			for (int i = 0; i < countsAfter.length; i++) {
+				sb.append(',').append(countsAfter[i] - countsBefore[i]);
+			}
+			sb.append('\n');
+			try {
+				sentenceWriter.append(sb);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Updates this snapshot with the specified pair of graphs, taking the
+	 * counts from the cache if the pair has been scored before. Otherwise, the
+	 * pair is scored, and the counts that the scorers recorded for it are
+	 * added to the cache.
+	 *
+	 * @param goldStandard the gold standard graph
+	 * @param systemOutput the system output graph
+	 */
+	private void updateFromCache(Graph goldStandard, Graph systemOutput) {
+		long goldStandardFingerprint = ScoreCache.getFingerprint(goldStandard);
+		long systemOutputFingerprint = ScoreCache.getFingerprint(systemOutput);
+		byte[] counts = cache.get(goldStandardFingerprint, systemOutputFingerprint);
+		if (counts != null) {
+			decoder.reset(counts);
+			for (Scorer scorer : scorers) {
+				scorer.addCounts(decoder, cache);
+			}
+		} else {
+			encoder.reset();
+			for (Scorer scorer : scorers) {
+				scorer.update(goldStandard, systemOutput);
+				scorer.writeRecordedCounts(encoder, cache);
+			}
+			cache.put(goldStandardFingerprint, systemOutputFingerprint, encoder.toByteArray());
+		}
+	}
+
+	/**
+	 * Copies the current counts of the scorers into the specified array, in
+	 * the order of the columns of the per-sentence statistics.
+	 *
+	 * @param counts the array to copy the counts to
+	 */
+	private void getCounts(int[] counts) {
+		int k = 0;
+		for (Scorer scorer : scorers) {
+			counts[k++] = scorer.getNEdgesInGoldStandard();
+			counts[k++] = scorer.getNEdgesInSystemOutput();
+			counts[k++] = scorer.getNEdgesInCommon();
+			counts[k++] = scorer.getNExactMatches();
+		}
+		counts[k++] = scorers[0].getNSemanticFramesInGoldStandard();
+		counts[k++] = scorers[0].getNSemanticFramesInSystemOutput();
+		counts[k++] = scorers[0].getNSemanticFramesInCommon();
+		counts[k++] = scorers[0].getNCorePredicationsInGoldStandard();
+		counts[k++] = scorers[0].getNCorePredicationsInSystemOutput();
+		counts[k++] = scorers[0].getNCorePredicationsInCommon();
+	}
+
+	/**
+	 * Adds the counts of the specified snapshot to the counts of this
+	 * snapshot, and records the names of its scored files.
+	 *
+	 * @param other a snapshot with the same scoring options as this snapshot
+	 * @throws IllegalArgumentException if the snapshots have different
+	 * scoring options
+	 */
+	public void merge(ScoreSnapshot other) {
+		if (!getScoringOptions(options).equals(getScoringOptions(other.options))) {
+			throw new IllegalArgumentException(String.format("Cannot merge snapshots with different options: %s, %s", options, other.options));
+		}
+		for (int i = 0; i < scorers.length; i++) {
+			scorers[i].merge(other.scorers[i]);
+		}
+		goldStandardFiles.addAll(other.goldStandardFiles);
+		systemOutputFiles.addAll(other.systemOutputFiles);
+	}
+
+	/**
+	 * Returns the options that affect the scores; the number of graphs read
+	 * does not, as snapshots of parts of a corpus may well have been limited
+	 * differently.
+	 */
+	private static List<String> getScoringOptions(List<String> options) {
+		List<String> scoringOptions = new ArrayList<String>();
+		for (String option : options) {
+			if (!option.startsWith("max=")) {
+				scoringOptions.add(option);
+			}
+		}
+		Collections.sort(scoringOptions);
+		return scoringOptions;
+	}
+
+	/**
+	 * Writes this snapshot to the specified file.
+	 *
+	 * @param file the file to write to
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void write(File file) throws IOException {
+		PrintWriter writer = new PrintWriter(file);
+		try {
+			writer.print(FIRST_LINE);
+			writer.print('\n');
+			for (String option : options) {
+				writer.print(String.format("option\t%s\n", option));
+			}
+			for (int i = 0; i < goldStandardFiles.size(); i++) {
+				writer.print(String.format("files\t%s\t%s\n", goldStandardFiles.get(i), systemOutputFiles.get(i)));
+			}
+			for (int i = 0; i < scorers.length; i++) {
+				writer.print(String.format("scorer\t%s\n", SCORER_NAMES[i]));
+				scorers[i].writeCounts(writer);
+				writer.print("end\n");
+			}
+		} finally {
+			writer.close();
+		}
+		if (writer.checkError()) {
+			throw new IOException("Cannot write snapshot: " + file);
+		}
+	}
+
+	/**
+	 * Writes the label confusion matrix for labeled scoring, including
+	 * virtual dependencies to top nodes, as comma-separated values. Rows
+	 * correspond to labels in the gold standard and columns to labels in the
+	 * system output; the label {@code -NONE-} stands for missing and spurious
+	 * edges.
+	 *
+	 * @param file the file to write to
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void writeConfusionMatrix(File file) throws IOException {
+		PrintWriter writer = new PrintWriter(file);
+		try {
+			scorers[0].writeConfusionMatrix(writer);
+		} finally {
+			writer.close();
+		}
+		if (writer.checkError()) {
+			throw new IOException("Cannot write confusion matrix: " + file);
+		}
+	}
+
+	/**
+	 * Reads a snapshot from the specified file. The snapshot can be merged
+	 * and reported, but not updated with further graphs.
+	 *
+	 * @param file the file to read from
+	 * @return the snapshot read from the file
+	 * @throws IOException if an I/O error occurs, or if the file is not a
+	 * well-formed snapshot file
+	 */
+	public static ScoreSnapshot read(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line = reader.readLine();
+			if (!FIRST_LINE.equals(line)) {
+				throw new IOException("Not a snapshot file: " + file);
+			}
+			List<String> options = new ArrayList<String>();
+			List<String[]> files = new ArrayList<String[]>();
+			int lineNumber = 1;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				String[] columns = line.split(Constants.COLUMN_SEPARATOR);
+				if (columns[0].equals("option") && columns.length == 2) {
+					options.add(columns[1]);
+				} else if (columns[0].equals("files") && columns.length == 3) {
+					files.add(columns);
+				} else {
+					break;
+				}
+			}
+			ScoreSnapshot snapshot = new ScoreSnapshot(options, null, null);
+			for (String[] columns : files) {
+				snapshot.addFiles(columns[1], columns[2]);
+			}
+			for (int i = 0; i < SCORER_NAMES.length; i++) {
+				if (line == null || !line.equals("scorer\t" + SCORER_NAMES[i])) {
+					throw new IOException(String.format("%s:%d: Expected counts of scorer %s", file, lineNumber, SCORER_NAMES[i]));
+				}
+				while (!"end".equals(line = reader.readLine())) {
+					lineNumber++;
+					if (line == null) {
+						throw new IOException(String.format("%s: Unexpected end of file", file));
+					}
+					try {
+						snapshot.scorers[i].addCounts(line.split(Constants.COLUMN_SEPARATOR));
+					} catch (IllegalArgumentException e) {
+						throw new IOException(String.format("%s:%d: %s", file, lineNumber, e.getMessage()));
+					}
+				}
+				lineNumber++;
+				line = reader.readLine();
+				lineNumber++;
+			}
+			return snapshot;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Prints the messages describing the scoring options of this snapshot,
+	 * as printed by {@link Scorer} when it reads its arguments.
+	 *
+	 * @param out the stream to print to
+	 */
+	public void printOptions(PrintStream out) {
+		for (String option : options) {
+			Scorer.printOption(option, out);
+		}
+	}
+
+	/**
+	 * Prints a one-line summary of the scores so far: the number of graphs
+	 * scored, and the labeled and unlabeled scores including virtual
+	 * dependencies to top nodes.
+	 *
+	 * @param out the stream to print to
+	 */
+	public void printSummary(PrintStream out) {
+		out.format("%d graphs: LP %f LR %f LF %f UP %f UR %f UF %f%n", getNGraphs(),
+				scorers[0].getPrecision(), scorers[0].getRecall(), scorers[0].getF1(),
+				scorers[1].getPrecision(), scorers[1].getRecall(), scorers[1].getF1());
+	}
+
+	/**
+	 * Prints the evaluation report for this snapshot.
+	 *
+	 * @param out the stream to print to
+	 */
+	public void printReport(PrintStream out) {
+		out.println("# Evaluation");
+		out.println();
+
+		out.format("Gold standard file: %s%n", String.join(", ", goldStandardFiles));
+		out.format("System output file: %s%n", String.join(", ", systemOutputFiles));
+		out.println();
+
+		out.println("## Scores including virtual dependencies to top nodes");
+		out.println();
+		Scorer.printScores(scorers[0], scorers[1], out);
+		out.println();
+
+		out.println("## Scores excluding virtual dependencies to top nodes");
+		out.println();
+		Scorer.printScores(scorers[2], scorers[3], out);
+	}
+}
@@ -4,21 +4,40 @@
 package se.liu.ida.nlp.sdp.toolkit.tools;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import se.liu.ida.nlp.sdp.toolkit.graph.Edge;
 import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
 import se.liu.ida.nlp.sdp.toolkit.graph.Node;
+import se.liu.ida.nlp.sdp.toolkit.io.Compression;
 import se.liu.ida.nlp.sdp.toolkit.io.GraphReader;
-import se.liu.ida.nlp.sdp.toolkit.io.GraphReader2015;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReaders;
+import se.liu.ida.nlp.sdp.toolkit.io.Metrics;
+import se.liu.ida.nlp.sdp.toolkit.io.Projection;
+import se.liu.ida.nlp.sdp.toolkit.io.ShardedCorpus;
 
 /**
  * Score a collection of dependency graphs relative to a gold standard.
@@ -38,9 +57,9 @@ public class Scorer {
 	private static final String VIRTUAL = "-VIRTUAL-";
 
 	/**
-	 * The sense used for core predications.
+	 * The label used for missing and spurious edges in the confusion matrix.
 	 */
-	private static final String NO_SENSE = "-NOSENSE-";
+	static final String NONE = "-NONE-";
 
 	/**
 	 * A flag indicating whether to include labels when scoring graphs.
@@ -69,27 +88,195 @@ public class Scorer {
 	private int nGraphs;
 
 	/**
-	 * Set containing the edges from the gold standard graphs.
+	 * Counters for the number of edges.
 	 */
-	private final Set<ScorerEdge> edgesInGoldStandard;
+	private int nEdgesInGoldStandard;
+	private int nEdgesInSystemOutput;
+	private int nEdgesInCommon;
 
 	/**
-	 * Set containing the edges from the system output graphs.
+	 * Map from edge labels to the number of edges with that label in the gold
+	 * standard, in the system output, and in common.
 	 */
-	private final Set<ScorerEdge> edgesInSystemOutput;
+	private final Map<String, int[]> countsByLabel;
+
+	/**
+	 * Map from quantized edge lengths to the number of edges with that length
+	 * in the gold standard, in the system output, and in common.
+	 */
+	private final Map<String, int[]> countsByQuantizedLength;
+
+	/**
+	 * Map from group keys to the number of edges in that group in the gold
+	 * standard, in the system output, and in common.
+	 */
+	private final Map<String, int[]> countsByGroup;
 
 	/**
 	 * Counter for the number of exact matches.
 	 */
 	private int nExactMatches;
 
-	private final Set<SemanticFrame> semanticFramesInGoldStandard;
-	private final Set<SemanticFrame> semanticFramesInSystemOutput;
-	private final Set<SemanticFrame> corePredicationsInGoldStandard;
-	private final Set<SemanticFrame> corePredicationsInSystemOutput;
+	/**
+	 * Counters for the number of semantic frames.
+	 */
+	private int nSemanticFramesInGoldStandard;
+	private int nSemanticFramesInSystemOutput;
+	private int nSemanticFramesInCommon;
+
+	/**
+	 * Counters for the number of core predications.
+	 */
+	private int nCorePredicationsInGoldStandard;
+	private int nCorePredicationsInSystemOutput;
+	private int nCorePredicationsInCommon;
 
 	private final ArgumentFilter labelPredicate;
 
+	/**
+	 * The default part-of-speech tags of punctuation tokens.
+	 */
+	static final Set<String> DEFAULT_PUNCTUATION_TAGS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(".", ",", ":", "(", ")")));
+
+	/**
+	 * The part-of-speech tags of punctuation tokens.
+	 */
+	private final Set<String> punctuationTags;
+
+	/**
+	 * Flags indicating whether the nodes of the current graph may be the
+	 * endpoints of scored edges; only used when punctuation is excluded.
+	 */
+	private boolean[] isAdmissible;
+
+	/**
+	 * Map from labels to the integer IDs used in packed edges and packed
+	 * arguments.
+	 */
+	private final Map<String, Integer> labelIds;
+
+	/**
+	 * The labels, indexed by label ID.
+	 */
+	private final List<String> labels;
+
+	/**
+	 * The IDs of the labels accepted by the filter for core arguments. The
+	 * filter is applied once per label, when the label is assigned its ID.
+	 */
+	private final BitSet coreArgumentLabelIds;
+
+	/**
+	 * Buffers holding the packed arguments of the current gold standard and
+	 * system output predicate.
+	 */
+	private long[] argumentsG;
+	private long[] argumentsS;
+
+	/**
+	 * The number of arguments stored by the last call to
+	 * {@link #getArguments(Node, long[])}.
+	 */
+	private int nArguments;
+
+	/**
+	 * The number of bits used for node IDs and edge label IDs in packed edges.
+	 */
+	private static final int ID_BITS = 20;
+
+	/**
+	 * The mask for the lowest {@link #ID_BITS} bits.
+	 */
+	private static final long ID_MASK = (1L << ID_BITS) - 1;
+
+	/**
+	 * The counters for the edge labels, indexed by label ID, or {@code null}
+	 * if a label has not been counted yet. These are the arrays stored in
+	 * {@link #countsByLabel}.
+	 */
+	private final List<int[]> countersByLabelId;
+
+	/**
+	 * The counters for the quantized edge lengths, indexed by length bucket,
+	 * or {@code null} if a bucket has not been used yet. These are the arrays
+	 * stored in {@link #countsByQuantizedLength}.
+	 */
+	private final int[][] countersByLengthBucket;
+
+	/**
+	 * The label confusion matrix, stored row by row. Rows correspond to
+	 * labels in the gold standard, columns to labels in the system output;
+	 * index 0 stands for {@link #NONE}, and index {@code i + 1} for the label
+	 * with ID {@code i}. Only used for labeled scoring.
+	 */
+	private int[] confusion;
+
+	/**
+	 * The number of rows and columns of the confusion matrix.
+	 */
+	private int confusionSize;
+
+	/**
+	 * Buffers holding the IDs of the unmatched labels at the current position
+	 * in the gold standard and the system output.
+	 */
+	private int[] unmatchedG;
+	private int[] unmatchedS;
+
+	/**
+	 * The key extractor for stratified scoring, or {@code null}.
+	 */
+	private GroupKey groupKey;
+
+	/**
+	 * Map from group keys to integer IDs.
+	 */
+	private final Map<String, Integer> groupIds;
+
+	/**
+	 * The group keys, indexed by group ID.
+	 */
+	private final List<String> groups;
+
+	/**
+	 * The counters for the groups, indexed by group ID, or {@code null} if a
+	 * group has not been counted yet. These are the arrays stored in
+	 * {@link #countsByGroup}.
+	 */
+	private final List<int[]> countersByGroupId;
+
+	/**
+	 * The group IDs of the edges headed by the nodes of the current graph, or
+	 * -1 for edges not assigned to any group.
+	 */
+	private int[] nodeGroupIds;
+
+	/**
+	 * Buffers holding the packed edges of the current gold standard and
+	 * system output graph.
+	 */
+	private long[] edgesG;
+	private long[] edgesS;
+
+	/**
+	 * The number of edges stored by the last call to
+	 * {@link #getEdges(Graph, long[])}.
+	 */
+	private int nEdges;
+
+	/**
+	 * The counts contributed by the last pair of graphs, or {@code null} if
+	 * they are not recorded (see {@link #setRecordsCounts(boolean)}).
+	 */
+	private RecordedCounts recordedCounts;
+
+	/**
+	 * The IDs of the labels and groups with the name indices of a
+	 * {@link ScoreCache}, plus one, or 0 if a name has not been looked up yet.
+	 */
+	private int[] labelIdsByNameIndex;
+	private int[] groupIdsByNameIndex;
+
 	/**
 	 * Construct a new scorer.
 	 *
@@ -103,17 +290,52 @@ public class Scorer {
 	 * treat edges as undirected
 	 */
 	public Scorer(boolean includeLabels, boolean includeTopNodes, boolean includePunctuation, boolean treatEdgesAsUndirected, ArgumentFilter labelPredicate) {
+		this(includeLabels, includeTopNodes, includePunctuation, treatEdgesAsUndirected, labelPredicate, DEFAULT_PUNCTUATION_TAGS);
+	}
+
+	/**
+	 * Construct a new scorer.
+	 *
+	 * @param includeLabels flag indicating whether the scorer should do labeled
+	 * scoring
+	 * @param includeTopNodes flag indicating whether the scorer should include
+	 * top nodes
+	 * @param includePunctuation flag indicating whether the scorer should
+	 * include punctuation
+	 * @param treatEdgesAsUndirected flag indicating whether the scorer should
+	 * treat edges as undirected
+	 * @param punctuationTags the part-of-speech tags of punctuation tokens
+	 */
+	Scorer(boolean includeLabels, boolean includeTopNodes, boolean includePunctuation, boolean treatEdgesAsUndirected, ArgumentFilter labelPredicate, Set<String> punctuationTags) {
 		this.includeLabels = includeLabels;
 		this.includeTopNodes = includeTopNodes;
-		this.edgesInGoldStandard = new HashSet<ScorerEdge>();
-		this.edgesInSystemOutput = new HashSet<ScorerEdge>();
+		this.countsByLabel = new HashMap<String, int[]>();
+		this.countsByQuantizedLength = new HashMap<String, int[]>();
+		this.countsByGroup = new HashMap<String, int[]>();
 		this.includePunctuation = includePunctuation;
 		this.treatEdgesAsUndirected = treatEdgesAsUndirected;
-		this.semanticFramesInGoldStandard = new HashSet<>();
-		this.semanticFramesInSystemOutput = new HashSet<>();
-		this.corePredicationsInGoldStandard = new HashSet<>();
-		this.corePredicationsInSystemOutput = new HashSet<>();
 		this.labelPredicate = labelPredicate;
+		this.punctuationTags = punctuationTags;
+		this.isAdmissible = new boolean[64];
+		this.labelIds = new HashMap<>();
+		this.labels = new ArrayList<>();
+		this.coreArgumentLabelIds = new BitSet();
+		this.argumentsG = new long[16];
+		this.argumentsS = new long[16];
+		this.countersByLabelId = new ArrayList<>();
+		this.countersByLengthBucket = new int[7][];
+		this.edgesG = new long[64];
+		this.edgesS = new long[64];
+		this.groupIds = new HashMap<>();
+		this.groups = new ArrayList<>();
+		this.countersByGroupId = new ArrayList<>();
+		this.nodeGroupIds = new int[64];
+		this.confusionSize = 16;
+		this.confusion = new int[confusionSize * confusionSize];
+		this.unmatchedG = new int[16];
+		this.unmatchedS = new int[16];
+		this.labelIdsByNameIndex = new int[16];
+		this.groupIdsByNameIndex = new int[16];
 	}
 
 	/**
@@ -124,7 +346,24 @@ public class Scorer {
 	}
 
 	/**
-	 * Updates this scorer with the specified pair of graphs.
+	 * Sets the key extractor used to break down the scores by group. Edges
+	 * are assigned to groups based on the gold standard graph.
+	 *
+	 * @param groupKey the key extractor, or {@code null} for no grouping
+	 * @throws IllegalArgumentException if the keys depend on the head of an
+	 * edge, but this scorer treats edges as undirected
+	 */
+	void setGroupKey(GroupKey groupKey) {
+		if (groupKey != null && groupKey.dependsOnHead() && treatEdgesAsUndirected) {
+			throw new IllegalArgumentException("Edges cannot be grouped by their heads when they are treated as undirected");
+		}
+		this.groupKey = groupKey;
+	}
+
+	/**
+	 * Updates this scorer with the specified pair of graphs. The edges of
+	 * both graphs are packed into sorted arrays of longs, which are then
+	 * matched in a single merge pass.
 	 *
 	 * @param goldStandard the graph that should be considered as the gold
 	 * standard
@@ -134,26 +373,705 @@ public class Scorer {
 	public void update(Graph goldStandard, Graph systemOutput) {
 		assert goldStandard.getNNodes() == systemOutput.getNNodes();
 
-		Set<ScorerEdge> edgesG = getEdges(goldStandard);
-		Set<ScorerEdge> edgesS = getEdges(systemOutput);
+		if (recordedCounts != null) {
+			recordedCounts.reset();
+		}
+		edgesG = getEdges(goldStandard, edgesG);
+		int nEdgesG = nEdges;
+		edgesS = getEdges(systemOutput, edgesS);
+		int nEdgesS = nEdges;
+		if (groupKey != null) {
+			computeGroups(goldStandard);
+		}
+
+		int nCommon = 0;
+		int j = 0;
+		for (int i = 0; i < nEdgesG; i++) {
+			while (j < nEdgesS && edgesS[j] < edgesG[i]) {
+				j++;
+			}
+			boolean isInCommon = j < nEdgesS && edgesS[j] == edgesG[i];
+			nCommon += isInCommon ? 1 : 0;
+			count(edgesG[i], 0, isInCommon);
+		}
+		for (j = 0; j < nEdgesS; j++) {
+			count(edgesS[j], 1, false);
+		}
+		if (includeLabels) {
+			updateConfusion(nEdgesG, nEdgesS);
+		}
 
+		int isExactMatch = nCommon == nEdgesG && nCommon == nEdgesS ? 1 : 0;
 		nGraphs++;
-		nExactMatches += edgesG.equals(edgesS) ? 1 : 0;
+		nExactMatches += isExactMatch;
+		nEdgesInGoldStandard += nEdgesG;
+		nEdgesInSystemOutput += nEdgesS;
+		nEdgesInCommon += nCommon;
+
+		if (recordedCounts != null) {
+			int[] scalars = recordedCounts.scalars;
+			scalars[0] = isExactMatch;
+			scalars[1] = nEdgesG;
+			scalars[2] = nEdgesS;
+			scalars[3] = nCommon;
+			recordFrames(-1);
+			updateFrames(goldStandard, systemOutput);
+			recordFrames(1);
+		} else {
+			updateFrames(goldStandard, systemOutput);
+		}
+	}
+
+	/**
+	 * Adds the current numbers of semantic frames and core predications,
+	 * multiplied by the specified sign, to the recorded counts.
+	 *
+	 * @param sign 1 or -1
+	 */
+	private void recordFrames(int sign) {
+		int[] scalars = recordedCounts.scalars;
+		scalars[4] += sign * nSemanticFramesInGoldStandard;
+		scalars[5] += sign * nSemanticFramesInSystemOutput;
+		scalars[6] += sign * nSemanticFramesInCommon;
+		scalars[7] += sign * nCorePredicationsInGoldStandard;
+		scalars[8] += sign * nCorePredicationsInSystemOutput;
+		scalars[9] += sign * nCorePredicationsInCommon;
+	}
+
+	/**
+	 * Increments the per-label and per-length counters for the specified
+	 * packed edge.
+	 *
+	 * @param edge a packed edge
+	 * @param index the index of the counter to be incremented (0 for the gold
+	 * standard, 1 for the system output)
+	 * @param isInCommon whether the counter for edges in common should be
+	 * incremented as well
+	 */
+	private void count(long edge, int index, boolean isInCommon) {
+		int labelId = (int) (edge & ID_MASK);
+		int[] labelCounters = getLabelCounters(labelId);
+		int length = Math.abs((int) (edge >>> (2 * ID_BITS)) - (int) ((edge >>> ID_BITS) & ID_MASK));
+		int bucket = getLengthBucket(length);
+		int[] lengthCounters = getLengthCounters(bucket);
+		labelCounters[index]++;
+		lengthCounters[index]++;
+		if (isInCommon) {
+			labelCounters[2]++;
+			lengthCounters[2]++;
+		}
+		int groupId = -1;
+		if (groupKey != null) {
+			groupId = nodeGroupIds[(int) ((edge >>> ID_BITS) & ID_MASK)];
+			if (groupId >= 0) {
+				int[] groupCounters = getGroupCounters(groupId);
+				groupCounters[index]++;
+				if (isInCommon) {
+					groupCounters[2]++;
+				}
+			}
+		}
+		if (recordedCounts != null) {
+			recordedCounts.countsByLengthBucket[3 * bucket + index]++;
+			if (isInCommon) {
+				recordedCounts.countsByLengthBucket[3 * bucket + 2]++;
+			}
+			recordedCounts.countsByLabelId.count(labelId, index, isInCommon);
+			if (groupId >= 0) {
+				recordedCounts.countsByGroupId.count(groupId, index, isInCommon);
+			}
+		}
+	}
+
+	/**
+	 * Returns the counters for the label with the specified ID.
+	 *
+	 * @param labelId a label ID
+	 * @return the counters for the label with the specified ID
+	 */
+	private int[] getLabelCounters(int labelId) {
+		int[] counters = countersByLabelId.get(labelId);
+		if (counters == null) {
+			counters = getCounters(countsByLabel, labels.get(labelId));
+			countersByLabelId.set(labelId, counters);
+		}
+		return counters;
+	}
+
+	/**
+	 * Returns the counters for the specified length bucket.
+	 *
+	 * @param bucket a length bucket
+	 * @return the counters for the specified length bucket
+	 */
+	private int[] getLengthCounters(int bucket) {
+		int[] counters = countersByLengthBucket[bucket];
+		if (counters == null) {
+			// Name the bucket by the smallest length that falls into it.
+			counters = getCounters(countsByQuantizedLength, getQuantizedLength(bucket <= 5 ? bucket : 10));
+			countersByLengthBucket[bucket] = counters;
+		}
+		return counters;
+	}
+
+	/**
+	 * Returns the counters for the group with the specified ID.
+	 *
+	 * @param groupId a group ID
+	 * @return the counters for the group with the specified ID
+	 */
+	private int[] getGroupCounters(int groupId) {
+		int[] counters = countersByGroupId.get(groupId);
+		if (counters == null) {
+			counters = getCounters(countsByGroup, groups.get(groupId));
+			countersByGroupId.set(groupId, counters);
+		}
+		return counters;
+	}
+
+	/**
+	 * Updates the label confusion matrix with the current packed edges. As
+	 * the packed edges are sorted by position (the pair of nodes) and then by
+	 * label, the edges at the same position form consecutive runs in both
+	 * arrays. Within a run, equal labels are matched first; the remaining
+	 * labels are paired in order, and labels left over after that count as
+	 * missing or spurious.
+	 *
+	 * @param nEdgesG the number of packed gold standard edges
+	 * @param nEdgesS the number of packed system output edges
+	 */
+	private void updateConfusion(int nEdgesG, int nEdgesS) {
+		int i = 0;
+		int j = 0;
+		while (i < nEdgesG || j < nEdgesS) {
+			long positionG = i < nEdgesG ? edgesG[i] >>> ID_BITS : Long.MAX_VALUE;
+			long positionS = j < nEdgesS ? edgesS[j] >>> ID_BITS : Long.MAX_VALUE;
+			long position = Math.min(positionG, positionS);
+			int endG = i;
+			while (endG < nEdgesG && edgesG[endG] >>> ID_BITS == position) {
+				endG++;
+			}
+			int endS = j;
+			while (endS < nEdgesS && edgesS[endS] >>> ID_BITS == position) {
+				endS++;
+			}
+			if (unmatchedG.length < endG - i) {
+				unmatchedG = new int[Math.max(endG - i, 2 * unmatchedG.length)];
+			}
+			if (unmatchedS.length < endS - j) {
+				unmatchedS = new int[Math.max(endS - j, 2 * unmatchedS.length)];
+			}
+			int nUnmatchedG = 0;
+			int nUnmatchedS = 0;
+			while (i < endG || j < endS) {
+				int labelG = i < endG ? (int) (edgesG[i] & ID_MASK) : Integer.MAX_VALUE;
+				int labelS = j < endS ? (int) (edgesS[j] & ID_MASK) : Integer.MAX_VALUE;
+				if (labelG == labelS) {
+					addConfusion(labelG + 1, labelS + 1, 1);
+					i++;
+					j++;
+				} else if (labelG < labelS) {
+					unmatchedG[nUnmatchedG++] = labelG;
+					i++;
+				} else {
+					unmatchedS[nUnmatchedS++] = labelS;
+					j++;
+				}
+			}
+			for (int k = 0; k < Math.max(nUnmatchedG, nUnmatchedS); k++) {
+				int row = k < nUnmatchedG ? unmatchedG[k] + 1 : 0;
+				int column = k < nUnmatchedS ? unmatchedS[k] + 1 : 0;
+				addConfusion(row, column, 1);
+				if (recordedCounts != null) {
+					recordedCounts.addConfusion(row, column);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds to a cell of the confusion matrix, growing the matrix if
+	 * necessary.
+	 *
+	 * @param row the row index
+	 * @param column the column index
+	 * @param n the number to add
+	 */
+	private void addConfusion(int row, int column, int n) {
+		if (Math.max(row, column) >= confusionSize) {
+			int size = Math.max(Math.max(row, column) + 1, 2 * confusionSize);
+			int[] newConfusion = new int[size * size];
+			for (int r = 0; r < confusionSize; r++) {
+				System.arraycopy(confusion, r * confusionSize, newConfusion, r * size, confusionSize);
+			}
+			confusion = newConfusion;
+			confusionSize = size;
+		}
+		confusion[row * confusionSize + column] += n;
+	}
+
+	/**
+	 * Returns the index of the specified label in the confusion matrix.
+	 *
+	 * @param label a label, or {@link #NONE}
+	 * @return the index of the specified label in the confusion matrix
+	 */
+	private int getConfusionIndex(String label) {
+		return label.equals(NONE) ? 0 : getLabelId(label) + 1;
+	}
+
+	/**
+	 * Returns the label for the specified index in the confusion matrix.
+	 *
+	 * @param index an index in the confusion matrix
+	 * @return the label for the specified index
+	 */
+	private String getConfusionLabel(int index) {
+		return index == 0 ? NONE : labels.get(index - 1);
+	}
+
+	/**
+	 * Returns the number of edges that have the first label in the gold
+	 * standard and the second label in the system output. Edges that only
+	 * occur in the gold standard have the system output label {@link #NONE},
+	 * and edges that only occur in the system output have the gold standard
+	 * label {@link #NONE}. The confusion matrix is only computed for labeled
+	 * scoring.
+	 *
+	 * @param goldStandardLabel the label in the gold standard
+	 * @param systemOutputLabel the label in the system output
+	 * @return the number of edges with the specified labels
+	 */
+	public int getNConfusions(String goldStandardLabel, String systemOutputLabel) {
+		int row = goldStandardLabel.equals(NONE) ? 0 : labelIds.containsKey(goldStandardLabel) ? labelIds.get(goldStandardLabel) + 1 : -1;
+		int column = systemOutputLabel.equals(NONE) ? 0 : labelIds.containsKey(systemOutputLabel) ? labelIds.get(systemOutputLabel) + 1 : -1;
+		return row < 0 || column < 0 || row >= confusionSize || column >= confusionSize ? 0 : confusion[row * confusionSize + column];
+	}
+
+	/**
+	 * Writes the label confusion matrix as comma-separated values. The first
+	 * row holds the system output labels and the first column the gold
+	 * standard labels, both sorted, with {@link #NONE} last. Only labels that
+	 * occur in the matrix are included.
+	 *
+	 * @param writer the writer to write to
+	 */
+	void writeConfusionMatrix(PrintWriter writer) {
+		List<String> rowLabels = new ArrayList<String>();
+		List<String> columnLabels = new ArrayList<String>();
+		for (int index = 1; index < confusionSize; index++) {
+			boolean inRow = false;
+			boolean inColumn = false;
+			for (int other = 0; other < confusionSize; other++) {
+				inRow = inRow || confusion[index * confusionSize + other] > 0;
+				inColumn = inColumn || confusion[other * confusionSize + index] > 0;
+			}
+			if (inRow) {
+				rowLabels.add(getConfusionLabel(index));
+			}
+			if (inColumn) {
+				columnLabels.add(getConfusionLabel(index));
+			}
+		}
+		Collections.sort(rowLabels);
+		Collections.sort(columnLabels);
+		rowLabels.add(NONE);
+		columnLabels.add(NONE);
+		StringBuilder sb = new StringBuilder("gold\\system");
+		for (String columnLabel : columnLabels) {
+			sb.append(',').append(columnLabel);
+		}
+		writer.print(sb.append('\n'));
+		for (String rowLabel : rowLabels) {
+			sb.setLength(0);
+			sb.append(rowLabel);
+			for (String columnLabel : columnLabels) {
+				sb.append(',').append(getNConfusions(rowLabel, columnLabel));
+			}
+			writer.print(sb.append('\n'));
+		}
+	}
+
+	/**
+	 * Computes the group IDs of the edges headed by the nodes of the
+	 * specified graph. For keys that only depend on the graph, the key is
+	 * extracted once.
+	 *
+	 * @param graph the gold standard graph
+	 */
+	private void computeGroups(Graph graph) {
+		int nNodes = graph.getNNodes();
+		if (nodeGroupIds.length < nNodes) {
+			nodeGroupIds = new int[Math.max(nNodes, 2 * nodeGroupIds.length)];
+		}
+		if (groupKey.dependsOnHead()) {
+			for (int id = 0; id < nNodes; id++) {
+				nodeGroupIds[id] = getGroupId(groupKey.getKey(graph, id));
+			}
+		} else {
+			Arrays.fill(nodeGroupIds, 0, nNodes, getGroupId(groupKey.getKey(graph, 0)));
+		}
+	}
+
+	/**
+	 * Returns the integer ID of the specified group key.
+	 *
+	 * @param key a group key, or {@code null}
+	 * @return the integer ID of the specified group key, or -1 if the key is
+	 * {@code null}
+	 */
+	private int getGroupId(String key) {
+		if (key == null) {
+			return -1;
+		}
+		Integer id = groupIds.get(key);
+		if (id == null) {
+			id = groupIds.size();
+			groupIds.put(key, id);
+			groups.add(key);
+			countersByGroupId.add(null);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the counters for the specified key, adding them to the
+	 * specified map if necessary.
+	 *
+	 * @param counts a map from keys to counters
+	 * @param key a key
+	 * @return the counters for the specified key
+	 */
+	private static int[] getCounters(Map<String, int[]> counts, String key) {
+		int[] counters = counts.get(key);
+		if (counters == null) {
+			counters = new int[3];
+			counts.put(key, counters);
+		}
+		return counters;
+	}
+
+	/**
+	 * Adds the counts collected by the specified scorer to the counts of this
+	 * scorer. The result is the same as if this scorer had been updated with
+	 * all graphs that the other scorer was updated with. This allows a corpus
+	 * to be scored in parts, for example one part per shard, and the partial
+	 * results to be combined.
+	 *
+	 * @param other a scorer with the same configuration as this scorer
+	 */
+	public void merge(Scorer other) {
+		if (other.includeLabels != includeLabels || other.includeTopNodes != includeTopNodes || other.includePunctuation != includePunctuation || other.treatEdgesAsUndirected != treatEdgesAsUndirected) {
+			throw new IllegalArgumentException("Cannot merge scorers with different configurations");
+		}
+		nGraphs += other.nGraphs;
+		nExactMatches += other.nExactMatches;
+		nEdgesInGoldStandard += other.nEdgesInGoldStandard;
+		nEdgesInSystemOutput += other.nEdgesInSystemOutput;
+		nEdgesInCommon += other.nEdgesInCommon;
+		merge(countsByLabel, other.countsByLabel);
+		merge(countsByQuantizedLength, other.countsByQuantizedLength);
+		merge(countsByGroup, other.countsByGroup);
+		int otherSize = Math.min(other.confusionSize, other.labels.size() + 1);
+		for (int row = 0; row < otherSize; row++) {
+			for (int column = 0; column < otherSize; column++) {
+				int n = other.confusion[row * other.confusionSize + column];
+				if (n > 0) {
+					addConfusion(getConfusionIndex(other.getConfusionLabel(row)), getConfusionIndex(other.getConfusionLabel(column)), n);
+				}
+			}
+		}
+		nSemanticFramesInGoldStandard += other.nSemanticFramesInGoldStandard;
+		nSemanticFramesInSystemOutput += other.nSemanticFramesInSystemOutput;
+		nSemanticFramesInCommon += other.nSemanticFramesInCommon;
+		nCorePredicationsInGoldStandard += other.nCorePredicationsInGoldStandard;
+		nCorePredicationsInSystemOutput += other.nCorePredicationsInSystemOutput;
+		nCorePredicationsInCommon += other.nCorePredicationsInCommon;
+	}
+
+	private static void merge(Map<String, int[]> counts, Map<String, int[]> otherCounts) {
+		for (Map.Entry<String, int[]> entry : otherCounts.entrySet()) {
+			int[] counters = counts.get(entry.getKey());
+			if (counters == null) {
+				counters = new int[3];
+				counts.put(entry.getKey(), counters);
+			}
+			for (int i = 0; i < counters.length; i++) {
+				counters[i] += entry.getValue()[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of graphs scored.
+	 *
+	 * @return the number of graphs scored
+	 */
+	public int getNGraphs() {
+		return nGraphs;
+	}
+
+	/**
+	 * Writes the counts collected by this scorer, one tab-separated line per
+	 * counter group, as part of a score snapshot (see {@link ScoreSnapshot}).
+	 * Per-label and per-length counts are written in sorted order, so that
+	 * equal counts yield identical output.
+	 *
+	 * @param writer the writer to write to
+	 */
+	void writeCounts(PrintWriter writer) {
+		writer.print(String.format("graphs\t%d\t%d\n", nGraphs, nExactMatches));
+		writer.print(String.format("edges\t%d\t%d\t%d\n", nEdgesInGoldStandard, nEdgesInSystemOutput, nEdgesInCommon));
+		writer.print(String.format("frames\t%d\t%d\t%d\n", nSemanticFramesInGoldStandard, nSemanticFramesInSystemOutput, nSemanticFramesInCommon));
+		writer.print(String.format("predications\t%d\t%d\t%d\n", nCorePredicationsInGoldStandard, nCorePredicationsInSystemOutput, nCorePredicationsInCommon));
+		writeCounts(writer, "label", countsByLabel);
+		writeCounts(writer, "length", countsByQuantizedLength);
+		writeCounts(writer, "group", countsByGroup);
+		List<String> cells = new ArrayList<String>();
+		int size = Math.min(confusionSize, labels.size() + 1);
+		for (int row = 0; row < size; row++) {
+			for (int column = 0; column < size; column++) {
+				int n = confusion[row * confusionSize + column];
+				if (n > 0) {
+					cells.add(String.format("confusion\t%s\t%s\t%d\n", getConfusionLabel(row), getConfusionLabel(column), n));
+				}
+			}
+		}
+		Collections.sort(cells);
+		for (String cell : cells) {
+			writer.print(cell);
+		}
+	}
+
+	private static void writeCounts(PrintWriter writer, String type, Map<String, int[]> counts) {
+		List<String> keys = new ArrayList<String>(counts.keySet());
+		Collections.sort(keys);
+		for (String key : keys) {
+			int[] counters = counts.get(key);
+			writer.print(String.format("%s\t%s\t%d\t%d\t%d\n", type, key, counters[0], counters[1], counters[2]));
+		}
+	}
+
+	/**
+	 * Adds the counts from a line written by {@link #writeCounts(PrintWriter)}
+	 * to the counts of this scorer.
+	 *
+	 * @param columns the tab-separated columns of the line
+	 * @throws IllegalArgumentException if the line is malformed
+	 */
+	void addCounts(String[] columns) {
+		try {
+			switch (columns[0]) {
+				case "graphs":
+					checkNColumns(columns, 3);
+					nGraphs += Integer.parseInt(columns[1]);
+					nExactMatches += Integer.parseInt(columns[2]);
+					break;
+				case "edges":
+					checkNColumns(columns, 4);
+					nEdgesInGoldStandard += Integer.parseInt(columns[1]);
+					nEdgesInSystemOutput += Integer.parseInt(columns[2]);
+					nEdgesInCommon += Integer.parseInt(columns[3]);
+					break;
+				case "frames":
+					checkNColumns(columns, 4);
+					nSemanticFramesInGoldStandard += Integer.parseInt(columns[1]);
+					nSemanticFramesInSystemOutput += Integer.parseInt(columns[2]);
+					nSemanticFramesInCommon += Integer.parseInt(columns[3]);
+					break;
+				case "predications":
+					checkNColumns(columns, 4);
+					nCorePredicationsInGoldStandard += Integer.parseInt(columns[1]);
+					nCorePredicationsInSystemOutput += Integer.parseInt(columns[2]);
+					nCorePredicationsInCommon += Integer.parseInt(columns[3]);
+					break;
+				case "label":
+					checkNColumns(columns, 5);
+					addCounts(countsByLabel, columns);
+					break;
+				case "length":
+					checkNColumns(columns, 5);
+					addCounts(countsByQuantizedLength, columns);
+					break;
+				case "group":
+					checkNColumns(columns, 5);
+					addCounts(countsByGroup, columns);
+					break;
+				case "confusion":
+					checkNColumns(columns, 4);
+					addConfusion(getConfusionIndex(columns[1]), getConfusionIndex(columns[2]), Integer.parseInt(columns[3]));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown counter: " + columns[0]);
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+	}
+
+	private static void checkNColumns(String[] columns, int nColumns) {
+		if (columns.length != nColumns) {
+			throw new IllegalArgumentException(String.format("Expected %d columns", nColumns));
+		}
+	}
 
-		edgesInGoldStandard.addAll(edgesG);
-		edgesInSystemOutput.addAll(edgesS);
+	private static void addCounts(Map<String, int[]> counts, String[] columns) {
+		int[] counters = counts.get(columns[1]);
+		if (counters == null) {
+			counters = new int[3];
+			counts.put(columns[1], counters);
+		}
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] += Integer.parseInt(columns[2 + i]);
+		}
+	}
+
+	/**
+	 * Sets whether the counts contributed by each pair of graphs are
+	 * recorded, so that they can be written to a {@link ScoreCache}.
+	 *
+	 * @param recordsCounts {@code true} if counts should be recorded
+	 */
+	void setRecordsCounts(boolean recordsCounts) {
+		recordedCounts = recordsCounts ? new RecordedCounts() : null;
+	}
+
+	/**
+	 * Writes the counts contributed by the last pair of graphs, which must
+	 * have been recorded. The counts are written as the numbers of exact
+	 * matches, edges, semantic frames and core predications of the pair,
+	 * followed by the non-zero per-length, per-label and per-group counters,
+	 * and by the cells of the confusion matrix outside of its diagonal; the
+	 * diagonal is implied by the per-label counts of edges in common. Each
+	 * list of counters is preceded by its length.
+	 *
+	 * @param out the encoder to write to
+	 * @param cache the cache whose name indices are used for labels and
+	 * group keys
+	 */
+	void writeRecordedCounts(ScoreCache.Encoder out, ScoreCache cache) {
+		for (int value : recordedCounts.scalars) {
+			out.writeInt(value);
+		}
+		int[] countsByLengthBucket = recordedCounts.countsByLengthBucket;
+		int nBuckets = 0;
+		for (int bucket = 0; bucket < countersByLengthBucket.length; bucket++) {
+			nBuckets += countsByLengthBucket[3 * bucket] + countsByLengthBucket[3 * bucket + 1] > 0 ? 1 : 0;
+		}
+		out.writeInt(nBuckets);
+		for (int bucket = 0; bucket < countersByLengthBucket.length; bucket++) {
+			if (countsByLengthBucket[3 * bucket] + countsByLengthBucket[3 * bucket + 1] > 0) {
+				out.writeInt(bucket);
+				for (int i = 0; i < 3; i++) {
+					out.writeInt(countsByLengthBucket[3 * bucket + i]);
+				}
+			}
+		}
+		recordedCounts.countsByLabelId.write(out, cache, labels);
+		recordedCounts.countsByGroupId.write(out, cache, groups);
+		long[] confusions = recordedCounts.confusions;
+		int nConfusions = recordedCounts.nConfusions;
+		Arrays.sort(confusions, 0, nConfusions);
+		int nCells = 0;
+		for (int i = 0; i < nConfusions; i++) {
+			nCells += i == 0 || confusions[i] != confusions[i - 1] ? 1 : 0;
+		}
+		out.writeInt(nCells);
+		for (int i = 0; i < nConfusions; ) {
+			int j = i;
+			while (j < nConfusions && confusions[j] == confusions[i]) {
+				j++;
+			}
+			out.writeInt(getNameIndex((int) (confusions[i] >>> 32), cache));
+			out.writeInt(getNameIndex((int) confusions[i], cache));
+			out.writeInt(j - i);
+			i = j;
+		}
+	}
+
+	/**
+	 * Returns the name index of the label with the specified index in the
+	 * confusion matrix, plus one, or 0 for {@link #NONE}.
+	 */
+	private int getNameIndex(int confusionIndex, ScoreCache cache) {
+		return confusionIndex == 0 ? 0 : cache.getNameIndex(labels.get(confusionIndex - 1)) + 1;
+	}
 
-		Set<SemanticFrame> semanticFramesG = getSemanticFrames(goldStandard);
-		Set<SemanticFrame> semanticFramesS = getSemanticFrames(systemOutput);
+	/**
+	 * Adds the counts of one pair of graphs, as written by
+	 * {@link #writeRecordedCounts(ScoreCache.Encoder, ScoreCache)}, to the
+	 * counts of this scorer.
+	 *
+	 * @param in the decoder to read from
+	 * @param cache the cache whose name indices are used for labels and
+	 * group keys
+	 */
+	void addCounts(ScoreCache.Decoder in, ScoreCache cache) {
+		nGraphs++;
+		nExactMatches += in.readInt();
+		nEdgesInGoldStandard += in.readInt();
+		nEdgesInSystemOutput += in.readInt();
+		nEdgesInCommon += in.readInt();
+		nSemanticFramesInGoldStandard += in.readInt();
+		nSemanticFramesInSystemOutput += in.readInt();
+		nSemanticFramesInCommon += in.readInt();
+		nCorePredicationsInGoldStandard += in.readInt();
+		nCorePredicationsInSystemOutput += in.readInt();
+		nCorePredicationsInCommon += in.readInt();
+		for (int n = in.readInt(); n > 0; n--) {
+			addCounts(getLengthCounters(in.readInt()), in);
+		}
+		for (int n = in.readInt(); n > 0; n--) {
+			int labelId = getLabelIdByNameIndex(in.readInt(), cache);
+			int nInCommon = addCounts(getLabelCounters(labelId), in);
+			if (includeLabels && nInCommon > 0) {
+				addConfusion(labelId + 1, labelId + 1, nInCommon);
+			}
+		}
+		for (int n = in.readInt(); n > 0; n--) {
+			addCounts(getGroupCounters(getGroupIdByNameIndex(in.readInt(), cache)), in);
+		}
+		for (int n = in.readInt(); n > 0; n--) {
+			int row = in.readInt();
+			int column = in.readInt();
+			row = row == 0 ? 0 : getLabelIdByNameIndex(row - 1, cache) + 1;
+			column = column == 0 ? 0 : getLabelIdByNameIndex(column - 1, cache) + 1;
+			addConfusion(row, column, in.readInt());
+		}
+	}
 
-		semanticFramesInGoldStandard.addAll(semanticFramesG);
-		semanticFramesInSystemOutput.addAll(semanticFramesS);
+	/**
+	 * Adds the next three counts read from the specified decoder to the
+	 * specified counters.
+	 *
+	 * @return the number of edges in common
+	 */
+	private static int addCounts(int[] counters, ScoreCache.Decoder in) {
+		counters[0] += in.readInt();
+		counters[1] += in.readInt();
+		int nInCommon = in.readInt();
+		counters[2] += nInCommon;
+		return nInCommon;
+	}
 
-		Set<SemanticFrame> corePredicationsG = getCorePredications(goldStandard);
-		Set<SemanticFrame> corePredicationsS = getCorePredications(systemOutput);
+	private int getLabelIdByNameIndex(int nameIndex, ScoreCache cache) {
+		if (nameIndex >= labelIdsByNameIndex.length) {
+			labelIdsByNameIndex = Arrays.copyOf(labelIdsByNameIndex, Math.max(nameIndex + 1, 2 * labelIdsByNameIndex.length));
+		}
+		if (labelIdsByNameIndex[nameIndex] == 0) {
+			labelIdsByNameIndex[nameIndex] = getLabelId(cache.getName(nameIndex)) + 1;
+		}
+		return labelIdsByNameIndex[nameIndex] - 1;
+	}
 
-		corePredicationsInGoldStandard.addAll(corePredicationsG);
-		corePredicationsInSystemOutput.addAll(corePredicationsS);
+	private int getGroupIdByNameIndex(int nameIndex, ScoreCache cache) {
+		if (nameIndex >= groupIdsByNameIndex.length) {
+			groupIdsByNameIndex = Arrays.copyOf(groupIdsByNameIndex, Math.max(nameIndex + 1, 2 * groupIdsByNameIndex.length));
+		}
+		if (groupIdsByNameIndex[nameIndex] == 0) {
+			groupIdsByNameIndex[nameIndex] = getGroupId(cache.getName(nameIndex)) + 1;
+		}
+		return groupIdsByNameIndex[nameIndex] - 1;
 	}
 
 	/**
@@ -163,48 +1081,154 @@ public class Scorer {
 	 * @return {@code true} if the specified node represents a punctuation token
 	 */
 	private boolean isPunctuation(Node node) {
-		return node.pos.equals(".") || node.pos.equals(",") || node.pos.equals(":") || node.pos.equals("(") || node.pos.equals(")");
+		return punctuationTags.contains(node.getPos());
 	}
 
 	/**
-	 * Tests whether an edge between the specified nodes is admissible.
+	 * Computes the flags indicating whether the nodes of the specified graph
+	 * may be the endpoints of scored edges. This is done once per graph, so
+	 * that testing an edge takes two array lookups.
 	 *
 	 * @param graph a graph
+	 */
+	private void computeAdmissibleNodes(Graph graph) {
+		if (isAdmissible.length < graph.getNNodes()) {
+			isAdmissible = new boolean[Math.max(graph.getNNodes(), 2 * isAdmissible.length)];
+		}
+		for (Node node : graph.getNodes()) {
+			isAdmissible[node.id] = !isPunctuation(node);
+		}
+	}
+
+	/**
+	 * Tests whether an edge between the specified nodes is admissible. If
+	 * punctuation is excluded, this requires the flags computed by
+	 * {@link #computeAdmissibleNodes(Graph)}.
+	 *
 	 * @param src the source node of the presumed edge
 	 * @param tgt the target node of the presumed edge
 	 * @return {@code true} if an edge from the specified source node to the
 	 * specified target node would be admissible
 	 */
-	private boolean edgeIsAdmissible(Graph graph, int src, int tgt) {
-		if (includePunctuation) {
-			return true;
-		} else {
-			return !isPunctuation(graph.getNode(src)) && !isPunctuation(graph.getNode(tgt));
-		}
+	private boolean edgeIsAdmissible(int src, int tgt) {
+		return includePunctuation || isAdmissible[src] && isAdmissible[tgt];
 	}
 
 	/**
-	 * Extracts the (scorer-internal) edges from the specified graph.
+	 * Extracts the (scorer-internal) edges from the specified graph into the
+	 * specified buffer. Each edge is packed into a single long holding the IDs
+	 * of its target and source node and the ID of its label, in this order,
+	 * so that the natural order of the packed edges is the order defined by
+	 * {@link Edge#compareTo(Edge)}; when edges are treated as undirected, the
+	 * larger node ID takes the place of the target. Top nodes are represented
+	 * by virtual edges from the wall node, which are placed before the other
+	 * edges of the same target. As the graph readers add edges in this order,
+	 * the packed edges normally come out sorted; they are only sorted
+	 * explicitly if they do not. Duplicates are removed; the number of edges
+	 * is stored in {@link #nEdges}.
 	 *
 	 * @param graph the graph from which to extract the edges
-	 * @return the set of extracted edges
+	 * @param buffer a buffer for the packed edges
+	 * @return the buffer holding the packed edges; this is a new buffer if the
+	 * specified buffer was too small
 	 */
-	private Set<ScorerEdge> getEdges(Graph graph) {
-		Set<ScorerEdge> edges = new HashSet<ScorerEdge>();
+	private long[] getEdges(Graph graph, long[] buffer) {
+		int nNodes = graph.getNNodes();
+		if (nNodes > ID_MASK) {
+			throw new IllegalArgumentException("Graph too large to be scored: " + graph.id);
+		}
+		int capacity = graph.getNEdges() + nNodes;
+		if (buffer.length < capacity) {
+			buffer = new long[Math.max(capacity, 2 * buffer.length)];
+		}
+		if (!includePunctuation) {
+			computeAdmissibleNodes(graph);
+		}
+		int n = 0;
+		int top = includeTopNodes ? getNextTopNode(graph, 1) : nNodes;
 		for (Edge edge : graph.getEdges()) {
-			if (edgeIsAdmissible(graph, edge.source, edge.target)) {
-				String label = includeLabels ? edge.label : UNLABELED;
-				edges.add(makeEdge(nGraphs, edge.source, edge.target, label));
+			for (; top <= edge.target; top = getNextTopNode(graph, top + 1)) {
+				if (edgeIsAdmissible(0, top)) {
+					buffer[n++] = pack(0, top, VIRTUAL);
+				}
+			}
+			if (edgeIsAdmissible(edge.source, edge.target)) {
+				buffer[n++] = pack(edge.source, edge.target, includeLabels ? edge.label : UNLABELED);
 			}
 		}
-		if (includeTopNodes) {
-			for (Node node : graph.getNodes()) {
-				if (node.isTop && edgeIsAdmissible(graph, 0, node.id)) {
-					edges.add(makeEdge(nGraphs, 0, node.id, VIRTUAL));
-				}
+		for (; top < nNodes; top = getNextTopNode(graph, top + 1)) {
+			if (edgeIsAdmissible(0, top)) {
+				buffer[n++] = pack(0, top, VIRTUAL);
+			}
+		}
+		boolean isSorted = true;
+		for (int i = 1; i < n && isSorted; i++) {
+			isSorted = buffer[i - 1] <= buffer[i];
+		}
+		if (!isSorted) {
+			Arrays.sort(buffer, 0, n);
+		}
+		int nDistinct = 0;
+		for (int i = 0; i < n; i++) {
+			if (nDistinct == 0 || buffer[i] != buffer[nDistinct - 1]) {
+				buffer[nDistinct++] = buffer[i];
+			}
+		}
+		nEdges = nDistinct;
+		return buffer;
+	}
+
+	/**
+	 * Returns the ID of the first top node at or after the specified node.
+	 *
+	 * @param graph a graph
+	 * @param id a node ID
+	 * @return the ID of the first top node at or after the specified node, or
+	 * the number of nodes if there is no such node
+	 */
+	private static int getNextTopNode(Graph graph, int id) {
+		while (id < graph.getNNodes() && !graph.getNode(id).isTop) {
+			id++;
+		}
+		return id;
+	}
+
+	/**
+	 * Packs the specified edge into a long.
+	 *
+	 * @param src the source node of the edge
+	 * @param tgt the target node of the edge
+	 * @param label the label of the edge
+	 * @return the packed edge
+	 */
+	private long pack(int src, int tgt, String label) {
+		int first = treatEdgesAsUndirected ? Math.max(src, tgt) : tgt;
+		int second = treatEdgesAsUndirected ? Math.min(src, tgt) : src;
+		return ((long) first << (2 * ID_BITS)) | ((long) second << ID_BITS) | getLabelId(label);
+	}
+
+	/**
+	 * Returns the integer ID of the specified label. When a label is first
+	 * seen, it is tested against the filter for core arguments.
+	 *
+	 * @param label a label
+	 * @return the integer ID of the specified label
+	 */
+	private int getLabelId(String label) {
+		Integer id = labelIds.get(label);
+		if (id == null) {
+			if (labelIds.size() > ID_MASK) {
+				throw new IllegalStateException("Too many labels");
+			}
+			id = labelIds.size();
+			labelIds.put(label, id);
+			labels.add(label);
+			countersByLabelId.add(null);
+			if (labelPredicate != null && labelPredicate.applies(label)) {
+				coreArgumentLabelIds.set(id);
 			}
 		}
-		return edges;
+		return id;
 	}
 
 	/**
@@ -213,7 +1237,7 @@ public class Scorer {
 	 * @return the number of edges in the gold standard
 	 */
 	public int getNEdgesInGoldStandard() {
-		return edgesInGoldStandard.size();
+		return nEdgesInGoldStandard;
 	}
 
 	/**
@@ -222,7 +1246,7 @@ public class Scorer {
 	 * @return the number of edges in the system output
 	 */
 	public int getNEdgesInSystemOutput() {
-		return edgesInSystemOutput.size();
+		return nEdgesInSystemOutput;
 	}
 
 	/**
@@ -243,19 +1267,6 @@ public class Scorer {
 		return (double) getNEdgesInCommon() / (double) getNEdgesInGoldStandard();
 	}
 
-	/**
-	 * Returns the edges that occur both in the gold standard and in the system
-	 * output.
-	 *
-	 * @return the edges that occur both in the gold standard and in the system
-	 * output
-	 */
-	private Set<ScorerEdge> getEdgesInCommon() {
-		Set<ScorerEdge> intersection = new HashSet<ScorerEdge>(edgesInGoldStandard);
-		intersection.retainAll(edgesInSystemOutput);
-		return intersection;
-	}
-
 	/**
 	 * Returns the number of edges that occur both in the gold standard and in
 	 * the system output.
@@ -264,7 +1275,7 @@ public class Scorer {
 	 * the system output
 	 */
 	public int getNEdgesInCommon() {
-		return getEdgesInCommon().size();
+		return nEdgesInCommon;
 	}
 
 	/**
@@ -278,6 +1289,16 @@ public class Scorer {
 		return 2.0 * p * r / (p + r);
 	}
 
+	/**
+	 * Returns the number of graphs in the system output that match the
+	 * corresponding gold standard graph exactly.
+	 *
+	 * @return the number of exact matches
+	 */
+	public int getNExactMatches() {
+		return nExactMatches;
+	}
+
 	/**
 	 * Returns the exact match score computed by this scorer.
 	 *
@@ -288,39 +1309,110 @@ public class Scorer {
 	}
 
 	/**
-	 * Tests whether the specified node represents a scorable predicate.
-	 * Currently only predicates corresponding to verbs are scored.
+	 * Tests whether the specified node represents a scorable predicate.
+	 * Currently only predicates corresponding to verbs are scored.
+	 *
+	 * @param node a node in a dependency graph
+	 * @return {@code true} if the specified node represents a scorable
+	 * predicate
+	 */
+	private boolean representsScorablePredicate(Node node) {
+		return node.isPred && node.getPos().startsWith("V");
+	}
+
+	/**
+	 * Updates the counts for semantic frames and core predications with the
+	 * specified pair of graphs. Predicates are aligned by node ID. Two aligned
+	 * predicates form the same core predication if their sorted arrays of
+	 * packed arguments are equal; they form the same semantic frame if, in
+	 * addition, they have the same sense.
+	 *
+	 * @param goldStandard the gold standard graph
+	 * @param systemOutput the system output graph
+	 */
+	private void updateFrames(Graph goldStandard, Graph systemOutput) {
+		int nNodes = Math.max(goldStandard.getNNodes(), systemOutput.getNNodes());
+		for (int id = 0; id < nNodes; id++) {
+			Node nodeG = id < goldStandard.getNNodes() ? goldStandard.getNode(id) : null;
+			Node nodeS = id < systemOutput.getNNodes() ? systemOutput.getNode(id) : null;
+			boolean isScorableG = nodeG != null && representsScorablePredicate(nodeG);
+			boolean isScorableS = nodeS != null && representsScorablePredicate(nodeS);
+			if (isScorableG) {
+				nSemanticFramesInGoldStandard++;
+				nCorePredicationsInGoldStandard++;
+			}
+			if (isScorableS) {
+				nSemanticFramesInSystemOutput++;
+				nCorePredicationsInSystemOutput++;
+			}
+			if (isScorableG && isScorableS) {
+				argumentsG = getArguments(nodeG, argumentsG);
+				int nArgumentsG = nArguments;
+				argumentsS = getArguments(nodeS, argumentsS);
+				int nArgumentsS = nArguments;
+				if (haveSameArguments(argumentsG, nArgumentsG, argumentsS, nArgumentsS)) {
+					nCorePredicationsInCommon++;
+					if (nodeG.getSense() == null ? nodeS.getSense() == null : nodeG.getSense().equals(nodeS.getSense())) {
+						nSemanticFramesInCommon++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects the arguments of the specified predicate into the specified
+	 * buffer. Each argument is packed into a single long holding the ID of the
+	 * target node and the ID of the label. The arguments are sorted and
+	 * duplicates are removed; their number is stored in {@link #nArguments}.
 	 *
-	 * @param node a node in a dependency graph
-	 * @return {@code true} if the specified node represents a scorable
-	 * predicate
+	 * @param node a predicate node
+	 * @param buffer a buffer for the packed arguments
+	 * @return the buffer holding the packed arguments; this is a new buffer if
+	 * the specified buffer was too small
 	 */
-	private boolean representsScorablePredicate(Node node) {
-		return node.isPred && node.pos.startsWith("V");
+	private long[] getArguments(Node node, long[] buffer) {
+		if (buffer.length < node.getNOutgoingEdges()) {
+			buffer = new long[Math.max(node.getNOutgoingEdges(), 2 * buffer.length)];
+		}
+		int n = 0;
+		for (Edge edge : node.getOutgoingEdges()) {
+			int labelId = getLabelId(edge.label);
+			if (coreArgumentLabelIds.get(labelId)) {
+				buffer[n++] = ((long) edge.target << 32) | labelId;
+			}
+		}
+		Arrays.sort(buffer, 0, n);
+		int nDistinct = 0;
+		for (int i = 0; i < n; i++) {
+			if (nDistinct == 0 || buffer[i] != buffer[nDistinct - 1]) {
+				buffer[nDistinct++] = buffer[i];
+			}
+		}
+		nArguments = nDistinct;
+		return buffer;
 	}
 
 	/**
-	 * Returns the semantic frames contained in the specified graph.
+	 * Tests whether the specified arrays of packed arguments are equal.
 	 *
-	 * @param graph a dependency graph
-	 * @return the semantic frames contained in the specified graph
+	 * @param arguments1 the first array of packed arguments
+	 * @param n1 the number of arguments in the first array
+	 * @param arguments2 the second array of packed arguments
+	 * @param n2 the number of arguments in the second array
+	 * @return {@code true} if the specified arrays of packed arguments are
+	 * equal
 	 */
-	private Set<SemanticFrame> getSemanticFrames(Graph graph) {
-		Set<SemanticFrame> semanticFrames = new HashSet<>();
-		for (Node node : graph.getNodes()) {
-			if (representsScorablePredicate(node)) {
-				Set<ScorerEdge> outgoingEdges = new HashSet<>();
-				for (Edge edge : node.getOutgoingEdges()) {
-					if (labelPredicate.applies(edge.label)) {
-						ScorerEdge scorerEdge = new ScorerEdge(nGraphs, edge.source, edge.target, edge.label);
-						outgoingEdges.add(scorerEdge);
-					}
-				}
-				SemanticFrame frame = new SemanticFrame(nGraphs, node.id, node.sense, outgoingEdges);
-				semanticFrames.add(frame);
+	private static boolean haveSameArguments(long[] arguments1, int n1, long[] arguments2, int n2) {
+		if (n1 != n2) {
+			return false;
+		}
+		for (int i = 0; i < n1; i++) {
+			if (arguments1[i] != arguments2[i]) {
+				return false;
 			}
 		}
-		return semanticFrames;
+		return true;
 	}
 
 	/**
@@ -329,7 +1421,7 @@ public class Scorer {
 	 * @return the number of semantic frames in the gold standard
 	 */
 	public int getNSemanticFramesInGoldStandard() {
-		return semanticFramesInGoldStandard.size();
+		return nSemanticFramesInGoldStandard;
 	}
 
 	/**
@@ -338,7 +1430,7 @@ public class Scorer {
 	 * @return the number of semantic frames in the system output
 	 */
 	public int getNSemanticFramesInSystemOutput() {
-		return semanticFramesInSystemOutput.size();
+		return nSemanticFramesInSystemOutput;
 	}
 
 	/**
@@ -359,19 +1451,6 @@ public class Scorer {
 		return (double) getNSemanticFramesInCommon() / (double) getNSemanticFramesInGoldStandard();
 	}
 
-	/**
-	 * Returns the semantic frames that occur both in the gold standard and in
-	 * the system output.
-	 *
-	 * @return the semantic frames that occur both in the gold standard and in
-	 * the system output
-	 */
-	private Set<SemanticFrame> getSemanticFramesInCommon() {
-		Set<SemanticFrame> intersection = new HashSet<>(semanticFramesInGoldStandard);
-		intersection.retainAll(semanticFramesInSystemOutput);
-		return intersection;
-	}
-
 	/**
 	 * Returns the number of semantic frames that occur both in the gold
 	 * standard and in the system output.
@@ -380,7 +1459,7 @@ public class Scorer {
 	 * standard and in the system output
 	 */
 	public int getNSemanticFramesInCommon() {
-		return getSemanticFramesInCommon().size();
+		return nSemanticFramesInCommon;
 	}
 
 	/**
@@ -394,37 +1473,13 @@ public class Scorer {
 		return 2.0 * p * r / (p + r);
 	}
 
-	/**
-	 * Returns the core predications contained in the specified graph.
-	 *
-	 * @param graph a dependency graph
-	 * @return the core predications contained in the specified graph
-	 */
-	private Set<SemanticFrame> getCorePredications(Graph graph) {
-		Set<SemanticFrame> semanticFrames = new HashSet<>();
-		for (Node node : graph.getNodes()) {
-			if (representsScorablePredicate(node)) {
-				Set<ScorerEdge> outgoingEdges = new HashSet<>();
-				for (Edge edge : node.getOutgoingEdges()) {
-					if (labelPredicate.applies(edge.label)) {
-						ScorerEdge scorerEdge = new ScorerEdge(nGraphs, edge.source, edge.target, edge.label);
-						outgoingEdges.add(scorerEdge);
-					}
-				}
-				SemanticFrame frame = new SemanticFrame(nGraphs, node.id, NO_SENSE, outgoingEdges);
-				semanticFrames.add(frame);
-			}
-		}
-		return semanticFrames;
-	}
-
 	/**
 	 * Returns the number of core predications in the gold standard.
 	 *
 	 * @return the number of core predications in the gold standard
 	 */
 	public int getNCorePredicationsInGoldStandard() {
-		return corePredicationsInGoldStandard.size();
+		return nCorePredicationsInGoldStandard;
 	}
 
 	/**
@@ -433,7 +1488,7 @@ public class Scorer {
 	 * @return the number of core predications in the system output
 	 */
 	public int getNCorePredicationsInSystemOutput() {
-		return corePredicationsInSystemOutput.size();
+		return nCorePredicationsInSystemOutput;
 	}
 
 	/**
@@ -454,19 +1509,6 @@ public class Scorer {
 		return (double) getNCorePredicationsInCommon() / (double) getNCorePredicationsInGoldStandard();
 	}
 
-	/**
-	 * Returns the core predications that occur both in the gold standard and in
-	 * the system output.
-	 *
-	 * @return the core predications that occur both in the gold standard and in
-	 * the system output
-	 */
-	private Set<SemanticFrame> getCorePredicationsInCommon() {
-		Set<SemanticFrame> intersection = new HashSet<>(corePredicationsInGoldStandard);
-		intersection.retainAll(corePredicationsInSystemOutput);
-		return intersection;
-	}
-
 	/**
 	 * Returns the number of core predications that occur both in the gold
 	 * standard and in the system output.
@@ -475,7 +1517,7 @@ public class Scorer {
 	 * standard and in the system output
 	 */
 	public int getNCorePredicationsInCommon() {
-		return getCorePredicationsInCommon().size();
+		return nCorePredicationsInCommon;
 	}
 
 	/**
@@ -490,202 +1532,653 @@ public class Scorer {
 	}
 
 	/**
-	 * Read graphs from the specified files.
+	 * The columns read by the scorer: scoring only needs the part-of-speech
+	 * tags and senses of the tokens.
+	 */
+	private static final Projection PROJECTION = Projection.of(Projection.Column.POS, Projection.Column.SENSE);
+
+	/**
+	 * Metrics for scoring (see {@link Metrics}): the time spent updating the
+	 * scorers per graph, the bytes allocated while scoring, and the phases of
+	 * {@link #main(String[])}.
+	 */
+	private static final Metrics.Timer UPDATE_TIME = Metrics.timer("scorer.updateTime");
+	private static final Metrics.Counter ALLOCATED_BYTES = Metrics.counter("scorer.allocatedBytes");
+	private static final Metrics.Timer SCORE_PHASE = Metrics.timer("scorer.phase.score");
+	private static final Metrics.Timer REPORT_PHASE = Metrics.timer("scorer.phase.report");
+
+	/**
+	 * The default time between two summaries in follow mode, and the default
+	 * time without new graphs after which follow mode ends, in seconds.
+	 */
+	private static final long DEFAULT_FOLLOW_INTERVAL = 60;
+	private static final long DEFAULT_FOLLOW_TIMEOUT = 600;
+
+	/**
+	 * Scores the graphs in the specified files.
 	 *
+	 * @param snapshot the snapshot to update
+	 * @param source the source from which the gold standard is read
 	 * @param goldStandardFile the file containing the gold standard graphs
 	 * @param systemOutputFile the file containing the system output graphs
-	 * @throws Exception if an I/O error occurs
+	 * @param max the maximal number of graphs to read, or -1 for all graphs
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void score(ScoreSnapshot snapshot, GraphSource source, File goldStandardFile, File systemOutputFile, int max) throws IOException {
+		score(snapshot, source.open(goldStandardFile, PROJECTION), GraphReaders.open(systemOutputFile, PROJECTION), max);
+	}
+
+	/**
+	 * Scores the graphs read from the specified readers, and closes the
+	 * readers.
+	 *
+	 * @param snapshot the snapshot to update
+	 * @param goldStandardReader the reader for the gold standard graphs
+	 * @param systemOutputReader the reader for the system output graphs
+	 * @param max the maximal number of graphs to read, or -1 for all graphs
+	 * @throws IOException if an I/O error occurs
 	 */
-	private static List<GraphPair> readGraphs(String goldStandardFile, String systemOutputFile, int max) throws Exception {
-		List<GraphPair> graphPairs = new LinkedList<GraphPair>();
-		GraphReader goldStandardReader = new GraphReader2015(goldStandardFile);
-		GraphReader systemOutputReader = new GraphReader2015(systemOutputFile);
+	private static void score(ScoreSnapshot snapshot, GraphReader goldStandardReader, GraphReader systemOutputReader, int max) throws IOException {
+		long allocatedBytes = Metrics.isEnabled() ? Metrics.getAllocatedBytes() : -1L;
 		Graph goldStandard;
 		Graph systemOutput;
 		int nGraphs = 0;
 		while ((goldStandard = goldStandardReader.readGraph()) != null && (max < 0 || nGraphs < max)) {
 			systemOutput = systemOutputReader.readGraph();
-			graphPairs.add(new GraphPair(goldStandard, systemOutput));
+			long start = UPDATE_TIME.start();
+			snapshot.update(goldStandard, systemOutput);
+			UPDATE_TIME.stop(start);
 			nGraphs++;
 		}
-		assert systemOutputReader.readGraph() == null;
+		assert max >= 0 || systemOutputReader.readGraph() == null;
 		goldStandardReader.close();
 		systemOutputReader.close();
-		return graphPairs;
+		if (allocatedBytes >= 0) {
+			ALLOCATED_BYTES.add(Metrics.getAllocatedBytes() - allocatedBytes);
+		}
 	}
 
 	/**
-	 * Scores the specified graphs using the specified scorer.
+	 * Scores a system output that is still being written, following the file
+	 * as graphs are appended to it. System output graphs are aligned with the
+	 * gold standard graphs either by position or by graph ID; in the latter
+	 * case, the graphs may be written in any order. A summary of the scores
+	 * so far is printed at regular intervals, also while no new graphs are
+	 * being written; the system output is read on a background thread, and
+	 * waiting for its next graph times out when a summary is due. Scoring
+	 * ends when all gold standard graphs have been matched, or when no graphs
+	 * have been appended for the specified time.
 	 *
-	 * @param scorer the scorer to use
-	 * @param graphPairs a list of reference-candidate pairs
+	 * @param snapshot the snapshot to update
+	 * @param source the source from which the gold standard is read
+	 * @param goldStandardFile the file containing the gold standard graphs
+	 * @param systemOutputFile the file containing the system output graphs
+	 * @param alignById flag indicating whether graphs are aligned by ID
+	 * rather than by position
+	 * @param interval the time between two summaries, in milliseconds
+	 * @param timeout the time without new graphs after which scoring ends,
+	 * in milliseconds
+	 * @param out the stream to print summaries to
+	 * @throws IOException if an I/O error occurs
 	 */
-	private static void score(Scorer scorer, List<GraphPair> graphPairs) {
-		for (GraphPair pair : graphPairs) {
-			scorer.update(pair.goldStandard, pair.systemOutput);
+	private static void follow(ScoreSnapshot snapshot, GraphSource source, File goldStandardFile, File systemOutputFile, boolean alignById, long interval, long timeout, PrintStream out) throws IOException {
+		GraphReader goldStandardReader = source.open(goldStandardFile, PROJECTION);
+		Map<String, Graph> goldStandardById = null;
+		if (alignById) {
+			goldStandardById = new HashMap<String, Graph>();
+			Graph goldStandard;
+			while ((goldStandard = goldStandardReader.readGraph()) != null) {
+				goldStandardById.put(goldStandard.id, goldStandard);
+			}
+		}
+		GraphPoller systemOutputPoller = new GraphPoller(GraphReaders.follow(systemOutputFile, PROJECTION, timeout), systemOutputFile.getName());
+		out.format("Following %s%n", systemOutputFile);
+		long start = System.currentTimeMillis();
+		long nextSummary = start + interval;
+		int nUnmatched = 0;
+		boolean isMisaligned = false;
+		while (true) {
+			Graph goldStandard = null;
+			if (!alignById && (goldStandard = goldStandardReader.readGraph()) == null) {
+				break;
+			}
+			if (alignById && goldStandardById.isEmpty()) {
+				break;
+			}
+			Graph systemOutput;
+			while ((systemOutput = systemOutputPoller.poll(nextSummary - System.currentTimeMillis())) == null && !systemOutputPoller.isAtEnd()) {
+				printProgress(snapshot, start, out);
+				nextSummary = System.currentTimeMillis() + interval;
+			}
+			if (systemOutput == null) {
+				break;
+			}
+			if (alignById) {
+				goldStandard = goldStandardById.remove(systemOutput.id);
+				if (goldStandard == null) {
+					nUnmatched++;
+					continue;
+				}
+			} else if (!isMisaligned && !goldStandard.id.equals(systemOutput.id)) {
+				out.format("Graph %d: system output %s does not match gold standard %s%n", snapshot.getNGraphs() + 1, systemOutput.id, goldStandard.id);
+				isMisaligned = true;
+			}
+			snapshot.update(goldStandard, systemOutput);
+			if (System.currentTimeMillis() >= nextSummary) {
+				printProgress(snapshot, start, out);
+				nextSummary = System.currentTimeMillis() + interval;
+			}
+		}
+		goldStandardReader.close();
+		systemOutputPoller.close();
+		if (nUnmatched > 0) {
+			out.format("System output graphs without gold standard: %d%n", nUnmatched);
 		}
+		out.format("[%ds] ", (System.currentTimeMillis() - start) / 1000);
+		snapshot.printSummary(out);
+		out.println();
+	}
+
+	private static void printProgress(ScoreSnapshot snapshot, long start, PrintStream out) {
+		out.format("[%ds] ", (System.currentTimeMillis() - start) / 1000);
+		snapshot.printSummary(out);
+		out.flush();
 	}
 
 	/**
-	 * Scores the specified graphs.
+	 * Scores two sharded corpora. If the corpora have the same number of
+	 * shards and corresponding shards have the same number of graphs, the
+	 * shards are scored in parallel and the partial results are merged.
+	 * Otherwise, the corpora are scored sequentially.
 	 *
-	 * @param includeTopNodes whether the scoring should include top nodes
-	 * @param graphPairs a list of reference-candidate pairs
+	 * @param snapshot the snapshot to update
+	 * @param goldStandard the gold standard corpus
+	 * @param systemOutput the system output corpus
+	 * @throws IOException if an I/O error occurs
 	 */
-	private static void score(boolean includeTopNodes, boolean includePunctuation, boolean treatEdgesAsUndirected, List<GraphPair> graphPairs, ArgumentFilter labelPredicate) {
-		Scorer scorerL = new Scorer(true, includeTopNodes, includePunctuation, treatEdgesAsUndirected, labelPredicate);
-		Scorer scorerU = new Scorer(false, includeTopNodes, includePunctuation, treatEdgesAsUndirected, labelPredicate);
-
-		score(scorerL, graphPairs);
-		score(scorerU, graphPairs);
-
-		System.err.format("Number of edges in gold standard: %d%n", scorerL.getNEdgesInGoldStandard());
-		System.err.format("Number of edges in system output: %d%n", scorerL.getNEdgesInSystemOutput());
-		System.err.format("Number of edges in common, labeled: %d%n", scorerL.getNEdgesInCommon());
-		System.err.format("Number of edges in common, unlabeled: %d%n", scorerU.getNEdgesInCommon());
-		System.err.println();
-
-		System.err.println("### Labeled scores");
-		System.err.println();
-		System.err.format("LP: %f%n", scorerL.getPrecision());
-		System.err.format("LR: %f%n", scorerL.getRecall());
-		System.err.format("LF: %f%n", scorerL.getF1());
-		System.err.format("LM: %f%n", scorerL.getExactMatch());
-		System.err.println();
+	private static void scoreShards(ScoreSnapshot snapshot, ShardedCorpus goldStandard, ShardedCorpus systemOutput) throws IOException {
+		List<ShardedCorpus.Shard> shardsG = goldStandard.getShards();
+		List<ShardedCorpus.Shard> shardsS = systemOutput.getShards();
+		boolean isAligned = shardsG.size() == shardsS.size();
+		for (int i = 0; isAligned && i < shardsG.size(); i++) {
+			isAligned = shardsG.get(i).getNGraphs() == shardsS.get(i).getNGraphs();
+		}
+		if (!isAligned) {
+			score(snapshot, goldStandard.openReader(PROJECTION), systemOutput.openReader(PROJECTION), -1);
+			return;
+		}
+		try {
+			List<ScoreSnapshot> partialSnapshots = IntStream.range(0, shardsG.size()).parallel().mapToObj(i -> {
+				ScoreSnapshot partialSnapshot = snapshot.newPartialSnapshot();
+				try {
+					score(partialSnapshot, shardsG.get(i).openReader(PROJECTION), shardsS.get(i).openReader(PROJECTION), -1);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return partialSnapshot;
+			}).collect(Collectors.toList());
+			for (ScoreSnapshot partialSnapshot : partialSnapshots) {
+				snapshot.merge(partialSnapshot);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
 
-		System.err.println("### Breakdown by label type");
-		System.err.println();
-		System.err.println("Label type,Number of edges in gold standard,Number of edges in system output,Precision,Recall");
+	/**
+	 * Prints the scores computed by the specified scorers.
+	 *
+	 * @param scorerL the labeled scorer
+	 * @param scorerU the unlabeled scorer
+	 * @param out the stream to print to
+	 */
+	static void printScores(Scorer scorerL, Scorer scorerU, PrintStream out) {
+		out.format("Number of edges in gold standard: %d%n", scorerL.getNEdgesInGoldStandard());
+		out.format("Number of edges in system output: %d%n", scorerL.getNEdgesInSystemOutput());
+		out.format("Number of edges in common, labeled: %d%n", scorerL.getNEdgesInCommon());
+		out.format("Number of edges in common, unlabeled: %d%n", scorerU.getNEdgesInCommon());
+		out.println();
+
+		out.println("### Labeled scores");
+		out.println();
+		out.format("LP: %f%n", scorerL.getPrecision());
+		out.format("LR: %f%n", scorerL.getRecall());
+		out.format("LF: %f%n", scorerL.getF1());
+		out.format("LM: %f%n", scorerL.getExactMatch());
+		out.println();
+
+		out.println("### Breakdown by label type");
+		out.println();
+		out.println("Label type,Number of edges in gold standard,Number of edges in system output,Precision,Recall");
 		List<String> labels = new ArrayList<String>(scorerL.getLabels());
 		Collections.sort(labels);
 		for (String label : labels) {
-			System.err.format("%s,%d,%d,%f,%f%n", label, scorerL.getNEdgesInGoldStandardByLabel(label), scorerL.getNEdgesInSystemOutputByLabel(label), scorerL.getPrecisionPerLabel(label), scorerL.getRecallPerLabel(label));
+			out.format("%s,%d,%d,%f,%f%n", label, scorerL.getNEdgesInGoldStandardByLabel(label), scorerL.getNEdgesInSystemOutputByLabel(label), scorerL.getPrecisionPerLabel(label), scorerL.getRecallPerLabel(label));
 		}
-		System.err.println();
+		out.println();
 
-		System.err.println("### Breakdown by edge length");
-		System.err.println();
+		out.println("### Breakdown by edge length");
+		out.println();
 		List<String> quantizedLengths = new ArrayList<String>();
 		for (int i = 1; i < 100; i++) {
-			String quantizedLength = scorerL.getQuantizedLength(i);
+			String quantizedLength = getQuantizedLength(i);
 			if (!quantizedLengths.contains(quantizedLength)) {
 				quantizedLengths.add(quantizedLength);
 			}
 		}
-		System.err.println("Edge length,Number of edges in gold standard,Number of edges in system output,Precision,Recall");
+		out.println("Edge length,Number of edges in gold standard,Number of edges in system output,Precision,Recall");
 		for (String quantizedLength : quantizedLengths) {
-			System.err.format("%s,%d,%d,%f,%f%n", quantizedLength, scorerL.getNEdgesInGoldStandardByQuantizedLength(quantizedLength), scorerL.getNEdgesInSystemOutputByQuantizedLength(quantizedLength), scorerL.getPrecisionPerQuantizedLength(quantizedLength), scorerL.getRecallPerQuantizedLength(quantizedLength));
+			out.format("%s,%d,%d,%f,%f%n", quantizedLength, scorerL.getNEdgesInGoldStandardByQuantizedLength(quantizedLength), scorerL.getNEdgesInSystemOutputByQuantizedLength(quantizedLength), scorerL.getPrecisionPerQuantizedLength(quantizedLength), scorerL.getRecallPerQuantizedLength(quantizedLength));
+		}
+		out.println();
+
+		if (!scorerL.countsByGroup.isEmpty()) {
+			out.println("### Breakdown by group");
+			out.println();
+			out.println("Group,Number of edges in gold standard,Number of edges in system output,LP,LR,LF,UP,UR,UF");
+			List<String> groups = new ArrayList<String>(scorerL.countsByGroup.keySet());
+			Collections.sort(groups);
+			for (String group : groups) {
+				int[] countsL = scorerL.countsByGroup.get(group);
+				int[] countsU = getCounters(scorerU.countsByGroup, group);
+				out.format("%s,%d,%d,%s,%s%n", group, countsL[0], countsL[1], formatScores(countsL), formatScores(countsU));
+			}
+			out.println();
 		}
-		System.err.println();
 
-		System.err.println("### Unlabeled scores");
-		System.err.println();
-		System.err.format("UP: %f%n", scorerU.getPrecision());
-		System.err.format("UR: %f%n", scorerU.getRecall());
-		System.err.format("UF: %f%n", scorerU.getF1());
-		System.err.format("UM: %f%n", scorerU.getExactMatch());
-		System.err.println();
+		out.println("### Unlabeled scores");
+		out.println();
+		out.format("UP: %f%n", scorerU.getPrecision());
+		out.format("UR: %f%n", scorerU.getRecall());
+		out.format("UF: %f%n", scorerU.getF1());
+		out.format("UM: %f%n", scorerU.getExactMatch());
+		out.println();
+
+		out.println("### Complete predications");
+		out.println();
+		out.format("Number of complete predications in gold standard: %d%n", scorerL.getNCorePredicationsInGoldStandard());
+		out.format("Number of complete predications in system output: %d%n", scorerL.getNCorePredicationsInSystemOutput());
+		out.println();
+		out.format("PP: %f%n", scorerL.getCorePredicationsPrecision());
+		out.format("PR: %f%n", scorerL.getCorePredicationsRecall());
+		out.format("PF: %f%n", scorerL.getCorePredicationsF1());
+		out.println();
+
+		out.println("### Semantic frames");
+		out.println();
+		out.format("Number of semantic frames in gold standard: %d%n", scorerL.getNSemanticFramesInGoldStandard());
+		out.format("Number of semantic frames in system output: %d%n", scorerL.getNSemanticFramesInSystemOutput());
+		out.println();
+		out.format("FP: %f%n", scorerL.getSemanticFramesPrecision());
+		out.format("FR: %f%n", scorerL.getSemanticFramesRecall());
+		out.format("FF: %f%n", scorerL.getSemanticFramesF1());
+	}
 
-		System.err.println("### Complete predications");
-		System.err.println();
-		System.err.format("Number of complete predications in gold standard: %d%n", scorerL.getNCorePredicationsInGoldStandard());
-		System.err.format("Number of complete predications in system output: %d%n", scorerL.getNCorePredicationsInSystemOutput());
-		System.err.println();
-		System.err.format("PP: %f%n", scorerL.getCorePredicationsPrecision());
-		System.err.format("PR: %f%n", scorerL.getCorePredicationsRecall());
-		System.err.format("PF: %f%n", scorerL.getCorePredicationsF1());
-		System.err.println();
+	/**
+	 * Formats the precision, recall and F1-score for the specified counters.
+	 *
+	 * @param counts the number of edges in the gold standard, in the system
+	 * output, and in common
+	 * @return the formatted scores, separated by commas
+	 */
+	private static String formatScores(int[] counts) {
+		double p = (double) counts[2] / (double) counts[1];
+		double r = (double) counts[2] / (double) counts[0];
+		return String.format("%f,%f,%f", p, r, 2.0 * p * r / (p + r));
+	}
 
-		System.err.println("### Semantic frames");
-		System.err.println();
-		System.err.format("Number of semantic frames in gold standard: %d%n", scorerL.getNSemanticFramesInGoldStandard());
-		System.err.format("Number of semantic frames in system output: %d%n", scorerL.getNSemanticFramesInSystemOutput());
-		System.err.println();
-		System.err.format("FP: %f%n", scorerL.getSemanticFramesPrecision());
-		System.err.format("FR: %f%n", scorerL.getSemanticFramesRecall());
-		System.err.format("FF: %f%n", scorerL.getSemanticFramesF1());
+	/**
+	 * Prints the message that describes the specified command-line option,
+	 * if any.
+	 *
+	 * @param arg a command-line argument
+	 * @param out the stream to print to
+	 */
+	static void printOption(String arg, PrintStream out) {
+		if (arg.equals("excludePunctuation")) {
+			out.println("Will exclude punctuation.");
+		}
+		if (arg.equals("treatEdgesAsUndirected")) {
+			out.println("Will treat edges as undirected.");
+		}
+		if (arg.startsWith("corePredicates=")) {
+			out.format("Reading core predicates from %s%n", arg.substring(15));
+		}
+		if (arg.startsWith("punctuationTags=")) {
+			out.format("Reading punctuation tags from %s%n", arg.substring(16));
+		}
+		if (arg.startsWith("groupBy=")) {
+			out.format("Will break down scores by %s.%n", arg.substring(8));
+		}
+		if (arg.startsWith("max=")) {
+			out.format("Will read at most %d graphs.%n", Integer.parseInt(arg.substring(4)));
+		}
+		if (arg.startsWith("representation=")) {
+			String representation = arg.substring(15).toLowerCase();
+			if (representation.equals("dm")) {
+				out.println("Representation type: DM");
+			}
+			if (representation.equals("pas")) {
+				out.println("Representation type: PAS");
+			}
+			if (representation.equals("psd")) {
+				out.println("Representation type: PSD");
+			}
+		}
 	}
 
 	/**
-	 * Compute scores for two files.
+	 * Compute scores for two files. Options are given as further arguments;
+	 * the option {@code snapshot=FILE} writes a score snapshot that can be
+	 * merged with the snapshots of other runs using {@link ScoreMerger}, and
+	 * the option {@code sentences=FILE} writes per-sentence statistics (see
+	 * {@link ScoreSnapshot#setSentenceWriter(Writer)}). The option
+	 * {@code punctuationTags=FILE} reads the part-of-speech tags that
+	 * {@code excludePunctuation} treats as punctuation from the specified
+	 * file, one tag per line. The option {@code groupBy=SPEC} adds a
+	 * breakdown of the scores by group, computed in the same pass; see
+	 * {@link GroupKey#parse(String)} for the possible specifications. The
+	 * option {@code confusion=FILE} writes the label confusion matrix (see
+	 * {@link ScoreSnapshot#writeConfusionMatrix(File)}). The option
+	 * {@code follow} scores a system output that is still being written,
+	 * printing a summary of the scores so far every {@code interval=} seconds
+	 * (default 60), until all gold standard graphs have been scored or no
+	 * graphs have been written for {@code timeout=} seconds (default 600);
+	 * with {@code alignBy=id} rather than the default {@code alignBy=position},
+	 * system output graphs may be written in any order (see {@link #follow}).
+	 * In this mode, the gold standard may be a manifest, but the system output
+	 * must be a single file, and {@code max=} is not accepted. The option
+	 * {@code cache=FILE} stores the counts of each pair of graphs in the
+	 * specified file, keyed by fingerprints of the graphs, and reuses them
+	 * when the same pair is scored again with the same options (see
+	 * {@link ScoreCache}).
 	 *
 	 * @param args the names of the files containing the gold standard graphs
-	 * and the system output graphs
+	 * and the system output graphs, followed by options
 	 * @throws Exception if an I/O exception occurs
 	 */
 	public static void main(String[] args) throws Exception {
-		boolean includePunctuation = true;
-		boolean treatEdgesAsUndirected = false;
+		run(args, System.err, GraphSource.FILES);
+	}
+
+	/**
+	 * Compute scores for two files, as in {@link #main(String[])}, and print
+	 * the report to the specified stream.
+	 *
+	 * @param args the command-line arguments
+	 * @param out the stream to print to
+	 * @param source the source from which the gold standard is read
+	 * @throws IOException if an I/O error occurs
+	 */
+	static void run(String[] args, PrintStream out, GraphSource source) throws IOException {
 		ArgumentFilter labelPredicate = new TrueFilter();
+		Set<String> punctuationTags = DEFAULT_PUNCTUATION_TAGS;
+		GroupKey groupKey = null;
 		int graphsToRead = -1;
-		for (String arg : args) {
-			if (arg.equals("excludePunctuation")) {
-				System.err.println("Will exclude punctuation.");
-				includePunctuation = false;
+		String snapshotFileName = null;
+		String sentencesFileName = null;
+		String confusionFileName = null;
+		String cacheFileName = null;
+		boolean follow = false;
+		boolean alignById = false;
+		long interval = DEFAULT_FOLLOW_INTERVAL;
+		long timeout = DEFAULT_FOLLOW_TIMEOUT;
+		List<String> options = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.startsWith("snapshot=")) {
+				snapshotFileName = arg.substring(9);
+				continue;
+			}
+			if (arg.startsWith("sentences=")) {
+				sentencesFileName = arg.substring(10);
+				continue;
+			}
+			if (arg.startsWith("confusion=")) {
+				confusionFileName = arg.substring(10);
+				continue;
 			}
-			if (arg.equals("treatEdgesAsUndirected")) {
-				System.err.println("Will treat edges as undirected.");
-				treatEdgesAsUndirected = true;
+			if (arg.startsWith("cache=")) {
+				cacheFileName = arg.substring(6);
+				continue;
 			}
+			if (arg.equals("follow")) {
+				follow = true;
+				continue;
+			}
+			if (arg.startsWith("alignBy=")) {
+				String alignBy = arg.substring(8);
+				if (!alignBy.equals("id") && !alignBy.equals("position")) {
+					throw new IllegalArgumentException("Unknown alignment: " + alignBy + " (expected id or position)");
+				}
+				alignById = alignBy.equals("id");
+				continue;
+			}
+			if (arg.startsWith("interval=")) {
+				interval = Long.parseLong(arg.substring(9));
+				continue;
+			}
+			if (arg.startsWith("timeout=")) {
+				timeout = Long.parseLong(arg.substring(8));
+				continue;
+			}
+			printOption(arg, out);
 			if (arg.startsWith("corePredicates=")) {
-				String fileName = arg.substring(15);
-				System.err.format("Reading core predicates from %s%n", fileName);
-				labelPredicate = new ListFilter(new File(fileName));
+				labelPredicate = new ListFilter(new File(arg.substring(15)));
+			}
+			if (arg.startsWith("punctuationTags=")) {
+				punctuationTags = readTags(new File(arg.substring(16)));
+			}
+			if (arg.startsWith("groupBy=")) {
+				groupKey = GroupKey.parse(arg.substring(8));
 			}
 			if (arg.startsWith("max=")) {
 				graphsToRead = Integer.parseInt(arg.substring(4));
-				System.err.format("Will read at most %d graphs.%n", graphsToRead);
 			}
 			if (arg.startsWith("representation=")) {
 				String representation = arg.substring(15).toLowerCase();
 				if (representation.equals("dm")) {
-					System.err.println("Representation type: DM");
 					labelPredicate = new DMArgumentFilter();
 				}
 				if (representation.equals("pas")) {
-					System.err.println("Representation type: PAS");
 					labelPredicate = new PASArgumentFilter();
 				}
 				if (representation.equals("psd")) {
-					System.err.println("Representation type: PSD");
 					labelPredicate = new PSDPredicate();
 				}
 			}
+			if (i >= 2) {
+				options.add(arg);
+			}
 		}
 
-		System.err.println("# Evaluation");
-		System.err.println();
+		if (follow && graphsToRead >= 0) {
+			throw new IllegalArgumentException("The option max= cannot be combined with follow");
+		}
+		if (follow && new File(args[1]).exists() && ShardedCorpus.isManifest(new File(args[1]))) {
+			throw new IllegalArgumentException("A system output that is followed cannot be a manifest: " + args[1]);
+		}
+
+		ScoreSnapshot snapshot = new ScoreSnapshot(options, labelPredicate, punctuationTags);
+		snapshot.setGroupKey(groupKey);
+		snapshot.addFiles(args[0], args[1]);
+		ScoreCache cache = null;
+		if (cacheFileName != null) {
+			cache = new ScoreCache(new File(cacheFileName), ScoreCache.getFingerprint(options));
+			snapshot.setCache(cache);
+		}
+		Writer sentenceWriter = null;
+		if (sentencesFileName != null) {
+			sentenceWriter = new BufferedWriter(new OutputStreamWriter(Compression.create(new File(sentencesFileName))), 1 << 16);
+			snapshot.setSentenceWriter(sentenceWriter);
+		}
+		File goldStandardFile = new File(args[0]);
+		File systemOutputFile = new File(args[1]);
+		long start = SCORE_PHASE.start();
+		// Per-sentence statistics are written in corpus order, which requires
+		// the shards to be scored sequentially.
+		if (follow) {
+			follow(snapshot, source, goldStandardFile, systemOutputFile, alignById, interval * 1000, timeout * 1000, out);
+		} else if (graphsToRead < 0 && sentenceWriter == null && ShardedCorpus.isManifest(goldStandardFile) && ShardedCorpus.isManifest(systemOutputFile)) {
+			scoreShards(snapshot, ShardedCorpus.read(goldStandardFile), ShardedCorpus.read(systemOutputFile));
+		} else {
+			score(snapshot, source, goldStandardFile, systemOutputFile, graphsToRead);
+		}
+		if (sentenceWriter != null) {
+			sentenceWriter.close();
+		}
+		if (cache != null) {
+			cache.save();
+			out.format("Reused cached scores for %d of %d graphs.%n", cache.getNHits(), cache.getNHits() + cache.getNMisses());
+		}
+		SCORE_PHASE.stop(start);
+		if (Metrics.isEnabled()) {
+			double seconds = SCORE_PHASE.getTotalNanos() / 1e9;
+			if (snapshot.getNGraphs() > 0 && seconds > 0) {
+				Metrics.gauge("scorer.graphsPerSecond").set(snapshot.getNGraphs() / seconds);
+				Metrics.gauge("reader.charsPerSecond").set(Metrics.counter("reader.chars").get() / seconds);
+				Metrics.gauge("scorer.allocatedBytesPerGraph").set((double) ALLOCATED_BYTES.get() / snapshot.getNGraphs());
+			}
+		}
+		if (snapshotFileName != null) {
+			snapshot.write(new File(snapshotFileName));
+		}
+		if (confusionFileName != null) {
+			snapshot.writeConfusionMatrix(new File(confusionFileName));
+		}
 
-		System.err.format("Gold standard file: %s%n", args[0]);
-		System.err.format("System output file: %s%n", args[1]);
-		System.err.println();
+		start = REPORT_PHASE.start();
+		snapshot.printReport(out);
+		REPORT_PHASE.stop(start);
+	}
 
-		List<GraphPair> graphPairs = readGraphs(args[0], args[1], graphsToRead);
+	/**
+	 * Reads a set of tags from the specified file, one tag per line.
+	 *
+	 * @param file the file to read from
+	 * @return the set of tags read
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Set<String> readTags(File file) throws IOException {
+		Set<String> tags = new HashSet<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().isEmpty()) {
+					tags.add(line.trim());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return tags;
+	}
 
-		System.err.println("## Scores including virtual dependencies to top nodes");
-		System.err.println();
-		score(true, includePunctuation, treatEdgesAsUndirected, graphPairs, labelPredicate);
-		System.err.println();
+	interface ArgumentFilter {
 
-		System.err.println("## Scores excluding virtual dependencies to top nodes");
-		System.err.println();
-		score(false, includePunctuation, treatEdgesAsUndirected, graphPairs, labelPredicate);
+		abstract public boolean applies(String label);
 	}
 
-	private static class GraphPair {
+	/**
+	 * Reads graphs on a background thread, so that the next graph can be
+	 * waited for with a timeout. Used to follow a system output.
+	 */
+	private static class GraphPoller {
+
+		/**
+		 * Marker that signals the end of the graphs.
+		 */
+		private static final Graph END = new Graph("");
+
+		private final GraphReader reader;
+
+		private final BlockingQueue<Graph> queue = new ArrayBlockingQueue<Graph>(1024);
+
+		private final Thread thread;
 
-		public final Graph goldStandard;
-		public final Graph systemOutput;
+		/**
+		 * The exception that occurred on the background thread, if any.
+		 */
+		private volatile IOException failure;
 
-		public GraphPair(Graph goldStandard, Graph systemOutput) {
-			this.goldStandard = goldStandard;
-			this.systemOutput = systemOutput;
+		private boolean isAtEnd;
+
+		public GraphPoller(GraphReader reader, String name) {
+			this.reader = reader;
+			this.thread = new Thread(() -> {
+				try {
+					Graph graph;
+					while ((graph = reader.readGraph()) != null) {
+						queue.put(graph);
+					}
+				} catch (IOException e) {
+					failure = e;
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					queue.put(END);
+				} catch (InterruptedException e) {
+				}
+			}, "GraphPoller-" + name);
+			this.thread.setDaemon(true);
+			this.thread.start();
 		}
-	}
 
-	private interface ArgumentFilter {
+		/**
+		 * Returns the next graph, waiting for at most the specified time.
+		 *
+		 * @param timeout the maximal time to wait, in milliseconds
+		 * @return the next graph, or {@code null} if no graph has been read
+		 * within the specified time, or if all graphs have been read
+		 * @throws IOException if an I/O error occurred on the background
+		 * thread, or if the calling thread is interrupted while waiting
+		 */
+		public Graph poll(long timeout) throws IOException {
+			if (isAtEnd) {
+				return null;
+			}
+			Graph graph;
+			try {
+				graph = queue.poll(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if (graph == END) {
+				isAtEnd = true;
+				if (failure != null) {
+					throw failure;
+				}
+				return null;
+			}
+			return graph;
+		}
 
-		abstract public boolean applies(String label);
+		/**
+		 * Tests whether all graphs have been read.
+		 *
+		 * @return {@code true} if all graphs have been read
+		 */
+		public boolean isAtEnd() {
+			return isAtEnd;
+		}
+
+		/**
+		 * Stops the background thread and closes the reader.
+		 *
+		 * @throws IOException if an I/O error occurs
+		 */
+		public void close() throws IOException {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			reader.close();
+		}
 	}
 
 	private static class TrueFilter implements ArgumentFilter {
@@ -767,213 +2260,127 @@ public class Scorer {
 		}
 	}
 
-	private ScorerEdge makeEdge(int graphId, int src, int tgt, String label) {
-		if (treatEdgesAsUndirected) {
-			return new UndirectedScorerEdge(graphId, src, tgt, label);
-		} else {
-			return new ScorerEdge(graphId, src, tgt, label);
-		}
-	}
-
-	private static class ScorerEdge {
-
-		final int graphId;
-		final int src;
-		final int tgt;
-		final String label;
-
-		public ScorerEdge(int graphId, int src, int tgt, String label) {
-			this.graphId = graphId;
-			this.src = src;
-			this.tgt = tgt;
-			this.label = label;
-		}
-
-		public int getLength() {
-			return Math.max(src, tgt) - Math.min(src, tgt);
-		}
-
-		@Override
-		public int hashCode() {
-			int hash = 3;
-			hash = 53 * hash + this.graphId;
-			hash = 53 * hash + this.src;
-			hash = 53 * hash + this.tgt;
-			hash = 53 * hash + (this.label != null ? this.label.hashCode() : 0);
-			return hash;
+	/**
+	 * The counts contributed by a single pair of graphs.
+	 */
+	private static final class RecordedCounts {
+
+		/**
+		 * The number of exact matches, and the numbers of edges, semantic
+		 * frames and core predications in the gold standard, in the system
+		 * output, and in common.
+		 */
+		final int[] scalars = new int[10];
+
+		/**
+		 * The per-length counters, three per length bucket.
+		 */
+		final int[] countsByLengthBucket = new int[7 * 3];
+
+		/**
+		 * The per-label and per-group counters.
+		 */
+		final SparseCounts countsByLabelId = new SparseCounts();
+		final SparseCounts countsByGroupId = new SparseCounts();
+
+		/**
+		 * The cells of the confusion matrix outside of its diagonal, one entry
+		 * per edge, each packed into a long holding the row and the column.
+		 */
+		long[] confusions = new long[16];
+		int nConfusions;
+
+		void reset() {
+			Arrays.fill(scalars, 0);
+			Arrays.fill(countsByLengthBucket, 0);
+			countsByLabelId.reset();
+			countsByGroupId.reset();
+			nConfusions = 0;
 		}
 
-		@Override
-		public boolean equals(Object obj) {
-			if (obj == null) {
-				return false;
-			}
-			if (getClass() != obj.getClass()) {
-				return false;
-			}
-			final ScorerEdge other = (ScorerEdge) obj;
-			if (this.graphId != other.graphId) {
-				return false;
+		void addConfusion(int row, int column) {
+			if (nConfusions == confusions.length) {
+				confusions = Arrays.copyOf(confusions, 2 * confusions.length);
 			}
-			if (this.src != other.src) {
-				return false;
-			}
-			if (this.tgt != other.tgt) {
-				return false;
-			}
-			if ((this.label == null) ? (other.label != null) : !this.label.equals(other.label)) {
-				return false;
-			}
-			return true;
+			confusions[nConfusions++] = ((long) row << 32) | column;
 		}
 	}
 
-	private static class UndirectedScorerEdge extends ScorerEdge {
-
-		public UndirectedScorerEdge(int graphId, int src, int tgt, String label) {
-			super(graphId, src, tgt, label);
-		}
+	/**
+	 * Counters for the gold standard, the system output, and the edges in
+	 * common, indexed by integer IDs, together with the list of IDs whose
+	 * counters are not zero.
+	 */
+	private static final class SparseCounts {
 
-		@Override
-		public int hashCode() {
-			int hash = 3;
-			hash = 53 * hash + this.graphId;
-			hash = 53 * hash + Math.min(this.src, this.tgt);
-			hash = 53 * hash + Math.max(this.src, this.tgt);
-			hash = 53 * hash + (this.label != null ? this.label.hashCode() : 0);
-			return hash;
-		}
+		int[] counts = new int[3 * 16];
+		int[] ids = new int[16];
+		int nIds;
 
-		@Override
-		public boolean equals(Object obj) {
-			if (obj == null) {
-				return false;
-			}
-			if (getClass() != obj.getClass()) {
-				return false;
-			}
-			final ScorerEdge other = (ScorerEdge) obj;
-			if (this.graphId != other.graphId) {
-				return false;
-			}
-			if (Math.min(this.src, this.tgt) != Math.min(other.src, other.tgt)) {
-				return false;
+		void count(int id, int index, boolean isInCommon) {
+			if (3 * id + 3 > counts.length) {
+				counts = Arrays.copyOf(counts, Math.max(3 * id + 3, 2 * counts.length));
 			}
-			if (Math.max(this.src, this.tgt) != Math.max(other.src, other.tgt)) {
-				return false;
+			if (counts[3 * id] == 0 && counts[3 * id + 1] == 0) {
+				if (nIds == ids.length) {
+					ids = Arrays.copyOf(ids, 2 * ids.length);
+				}
+				ids[nIds++] = id;
 			}
-			if ((this.label == null) ? (other.label != null) : !this.label.equals(other.label)) {
-				return false;
+			counts[3 * id + index]++;
+			if (isInCommon) {
+				counts[3 * id + 2]++;
 			}
-			return true;
-		}
-	}
-
-	private static class SemanticFrame {
-
-		final int graphId;
-		final int node;
-		final String sense;
-		final Set<ScorerEdge> outgoingEdges;
-
-		public SemanticFrame(int graphId, int node, String sense, Set<ScorerEdge> outgoingEdges) {
-			this.graphId = graphId;
-			this.node = node;
-			this.sense = sense;
-			this.outgoingEdges = outgoingEdges;
 		}
 
-		@Override
-		public int hashCode() {
-			int hash = 3;
-			hash = 53 * hash + this.graphId;
-			hash = 53 * hash + this.node;
-			hash = 53 * hash + (this.sense != null ? this.sense.hashCode() : 0);
-			hash = 53 * hash + (this.outgoingEdges != null ? this.outgoingEdges.hashCode() : 0);
-			return hash;
+		void reset() {
+			for (int i = 0; i < nIds; i++) {
+				Arrays.fill(counts, 3 * ids[i], 3 * ids[i] + 3, 0);
+			}
+			nIds = 0;
 		}
 
-		@Override
-		public boolean equals(Object obj) {
-			if (obj == null) {
-				return false;
-			}
-			if (getClass() != obj.getClass()) {
-				return false;
-			}
-			final SemanticFrame other = (SemanticFrame) obj;
-			if (this.graphId != other.graphId) {
-				return false;
-			}
-			if (this.node != other.node) {
-				return false;
+		/**
+		 * Writes the number of non-zero counters, followed by the name index
+		 * of each ID and its three counts.
+		 */
+		void write(ScoreCache.Encoder out, ScoreCache cache, List<String> names) {
+			out.writeInt(nIds);
+			for (int i = 0; i < nIds; i++) {
+				out.writeInt(cache.getNameIndex(names.get(ids[i])));
+				out.writeInt(counts[3 * ids[i]]);
+				out.writeInt(counts[3 * ids[i] + 1]);
+				out.writeInt(counts[3 * ids[i] + 2]);
 			}
-			if ((this.sense == null) ? (other.sense != null) : !this.sense.equals(other.sense)) {
-				return false;
-			}
-			if ((this.outgoingEdges == null) ? (other.outgoingEdges != null) : !this.outgoingEdges.equals(other.outgoingEdges)) {
-				return false;
-			}
-			return true;
 		}
 	}
 
 	private Set<String> getLabels() {
-		Set<String> labels = new HashSet<String>();
-		for (ScorerEdge edge : edgesInGoldStandard) {
-			labels.add(edge.label);
-		}
-		for (ScorerEdge edge : edgesInSystemOutput) {
-			labels.add(edge.label);
-		}
-		return labels;
+		return countsByLabel.keySet();
 	}
 
-	private int getNEdgesByLabel(String label, Set<ScorerEdge> edges) {
-		int n = 0;
-		for (ScorerEdge edge : edges) {
-			n += edge.label.equals(label) ? 1 : 0;
-		}
-		return n;
+	private static int getCount(Map<String, int[]> counts, String key, int index) {
+		int[] counters = counts.get(key);
+		return counters == null ? 0 : counters[index];
 	}
 
 	private int getNEdgesInGoldStandardByLabel(String label) {
-		return getNEdgesByLabel(label, edgesInGoldStandard);
+		return getCount(countsByLabel, label, 0);
 	}
 
 	private int getNEdgesInSystemOutputByLabel(String label) {
-		return getNEdgesByLabel(label, edgesInSystemOutput);
+		return getCount(countsByLabel, label, 1);
 	}
 
 	private double getPrecisionPerLabel(String label) {
-		int nEdges = 0;
-		int nCorrect = 0;
-		for (ScorerEdge edgeS : edgesInSystemOutput) {
-			if (edgeS.label.equals(label)) {
-				nEdges++;
-				if (edgesInGoldStandard.contains(edgeS)) {
-					nCorrect++;
-				}
-			}
-		}
-		return (double) nCorrect / (double) nEdges;
+		return (double) getCount(countsByLabel, label, 2) / (double) getCount(countsByLabel, label, 1);
 	}
 
 	private double getRecallPerLabel(String label) {
-		int nEdges = 0;
-		int nCorrect = 0;
-		for (ScorerEdge edgeG : edgesInGoldStandard) {
-			if (edgeG.label.equals(label)) {
-				nEdges++;
-				if (edgesInSystemOutput.contains(edgeG)) {
-					nCorrect++;
-				}
-			}
-		}
-		return (double) nCorrect / (double) nEdges;
+		return (double) getCount(countsByLabel, label, 2) / (double) getCount(countsByLabel, label, 0);
 	}
 
-	private String getQuantizedLength(int length) {
+	private static String getQuantizedLength(int length) {
 		if (length <= 4) {
 			return Integer.toString(length);
 		} else if (length < 10) {
@@ -983,64 +2390,29 @@ public class Scorer {
 		}
 	}
 
-	private String getQuantizedLength(ScorerEdge edge) {
-		return getQuantizedLength(edge.getLength());
-	}
-
-	private Set<String> getQuantizedLengths() {
-		Set<String> lengths = new HashSet<String>();
-		for (ScorerEdge edge : edgesInGoldStandard) {
-			lengths.add(getQuantizedLength(edge));
-		}
-		for (ScorerEdge edge : edgesInSystemOutput) {
-			lengths.add(getQuantizedLength(edge));
-		}
-		return lengths;
-	}
-
-	private int getNEdgesByQuantizedLength(String quantizedLength, Set<ScorerEdge> edges) {
-		int n = 0;
-		for (ScorerEdge edge : edges) {
-			if (getQuantizedLength(edge).equals(quantizedLength)) {
-				n++;
-			}
+	private static int getLengthBucket(int length) {
+		if (length <= 4) {
+			return length;
+		} else if (length < 10) {
+			return 5;
+		} else {
+			return 6;
 		}
-		return n;
 	}
 
 	private int getNEdgesInGoldStandardByQuantizedLength(String quantizedLength) {
-		return getNEdgesByQuantizedLength(quantizedLength, edgesInGoldStandard);
+		return getCount(countsByQuantizedLength, quantizedLength, 0);
 	}
 
 	private int getNEdgesInSystemOutputByQuantizedLength(String quantizedLength) {
-		return getNEdgesByQuantizedLength(quantizedLength, edgesInSystemOutput);
+		return getCount(countsByQuantizedLength, quantizedLength, 1);
 	}
 
 	private double getPrecisionPerQuantizedLength(String quantizedLength) {
-		int nEdges = 0;
-		int nCorrect = 0;
-		for (ScorerEdge edgeS : edgesInSystemOutput) {
-			if (getQuantizedLength(edgeS).equals(quantizedLength)) {
-				nEdges++;
-				if (edgesInGoldStandard.contains(edgeS)) {
-					nCorrect++;
-				}
-			}
-		}
-		return (double) nCorrect / (double) nEdges;
+		return (double) getCount(countsByQuantizedLength, quantizedLength, 2) / (double) getCount(countsByQuantizedLength, quantizedLength, 1);
 	}
 
 	private double getRecallPerQuantizedLength(String quantizedLength) {
-		int nEdges = 0;
-		int nCorrect = 0;
-		for (ScorerEdge edgeG : edgesInGoldStandard) {
-			if (getQuantizedLength(edgeG).equals(quantizedLength)) {
-				nEdges++;
-				if (edgesInSystemOutput.contains(edgeG)) {
-					nCorrect++;
-				}
-			}
-		}
-		return (double) nCorrect / (double) nEdges;
+		return (double) getCount(countsByQuantizedLength, quantizedLength, 2) / (double) getCount(countsByQuantizedLength, quantizedLength, 0);
 	}
 }
@@ -0,0 +1,87 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReader;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphReaders;
+import se.liu.ida.nlp.sdp.toolkit.io.ShardedCorpus;
+import se.liu.ida.nlp.sdp.toolkit.io.ShardedGraphWriter;
+
+/**
+ * Writes corpora as a sharded corpus, or verifies the shards of a sharded
+ * corpus against its manifest.
+ *
+ * @author Marco Kuhlmann
+ */
+public class Sharder {
+
+	/**
+	 * Shards one or more corpora. The positional arguments are the input
+	 * files followed by the manifest file of the sharded corpus. The shard
+	 * size can be set using {@code shardSize=} (in megabytes) and
+	 * {@code shardGraphs=} (in graphs); the names of the shard files can be
+	 * set using {@code pattern=}, for example {@code pattern=part-%05d.sdp.gz}.
+	 * Called with a single manifest file and the argument {@code verify},
+	 * checks the sizes and checksums of the shards.
+	 *
+	 * @param args the command-line arguments
+	 * @throws Exception if an I/O error occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		List<File> files = new ArrayList<File>();
+		long shardSize = ShardedGraphWriter.DEFAULT_SHARD_SIZE;
+		long shardGraphs = 0;
+		String pattern = null;
+		boolean verify = false;
+		for (String arg : args) {
+			if (arg.startsWith("shardSize=")) {
+				shardSize = Long.parseLong(arg.substring(10)) << 20;
+			} else if (arg.startsWith("shardGraphs=")) {
+				shardGraphs = Long.parseLong(arg.substring(12));
+			} else if (arg.startsWith("pattern=")) {
+				pattern = arg.substring(8);
+			} else if (arg.equals("verify")) {
+				verify = true;
+			} else {
+				files.add(new File(arg));
+			}
+		}
+		if (verify) {
+			boolean isValid = true;
+			for (File manifest : files) {
+				for (ShardedCorpus.Shard shard : ShardedCorpus.read(manifest).getShards()) {
+					if (!shard.verify()) {
+						System.err.format("%s: size or checksum mismatch%n", shard.getFile());
+						isValid = false;
+					}
+				}
+			}
+			System.exit(isValid ? 0 : 1);
+		}
+		if (files.size() < 2) {
+			System.err.println("Usage: Sharder INPUT... MANIFEST [shardSize=MB] [shardGraphs=N] [pattern=PATTERN]");
+			System.err.println("       Sharder MANIFEST... verify");
+			System.exit(1);
+		}
+		File manifest = files.remove(files.size() - 1);
+		ShardedGraphWriter writer = pattern != null ? new ShardedGraphWriter(manifest, pattern, shardSize) : new ShardedGraphWriter(manifest, shardSize);
+		writer.setShardGraphs(shardGraphs);
+		for (File file : files) {
+			GraphReader reader = GraphReaders.open(file);
+			Graph graph;
+			while ((graph = reader.readGraph()) != null) {
+				writer.writeGraph(graph);
+			}
+			reader.close();
+		}
+		writer.close();
+		for (ShardedCorpus.Shard shard : writer.getShards()) {
+			System.err.format("%s: %d graphs (%s to %s)%n", shard.getFile(), shard.getNGraphs(), shard.getFirstId(), shard.getLastId());
+		}
+	}
+}
@@ -3,33 +3,472 @@
  */
 package se.liu.ida.nlp.sdp.toolkit.tools;
 
-import se.liu.ida.nlp.sdp.toolkit.graph.Graph;
-import se.liu.ida.nlp.sdp.toolkit.io.GraphReader;
-import se.liu.ida.nlp.sdp.toolkit.io.GraphReader2015;
-import se.liu.ida.nlp.sdp.toolkit.io.GraphWriter;
-import se.liu.ida.nlp.sdp.toolkit.io.GraphWriter2015;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import se.liu.ida.nlp.sdp.toolkit.io.Compression;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphFormat;
 
 /**
- * Splits the SDP training data into training and development.
+ * Splits corpora into parts according to a partitioning rule. The graphs are
+ * not parsed; instead, the raw bytes of each paragraph are copied to the
+ * output for its part. Only the graph ID and the number of tokens are
+ * extracted, for use by the rule. Several input files are processed in
+ * parallel. Within each part, the graphs of each input file appear in their
+ * original order, but graphs from different input files may be interleaved.
  *
  * @author Marco Kuhlmann
  */
 public class Splitter {
 
+	/**
+	 * A rule that assigns graphs to parts.
+	 */
+	public interface Rule {
+
+		/**
+		 * Returns the number of parts.
+		 *
+		 * @return the number of parts
+		 */
+		public int getNParts();
+
+		/**
+		 * Returns the part for the specified graph.
+		 *
+		 * @param id the ID of the graph
+		 * @param nTokens the number of tokens of the graph
+		 * @param number the position of the graph in its input file, counting
+		 * from zero
+		 * @return the part for the specified graph, or -1 if the graph should
+		 * be dropped
+		 */
+		public int getPart(String id, int nTokens, long number);
+
+		/**
+		 * Returns a rule that assigns graphs to parts based on the WSJ
+		 * section encoded in the graph ID (the two digits following the
+		 * initial {@code #2}).
+		 *
+		 * @param sections for each part, the sections assigned to it
+		 * @return a rule that assigns graphs to parts based on their sections
+		 */
+		public static Rule sections(int[][] sections) {
+			final int[] parts = new int[100];
+			Arrays.fill(parts, -1);
+			for (int i = 0; i < sections.length; i++) {
+				for (int section : sections[i]) {
+					parts[section] = i;
+				}
+			}
+			return new Rule() {
+				@Override
+				public int getNParts() {
+					return sections.length;
+				}
+
+				@Override
+				public int getPart(String id, int nTokens, long number) {
+					if (id.length() >= 4 && Character.isDigit(id.charAt(2)) && Character.isDigit(id.charAt(3))) {
+						return parts[(id.charAt(2) - '0') * 10 + (id.charAt(3) - '0')];
+					} else {
+						return -1;
+					}
+				}
+			};
+		}
+
+		/**
+		 * Returns a rule that assigns graphs to folds based on a hash of the
+		 * graph ID. The assignment does not depend on the order of the input.
+		 *
+		 * @param nFolds the number of folds
+		 * @param seed the seed for the hash function
+		 * @return a rule that assigns graphs to folds
+		 */
+		public static Rule folds(int nFolds, long seed) {
+			return new Rule() {
+				@Override
+				public int getNParts() {
+					return nFolds;
+				}
+
+				@Override
+				public int getPart(String id, int nTokens, long number) {
+					long h = (id.hashCode() ^ seed) * 0x9e3779b97f4a7c15L;
+					h ^= h >>> 32;
+					return (int) Math.floorMod(h, (long) nFolds);
+				}
+			};
+		}
+
+		/**
+		 * Returns a rule that assigns graphs to parts based on their number
+		 * of tokens. Part 0 receives graphs shorter than the first bound,
+		 * part {@code i} receives graphs with at least {@code bounds[i - 1]}
+		 * and fewer than {@code bounds[i]} tokens, and the last part receives
+		 * graphs with at least as many tokens as the last bound.
+		 *
+		 * @param bounds the increasing bucket bounds
+		 * @return a rule that assigns graphs to parts based on their length
+		 */
+		public static Rule lengths(int[] bounds) {
+			return new Rule() {
+				@Override
+				public int getNParts() {
+					return bounds.length + 1;
+				}
+
+				@Override
+				public int getPart(String id, int nTokens, long number) {
+					int part = 0;
+					while (part < bounds.length && nTokens >= bounds[part]) {
+						part++;
+					}
+					return part;
+				}
+			};
+		}
+
+		/**
+		 * Returns a rule that distributes the graphs of each input file over
+		 * the specified number of shards in round-robin fashion.
+		 *
+		 * @param nShards the number of shards
+		 * @return a rule that distributes graphs over shards
+		 */
+		public static Rule shards(int nShards) {
+			return new Rule() {
+				@Override
+				public int getNParts() {
+					return nShards;
+				}
+
+				@Override
+				public int getPart(String id, int nTokens, long number) {
+					return (int) (number % nShards);
+				}
+			};
+		}
+	}
+
+	/**
+	 * The number of bytes buffered per part and input before they are
+	 * written to the output.
+	 */
+	private static final int FLUSH_THRESHOLD = 1 << 16;
+
+	/**
+	 * The rule used to assign graphs to parts.
+	 */
+	private final Rule rule;
+
+	/**
+	 * The output streams for the parts.
+	 */
+	private final OutputStream[] outputs;
+
+	/**
+	 * Create a splitter that writes the parts defined by the specified rule
+	 * to the specified files. Compressed output is written depending on the
+	 * file names (see {@link Compression#create(File)}).
+	 *
+	 * @param rule the rule used to assign graphs to parts
+	 * @param outputFiles the files for the parts
+	 * @param format the format of the input files
+	 * @throws IOException if an output file cannot be opened for writing
+	 */
+	public Splitter(Rule rule, List<File> outputFiles, GraphFormat format) throws IOException {
+		if (outputFiles.size() != rule.getNParts()) {
+			throw new IllegalArgumentException(String.format("Rule has %d parts, but %d output files were given", rule.getNParts(), outputFiles.size()));
+		}
+		this.rule = rule;
+		this.outputs = new OutputStream[outputFiles.size()];
+		for (int i = 0; i < outputs.length; i++) {
+			outputs[i] = Compression.create(outputFiles.get(i));
+			if (format.getFirstLine() != null) {
+				outputs[i].write((format.getFirstLine() + "\n").getBytes(StandardCharsets.US_ASCII));
+			}
+		}
+	}
+
+	/**
+	 * Splits the specified input files, processing several files in
+	 * parallel.
+	 *
+	 * @param inputFiles the files to be split
+	 * @param nThreads the maximal number of files processed in parallel
+	 * @return the number of graphs written to each part
+	 * @throws IOException if an I/O error occurs
+	 */
+	public long[] split(List<File> inputFiles, int nThreads) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(nThreads, inputFiles.size())));
+		try {
+			List<Future<long[]>> futures = new ArrayList<Future<long[]>>();
+			for (final File inputFile : inputFiles) {
+				futures.add(executor.submit(new Callable<long[]>() {
+					@Override
+					public long[] call() throws IOException {
+						return split(inputFile);
+					}
+				}));
+			}
+			long[] counts = new long[outputs.length];
+			for (Future<long[]> future : futures) {
+				long[] fileCounts = future.get();
+				for (int i = 0; i < counts.length; i++) {
+					counts[i] += fileCounts[i];
+				}
+			}
+			return counts;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else {
+				throw new IOException(e.getCause());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Closes the output files.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void close() throws IOException {
+		for (OutputStream output : outputs) {
+			output.close();
+		}
+	}
+
+	/**
+	 * Splits a single input file. The paragraphs are scanned at the byte
+	 * level and buffered per part; full buffers are written to the shared
+	 * outputs under a lock.
+	 *
+	 * @param inputFile the file to be split
+	 * @return the number of graphs written to each part
+	 * @throws IOException if an I/O error occurs
+	 */
+	private long[] split(File inputFile) throws IOException {
+		ByteArrayOutputStream[] buffers = new ByteArrayOutputStream[outputs.length];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = new ByteArrayOutputStream(2 * FLUSH_THRESHOLD);
+		}
+		long[] counts = new long[outputs.length];
+		long nGraphs = 0;
+
+		// The current paragraph, and the start of the current line in it.
+		byte[] paragraph = new byte[1 << 12];
+		int length = 0;
+		int lineStart = 0;
+		int nLines = 0;
+		String id = null;
+		boolean atStart = true;
+
+		InputStream in = Compression.open(inputFile);
+		try {
+			byte[] chunk = new byte[1 << 16];
+			int n;
+			boolean atEnd = false;
+			while (!atEnd) {
+				n = in.read(chunk);
+				if (n == -1) {
+					// Terminate the last line and the last paragraph.
+					atEnd = true;
+					chunk[0] = '\n';
+					chunk[1] = '\n';
+					n = length > lineStart ? 2 : 1;
+				}
+				for (int i = 0; i < n; i++) {
+					if (length == paragraph.length) {
+						paragraph = Arrays.copyOf(paragraph, 2 * paragraph.length);
+					}
+					paragraph[length++] = chunk[i];
+					if (chunk[i] != '\n') {
+						continue;
+					}
+					int lineLength = length - 1 - lineStart;
+					if (lineLength > 0 && paragraph[length - 2] == '\r') {
+						lineLength--;
+					}
+					if (lineLength == 0) {
+						// A blank line ends the current paragraph, if any.
+						if (nLines > 0) {
+							int part = rule.getPart(id, nLines - 1, nGraphs++);
+							if (part >= 0) {
+								buffers[part].write(paragraph, 0, length);
+								counts[part]++;
+								if (buffers[part].size() >= FLUSH_THRESHOLD) {
+									flush(part, buffers[part]);
+								}
+							}
+						}
+						length = 0;
+						lineStart = 0;
+						nLines = 0;
+					} else if (atStart && lineLength >= 4 && paragraph[0] == '#' && paragraph[1] == 'S' && paragraph[2] == 'D' && paragraph[3] == 'P') {
+						// Skip the format identifier line.
+						length = 0;
+						lineStart = 0;
+					} else {
+						if (nLines == 0) {
+							id = new String(paragraph, lineStart, lineLength, StandardCharsets.US_ASCII);
+						}
+						nLines++;
+						lineStart = length;
+					}
+					atStart = false;
+				}
+			}
+		} finally {
+			in.close();
+		}
+		for (int i = 0; i < buffers.length; i++) {
+			flush(i, buffers[i]);
+		}
+		return counts;
+	}
+
+	/**
+	 * Writes the buffered paragraphs for the specified part to its output.
+	 *
+	 * @param part the part
+	 * @param buffer the buffered paragraphs; reset on return
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void flush(int part, ByteArrayOutputStream buffer) throws IOException {
+		synchronized (outputs[part]) {
+			buffer.writeTo(outputs[part]);
+		}
+		buffer.reset();
+	}
+
+	/**
+	 * Parses a list of section ranges, such as {@code 00-19+21-24}.
+	 *
+	 * @param spec the list of section ranges
+	 * @return the sections in the specified ranges
+	 */
+	static int[] parseSections(String spec) {
+		List<Integer> sections = new ArrayList<Integer>();
+		for (String range : spec.split("\\+")) {
+			String[] bounds = range.split("-");
+			int from = Integer.parseInt(bounds[0]);
+			int to = bounds.length > 1 ? Integer.parseInt(bounds[1]) : from;
+			for (int section = from; section <= to; section++) {
+				sections.add(section);
+			}
+		}
+		int[] result = new int[sections.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = sections.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Splits one or more corpora. The positional arguments are the input
+	 * files. Exactly one of the following rules must be specified:
+	 * {@code sections=00-19+21-24,20} (one list of section ranges per part),
+	 * {@code folds=K} (hash-based folds; the hash can be varied using
+	 * {@code seed=}), {@code lengths=10,20,40} (length buckets), or
+	 * {@code shards=N} (round-robin shards). The output files are specified
+	 * either as a list {@code output=a.sdp,b.sdp} or as a pattern
+	 * {@code output=part-%d.sdp}. The number of parallel threads can be set
+	 * using {@code threads=}. For compatibility with earlier versions, the
+	 * arguments {@code INPUT TRAIN DEVEL} split the SDP training data into
+	 * training and development, using section 20 for development.
+	 *
+	 * @param args the command-line arguments
+	 * @throws Exception if an I/O error occurs
+	 */
 	public static void main(String[] args) throws Exception {
-		GraphReader reader = new GraphReader2015(args[0]);
-		GraphWriter writerTrain = new GraphWriter2015(args[1]);
-		GraphWriter writerDevel = new GraphWriter2015(args[2]);
-		Graph graph;
-		while ((graph = reader.readGraph()) != null) {
-			if (graph.id.substring(2, 4).equals("20")) {
-				writerDevel.writeGraph(graph);
+		List<File> inputFiles = new ArrayList<File>();
+		Rule rule = null;
+		String output = null;
+		int nFolds = 0;
+		long seed = 0;
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		for (String arg : args) {
+			if (arg.startsWith("sections=")) {
+				String[] parts = arg.substring(9).split(",");
+				int[][] sections = new int[parts.length][];
+				for (int i = 0; i < parts.length; i++) {
+					sections[i] = parseSections(parts[i]);
+				}
+				rule = Rule.sections(sections);
+			} else if (arg.startsWith("folds=")) {
+				nFolds = Integer.parseInt(arg.substring(6));
+			} else if (arg.startsWith("seed=")) {
+				seed = Long.parseLong(arg.substring(5));
+			} else if (arg.startsWith("lengths=")) {
+				String[] parts = arg.substring(8).split(",");
+				int[] bounds = new int[parts.length];
+				for (int i = 0; i < parts.length; i++) {
+					bounds[i] = Integer.parseInt(parts[i]);
+				}
+				rule = Rule.lengths(bounds);
+			} else if (arg.startsWith("shards=")) {
+				rule = Rule.shards(Integer.parseInt(arg.substring(7)));
+			} else if (arg.startsWith("output=")) {
+				output = arg.substring(7);
+			} else if (arg.startsWith("threads=")) {
+				nThreads = Integer.parseInt(arg.substring(8));
 			} else {
-				writerTrain.writeGraph(graph);
+				inputFiles.add(new File(arg));
 			}
 		}
-		reader.close();
-		writerTrain.close();
-		writerDevel.close();
+		if (nFolds > 0) {
+			rule = Rule.folds(nFolds, seed);
+		}
+		List<File> outputFiles = new ArrayList<File>();
+		if (rule == null && output == null && inputFiles.size() == 3) {
+			// Split the training data into training and development.
+			rule = Rule.sections(new int[][]{parseSections("00-19+21-99"), parseSections("20")});
+			outputFiles.add(inputFiles.remove(1));
+			outputFiles.add(inputFiles.remove(1));
+		} else if (rule == null || output == null || inputFiles.isEmpty()) {
+			System.err.println("Usage: Splitter INPUT... (sections=RANGES,... | folds=K [seed=S] | lengths=B,... | shards=N) output=FILE,...|PATTERN [threads=N]");
+			System.exit(1);
+		} else if (output.contains("%")) {
+			for (int i = 0; i < rule.getNParts(); i++) {
+				outputFiles.add(new File(String.format(output, i)));
+			}
+		} else {
+			for (String fileName : output.split(",")) {
+				outputFiles.add(new File(fileName));
+			}
+		}
+
+		GraphFormat format = GraphFormat.detect(inputFiles.get(0));
+		for (File inputFile : inputFiles) {
+			if (GraphFormat.detect(inputFile) != format) {
+				throw new IOException("Input files have different formats: " + inputFile);
+			}
+		}
+
+		Splitter splitter = new Splitter(rule, outputFiles, format);
+		long[] counts = splitter.split(inputFiles, nThreads);
+		splitter.close();
+		for (int i = 0; i < counts.length; i++) {
+			System.err.format("%s: %d graphs%n", outputFiles.get(i), counts[i]);
+		}
 	}
 }
@@ -0,0 +1,68 @@
+/*
+ * See the file "LICENSE" for the full license governing this code.
+ */
+package se.liu.ida.nlp.sdp.toolkit.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import se.liu.ida.nlp.sdp.toolkit.io.GraphValidator;
+import se.liu.ida.nlp.sdp.toolkit.io.ShardedCorpus;
+
+/**
+ * Checks that one or more files are well-formed, for example before they are
+ * scored. All violations are reported, together with their line numbers.
+ *
+ * @author Marco Kuhlmann
+ */
+public class Validator {
+
+	/**
+	 * The default maximal number of violations reported per file.
+	 */
+	private static final int DEFAULT_MAX_VIOLATIONS = 1000;
+
+	/**
+	 * Validates one or more files. The positional arguments are the files to
+	 * validate; manifests of sharded corpora stand for their shards. Each
+	 * violation is printed as {@code FILE:LINE: MESSAGE}. The number of
+	 * violations reported per file can be set using {@code max=}; all
+	 * violations are counted. Exits with status 1 if any violations were
+	 * found.
+	 *
+	 * @param args the command-line arguments
+	 * @throws Exception if an I/O error occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		List<File> files = new ArrayList<File>();
+		int maxViolations = DEFAULT_MAX_VIOLATIONS;
+		for (String arg : args) {
+			if (arg.startsWith("max=")) {
+				maxViolations = Integer.parseInt(arg.substring(4));
+			} else {
+				File file = new File(arg);
+				if (ShardedCorpus.isManifest(file)) {
+					for (ShardedCorpus.Shard shard : ShardedCorpus.read(file).getShards()) {
+						files.add(shard.getFile());
+					}
+				} else {
+					files.add(file);
+				}
+			}
+		}
+		if (files.isEmpty()) {
+			System.err.println("Usage: Validator FILE... [max=N]");
+			System.exit(1);
+		}
+		boolean isValid = true;
+		for (File file : files) {
+			GraphValidator.Result result = GraphValidator.validate(file, maxViolations);
+			for (GraphValidator.Violation violation : result.getViolations()) {
+				System.out.format("%s:%s%n", file, violation);
+			}
+			System.err.format("%s: %d graphs, %d violations%n", file, result.getNGraphs(), result.getNViolations());
+			isValid = isValid && result.isValid();
+		}
+		System.exit(isValid ? 0 : 1);
+	}
+}